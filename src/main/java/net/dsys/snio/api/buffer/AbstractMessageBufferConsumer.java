@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.buffer;
+
+/**
+ * Skeleton implementation of {@link MessageBufferConsumer}, for buffers
+ * written before the interface gained attachment ids and publish listeners.
+ * Subclasses only need to implement the methods of the original interface.
+ * 
+ * @author Ricardo Padilha
+ */
+public abstract class AbstractMessageBufferConsumer<T> implements MessageBufferConsumer<T> {
+
+	protected AbstractMessageBufferConsumer() {
+		super();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation does not store ids, and always returns zero.
+	 */
+	@Override
+	public long attachmentId(final long sequence) {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation cannot notify, and always returns
+	 * <code>false</code>.
+	 */
+	@Override
+	public boolean setPublishListener(final Runnable listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener == null");
+		}
+		return false;
+	}
+
+}
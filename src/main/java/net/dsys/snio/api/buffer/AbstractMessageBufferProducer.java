@@ -0,0 +1,164 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.buffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Skeleton implementation of {@link MessageBufferProducer}, for buffers
+ * written before the interface gained non-blocking acquisition, sized
+ * messages, ids, interned attachments and ranged releases. Subclasses only
+ * need to implement the methods of the original interface; every other
+ * method falls back on them. The buffers of this library extend it as well,
+ * to share the timed {@link #acquire(long, TimeUnit)}.
+ * 
+ * @author Ricardo Padilha
+ */
+public abstract class AbstractMessageBufferProducer<T> implements MessageBufferProducer<T> {
+
+	private static final long MIN_PARK_NANOS = 1000;
+	private static final long MAX_PARK_NANOS = 1000000;
+
+	protected AbstractMessageBufferProducer() {
+		super();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation only calls {@link #acquire()} when
+	 * {@link #remaining()} reports a free position, so it may still block if
+	 * other producers take that position first.
+	 */
+	@Override
+	public long tryAcquire() throws InterruptedException {
+		if (remaining() < 1) {
+			return NO_SEQUENCE;
+		}
+		return acquire();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation retries {@link #tryAcquire()} until it succeeds or
+	 * the timeout expires, calling {@link #awaitCapacity(long)} in between
+	 * with a wait that doubles after every attempt, up to one millisecond.
+	 */
+	@Override
+	public long acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long park = MIN_PARK_NANOS;
+		long sequence;
+		while ((sequence = tryAcquire()) == NO_SEQUENCE) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			final long left = deadline - System.nanoTime();
+			if (left <= 0) {
+				break;
+			}
+			awaitCapacity(Math.min(left, park));
+			park = Math.min(park << 1, MAX_PARK_NANOS);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Waits at most <code>nanos</code> for positions to become free.
+	 * Returning early is always allowed, the caller simply tries again. This
+	 * implementation parks for the whole period; buffers that know when their
+	 * consumers release positions should wait for that instead.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting
+	 */
+	protected void awaitCapacity(@Nonnegative final long nanos) throws InterruptedException {
+		LockSupport.parkNanos(nanos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation ignores the length.
+	 */
+	@Override
+	public T get(final long sequence, final int length) {
+		return get(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation does not store ids, so it ignores them, the same
+	 * way {@link AbstractMessageBufferConsumer#attachmentId(long)} reports
+	 * zero for every position.
+	 */
+	@Override
+	public void attachId(final long sequence, final long id) {
+		return;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation does not intern objects.
+	 */
+	@Override
+	public int intern(final Object attachment) {
+		return NO_HANDLE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation does not intern objects, so no handle is valid.
+	 */
+	@Override
+	public void unintern(final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation does not intern objects, so no handle is valid.
+	 */
+	@Override
+	public void attachHandle(final long sequence, final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation publishes the range with {@link #release(long)},
+	 * which is only correct for buffers that are not shared by several
+	 * producers.
+	 */
+	@Override
+	public void release(final long first, final long last) throws InterruptedException {
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		release(last);
+	}
+
+}
@@ -39,7 +39,7 @@ public interface MessageBuffer<E> {
 	 * @param n
 	 *            the number of slots to acquire
 	 * @return the last sequence number to be used later on
-	 *         {@link #release(long, long)}
+	 *         {@link #release(long)}
 	 */
 	long acquire(@Nonnegative int n) throws InterruptedException;
 
@@ -17,23 +17,55 @@
 package net.dsys.snio.api.buffer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 /**
+ * Read side of a {@link MessageBuffer}.
+ * <p>
+ * {@link #attachmentId(long)} and {@link #setPublishListener(Runnable)} were
+ * added after the first release of this interface. Implementations outside
+ * this library should extend {@link AbstractMessageBufferConsumer}, which
+ * provides them.
+ * 
  * @author Ricardo Padilha
  */
 public interface MessageBufferConsumer<T> extends MessageBuffer<T> {
 
 	/**
-	 * Obtains the object attached to a buffer position.
+	 * Obtains the object attached to a buffer position. Positions published
+	 * without a message carry a {@link SkippedPosition}.
 	 * 
 	 * @param sequence
 	 *            a sequence number obtained through {@link #acquire()} or
 	 *            {@link #acquire(int)}
-	 * @return the attached object
+	 * @return the attached object, or <code>null</code> if none was attached
 	 */
-	@Nonnull
+	@Nonnull(when = When.MAYBE)
 	Object attachment(long sequence);
 
+	/**
+	 * Obtains the id attached to a buffer position.
+	 * 
+	 * @param sequence
+	 *            a sequence number obtained through {@link #acquire()} or
+	 *            {@link #acquire(int)}
+	 * @return the attached id; positions keep their id until a new one is
+	 *         attached
+	 */
+	long attachmentId(long sequence);
+
+	/**
+	 * Registers a callback that producers run every time they publish
+	 * messages to this buffer, so that a thread serving many buffers can
+	 * sleep until one of them has messages instead of polling them all. The
+	 * callback runs on the producer thread and must not block. Only the last
+	 * callback registered is kept.
+	 * 
+	 * @return <code>false</code> if this buffer cannot notify publications,
+	 *         in which case it must still be polled
+	 */
+	boolean setPublishListener(@Nonnull Runnable listener);
+
 	/**
 	 * @return a new producer for this consumer.
 	 */
@@ -16,13 +16,72 @@
 
 package net.dsys.snio.api.buffer;
 
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 /**
+ * Write side of a {@link MessageBuffer}.
+ * <p>
+ * This interface gained methods after its first release:
+ * {@link #tryAcquire()}, {@link #acquire(long, TimeUnit)},
+ * {@link #get(long, int)}, {@link #attachId(long, long)},
+ * {@link #intern(Object)}, {@link #unintern(int)},
+ * {@link #attachHandle(long, int)} and
+ * {@link #release(long, long)}. Implementations outside this library should
+ * extend {@link AbstractMessageBufferProducer}, which provides all of them on
+ * top of the original methods.
+ * 
  * @author Ricardo Padilha
  */
 public interface MessageBufferProducer<T> extends MessageBuffer<T> {
 
+	/**
+	 * Returned by {@link #intern(Object)} when the object could not be
+	 * interned.
+	 */
+	int NO_HANDLE = -1;
+
+	/**
+	 * Returned by {@link #tryAcquire()} and
+	 * {@link #acquire(long, TimeUnit)} when no position could be acquired.
+	 */
+	long NO_SEQUENCE = -1;
+
+	/**
+	 * Same as {@link #acquire()}, but never blocks the caller.
+	 * 
+	 * @return the sequence number to be used later on {@link #release(long)},
+	 *         or {@link #NO_SEQUENCE} if there are no free positions
+	 */
+	long tryAcquire() throws InterruptedException;
+
+	/**
+	 * Same as {@link #acquire()}, but blocks the caller for at most the given
+	 * time.
+	 * 
+	 * @return the sequence number to be used later on {@link #release(long)},
+	 *         or {@link #NO_SEQUENCE} if no position became free in time
+	 */
+	long acquire(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * Same as {@link #get(long)}, for writers that know the length of the
+	 * message beforehand. Buffers that draw their messages from a
+	 * {@link MessagePool} use it to pick the smallest message that fits,
+	 * other buffers ignore the length.
+	 * 
+	 * @param sequence
+	 *            a sequence number obtained through {@link #acquire()} or
+	 *            {@link #acquire(int)}
+	 * @param length
+	 *            the length of the message that will be written
+	 */
+	@Nonnull
+	T get(long sequence, @Nonnegative int length);
+
 	/**
 	 * Attaches an object to a buffer position.
 	 * 
@@ -30,8 +89,73 @@ public interface MessageBufferProducer<T> extends MessageBuffer<T> {
 	 *            a sequence number obtained through {@link #acquire()} or
 	 *            {@link #acquire(int)}
 	 * @param attachment
-	 *            the object to attach
+	 *            the object to attach, or <code>null</code> to clear the
+	 *            attachment left by a previous message
+	 */
+	void attach(long sequence, @Nonnull(when = When.MAYBE) Object attachment);
+
+	/**
+	 * Attaches a numeric id to a buffer position. Ids are independent from
+	 * object attachments, and are read with
+	 * {@link MessageBufferConsumer#attachmentId(long)}.
+	 * 
+	 * @param sequence
+	 *            a sequence number obtained through {@link #acquire()} or
+	 *            {@link #acquire(int)}
+	 * @param id
+	 *            the id to attach
+	 */
+	void attachId(long sequence, long id);
+
+	/**
+	 * Interns an object that is attached to many messages, such as the reply
+	 * buffer of a channel. Equal objects get the same handle, and consumers
+	 * receive the interned instance. Each handle obtained here must be given
+	 * back with {@link #unintern(int)} once the object is no longer attached.
+	 * 
+	 * @param attachment
+	 *            an immutable object
+	 * @return a handle for {@link #attachHandle(long, int)}, or
+	 *         {@link #NO_HANDLE} if this buffer does not intern objects, or
+	 *         cannot intern more of them
+	 */
+	int intern(@Nonnull Object attachment);
+
+	/**
+	 * Gives back a handle obtained through {@link #intern(Object)}. Positions
+	 * already attached to it keep their object, and the handle is only reused
+	 * once they were consumed.
+	 * 
+	 * @param handle
+	 *            a handle obtained through {@link #intern(Object)}
+	 */
+	void unintern(@Nonnegative int handle);
+
+	/**
+	 * Attaches an interned object to a buffer position, by storing only its
+	 * handle. Consumers see the object through
+	 * {@link MessageBufferConsumer#attachment(long)}.
+	 * 
+	 * @param sequence
+	 *            a sequence number obtained through {@link #acquire()} or
+	 *            {@link #acquire(int)}
+	 * @param handle
+	 *            a handle obtained through {@link #intern(Object)}
+	 */
+	void attachHandle(long sequence, @Nonnegative int handle);
+
+	/**
+	 * Releases a range of messages for publication at once. This is the
+	 * counterpart of {@link #acquire(int)}: buffers shared by several
+	 * producers only publish the exact range given here, and consumers are
+	 * woken up only once for the whole range.
+	 * 
+	 * @param first
+	 *            first sequence number of the range, inclusive
+	 * @param last
+	 *            last sequence number of the range, inclusive, as returned by
+	 *            {@link #acquire(int)}
 	 */
-	void attach(long sequence, @Nonnull Object attachment);
+	void release(long first, long last) throws InterruptedException;
 
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.buffer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Source of messages for buffers that do not preallocate their positions.
+ * Messages are taken from the pool when a position is written, and returned
+ * to it once the position is released by the consumer. A single pool may be
+ * shared by the buffers of many channels.
+ * <p>
+ * Implementations must be thread-safe.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface MessagePool<T> {
+
+	/**
+	 * @return a message able to hold at least <code>length</code> units.
+	 * @throws IllegalArgumentException
+	 *             if <code>length</code> exceeds {@link #getMaxLength()}
+	 */
+	@Nonnull
+	T allocate(@Nonnegative int length);
+
+	/**
+	 * Returns a message to the pool. The message must not be used after this.
+	 * 
+	 * @param message
+	 *            a message obtained through {@link #allocate(int)}
+	 */
+	void free(@Nonnull T message);
+
+	/**
+	 * @return the length of the largest message in this pool.
+	 */
+	@Nonnegative
+	int getMaxLength();
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.buffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Attachment of positions that were claimed but never written, e.g. when a
+ * group of buffers could not claim the same position on all its members.
+ * Claims cannot be undone, so such positions are still published, and their
+ * consumers must release them without reading them: they hold whatever an
+ * earlier message left there.
+ * <p>
+ * Each marker records its own sequence number, so that a later message
+ * written to the same position without any attachment is not mistaken for
+ * a skipped one.
+ *
+ * @author Ricardo Padilha
+ */
+public final class SkippedPosition {
+
+	private final long sequence;
+
+	private SkippedPosition(final long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Marks positions <code>first</code> to <code>last</code> as skipped.
+	 * They must still be released as usual.
+	 */
+	public static void skip(@Nonnull final MessageBufferProducer<?> producer, final long first, final long last) {
+		if (producer == null) {
+			throw new NullPointerException("producer == null");
+		}
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		for (long s = first; s <= last; s++) {
+			producer.attach(s, new SkippedPosition(s));
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the position was marked by
+	 *         {@link #skip(MessageBufferProducer, long, long)}
+	 */
+	public static boolean isSkipped(@Nonnull final MessageBufferConsumer<?> consumer, final long sequence) {
+		final Object attachment = consumer.attachment(sequence);
+		return attachment instanceof SkippedPosition && ((SkippedPosition) attachment).sequence == sequence;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "skipped " + sequence;
+	}
+
+}
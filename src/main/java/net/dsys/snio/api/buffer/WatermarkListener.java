@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.buffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Notified when the backlog of a channel output buffer, i.e., the messages
+ * written by the application but not yet sent, crosses its watermarks.
+ * Notifications alternate: after a high watermark, the next one is always a
+ * low watermark, and vice versa.
+ * <p>
+ * Methods are called from the application thread that released the messages,
+ * or from the writer thread that sent them, and must not block.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface WatermarkListener {
+
+	/**
+	 * The backlog reached the high watermark. Producers should stop writing
+	 * to <code>out</code> until {@link #lowWatermark(MessageBufferProducer)}.
+	 * 
+	 * @param out
+	 *            the output buffer of the channel
+	 */
+	void highWatermark(@Nonnull MessageBufferProducer<?> out);
+
+	/**
+	 * The backlog went down to the low watermark.
+	 * 
+	 * @param out
+	 *            the output buffer of the channel
+	 */
+	void lowWatermark(@Nonnull MessageBufferProducer<?> out);
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.channel;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+/**
+ * Traffic counters of a single channel, as totals since it was opened.
+ *
+ * @author Ricardo Padilha
+ */
+public interface ChannelMetrics {
+
+	@Nonnegative
+	long getBytesRead();
+
+	@Nonnegative
+	long getBytesWritten();
+
+	@Nonnegative
+	long getMessagesDecoded();
+
+	@Nonnegative
+	long getMessagesEncoded();
+
+	/**
+	 * @return time from the application releasing a message to the channel
+	 *         encoding it, or <code>null</code> if latency is not tracked
+	 */
+	@Nonnull(when = When.MAYBE)
+	LatencyHistogram getSendLatency();
+
+	/**
+	 * @return time from the channel decoding a message to the application
+	 *         releasing it, or <code>null</code> if it is not tracked
+	 */
+	@Nonnull(when = When.MAYBE)
+	LatencyHistogram getReceiveLatency();
+
+}
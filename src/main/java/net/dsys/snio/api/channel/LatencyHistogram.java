@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.channel;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Distribution of the time messages spent between two points of a channel,
+ * in nanoseconds. Values are kept in logarithmic buckets with a relative
+ * error of about 6%, and are reported as the upper bound of their bucket.
+ *
+ * @author Ricardo Padilha
+ */
+public interface LatencyHistogram {
+
+	/**
+	 * @return number of recorded values
+	 */
+	@Nonnegative
+	long getCount();
+
+	@Nonnegative
+	long getMax();
+
+	@Nonnegative
+	double getMean();
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100, e.g., 99.9
+	 * @return the value below which the given percentage of the recorded
+	 *         values fall, or 0 if nothing was recorded
+	 */
+	@Nonnegative
+	long getValueAtPercentile(double percentile);
+
+	/**
+	 * Discards all recorded values. Values recorded concurrently may or may
+	 * not be discarded.
+	 */
+	void reset();
+
+}
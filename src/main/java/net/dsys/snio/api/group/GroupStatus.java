@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.group;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Delivery status of the members of a group channel.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface GroupStatus {
+
+	/**
+	 * @return the number of members in the group.
+	 */
+	@Nonnegative
+	int size();
+
+	/**
+	 * @return the number of members that must accept a message before it is
+	 *         considered sent.
+	 */
+	@Nonnegative
+	int getQuorum();
+
+	/**
+	 * Returns how many messages have been released by the application but
+	 * not yet accepted by the given member.
+	 * 
+	 * @param member
+	 *            index of the member, in the same order as the
+	 *            {@link GroupSocketAddress} used to connect
+	 * @return the number of messages still pending for this member
+	 */
+	@Nonnegative
+	long getLag(@Nonnegative int member);
+
+	/**
+	 * @return <code>true</code> if the member lagged behind more than the
+	 *         allowed bound and no longer receives messages.
+	 */
+	boolean isDropped(@Nonnegative int member);
+
+}
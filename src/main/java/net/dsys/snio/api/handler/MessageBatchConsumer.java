@@ -0,0 +1,35 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.handler;
+
+/**
+ * Consumer that is notified when it has received all the messages that were
+ * available at once. Messages of a batch are delivered through
+ * {@link #consume(Object, Object)} in order, and are only released back to the
+ * buffer after {@link #endOfBatch()} returns.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface MessageBatchConsumer<T> extends MessageConsumer<T> {
+
+	/**
+	 * Called after the last message of a batch, e.g., to flush any work
+	 * accumulated while consuming it.
+	 */
+	void endOfBatch();
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.handler;
+
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Producer that fills several buffer positions per call. All messages filled
+ * in one call are published together.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface MessageBatchProducer<T> {
+
+	/**
+	 * Fills messages in order, starting from the first one. Messages that
+	 * were not filled are handed again on the next call, and so are all of
+	 * them if this method throws. When no message was filled, the caller
+	 * waits a little before the next call, up to one millisecond.
+	 * 
+	 * @param messages
+	 *            messages to be filled
+	 * @param attachments
+	 *            the attachment of <code>messages.get(i)</code> must be stored
+	 *            in <code>attachments[i]</code>; entries left
+	 *            <code>null</code> publish the message without attachment
+	 * @return how many messages were filled
+	 */
+	@Nonnegative
+	int produce(@Nonnull List<T> messages, @Nonnull Object[] attachments);
+
+}
@@ -17,6 +17,7 @@
 package net.dsys.snio.api.handler;
 
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 /**
  * @author Ricardo Padilha
@@ -26,6 +27,6 @@ public interface MessageConsumer<T> {
 	/**
 	 * @param message to be processed
 	 */
-	void consume(@Nonnull T message, @Nonnull Object attachment);
+	void consume(@Nonnull T message, @Nonnull(when = When.MAYBE) Object attachment);
 
 }
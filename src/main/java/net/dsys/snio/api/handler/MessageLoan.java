@@ -0,0 +1,38 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.handler;
+
+/**
+ * A buffer position lent to a {@link MessageLoanConsumer}. The message stays
+ * valid until the loan is released.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface MessageLoan {
+
+	/**
+	 * Returns the buffer position. The message must not be accessed after
+	 * this call, and a loan can only be released once. The same instance
+	 * may be lent again for a later message, so it must not be kept once
+	 * released.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the loan was already released
+	 */
+	void release();
+
+}
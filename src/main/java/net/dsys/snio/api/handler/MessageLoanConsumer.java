@@ -0,0 +1,42 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.handler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+/**
+ * Consumer that can keep messages after returning from the callback, without
+ * copying them. Each message comes with a {@link MessageLoan} that must be
+ * released once the consumer is done with it, possibly from another thread.
+ * The number of outstanding loans is bounded: when it is reached, no more
+ * messages are delivered until a loan is released.
+ * 
+ * @author Ricardo Padilha
+ */
+public interface MessageLoanConsumer<T> extends MessageConsumer<T> {
+
+	/**
+	 * @param message
+	 *            to be processed, valid until <code>loan</code> is released
+	 * @param loan
+	 *            to be released when <code>message</code> is no longer
+	 *            needed
+	 */
+	void consume(@Nonnull T message, @Nonnull(when = When.MAYBE) Object attachment, @Nonnull MessageLoan loan);
+
+}
@@ -28,8 +28,52 @@ public interface RateLimiter {
 
 	void setRate(@Nonnegative long value, @Nonnull BinaryUnit unit);
 
+	/**
+	 * Limits the number of messages per second, on top of the byte rate, so
+	 * that small messages cannot get around the limit. There is no message
+	 * limit unless this method is called.
+	 * 
+	 * @param burst
+	 *            how many messages can go through at once after some idle
+	 *            time
+	 */
+	void setMessageRate(@Nonnegative long messages, @Nonnegative long burst);
+
 	void send(@Nonnegative long bytes);
 
 	void receive(@Nonnegative long bytes);
 
+	/**
+	 * Non-blocking version of {@link #send(long)}, for bytes that were
+	 * already sent.
+	 * 
+	 * @return how long to wait before sending again, in nanoseconds, or zero
+	 *         if there is no need to wait
+	 */
+	@Nonnegative
+	long trySend(@Nonnegative long bytes);
+
+	/**
+	 * Non-blocking version of {@link #receive(long)}, for bytes that were
+	 * already received.
+	 * 
+	 * @return how long to wait before receiving again, in nanoseconds, or
+	 *         zero if there is no need to wait
+	 */
+	@Nonnegative
+	long tryReceive(@Nonnegative long bytes);
+
+	/**
+	 * Same as {@link #trySend(long)}, for messages that were already sent.
+	 */
+	@Nonnegative
+	long trySendMessages(@Nonnegative long messages);
+
+	/**
+	 * Same as {@link #tryReceive(long)}, for messages that were already
+	 * received.
+	 */
+	@Nonnegative
+	long tryReceiveMessages(@Nonnegative long messages);
+
 }
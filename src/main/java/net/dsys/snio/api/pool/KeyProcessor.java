@@ -27,6 +27,7 @@ import javax.annotation.meta.When;
 import net.dsys.commons.api.future.CallbackFuture;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.channel.ChannelMetrics;
 
 /**
  * @author Ricardo Padilha
@@ -63,6 +64,13 @@ public interface KeyProcessor<T> {
 
 	long write(@Nonnull SelectionKey key) throws IOException;
 
+	/**
+	 * Called from within the thread of the key, once the delay given to
+	 * {@link SelectorThread#idleKey(SelectionKey, long, java.util.concurrent.TimeUnit)}
+	 * expires.
+	 */
+	void idle(@Nonnull SelectionKey key);
+
 	/**
 	 * Add WRITE interest to this processor's key.
 	 */
@@ -77,4 +85,7 @@ public interface KeyProcessor<T> {
 	@Nonnull
 	CallbackFuture<Void> getCloseFuture();
 
+	@Nonnull
+	ChannelMetrics getMetrics();
+
 }
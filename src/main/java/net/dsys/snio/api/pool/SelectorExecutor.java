@@ -41,4 +41,13 @@ public interface SelectorExecutor {
 	void cancelConnect(@Nonnull SelectionKey readKey, @Nonnull SettableCallbackFuture<Void> readFuture,
 			@Nonnull SelectionKey writeKey, @Nonnull SettableCallbackFuture<Void> writeFuture);
 
+	/**
+	 * @param type
+	 *            one of {@link SelectionType#OP_ACCEPT},
+	 *            {@link SelectionType#OP_READ} or {@link SelectionType#OP_WRITE}
+	 * @return the counters of the corresponding thread
+	 */
+	@Nonnull
+	SelectorMetrics getMetrics(@Nonnull SelectionType type);
+
 }
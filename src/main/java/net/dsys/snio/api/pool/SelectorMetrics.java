@@ -0,0 +1,77 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.api.pool;
+
+import javax.annotation.Nonnegative;
+import javax.management.MXBean;
+
+/**
+ * Counters of a single selector thread. All values are totals since the
+ * thread was opened, so rates and averages (e.g., keys selected per
+ * iteration) are obtained by sampling them at regular intervals.
+ *
+ * @author Ricardo Padilha
+ */
+@MXBean
+public interface SelectorMetrics {
+
+	/**
+	 * @return number of passes through the select loop
+	 */
+	@Nonnegative
+	long getIterations();
+
+	@Nonnegative
+	long getSelectedKeys();
+
+	/**
+	 * @return nanoseconds spent waiting for keys, including busy polling
+	 */
+	@Nonnegative
+	long getSelectTime();
+
+	/**
+	 * @return nanoseconds spent processing keys, operations and timers
+	 */
+	@Nonnegative
+	long getProcessTime();
+
+	/**
+	 * @return number of operations waiting to be run by this thread
+	 */
+	@Nonnegative
+	int getQueuedOperations();
+
+	/**
+	 * @return number of times other threads woke this thread up
+	 */
+	@Nonnegative
+	long getWakeups();
+
+	/**
+	 * @return bytes read by a reader thread, or written by a writer thread
+	 */
+	@Nonnegative
+	long getBytes();
+
+	/**
+	 * @return number of unexpected exceptions caught by this thread
+	 */
+	@Nonnegative
+	long getErrors();
+
+}
@@ -16,8 +16,11 @@
 
 package net.dsys.snio.api.pool;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
@@ -27,4 +30,42 @@ public interface SelectorThread {
 
 	void enableKey(@Nonnull SelectionKey key);
 
+	/**
+	 * Only called from within this thread, by a processor that removed the
+	 * read interest of its key because the application cannot take more
+	 * messages. Until the processor restores that interest, this thread keeps
+	 * calling {@link KeyProcessor#read(SelectionKey)} at short intervals, so
+	 * that the processor can resume reading once there is room again.
+	 */
+	void suspendKey(@Nonnull SelectionKey key);
+
+	/**
+	 * Only called from within this thread, by a processor that removed the
+	 * interest of this thread from its key, e.g., because it exceeded its
+	 * rate limit. A timer on this thread restores that interest once the
+	 * delay expires. Until then, the key is not enabled again by
+	 * {@link #enableKey(SelectionKey)}.
+	 */
+	void suspendKey(@Nonnull SelectionKey key, @Nonnegative long delay, @Nonnull TimeUnit unit);
+
+	/**
+	 * Only called from within this thread, by a processor that wants to
+	 * know when its key goes idle, e.g., to give back buffers it keeps while
+	 * busy. Once the delay expires, this thread calls
+	 * {@link KeyProcessor#idle(SelectionKey)}, unless the key was cancelled
+	 * meanwhile. The interest of the key is left untouched. Scheduling a key
+	 * that is already waiting does not bring its deadline forward.
+	 */
+	void idleKey(@Nonnull SelectionKey key, @Nonnegative long delay, @Nonnull TimeUnit unit);
+
+	/**
+	 * Only called from within a reader thread. Since this thread processes
+	 * one key at a time, all its processors can read into the same direct
+	 * buffer, as long as they do not keep any data in it once they return.
+	 * 
+	 * @return a cleared buffer with at least the given capacity
+	 */
+	@Nonnull
+	ByteBuffer getReadBuffer(@Nonnegative int length);
+
 }
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+
+/**
+ * Attachments of the positions of a buffer. Besides plain references, each
+ * position holds a numeric id and a handle to an interned object, both
+ * stored in primitive arrays. Objects attached to many messages, like the
+ * reply buffer of a channel, are interned once and then attached by handle:
+ * the hot path neither stores references (and card marks) nor keeps the
+ * per-message instances alive.
+ * <p>
+ * The intern table is shared by all producers of the buffer and holds at
+ * most {@link #MAX_HANDLES} objects. Handles are reference counted: once
+ * every {@link #intern(Object, long)} of an object was matched by an
+ * {@link #unintern(int, long)}, the handle is reused, but only after the
+ * consumers went past every position that may still carry it.
+ * 
+ * @author Ricardo Padilha
+ */
+final class Attachments {
+
+	static final int MAX_HANDLES = 4096;
+	private static final int INITIAL_HANDLES = 16;
+	private static final int REFERENCE = 0;
+
+	private final int capacity;
+	private final Object[] objects;
+	private final int[] handles;
+	private final long[] ids;
+	private final Map<Object, Integer> interned;
+	private final Queue<Freed> freed;
+	private final Lock lock;
+	private volatile Object[] table;
+	private int[] refs;
+	private int count;
+
+	Attachments(@Nonnegative final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		this.capacity = capacity;
+		this.objects = new Object[capacity];
+		this.handles = new int[capacity];
+		this.ids = new long[capacity];
+		this.interned = new HashMap<>();
+		this.freed = new ArrayDeque<>();
+		this.lock = new ReentrantLock();
+		this.table = new Object[INITIAL_HANDLES];
+		this.refs = new int[INITIAL_HANDLES];
+	}
+
+	@Nonnegative
+	int capacity() {
+		return capacity;
+	}
+
+	private int index(final long sequence) {
+		return (int) (sequence % capacity);
+	}
+
+	void set(final long sequence, @Nonnull(when = When.MAYBE) final Object attachment) {
+		final int i = index(sequence);
+		objects[i] = attachment;
+		handles[i] = REFERENCE;
+	}
+
+	void setHandle(final long sequence, @Nonnegative final int handle) {
+		if (handle < 0) {
+			throw new IllegalArgumentException("handle < 0");
+		}
+		final int i = index(sequence);
+		// do not keep the reference of a previous message alive
+		objects[i] = null;
+		handles[i] = handle + 1;
+	}
+
+	void setId(final long sequence, final long id) {
+		ids[index(sequence)] = id;
+	}
+
+	@Nonnull(when = When.MAYBE)
+	Object get(final long sequence) {
+		final int i = index(sequence);
+		final int handle = handles[i];
+		if (handle == REFERENCE) {
+			return objects[i];
+		}
+		return table[handle - 1];
+	}
+
+	long getId(final long sequence) {
+		return ids[index(sequence)];
+	}
+
+	/**
+	 * Forgets every attachment and interned object, so that the positions can
+	 * be handed to another buffer. No producer or consumer may use them
+	 * meanwhile.
+	 */
+	void clear() {
+		lock.lock();
+		try {
+			Arrays.fill(objects, null);
+			Arrays.fill(handles, REFERENCE);
+			Arrays.fill(ids, 0);
+			interned.clear();
+			freed.clear();
+			table = new Object[INITIAL_HANDLES];
+			refs = new int[INITIAL_HANDLES];
+			count = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Interns an object, or takes one more reference to it if it was already
+	 * interned.
+	 * 
+	 * @param consumed
+	 *            the last position released by all consumers of the buffer
+	 * @return the handle of the given object, or
+	 *         {@link MessageBufferProducer#NO_HANDLE} if the table is full
+	 */
+	int intern(@Nonnull final Object attachment, final long consumed) {
+		if (attachment == null) {
+			throw new NullPointerException("attachment == null");
+		}
+		lock.lock();
+		try {
+			final Integer other = interned.get(attachment);
+			if (other != null) {
+				refs[other.intValue()]++;
+				return other.intValue();
+			}
+			final int h;
+			if (count < MAX_HANDLES) {
+				// fresh handles first, so that freed ones age as long as possible
+				if (count == table.length) {
+					final int length = Math.min(count << 1, MAX_HANDLES);
+					table = Arrays.copyOf(table, length);
+					refs = Arrays.copyOf(refs, length);
+				}
+				h = count++;
+			} else if (!freed.isEmpty() && freed.peek().sequence <= consumed) {
+				h = freed.poll().handle;
+			} else {
+				return MessageBufferProducer.NO_HANDLE;
+			}
+			table[h] = attachment;
+			refs[h] = 1;
+			interned.put(attachment, Integer.valueOf(h));
+			return h;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gives back a reference taken by {@link #intern(Object, long)}. The
+	 * object stays reachable through its handle until the handle is reused.
+	 * 
+	 * @param produced
+	 *            the last position claimed by the producers of the buffer;
+	 *            the handle is not reused before the consumers release it
+	 */
+	void unintern(@Nonnegative final int handle, final long produced) {
+		lock.lock();
+		try {
+			if (handle < 0 || handle >= count || refs[handle] == 0) {
+				throw new IllegalArgumentException("handle was not interned by this buffer");
+			}
+			if (--refs[handle] == 0) {
+				interned.remove(table[handle]);
+				freed.add(new Freed(handle, produced));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A handle waiting to be reused.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	private static final class Freed {
+
+		final int handle;
+		final long sequence;
+
+		Freed(final int handle, final long sequence) {
+			this.handle = handle;
+			this.sequence = sequence;
+		}
+	}
+}
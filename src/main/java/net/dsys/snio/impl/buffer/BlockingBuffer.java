@@ -16,6 +16,7 @@
 
 package net.dsys.snio.impl.buffer;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -37,10 +38,14 @@ final class BlockingBuffer<T> {
 	private final Lock lock;
 	private final Condition notEmpty;
 	private final Condition notFull;
+	private final PublishSignal published;
 
+	// all guarded by lock, which both sides acquire anyway: padding these
+	// apart would not save any cache line transfers
 	private long putIndex;
 	private long takeIndex;
 	private int count;
+	private int reserved;
 	private InterruptedException interruptPut;
 	private InterruptedException interruptTake;
 
@@ -85,6 +90,7 @@ final class BlockingBuffer<T> {
 		this.lock = new ReentrantLock(fair);
 		this.notEmpty = lock.newCondition();
 		this.notFull = lock.newCondition();
+		this.published = new PublishSignal();
 	}
 
 	/**
@@ -96,7 +102,7 @@ final class BlockingBuffer<T> {
 		}
 		lock.lockInterruptibly();
 		try {
-			while (count == values.length && interruptPut == null) {
+			while (count + reserved == values.length && interruptPut == null) {
 				notFull.await();
 			}
 			if (interruptPut != null) {
@@ -115,6 +121,60 @@ final class BlockingBuffer<T> {
 		}
 	}
 
+	/**
+	 * Reserves room for a later {@link #putReserved(Tuple)}, waiting at most
+	 * the given time for it.
+	 * 
+	 * @return <code>true</code> if room was reserved
+	 */
+	boolean tryReserve(@Nonnegative final long timeout, @Nonnull final TimeUnit unit)
+			throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (count + reserved == values.length && interruptPut == null) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			if (interruptPut != null) {
+				final InterruptedException ex = interruptPut;
+				interruptPut = null;
+				Thread.currentThread().interrupt();
+				throw ex;
+			}
+			++reserved;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Same as {@link #put(Tuple)}, but takes room reserved by
+	 * {@link #tryReserve(long, TimeUnit)}, so it never waits.
+	 */
+	void putReserved(@Nonnull final Tuple<T> value) {
+		if (value == null) {
+			throw new NullPointerException("value == null");
+		}
+		lock.lock();
+		try {
+			if (reserved == 0) {
+				throw new IllegalStateException("reserved == 0");
+			}
+			--reserved;
+			final int index = (int) (putIndex & mask);
+			values[index] = value;
+			++putIndex;
+			++count;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * Interrupt threads blocked in {@link #put(Object)} or
 	 * {@link #put(Object, long, TimeUnit)} and throws the given exception.
@@ -177,6 +237,15 @@ final class BlockingBuffer<T> {
 		}
 	}
 
+	/**
+	 * @return the signal shared by the producers and the consumer of this
+	 *         buffer
+	 */
+	@Nonnull
+	PublishSignal getPublishSignal() {
+		return published;
+	}
+
 	/**
 	 * @return the capacity of this buffer
 	 */
@@ -213,7 +282,7 @@ final class BlockingBuffer<T> {
 	int remainingCapacity() {
 		lock.lock();
 		try {
-			return values.length - count;
+			return values.length - count - reserved;
 		} finally {
 			lock.unlock();
 		}
@@ -228,6 +297,8 @@ final class BlockingBuffer<T> {
 
 		private final T value;
 		private Object attachment;
+		private long id;
+		private boolean reserved;
 
 		Tuple(@Nonnull final T value) {
 			if (value == null) {
@@ -259,5 +330,21 @@ final class BlockingBuffer<T> {
 		void setAttachment(@Nonnull final Object attachment) {
 			this.attachment = attachment;
 		}
+
+		long getId() {
+			return id;
+		}
+
+		void setId(final long id) {
+			this.id = id;
+		}
+
+		boolean isReserved() {
+			return reserved;
+		}
+
+		void setReserved() {
+			this.reserved = true;
+		}
 	}
 }
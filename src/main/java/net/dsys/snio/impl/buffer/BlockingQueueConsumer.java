@@ -61,9 +61,19 @@ final class BlockingQueueConsumer<T> implements MessageBufferConsumer<T> {
 		return new BlockingQueueProducer<>(buffer, factory);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean setPublishListener(final Runnable listener) {
+		buffer.getPublishSignal().setListener(listener);
+		return true;
+	}
+
 	void close() {
 		closed = true;
 		buffer.interruptTake(new InterruptedByClose());
+		buffer.getPublishSignal().signal();
 	}
 
 	/**
@@ -85,13 +95,23 @@ final class BlockingQueueConsumer<T> implements MessageBufferConsumer<T> {
 		if (closed) {
 			throw new InterruptedByClose();
 		}
-		int k = Math.min(n, Math.max(buffer.size(), 1));
+		// like RingBufferConsumer, positions are counted from the last
+		// released one, so acquiring again without releasing is idempotent
+		final long target = last.get() + n;
 		long c = cursor.get();
-		while (--k >= 0) {
-			final Tuple<T> tuple = buffer.take();
-			c = cursor.incrementAndGet();
-			temp.put(Long.valueOf(c), tuple);
+		if (c <= last.get()) {
+			c = take();
 		}
+		while (c < target && buffer.size() > 0) {
+			c = take();
+		}
+		return Math.min(c, target);
+	}
+
+	private long take() throws InterruptedException {
+		final Tuple<T> tuple = buffer.take();
+		final long c = cursor.incrementAndGet();
+		temp.put(Long.valueOf(c), tuple);
 		return c;
 	}
 
@@ -119,6 +139,14 @@ final class BlockingQueueConsumer<T> implements MessageBufferConsumer<T> {
 		return temp.get(Long.valueOf(sequence)).getAttachment();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long attachmentId(final long sequence) {
+		return temp.get(Long.valueOf(sequence)).getId();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -18,6 +18,7 @@ package net.dsys.snio.impl.buffer;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
@@ -95,6 +96,32 @@ final class BlockingQueueProducer<T> implements MessageBufferProducer<T> {
 		return cursor;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryAcquire() throws InterruptedException {
+		return acquire(0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Unlike {@link #acquire(int)}, reserves room in the buffer right away,
+	 * so that releasing the message never blocks.
+	 */
+	@Override
+	public long acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		if (!buffer.tryReserve(timeout, unit)) {
+			return NO_SEQUENCE;
+		}
+		final Tuple<T> tuple = new Tuple<>(factory.newInstance());
+		tuple.setReserved();
+		temp.put(Long.valueOf(++cursor), tuple);
+		return cursor;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -111,6 +138,14 @@ final class BlockingQueueProducer<T> implements MessageBufferProducer<T> {
 		return temp.get(Long.valueOf(sequence)).getValue();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(final long sequence, final int length) {
+		return get(sequence);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -119,6 +154,42 @@ final class BlockingQueueProducer<T> implements MessageBufferProducer<T> {
 		temp.get(Long.valueOf(sequence)).setAttachment(attachment);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachId(final long sequence, final long id) {
+		temp.get(Long.valueOf(sequence)).setId(id);
+	}
+
+	/**
+	 * Messages are allocated on each {@link #acquire(int)}, and carry their
+	 * attachment with them, so there is nothing to gain from interning.
+	 */
+	@Override
+	public int intern(final Object attachment) {
+		if (attachment == null) {
+			throw new NullPointerException("attachment == null");
+		}
+		return NO_HANDLE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unintern(final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachHandle(final long sequence, final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -134,13 +205,31 @@ final class BlockingQueueProducer<T> implements MessageBufferProducer<T> {
 		for (long i = last + 1; i <= k; i++) {
 			final Long key = Long.valueOf(i);
 			final Tuple<T> tuple = temp.remove(key);
-			if (tuple != null) {
+			if (tuple == null) {
+				continue;
+			}
+			if (tuple.isReserved()) {
+				buffer.putReserved(tuple);
+			} else {
 				buffer.put(tuple);
 			}
 		}
 		last = k;
+		buffer.getPublishSignal().signal();
 		if (processor != null) {
 			processor.wakeupWriter();
 		}
 	}
+
+	/**
+	 * This producer is never shared, so it always releases all messages up
+	 * to <code>last</code>.
+	 */
+	@Override
+	public void release(final long first, final long last) throws InterruptedException {
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		release(last);
+	}
 }
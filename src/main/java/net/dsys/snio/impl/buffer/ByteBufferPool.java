@@ -0,0 +1,382 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.snio.api.buffer.MessagePool;
+
+/**
+ * Size-classed pool of {@link ByteBuffer}s. Classes are powers of two, from
+ * the minimum length up to the maximum length (which is always a class by
+ * itself). Buffers of a class are carved out of larger slabs, allocated on
+ * demand either on the heap or directly.
+ * <p>
+ * Each thread keeps a small cache per class, so allocating and freeing
+ * usually touch no shared state. Caches exchange buffers with a shared free
+ * list per class in batches, and the shared list is bounded: buffers freed
+ * beyond its bound are dropped and left to the garbage collector. A thread
+ * never holds more than {@value #CACHE_LENGTH} buffers per class, and the
+ * caches of threads that exited, such as virtual threads, are moved back to
+ * the shared lists before carving a new slab.
+ * <p>
+ * A message is given the smallest class that holds it, so buffers backed by
+ * this pool only use memory for the messages actually in flight, instead of
+ * one maximum-length buffer per position.
+ * 
+ * @author Ricardo Padilha
+ */
+public final class ByteBufferPool implements MessagePool<ByteBuffer> {
+
+	private static final int DEFAULT_MIN_LENGTH = 64;
+	private static final int DEFAULT_SLAB_LENGTH = 1 << 20;
+	private static final int CACHE_LENGTH = 64;
+	private static final int BATCH_LENGTH = CACHE_LENGTH / 2;
+	private static final int MAX_FREE_SLABS = 4;
+	private static final int MIN_SWEEP = 16;
+
+	private final int maxLength;
+	private final int shift;
+	private final int slabLength;
+	private final boolean direct;
+	private final SizeClass[] classes;
+	private final ThreadLocal<Cache> caches;
+	private final List<Cache> threads;
+	private final Lock lock;
+	private int sweepAt;
+
+	public ByteBufferPool(@Nonnegative final int maxLength, final boolean direct) {
+		this(DEFAULT_MIN_LENGTH, maxLength, DEFAULT_SLAB_LENGTH, direct);
+	}
+
+	/**
+	 * @param minLength
+	 *            length of the smallest class, rounded up to a power of two
+	 * @param maxLength
+	 *            length of the largest class
+	 * @param slabLength
+	 *            length of the slabs from which buffers are carved out; the
+	 *            shared free list of a class holds at most a few slabs worth
+	 *            of buffers
+	 * @param direct
+	 *            <code>true</code> to allocate direct slabs
+	 */
+	public ByteBufferPool(@Nonnegative final int minLength, @Nonnegative final int maxLength,
+			@Nonnegative final int slabLength, final boolean direct) {
+		if (minLength < 1) {
+			throw new IllegalArgumentException("minLength < 1");
+		}
+		if (maxLength < minLength) {
+			throw new IllegalArgumentException("maxLength < minLength");
+		}
+		if (slabLength < 1) {
+			throw new IllegalArgumentException("slabLength < 1");
+		}
+		this.maxLength = maxLength;
+		this.shift = 32 - Integer.numberOfLeadingZeros(minLength - 1);
+		this.slabLength = slabLength;
+		this.direct = direct;
+		final int k = index(maxLength) + 1;
+		this.classes = new SizeClass[k];
+		for (int i = 0; i < k; i++) {
+			classes[i] = new SizeClass((int) Math.min(1L << (shift + i), maxLength));
+		}
+		this.threads = new ArrayList<>();
+		this.lock = new ReentrantLock();
+		this.sweepAt = MIN_SWEEP;
+		this.caches = new ThreadLocal<Cache>() {
+			@Override
+			protected Cache initialValue() {
+				return register(new Cache(k, Thread.currentThread()));
+			}
+		};
+	}
+
+	@Nonnull
+	private Cache register(@Nonnull final Cache cache) {
+		lock.lock();
+		try {
+			// short-lived threads may never need a new slab, so their caches
+			// are also swept as they pile up
+			if (threads.size() >= sweepAt) {
+				sweep();
+				sweepAt = Math.max(MIN_SWEEP, threads.size() << 1);
+			}
+			threads.add(cache);
+		} finally {
+			lock.unlock();
+		}
+		return cache;
+	}
+
+	/**
+	 * Moves the buffers cached by threads that exited back to the shared
+	 * lists.
+	 */
+	private void reclaim() {
+		lock.lock();
+		try {
+			sweep();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must hold the lock. The last actions of a thread happen-before
+	 * {@link Thread#isAlive()} returns <code>false</code>, so its cache can
+	 * be emptied safely.
+	 */
+	private void sweep() {
+		for (int i = threads.size() - 1; i >= 0; i--) {
+			final Cache cache = threads.get(i);
+			if (cache.owner.isAlive()) {
+				continue;
+			}
+			final int last = threads.size() - 1;
+			threads.set(i, threads.get(last));
+			threads.remove(last);
+			for (int j = 0; j < classes.length; j++) {
+				if (cache.counts[j] > 0) {
+					classes[j].put(cache.buffers[j], 0, cache.counts[j]);
+					cache.counts[j] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the smallest class that holds <code>length</code>
+	 */
+	private int index(final int length) {
+		if (length <= 1) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros((length - 1) >> shift);
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ByteBuffer allocate(final int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("length < 0");
+		}
+		if (length > maxLength) {
+			throw new IllegalArgumentException("length > maxLength");
+		}
+		final int i = index(length);
+		final Cache cache = caches.get();
+		if (cache.counts[i] == 0) {
+			classes[i].refill(cache.get(i), cache.counts, i);
+		}
+		final ByteBuffer buffer = cache.buffers[i][--cache.counts[i]];
+		cache.buffers[i][cache.counts[i]] = null;
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void free(final ByteBuffer message) {
+		if (message == null) {
+			throw new NullPointerException("message == null");
+		}
+		final int capacity = message.capacity();
+		if (capacity > maxLength || message.isDirect() != direct) {
+			throw new IllegalArgumentException("message was not allocated by this pool");
+		}
+		final int i = index(capacity);
+		if (classes[i].length != capacity) {
+			throw new IllegalArgumentException("message was not allocated by this pool");
+		}
+		final Cache cache = caches.get();
+		if (cache.counts[i] == CACHE_LENGTH) {
+			classes[i].spill(cache.get(i), cache.counts, i);
+		}
+		cache.get(i)[cache.counts[i]++] = message;
+	}
+
+	/**
+	 * Buffers cached by one thread, one stack per class. Stacks are only
+	 * created for the classes the thread uses.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	private static final class Cache {
+
+		final Thread owner;
+		final ByteBuffer[][] buffers;
+		final int[] counts;
+
+		Cache(@Nonnegative final int classes, @Nonnull final Thread owner) {
+			this.owner = owner;
+			this.buffers = new ByteBuffer[classes][];
+			this.counts = new int[classes];
+		}
+
+		@Nonnull
+		ByteBuffer[] get(final int index) {
+			ByteBuffer[] stack = buffers[index];
+			if (stack == null) {
+				stack = new ByteBuffer[CACHE_LENGTH];
+				buffers[index] = stack;
+			}
+			return stack;
+		}
+	}
+
+	/**
+	 * Shared free list of buffers of the same length. Threads only take the
+	 * lock to move a batch of buffers in or out of their cache.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	private final class SizeClass {
+
+		final int length;
+		private final int perSlab;
+		private final int maxFree;
+		private final Lock lock;
+		private ByteBuffer[] free;
+		private int count;
+
+		SizeClass(@Nonnegative final int length) {
+			this.length = length;
+			this.perSlab = Math.max(1, slabLength / length);
+			this.maxFree = Math.max(CACHE_LENGTH, perSlab * MAX_FREE_SLABS);
+			this.lock = new ReentrantLock();
+			this.free = new ByteBuffer[Math.min(perSlab, maxFree)];
+			this.count = 0;
+		}
+
+		/**
+		 * Moves a batch of buffers into an empty cache. If the shared list is
+		 * empty, the caches of threads that exited are reclaimed first, and
+		 * a new slab is only carved if that was not enough.
+		 */
+		void refill(@Nonnull final ByteBuffer[] cache, @Nonnull final int[] counts, final int index) {
+			take(cache, counts, index);
+			if (counts[index] == 0) {
+				reclaim();
+				take(cache, counts, index);
+			}
+			if (counts[index] == 0) {
+				carve(cache, counts, index);
+			}
+		}
+
+		private void take(@Nonnull final ByteBuffer[] cache, @Nonnull final int[] counts, final int index) {
+			lock.lock();
+			try {
+				final int n = Math.min(BATCH_LENGTH, count);
+				count -= n;
+				System.arraycopy(free, count, cache, 0, n);
+				Arrays.fill(free, count, count + n, null);
+				counts[index] = n;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Moves half of a full cache to the shared list.
+		 */
+		void spill(@Nonnull final ByteBuffer[] cache, @Nonnull final int[] counts, final int index) {
+			final int n = counts[index] - BATCH_LENGTH;
+			put(cache, BATCH_LENGTH, counts[index]);
+			Arrays.fill(cache, BATCH_LENGTH, BATCH_LENGTH + n, null);
+			counts[index] = BATCH_LENGTH;
+		}
+
+		/**
+		 * Moves buffers to the shared list, dropping whatever does not fit
+		 * under its bound.
+		 */
+		void put(@Nonnull final ByteBuffer[] buffers, final int from, final int to) {
+			lock.lock();
+			try {
+				final int k = Math.min(to - from, maxFree - count);
+				if (free.length < count + k) {
+					free = Arrays.copyOf(free, Math.min(maxFree, Math.max(count + k, free.length << 1)));
+				}
+				System.arraycopy(buffers, from, free, count, k);
+				count += k;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Allocates a new slab outside of the lock, keeps a batch of its
+		 * buffers in the cache and shares the rest.
+		 */
+		private void carve(@Nonnull final ByteBuffer[] cache, @Nonnull final int[] counts, final int index) {
+			final ByteBuffer slab;
+			if (direct) {
+				slab = ByteBuffer.allocateDirect(perSlab * length);
+			} else {
+				slab = ByteBuffer.allocate(perSlab * length);
+			}
+			final int kept = Math.min(BATCH_LENGTH, perSlab);
+			for (int i = 0; i < kept; i++) {
+				slab.limit((i + 1) * length).position(i * length);
+				cache[i] = slab.slice();
+			}
+			counts[index] = kept;
+			if (kept == perSlab) {
+				return;
+			}
+			lock.lock();
+			try {
+				final int k = Math.min(perSlab - kept, maxFree - count);
+				if (free.length < count + k) {
+					free = Arrays.copyOf(free, Math.min(maxFree, Math.max(count + k, free.length << 1)));
+				}
+				for (int i = kept; i < kept + k; i++) {
+					slab.limit((i + 1) * length).position(i * length);
+					free[count++] = slab.slice();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequenced;
+import com.lmax.disruptor.WaitStrategy;
+
+/**
+ * Lets producers of a {@link RingBuffer} or of a {@link SlabRegion} sub-ring
+ * sleep until its consumer releases positions. The {@link WaitStrategy} of a
+ * ring only signals new messages to the consumers, never released positions
+ * to the producers, so the consumer signals this instead. Releases only pay
+ * for a volatile read unless some producer is actually waiting.
+ * <p>
+ * Producers wait on a {@link Condition} rather than on a monitor, so that
+ * virtual threads release their carrier thread while waiting.
+ * <p>
+ * The consumer publishes its sequence with an ordered store, so a producer
+ * may occasionally miss a release and sleep until its timeout: callers must
+ * keep the timeout short and try again.
+ * 
+ * @author Ricardo Padilha
+ */
+final class CapacitySignal {
+
+	private final AtomicInteger waiters;
+	private final Lock lock;
+	private final Condition released;
+
+	CapacitySignal() {
+		this.waiters = new AtomicInteger();
+		this.lock = new ReentrantLock();
+		this.released = lock.newCondition();
+	}
+
+	/**
+	 * Waits at most <code>nanos</code> until the consumer releases positions,
+	 * unless the buffer already has some.
+	 */
+	void await(@Nonnull final Sequenced buffer, @Nonnegative final long nanos) throws InterruptedException {
+		waiters.incrementAndGet();
+		try {
+			lock.lockInterruptibly();
+			try {
+				if (buffer.remainingCapacity() > 0) {
+					return;
+				}
+				released.await(nanos, TimeUnit.NANOSECONDS);
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Only called by the consumer, after it released positions.
+	 */
+	void signal() {
+		if (waiters.get() > 0) {
+			lock.lock();
+			try {
+				released.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,414 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.channel.LatencyHistogram;
+import net.dsys.snio.api.pool.KeyProcessor;
+
+/**
+ * Records how long messages stay in the buffers of another provider. A
+ * producer stamps every sequence it releases, and the matching consumer
+ * records the time elapsed since the stamp when it releases that sequence.
+ * Stamps are plain writes made before the release of the underlying buffer,
+ * which already publishes them to the consumer, and a slot cannot be stamped
+ * again before the consumer released it.
+ * <p>
+ * The send histogram covers application release to encoding, and the receive
+ * histogram covers decoding to application release. The receive side is only
+ * tracked when both ends use the same sequences, i.e., not with a single
+ * input buffer shared by several channels.
+ *
+ * @author Ricardo Padilha
+ */
+public final class LatencyProvider<T> implements MessageBufferProvider<T> {
+
+	private final MessageBufferProvider<T> provider;
+	private final long[] sendStamps;
+	private final long[] receiveStamps;
+	private final LatencyRecorder send;
+	private final LatencyRecorder receive;
+	private Producer appOut;
+	private Consumer chnIn;
+	private Producer chnOut;
+	private Consumer appIn;
+
+	LatencyProvider(@Nonnull final MessageBufferProvider<T> provider, @Nonnegative final int capacity,
+			final boolean trackReceive, @Nonnull(when = When.MAYBE) final LatencyRecorder sendParent,
+			@Nonnull(when = When.MAYBE) final LatencyRecorder receiveParent) {
+		if (provider == null) {
+			throw new NullPointerException("provider == null");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		this.provider = provider;
+		this.sendStamps = new long[capacity];
+		this.send = new LatencyRecorder(sendParent);
+		if (trackReceive) {
+			this.receiveStamps = new long[capacity];
+			this.receive = new LatencyRecorder(receiveParent);
+		} else {
+			this.receiveStamps = null;
+			this.receive = null;
+		}
+	}
+
+	/**
+	 * @return application release to encoding times
+	 */
+	@Nonnull
+	public LatencyHistogram getSendLatency() {
+		return send;
+	}
+
+	/**
+	 * @return decoding to application release times, or <code>null</code> if
+	 *         the receive side is not tracked
+	 */
+	@Nonnull(when = When.MAYBE)
+	public LatencyHistogram getReceiveLatency() {
+		return receive;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<T> getAppOutput(final KeyProcessor<T> processor) {
+		if (appOut == null) {
+			appOut = new Producer(provider.getAppOutput(processor), sendStamps);
+		}
+		return appOut;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferConsumer<T> getChannelInput() {
+		if (chnIn == null) {
+			chnIn = new Consumer(provider.getChannelInput(), sendStamps, send);
+		}
+		return chnIn;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<T> getChannelOutput() {
+		if (receive == null) {
+			return provider.getChannelOutput();
+		}
+		if (chnOut == null) {
+			chnOut = new Producer(provider.getChannelOutput(), receiveStamps);
+		}
+		return chnOut;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferConsumer<T> getAppInput() {
+		if (receive == null) {
+			return provider.getAppInput();
+		}
+		if (appIn == null) {
+			appIn = new Consumer(provider.getAppInput(), receiveStamps, receive);
+		}
+		return appIn;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		provider.close();
+		send.close();
+		if (receive != null) {
+			receive.close();
+		}
+	}
+
+	@Nonnull
+	public static <T> MessageBufferProvider<T> createProvider(@Nonnull final MessageBufferProvider<T> provider,
+			@Nonnegative final int capacity, final boolean trackReceive,
+			@Nonnull(when = When.MAYBE) final LatencyRecorder sendParent,
+			@Nonnull(when = When.MAYBE) final LatencyRecorder receiveParent) {
+		return new LatencyProvider<>(provider, capacity, trackReceive, sendParent, receiveParent);
+	}
+
+	@Nonnull
+	public static <T> Factory<MessageBufferProvider<T>> createProviderFactory(
+			@Nonnull final Factory<MessageBufferProvider<T>> factory, @Nonnegative final int capacity,
+			final boolean trackReceive, @Nonnull(when = When.MAYBE) final LatencyRecorder sendParent,
+			@Nonnull(when = When.MAYBE) final LatencyRecorder receiveParent) {
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		return new Factory<MessageBufferProvider<T>>() {
+			@Override
+			public MessageBufferProvider<T> newInstance() {
+				return new LatencyProvider<>(factory.newInstance(), capacity, trackReceive, sendParent,
+						receiveParent);
+			}
+		};
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private final class Producer implements MessageBufferProducer<T> {
+
+		private final MessageBufferProducer<T> out;
+		private final long[] stamps;
+
+		Producer(@Nonnull final MessageBufferProducer<T> out, @Nonnull final long[] stamps) {
+			this.out = out;
+			this.stamps = stamps;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire() throws InterruptedException {
+			return out.acquire();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire(final int n) throws InterruptedException {
+			return out.acquire(n);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long tryAcquire() throws InterruptedException {
+			return out.tryAcquire();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+			return out.acquire(timeout, unit);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int remaining() {
+			return out.remaining();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(final long sequence) {
+			return out.get(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(final long sequence, final int length) {
+			return out.get(sequence, length);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void attach(final long sequence, final Object attachment) {
+			out.attach(sequence, attachment);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void attachId(final long sequence, final long id) {
+			out.attachId(sequence, id);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int intern(final Object attachment) {
+			return out.intern(attachment);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void unintern(final int handle) {
+			out.unintern(handle);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void attachHandle(final long sequence, final int handle) {
+			out.attachHandle(sequence, handle);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release(final long sequence) throws InterruptedException {
+			stamps[(int) (sequence % stamps.length)] = System.nanoTime();
+			out.release(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release(final long first, final long last) throws InterruptedException {
+			final long now = System.nanoTime();
+			for (long s = first; s <= last; s++) {
+				stamps[(int) (s % stamps.length)] = now;
+			}
+			out.release(first, last);
+		}
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private final class Consumer implements MessageBufferConsumer<T> {
+
+		private final MessageBufferConsumer<T> in;
+		private final long[] stamps;
+		private final LatencyRecorder recorder;
+		private long cursor;
+
+		Consumer(@Nonnull final MessageBufferConsumer<T> in, @Nonnull final long[] stamps,
+				@Nonnull final LatencyRecorder recorder) {
+			this.in = in;
+			this.stamps = stamps;
+			this.recorder = recorder;
+			this.cursor = -1;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageBufferProducer<T> createProducer() {
+			return in.createProducer();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire() throws InterruptedException {
+			return in.acquire();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire(final int n) throws InterruptedException {
+			return in.acquire(n);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int remaining() {
+			return in.remaining();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(final long sequence) {
+			return in.get(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object attachment(final long sequence) {
+			return in.attachment(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long attachmentId(final long sequence) {
+			return in.attachmentId(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean setPublishListener(final Runnable listener) {
+			return in.setPublishListener(listener);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release(final long sequence) throws InterruptedException {
+			// record before releasing, the producer may stamp the slots again
+			final long now = System.nanoTime();
+			for (long s = cursor + 1; s <= sequence; s++) {
+				recorder.record(now - stamps[(int) (s % stamps.length)]);
+			}
+			cursor = Math.max(cursor, sequence);
+			in.release(sequence);
+		}
+	}
+}
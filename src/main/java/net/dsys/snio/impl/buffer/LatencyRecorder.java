@@ -0,0 +1,246 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.snio.api.channel.LatencyHistogram;
+
+/**
+ * Log-linear histogram: values below 32ns have their own bucket, and every
+ * power of two above is split in 16 buckets. Values above about 18 minutes
+ * are counted in the last bucket. Recording only increments one counter of
+ * this histogram. A parent histogram, e.g., shared by all channels of an
+ * executor, is not written to on every value: children register with it,
+ * and reading the parent adds up the counters of all its children. Once
+ * closed, a child moves its counters into the parent and is forgotten, so
+ * reads only cost as much as the number of open children.
+ *
+ * @author Ricardo Padilha
+ */
+public final class LatencyRecorder implements LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT >> 1;
+	private static final int MAX_BITS = 40;
+	private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+	private static final int BUCKETS = SUB_COUNT + (MAX_BITS - SUB_BITS) * HALF_COUNT;
+
+	// moves up when the parent is closed before this histogram
+	@Nonnull(when = When.MAYBE)
+	private volatile LatencyRecorder parent;
+	private final AtomicLongArray counts;
+	// open children, added up on every read
+	private final Queue<LatencyRecorder> children;
+	private final AtomicBoolean closed;
+
+	public LatencyRecorder() {
+		this(null);
+	}
+
+	/**
+	 * @param parent
+	 *            also reports every value recorded here
+	 */
+	public LatencyRecorder(@Nonnull(when = When.MAYBE) final LatencyRecorder parent) {
+		this.parent = parent;
+		this.counts = new AtomicLongArray(BUCKETS);
+		this.children = new ConcurrentLinkedQueue<>();
+		this.closed = new AtomicBoolean();
+		if (parent != null) {
+			parent.children.add(this);
+		}
+	}
+
+	static int index(final long value) {
+		if (value <= 0) {
+			return 0;
+		}
+		final long v = Math.min(value, MAX_VALUE);
+		if (v < SUB_COUNT) {
+			return (int) v;
+		}
+		final int shift = Long.SIZE - Long.numberOfLeadingZeros(v) - SUB_BITS;
+		return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (v >>> shift) - HALF_COUNT;
+	}
+
+	static long lowerBound(final int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		final int k = index - SUB_COUNT;
+		final int shift = k / HALF_COUNT + 1;
+		return (long) (k % HALF_COUNT + HALF_COUNT) << shift;
+	}
+
+	static long upperBound(final int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		final int k = index - SUB_COUNT;
+		final int shift = k / HALF_COUNT + 1;
+		return ((long) (k % HALF_COUNT + HALF_COUNT + 1) << shift) - 1;
+	}
+
+	/**
+	 * Adds one value to this histogram, and therefore to its parent.
+	 */
+	public void record(final long nanos) {
+		counts.getAndIncrement(index(nanos));
+	}
+
+	/**
+	 * Moves the counters of this histogram into its parent, which stops
+	 * reading it. Values recorded afterwards are lost. Only the channel that
+	 * created this histogram closes it, along with its buffers.
+	 */
+	void close() {
+		final LatencyRecorder parent = this.parent;
+		if (parent == null || !closed.compareAndSet(false, true)) {
+			return;
+		}
+		// removed first, so that a concurrent read misses these values
+		// instead of counting them twice
+		parent.children.remove(this);
+		for (int i = 0; i < BUCKETS; i++) {
+			final long c = counts.get(i);
+			if (c > 0) {
+				parent.counts.getAndAdd(i, c);
+			}
+		}
+		// children still open report to the parent from now on
+		for (final LatencyRecorder child : children) {
+			child.parent = parent;
+			parent.children.add(child);
+		}
+	}
+
+	/**
+	 * @return the counters of this histogram and of all its open children
+	 */
+	@Nonnull
+	private long[] snapshot() {
+		final long[] snapshot = new long[BUCKETS];
+		addTo(snapshot);
+		return snapshot;
+	}
+
+	private void addTo(@Nonnull final long[] snapshot) {
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] += counts.get(i);
+		}
+		for (final LatencyRecorder child : children) {
+			child.addTo(snapshot);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCount() {
+		final long[] snapshot = snapshot();
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += snapshot[i];
+		}
+		return n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getMax() {
+		final long[] snapshot = snapshot();
+		for (int i = BUCKETS - 1; i >= 0; i--) {
+			if (snapshot[i] > 0) {
+				return upperBound(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getMean() {
+		final long[] snapshot = snapshot();
+		long n = 0;
+		double sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			final long c = snapshot[i];
+			if (c > 0) {
+				n += c;
+				sum += c * ((lowerBound(i) + upperBound(i)) / 2.0);
+			}
+		}
+		if (n == 0) {
+			return 0;
+		}
+		return sum / n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getValueAtPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile < 0 || percentile > 100");
+		}
+		// work on a snapshot, so that the total matches the buckets
+		final long[] snapshot = snapshot();
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		final long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		for (final LatencyRecorder child : children) {
+			child.reset();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import javax.annotation.Nonnull;
+
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+
+/**
+ * Holds the callback registered through
+ * {@link MessageBufferConsumer#setPublishListener(Runnable)}, shared by a
+ * consumer and all of its producers. Publishing only pays for a volatile read
+ * while no callback is registered.
+ * 
+ * @author Ricardo Padilha
+ */
+final class PublishSignal {
+
+	private volatile Runnable listener;
+
+	PublishSignal() {
+		super();
+	}
+
+	void setListener(@Nonnull final Runnable listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener == null");
+		}
+		this.listener = listener;
+	}
+
+	/**
+	 * Called by producers, after they published messages.
+	 */
+	void signal() {
+		final Runnable l = listener;
+		if (l != null) {
+			l.run();
+		}
+	}
+
+}
@@ -17,9 +17,11 @@
 package net.dsys.snio.impl.buffer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 import net.dsys.snio.api.buffer.InterruptedByClose;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessagePool;
 
 import com.lmax.disruptor.AlertException;
 import com.lmax.disruptor.RingBuffer;
@@ -32,26 +34,41 @@ import com.lmax.disruptor.TimeoutException;
  */
 final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 
-	private final RingBuffer<T> buffer;
-	private final Object[] attachments;
+	private final RingBuffer<Slot<T>> buffer;
+	private final Attachments attachments;
+	private final MessagePool<T> pool;
+	private final CapacitySignal signal;
+	private final PublishSignal published;
 	private final SequenceBarrier barrier;
 	private final Sequence sequence;
 	private long cursor;
 	private long available;
 	private boolean closed;
+	private boolean reclaimed;
 
-	RingBufferConsumer(@Nonnull final RingBuffer<T> buffer, @Nonnull final Object[] attachments) {
+	RingBufferConsumer(@Nonnull final RingBuffer<Slot<T>> buffer, @Nonnull final Attachments attachments,
+			@Nonnull(when = When.MAYBE) final MessagePool<T> pool, @Nonnull final CapacitySignal signal,
+			@Nonnull final PublishSignal published) {
 		if (buffer == null) {
 			throw new NullPointerException("buffer == null");
 		}
 		if (attachments == null) {
 			throw new NullPointerException("attachments == null");
 		}
-		if (buffer.getBufferSize() != attachments.length) {
-			throw new IllegalArgumentException("buffer.getBufferSize() != attachments.length");
+		if (buffer.getBufferSize() != attachments.capacity()) {
+			throw new IllegalArgumentException("buffer.getBufferSize() != attachments.capacity()");
+		}
+		if (signal == null) {
+			throw new NullPointerException("signal == null");
+		}
+		if (published == null) {
+			throw new NullPointerException("published == null");
 		}
 		this.buffer = buffer;
 		this.attachments = attachments;
+		this.pool = pool;
+		this.signal = signal;
+		this.published = published;
 		this.barrier = buffer.newBarrier();
 		this.sequence = new Sequence();
 		buffer.addGatingSequences(sequence);
@@ -64,13 +81,56 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	 */
 	@Override
 	public RingBufferProducer<T> createProducer() {
-		return new RingBufferProducer<>(buffer, attachments);
+		return new RingBufferProducer<>(buffer, attachments, pool, signal, published);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean setPublishListener(final Runnable listener) {
+		published.setListener(listener);
+		return true;
 	}
 
 	void close() {
 		closed = true;
 		buffer.removeGatingSequence(sequence);
 		barrier.alert();
+		signal.signal();
+		published.signal();
+	}
+
+	/**
+	 * Returns the pooled messages of all positions that were published but
+	 * not released yet. Called from the thread reading this buffer, the first
+	 * time it sees that the buffer is closed: that thread is done with the
+	 * messages it acquired, and no producer touches a position after
+	 * publishing it. Messages of a closed buffer that is never read again are
+	 * left to the garbage collector.
+	 */
+	private void reclaim() {
+		if (pool == null || reclaimed) {
+			return;
+		}
+		reclaimed = true;
+		long last = buffer.getCursor();
+		while (last > cursor && !buffer.isPublished(last)) {
+			last--;
+		}
+		for (long s = cursor + 1; s <= last; s++) {
+			final Slot<T> slot = buffer.get(s);
+			if (slot.value != null) {
+				pool.free(slot.value);
+				slot.value = null;
+			}
+		}
+		cursor = last;
+	}
+
+	private InterruptedByClose interruptedByClose() {
+		reclaim();
+		return new InterruptedByClose();
 	}
 
 	/**
@@ -79,7 +139,7 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	@Override
 	public long acquire() throws InterruptedException {
 		if (closed) {
-			throw new InterruptedByClose();
+			throw interruptedByClose();
 		}
 		final long newCursor = cursor + 1;
 		if (newCursor <= available) {
@@ -90,7 +150,7 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 				available = barrier.waitFor(newCursor);
 			} while (available < newCursor);
 		} catch (final AlertException e) {
-			throw new InterruptedByClose();
+			throw interruptedByClose();
 		} catch (final TimeoutException e) {
 			throw new InterruptedException(e.getLocalizedMessage());
 		}
@@ -103,7 +163,7 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	@Override
 	public long acquire(final int n) throws InterruptedException {
 		if (closed) {
-			throw new InterruptedByClose();
+			throw interruptedByClose();
 		}
 		final long newCursor = cursor + n;
 		if (newCursor <= available) {
@@ -115,7 +175,7 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 				available = barrier.waitFor(newCursor);
 			} while (available < minCursor);
 		} catch (final AlertException e) {
-			throw new InterruptedByClose();
+			throw interruptedByClose();
 		} catch (final TimeoutException e) {
 			throw new InterruptedException(e.getLocalizedMessage());
 		}
@@ -127,6 +187,10 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	 */
 	@Override
 	public int remaining() {
+		if (closed) {
+			reclaim();
+			return 0;
+		}
 		long c = buffer.getCursor();
 		while (!buffer.isPublished(c)) {
 			c--;
@@ -140,7 +204,7 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	 */
 	@Override
 	public T get(final long sequence) {
-		return buffer.get(sequence);
+		return buffer.get(sequence).value;
 	}
 
 	/**
@@ -148,7 +212,15 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	 */
 	@Override
 	public Object attachment(final long sequence) {
-		return attachments[(int) (sequence % attachments.length)];
+		return attachments.get(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long attachmentId(final long sequence) {
+		return attachments.getId(sequence);
 	}
 
 	/**
@@ -157,14 +229,25 @@ final class RingBufferConsumer<T> implements MessageBufferConsumer<T> {
 	@Override
 	public void release(final long seq) throws InterruptedException {
 		if (closed) {
-			throw new InterruptedByClose();
+			throw interruptedByClose();
 		}
 		if (seq > available) {
 			throw new IllegalArgumentException("seq > available");
 		}
-		cursor = seq;
-		if (cursor == available) {
-			sequence.set(cursor);
+		if (pool != null) {
+			// pooled messages go back before the positions can be reused
+			for (long s = cursor + 1; s <= seq; s++) {
+				final Slot<T> slot = buffer.get(s);
+				if (slot.value != null) {
+					pool.free(slot.value);
+					slot.value = null;
+				}
+			}
 		}
+		cursor = seq;
+		// an ordered store, cheap enough to publish every release; consumers
+		// that hold on to messages would otherwise stall the producers
+		sequence.set(cursor);
+		signal.signal();
 	}
 }
@@ -63,7 +63,7 @@ import com.lmax.disruptor.TimeoutException;
  * 
  * @author Ricardo Padilha
  */
-final class RingBufferIterator<E> {
+final class RingBufferIterator<E> extends IteratorRhsPadding {
 
 	private final RingBuffer<E> buffer;
 	private final Sequence[] leading;
@@ -72,7 +72,6 @@ final class RingBufferIterator<E> {
 	private Sequence sequence;
 	private long available;
 	private long cursor;
-	private volatile boolean closed;
 
 	/**
 	 * Creates an iterator that will follow the leading sequences.
@@ -150,7 +149,7 @@ final class RingBufferIterator<E> {
 	 * @return <code>true</code> if this iterator is opened.
 	 */
 	public boolean isOpen() {
-		return closed;
+		return sequence != null && !closed;
 	}
 
 	/**
@@ -251,3 +250,27 @@ final class RingBufferIterator<E> {
 		cursor++;
 	}
 }
+
+/**
+ * Padding in front of the closed flag. The JVM groups fields by type inside
+ * a class, so the flag is isolated through the class hierarchy instead.
+ */
+abstract class IteratorLhsPadding {
+	@SuppressWarnings("unused")
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The closed flag is written by other threads, keep it away from the cursors.
+ */
+abstract class IteratorClosed extends IteratorLhsPadding {
+	protected volatile boolean closed;
+}
+
+/**
+ * Padding between the closed flag and the cursors.
+ */
+abstract class IteratorRhsPadding extends IteratorClosed {
+	@SuppressWarnings("unused")
+	protected long p9, p10, p11, p12, p13, p14, p15;
+}
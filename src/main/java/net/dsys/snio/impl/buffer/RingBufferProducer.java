@@ -17,10 +17,13 @@
 package net.dsys.snio.impl.buffer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
+import net.dsys.snio.api.buffer.AbstractMessageBufferProducer;
 import net.dsys.snio.api.buffer.InterruptedByClose;
-import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessagePool;
 
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 
 /**
@@ -28,24 +31,38 @@ import com.lmax.disruptor.RingBuffer;
  * 
  * @author Ricardo Padilha
  */
-final class RingBufferProducer<T> implements MessageBufferProducer<T> {
+final class RingBufferProducer<T> extends AbstractMessageBufferProducer<T> {
 
-	private final RingBuffer<T> buffer;
-	private final Object[] attachments;
+	private final RingBuffer<Slot<T>> buffer;
+	private final Attachments attachments;
+	private final MessagePool<T> pool;
+	private final CapacitySignal signal;
+	private final PublishSignal published;
 	private boolean closed;
 
-	public RingBufferProducer(@Nonnull final RingBuffer<T> buffer, @Nonnull final Object[] attachments) {
+	public RingBufferProducer(@Nonnull final RingBuffer<Slot<T>> buffer, @Nonnull final Attachments attachments,
+			@Nonnull(when = When.MAYBE) final MessagePool<T> pool, @Nonnull final CapacitySignal signal,
+			@Nonnull final PublishSignal published) {
 		if (buffer == null) {
 			throw new NullPointerException("buffer == null");
 		}
 		if (attachments == null) {
 			throw new NullPointerException("attachments == null");
 		}
-		if (buffer.getBufferSize() != attachments.length) {
-			throw new IllegalArgumentException("buffer.getBufferSize() != attachments.length");
+		if (buffer.getBufferSize() != attachments.capacity()) {
+			throw new IllegalArgumentException("buffer.getBufferSize() != attachments.capacity()");
+		}
+		if (signal == null) {
+			throw new NullPointerException("signal == null");
+		}
+		if (published == null) {
+			throw new NullPointerException("published == null");
 		}
 		this.buffer = buffer;
 		this.attachments = attachments;
+		this.pool = pool;
+		this.signal = signal;
+		this.published = published;
 	}
 
 	void close() {
@@ -74,13 +91,35 @@ final class RingBufferProducer<T> implements MessageBufferProducer<T> {
 		return buffer.next(n);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryAcquire() throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		try {
+			return buffer.tryNext();
+		} catch (final InsufficientCapacityException e) {
+			return NO_SEQUENCE;
+		}
+	}
+
+	/**
+	 * Sleeps until the consumer releases positions, instead of polling.
+	 */
+	@Override
+	protected void awaitCapacity(final long nanos) throws InterruptedException {
+		signal.await(buffer, nanos);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public int remaining() {
-		// XXX: funky code, never tested
-		return (int) (buffer.getMinimumGatingSequence() + buffer.getBufferSize() - buffer.getCursor());
+		return (int) buffer.remainingCapacity();
 	}
 
 	/**
@@ -88,7 +127,27 @@ final class RingBufferProducer<T> implements MessageBufferProducer<T> {
 	 */
 	@Override
 	public T get(final long sequence) {
-		return buffer.get(sequence);
+		final Slot<T> slot = buffer.get(sequence);
+		if (slot.value == null) {
+			slot.value = pool.allocate(pool.getMaxLength());
+		}
+		return slot.value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(final long sequence, final int length) {
+		if (pool == null) {
+			return get(sequence);
+		}
+		final Slot<T> slot = buffer.get(sequence);
+		if (slot.value != null) {
+			pool.free(slot.value);
+		}
+		slot.value = pool.allocate(length);
+		return slot.value;
 	}
 
 	/**
@@ -96,7 +155,39 @@ final class RingBufferProducer<T> implements MessageBufferProducer<T> {
 	 */
 	@Override
 	public void attach(final long sequence, final Object attachment) {
-		attachments[(int) (sequence % attachments.length)] = attachment;
+		attachments.set(sequence, attachment);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachId(final long sequence, final long id) {
+		attachments.setId(sequence, id);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int intern(final Object attachment) {
+		return attachments.intern(attachment, buffer.getMinimumGatingSequence());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unintern(final int handle) {
+		attachments.unintern(handle, buffer.getCursor());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachHandle(final long sequence, final int handle) {
+		attachments.setHandle(sequence, handle);
 	}
 
 	/**
@@ -108,5 +199,21 @@ final class RingBufferProducer<T> implements MessageBufferProducer<T> {
 			throw new InterruptedByClose();
 		}
 		buffer.publish(sequence);
+		published.signal();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(final long first, final long last) throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		buffer.publish(first, last);
+		published.signal();
 	}
 }
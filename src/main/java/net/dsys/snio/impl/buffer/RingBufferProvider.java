@@ -18,11 +18,13 @@ package net.dsys.snio.impl.buffer;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.MessagePool;
 import net.dsys.snio.api.pool.KeyProcessor;
 
 import com.lmax.disruptor.BlockingWaitStrategy;
@@ -37,45 +39,52 @@ public final class RingBufferProvider<T> implements MessageBufferProvider<T> {
 
 	private final WakeupWaitStrategy waitOut;
 	private final WaitStrategy waitIn;
-	private final RingBuffer<T> out; // app -> channel
-	private final RingBuffer<T> in; // channel -> app
-	private final Object[] attachOut;
-	private final Object[] attachIn;
+	private final RingBuffer<Slot<T>> out; // app -> channel
+	private final RingBuffer<Slot<T>> in; // channel -> app
+	private final Attachments attachOut;
+	private final Attachments attachIn;
 	private final RingBufferProducer<T> appOut; // app producer
 	private final RingBufferConsumer<T> chnIn; // channel consumer
 	private final MessageBufferProducer<T> chnOut; // channel producer
 	private final MessageBufferConsumer<T> appIn; // app consumer
 	private final boolean internalConsumer;
 
-	RingBufferProvider(@Nonnegative final int capacity, @Nonnull final Factory<T> factory) {
+	RingBufferProvider(@Nonnegative final int capacity, @Nonnull(when = When.MAYBE) final Factory<T> factory,
+			@Nonnull(when = When.MAYBE) final MessagePool<T> pool) {
 		this.waitOut = new WakeupWaitStrategy();
 		this.waitIn = new BlockingWaitStrategy();
-		final EventFactory<T> evfactory = wrapFactory(factory);
+		final EventFactory<Slot<T>> evfactory = wrapFactory(factory, pool);
 		this.out = RingBuffer.createMultiProducer(evfactory, capacity, waitOut);
 		this.in = RingBuffer.createSingleProducer(evfactory, capacity, waitIn);
-		this.attachOut = new Object[capacity];
-		this.attachIn = new Object[capacity];
-		this.appOut = new RingBufferProducer<>(out, attachOut);
-		this.chnIn = new RingBufferConsumer<>(out, attachOut);
-		this.chnOut = new RingBufferProducer<>(in, attachIn);
-		this.appIn = new RingBufferConsumer<>(in, attachIn);
+		this.attachOut = new Attachments(capacity);
+		this.attachIn = new Attachments(capacity);
+		final CapacitySignal signalOut = new CapacitySignal();
+		final CapacitySignal signalIn = new CapacitySignal();
+		final PublishSignal publishOut = new PublishSignal();
+		final PublishSignal publishIn = new PublishSignal();
+		this.appOut = new RingBufferProducer<>(out, attachOut, pool, signalOut, publishOut);
+		this.chnIn = new RingBufferConsumer<>(out, attachOut, pool, signalOut, publishOut);
+		this.chnOut = new RingBufferProducer<>(in, attachIn, pool, signalIn, publishIn);
+		this.appIn = new RingBufferConsumer<>(in, attachIn, pool, signalIn, publishIn);
 		this.internalConsumer = true;
 	}
 
-	RingBufferProvider(@Nonnegative final int capacity, @Nonnull final Factory<T> factory,
-			@Nonnull final MessageBufferConsumer<T> appIn) {
+	RingBufferProvider(@Nonnegative final int capacity, @Nonnull(when = When.MAYBE) final Factory<T> factory,
+			@Nonnull(when = When.MAYBE) final MessagePool<T> pool, @Nonnull final MessageBufferConsumer<T> appIn) {
 		if (appIn == null) {
 			throw new NullPointerException("appIn == null");
 		}
 		this.waitOut = new WakeupWaitStrategy();
 		this.waitIn = null;
-		final EventFactory<T> evfactory = wrapFactory(factory);
+		final EventFactory<Slot<T>> evfactory = wrapFactory(factory, pool);
 		this.out = RingBuffer.createMultiProducer(evfactory, capacity, waitOut);
 		this.in = null;
-		this.attachOut = new Object[capacity];
+		this.attachOut = new Attachments(capacity);
 		this.attachIn = null;
-		this.appOut = new RingBufferProducer<>(out, attachOut);
-		this.chnIn = new RingBufferConsumer<>(out, attachOut);
+		final CapacitySignal signalOut = new CapacitySignal();
+		final PublishSignal publishOut = new PublishSignal();
+		this.appOut = new RingBufferProducer<>(out, attachOut, pool, signalOut, publishOut);
+		this.chnIn = new RingBufferConsumer<>(out, attachOut, pool, signalOut, publishOut);
 		this.chnOut = appIn.createProducer();
 		this.appIn = appIn;
 		this.internalConsumer = false;
@@ -119,6 +128,8 @@ public final class RingBufferProvider<T> implements MessageBufferProvider<T> {
 	 */
 	@Override
 	public void close() {
+		// pooled messages still in the buffers go back to the pool once
+		// their readers see the close
 		chnIn.close();
 		appOut.close();
 		if (internalConsumer) {
@@ -128,89 +139,157 @@ public final class RingBufferProvider<T> implements MessageBufferProvider<T> {
 	}
 
 	/**
-	 * Convert a {@link Factory} into an {@link EventFactory}
+	 * Convert a {@link Factory} into an {@link EventFactory}. Pooled buffers
+	 * start with empty positions, filled on demand by the producers.
 	 */
-	private static <T> EventFactory<T> wrapFactory(@Nonnull final Factory<T> factory) {
+	private static <T> EventFactory<Slot<T>> wrapFactory(@Nonnull(when = When.MAYBE) final Factory<T> factory,
+			@Nonnull(when = When.MAYBE) final MessagePool<T> pool) {
+		if (pool != null) {
+			return new EventFactory<Slot<T>>() {
+				@Override
+				public Slot<T> newInstance() {
+					return new Slot<>(null);
+				}
+			};
+		}
 		if (factory == null) {
 			throw new NullPointerException("factory == null");
 		}
-		return new EventFactory<T>() {
+		return new EventFactory<Slot<T>>() {
 			@Override
-			public T newInstance() {
-				return factory.newInstance();
+			public Slot<T> newInstance() {
+				return new Slot<>(factory.newInstance());
 			}
 		};
 	}
 
 	public static <T> RingBufferConsumer<T> createConsumer(@Nonnegative final int capacity,
 			@Nonnull final Factory<T> factory) {
-		final EventFactory<T> evfactory = wrapFactory(factory);
-		final RingBuffer<T> buffer = RingBuffer.createMultiProducer(evfactory, capacity);
-		final Object[] attachments = new Object[capacity];
-		final RingBufferConsumer<T> consumer = new RingBufferConsumer<>(buffer, attachments);
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		return createConsumer(capacity, factory, null);
+	}
+
+	public static <T> RingBufferConsumer<T> createConsumer(@Nonnegative final int capacity,
+			@Nonnull final MessagePool<T> pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		return createConsumer(capacity, null, pool);
+	}
+
+	private static <T> RingBufferConsumer<T> createConsumer(@Nonnegative final int capacity,
+			@Nonnull(when = When.MAYBE) final Factory<T> factory,
+			@Nonnull(when = When.MAYBE) final MessagePool<T> pool) {
+		final EventFactory<Slot<T>> evfactory = wrapFactory(factory, pool);
+		final RingBuffer<Slot<T>> buffer = RingBuffer.createMultiProducer(evfactory, capacity);
+		final Attachments attachments = new Attachments(capacity);
+		final CapacitySignal signal = new CapacitySignal();
+		final RingBufferConsumer<T> consumer = new RingBufferConsumer<>(buffer, attachments, pool, signal,
+				new PublishSignal());
 		return consumer;
 	}
 
 	public static <T> MessageBufferProvider<T> createProvider(@Nonnegative final int capacity,
 			@Nonnull final Factory<T> factory) {
-		return new RingBufferProvider<>(capacity, factory);
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		return new RingBufferProvider<>(capacity, factory, null);
 	}
 
 	public static <T> Factory<MessageBufferProvider<T>> createProviderFactory(@Nonnegative final int capacity,
 			@Nonnull final Factory<T> factory) {
-		return new ProviderFactory<>(capacity, factory);
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		return new ProviderFactory<>(capacity, factory, null, null);
 	}
 
 	public static <T> MessageBufferProvider<T> createProvider(@Nonnegative final int capacity,
 			@Nonnull final Factory<T> factory, @Nonnull final MessageBufferConsumer<T> consumer) {
-		return new RingBufferProvider<>(capacity, factory, consumer);
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		return new RingBufferProvider<>(capacity, factory, null, consumer);
 	}
 
 	public static <T> Factory<MessageBufferProvider<T>> createProviderFactory(@Nonnegative final int capacity,
 			@Nonnull final Factory<T> factory, @Nonnull final MessageBufferConsumer<T> consumer) {
-		return new ProviderFactory<>(capacity, factory, consumer);
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		if (consumer == null) {
+			throw new NullPointerException("consumer == null");
+		}
+		return new ProviderFactory<>(capacity, factory, null, consumer);
+	}
+
+	/**
+	 * Creates a provider whose positions take their messages from the pool.
+	 */
+	public static <T> MessageBufferProvider<T> createPooledProvider(@Nonnegative final int capacity,
+			@Nonnull final MessagePool<T> pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		return new RingBufferProvider<>(capacity, null, pool);
+	}
+
+	public static <T> Factory<MessageBufferProvider<T>> createPooledProviderFactory(
+			@Nonnegative final int capacity, @Nonnull final MessagePool<T> pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		return new ProviderFactory<>(capacity, null, pool, null);
+	}
+
+	public static <T> MessageBufferProvider<T> createPooledProvider(@Nonnegative final int capacity,
+			@Nonnull final MessagePool<T> pool, @Nonnull final MessageBufferConsumer<T> consumer) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		return new RingBufferProvider<>(capacity, null, pool, consumer);
+	}
+
+	public static <T> Factory<MessageBufferProvider<T>> createPooledProviderFactory(
+			@Nonnegative final int capacity, @Nonnull final MessagePool<T> pool,
+			@Nonnull final MessageBufferConsumer<T> consumer) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		if (consumer == null) {
+			throw new NullPointerException("consumer == null");
+		}
+		return new ProviderFactory<>(capacity, null, pool, consumer);
 	}
 
 	private static final class ProviderFactory<T> implements Factory<MessageBufferProvider<T>> {
 
 		private final int capacity;
 		private final Factory<T> factory;
+		private final MessagePool<T> pool;
 		private final MessageBufferConsumer<T> consumer;
 
-		ProviderFactory(@Nonnegative final int capacity, @Nonnull final Factory<T> factory) {
-			if (capacity < 1) {
-				throw new IllegalArgumentException("capacity < 1");
-			}
-			if (factory == null) {
-				throw new NullPointerException("factory == null");
-			}
-			this.capacity = capacity;
-			this.factory = factory;
-			this.consumer = null;
-		}
-
-		ProviderFactory(@Nonnegative final int capacity, @Nonnull final Factory<T> factory,
-				@Nonnull final MessageBufferConsumer<T> consumer) {
+		ProviderFactory(@Nonnegative final int capacity, @Nonnull(when = When.MAYBE) final Factory<T> factory,
+				@Nonnull(when = When.MAYBE) final MessagePool<T> pool,
+				@Nonnull(when = When.MAYBE) final MessageBufferConsumer<T> consumer) {
 			if (capacity < 1) {
 				throw new IllegalArgumentException("capacity < 1");
 			}
-			if (factory == null) {
-				throw new NullPointerException("factory == null");
-			}
-			if (consumer == null) {
-				throw new NullPointerException("consumer == null");
-			}
 			this.capacity = capacity;
 			this.factory = factory;
+			this.pool = pool;
 			this.consumer = consumer;
 		}
 
 		@Override
 		public MessageBufferProvider<T> newInstance() {
 			if (consumer != null) {
-				return new RingBufferProvider<>(capacity, factory, consumer);
+				return new RingBufferProvider<>(capacity, factory, pool, consumer);
 			}
-			return new RingBufferProvider<>(capacity, factory);
+			return new RingBufferProvider<>(capacity, factory, pool);
 		}
 		
 	}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.Sequencer;
+import com.lmax.disruptor.TimeoutException;
+
+/**
+ * {@link MessageBufferConsumer} implementation over a {@link SlabRegion}.
+ * Each position has a single view of its message, which {@link #get(long)}
+ * rewinds to the state left by the producer.
+ * 
+ * @author Ricardo Padilha
+ */
+final class SlabBufferConsumer implements MessageBufferConsumer<ByteBuffer> {
+
+	private final SlabRegion.Ring ring;
+	private final Sequencer sequencer;
+	private final Attachments attachments;
+	private final SequenceBarrier barrier;
+	private final Sequence sequence;
+	private long cursor;
+	private long available;
+	private boolean closed;
+
+	SlabBufferConsumer(@Nonnull final SlabRegion.Ring ring) {
+		if (ring == null) {
+			throw new NullPointerException("ring == null");
+		}
+		this.ring = ring;
+		this.sequencer = ring.getSequencer();
+		this.attachments = ring.getAttachments();
+		this.barrier = sequencer.newBarrier();
+		this.sequence = new Sequence();
+		sequencer.addGatingSequences(sequence);
+		ring.setConsumer(sequence);
+		this.cursor = sequence.get();
+		this.available = sequence.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SlabBufferProducer createProducer() {
+		return new SlabBufferProducer(ring);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean setPublishListener(final Runnable listener) {
+		ring.getPublishSignal().setListener(listener);
+		return true;
+	}
+
+	void close() {
+		closed = true;
+		sequencer.removeGatingSequence(sequence);
+		barrier.alert();
+		ring.getPublishSignal().signal();
+		ring.getCapacitySignal().signal();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire() throws InterruptedException {
+		return acquire(1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire(final int n) throws InterruptedException {
+		if (closed) {
+			throw detach();
+		}
+		final long newCursor = cursor + n;
+		if (newCursor > available) {
+			try {
+				final long minCursor = cursor + 1;
+				do {
+					available = barrier.waitFor(newCursor);
+				} while (available < minCursor);
+			} catch (final AlertException e) {
+				throw detach();
+			} catch (final TimeoutException e) {
+				throw new InterruptedException(e.getLocalizedMessage());
+			}
+		}
+		final long last = Math.min(newCursor, available);
+		if (!ring.hold(last)) {
+			throw detach();
+		}
+		return last;
+	}
+
+	/**
+	 * Lets the sub-ring go back to the region: messages must not be used
+	 * once the close was seen.
+	 */
+	private InterruptedByClose detach() {
+		ring.detach();
+		return new InterruptedByClose();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int remaining() {
+		if (closed) {
+			ring.detach();
+			return 0;
+		}
+		available = sequencer.getHighestPublishedSequence(cursor + 1, sequencer.getCursor());
+		return (int) (available - cursor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ByteBuffer get(final long sequence) {
+		return ring.read(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object attachment(final long sequence) {
+		return attachments.get(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long attachmentId(final long sequence) {
+		return attachments.getId(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(final long seq) throws InterruptedException {
+		if (closed) {
+			throw detach();
+		}
+		if (seq > available) {
+			throw new IllegalArgumentException("seq > available");
+		}
+		cursor = seq;
+		sequence.set(cursor);
+		ring.getCapacitySignal().signal();
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import net.dsys.snio.api.buffer.AbstractMessageBufferProducer;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.Sequencer;
+
+/**
+ * {@link MessageBufferProducer} implementation over a {@link SlabRegion}.
+ * 
+ * @author Ricardo Padilha
+ */
+final class SlabBufferProducer extends AbstractMessageBufferProducer<ByteBuffer> {
+
+	private final SlabRegion.Ring ring;
+	private final Sequencer sequencer;
+	private final Attachments attachments;
+	private boolean closed;
+
+	SlabBufferProducer(@Nonnull final SlabRegion.Ring ring) {
+		if (ring == null) {
+			throw new NullPointerException("ring == null");
+		}
+		this.ring = ring;
+		this.sequencer = ring.getSequencer();
+		this.attachments = ring.getAttachments();
+	}
+
+	void close() {
+		closed = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire() throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		return claimed(sequencer.next(), 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire(final int n) throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		return claimed(sequencer.next(n), n);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryAcquire() throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		final long sequence;
+		try {
+			sequence = sequencer.tryNext();
+		} catch (final InsufficientCapacityException e) {
+			return NO_SEQUENCE;
+		}
+		return claimed(sequence, 1);
+	}
+
+	/**
+	 * Makes sure the sub-ring was not closed while the positions were being
+	 * claimed. Otherwise the positions are published unused, so that the
+	 * sub-ring can go back to the region.
+	 */
+	private long claimed(final long last, final int n) throws InterruptedByClose {
+		if (!ring.claim(last)) {
+			sequencer.publish(last - n + 1, last);
+			ring.tryRelease();
+			throw new InterruptedByClose();
+		}
+		return last;
+	}
+
+	/**
+	 * Sleeps until the consumer releases positions, instead of polling.
+	 */
+	@Override
+	protected void awaitCapacity(final long nanos) throws InterruptedException {
+		ring.getCapacitySignal().await(sequencer, nanos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int remaining() {
+		return (int) sequencer.remainingCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ByteBuffer get(final long sequence) {
+		return ring.write(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ByteBuffer get(final long sequence, final int length) {
+		return ring.write(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attach(final long sequence, final Object attachment) {
+		attachments.set(sequence, attachment);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachId(final long sequence, final long id) {
+		attachments.setId(sequence, id);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int intern(final Object attachment) {
+		return attachments.intern(attachment, sequencer.getMinimumSequence());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unintern(final int handle) {
+		attachments.unintern(handle, sequencer.getCursor());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachHandle(final long sequence, final int handle) {
+		attachments.setHandle(sequence, handle);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(final long sequence) throws InterruptedException {
+		// claimed positions are always published, even after the close
+		ring.commit(sequence);
+		sequencer.publish(sequence);
+		ring.getPublishSignal().signal();
+		if (closed) {
+			ring.tryRelease();
+			throw new InterruptedByClose();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(final long first, final long last) throws InterruptedException {
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		for (long s = first; s <= last; s++) {
+			ring.commit(s);
+		}
+		sequencer.publish(first, last);
+		ring.getPublishSignal().signal();
+		if (closed) {
+			ring.tryRelease();
+			throw new InterruptedByClose();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.pool.KeyProcessor;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.MultiProducerSequencer;
+import com.lmax.disruptor.SingleProducerSequencer;
+
+/**
+ * Same as {@link RingBufferProvider}, but the positions of both directions
+ * are stored in sub-rings of a {@link SlabRegion} shared with other channels.
+ * Only the sequencing of the Disruptor is used, there are no per-position
+ * objects. Messages must not be used once the provider is closed: the
+ * sub-rings are returned to the region as soon as both of their sides are
+ * done with them.
+ * 
+ * @author Ricardo Padilha
+ */
+public final class SlabBufferProvider implements MessageBufferProvider<ByteBuffer> {
+
+	private final WakeupWaitStrategy waitOut;
+	private final SlabRegion.Ring out; // app -> channel
+	private final SlabRegion.Ring in; // channel -> app
+	private final SlabBufferProducer appOut; // app producer
+	private final SlabBufferConsumer chnIn; // channel consumer
+	private final MessageBufferProducer<ByteBuffer> chnOut; // channel producer
+	private final MessageBufferConsumer<ByteBuffer> appIn; // app consumer
+	private final boolean internalConsumer;
+
+	SlabBufferProvider(@Nonnull final SlabRegion region) {
+		if (region == null) {
+			throw new NullPointerException("region == null");
+		}
+		final int capacity = region.getCapacity();
+		this.waitOut = new WakeupWaitStrategy();
+		this.out = region.reserve(new MultiProducerSequencer(capacity, waitOut));
+		try {
+			this.in = region.reserve(new SingleProducerSequencer(capacity, new BlockingWaitStrategy()));
+		} catch (final IllegalStateException e) {
+			out.close();
+			throw e;
+		}
+		this.appOut = new SlabBufferProducer(out);
+		this.chnIn = new SlabBufferConsumer(out);
+		this.chnOut = new SlabBufferProducer(in);
+		this.appIn = new SlabBufferConsumer(in);
+		this.internalConsumer = true;
+	}
+
+	SlabBufferProvider(@Nonnull final SlabRegion region, @Nonnull final MessageBufferConsumer<ByteBuffer> appIn) {
+		if (region == null) {
+			throw new NullPointerException("region == null");
+		}
+		if (appIn == null) {
+			throw new NullPointerException("appIn == null");
+		}
+		final int capacity = region.getCapacity();
+		this.waitOut = new WakeupWaitStrategy();
+		this.out = region.reserve(new MultiProducerSequencer(capacity, waitOut));
+		this.in = null;
+		this.appOut = new SlabBufferProducer(out);
+		this.chnIn = new SlabBufferConsumer(out);
+		this.chnOut = appIn.createProducer();
+		this.appIn = appIn;
+		this.internalConsumer = false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<ByteBuffer> getAppOutput(final KeyProcessor<ByteBuffer> processor) {
+		waitOut.setProcessor(processor);
+		return appOut;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferConsumer<ByteBuffer> getChannelInput() {
+		return chnIn;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<ByteBuffer> getChannelOutput() {
+		return chnOut;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferConsumer<ByteBuffer> getAppInput() {
+		return appIn;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		chnIn.close();
+		appOut.close();
+		out.close();
+		if (internalConsumer) {
+			((SlabBufferProducer) chnOut).close();
+			((SlabBufferConsumer) appIn).close();
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates a consumer that can be shared by the providers of many channels.
+	 * Its sub-ring is never returned to the region.
+	 */
+	public static MessageBufferConsumer<ByteBuffer> createConsumer(@Nonnull final SlabRegion region) {
+		if (region == null) {
+			throw new NullPointerException("region == null");
+		}
+		final int capacity = region.getCapacity();
+		return new SlabBufferConsumer(region.reserve(new MultiProducerSequencer(capacity,
+				new BlockingWaitStrategy())));
+	}
+
+	public static MessageBufferProvider<ByteBuffer> createProvider(@Nonnull final SlabRegion region) {
+		return new SlabBufferProvider(region);
+	}
+
+	public static MessageBufferProvider<ByteBuffer> createProvider(@Nonnull final SlabRegion region,
+			@Nonnull final MessageBufferConsumer<ByteBuffer> consumer) {
+		return new SlabBufferProvider(region, consumer);
+	}
+
+	public static Factory<MessageBufferProvider<ByteBuffer>> createProviderFactory(
+			@Nonnull final SlabRegion region) {
+		if (region == null) {
+			throw new NullPointerException("region == null");
+		}
+		return new Factory<MessageBufferProvider<ByteBuffer>>() {
+			@Override
+			public MessageBufferProvider<ByteBuffer> newInstance() {
+				return new SlabBufferProvider(region);
+			}
+		};
+	}
+
+	public static Factory<MessageBufferProvider<ByteBuffer>> createProviderFactory(
+			@Nonnull final SlabRegion region, @Nonnull final MessageBufferConsumer<ByteBuffer> consumer) {
+		if (region == null) {
+			throw new NullPointerException("region == null");
+		}
+		if (consumer == null) {
+			throw new NullPointerException("consumer == null");
+		}
+		return new Factory<MessageBufferProvider<ByteBuffer>>() {
+			@Override
+			public MessageBufferProvider<ByteBuffer> newInstance() {
+				return new SlabBufferProvider(region, consumer);
+			}
+		};
+	}
+}
@@ -0,0 +1,466 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.Sequencer;
+import com.lmax.disruptor.SingleProducerSequencer;
+
+/**
+ * Off-heap region that holds the buffer positions of many channels. The
+ * region is split into sub-rings of the same length, each one holding the
+ * positions of one direction of one channel. A position is a small header
+ * (the message position and limit), followed by the message itself.
+ * <p>
+ * The region is made of direct chunks of up to 1 GB, allocated as sub-rings
+ * are reserved, or of chunks mapped from a file. Either way, the garbage
+ * collector only sees the chunks, not the individual positions.
+ * <p>
+ * A closed sub-ring is only returned to the region once its producers
+ * published every position they claimed, and its consumer released every
+ * position it acquired. Until then, it waits in a list of closing sub-rings,
+ * which is checked again whenever a sub-ring is reserved.
+ * <p>
+ * The views over the messages and the attachments of a sub-ring belong to
+ * the region, not to the channel that reserved it: they are created the
+ * first time a sub-ring is used, and reused by every channel that reserves
+ * it later on.
+ * 
+ * @author Ricardo Padilha
+ */
+public final class SlabRegion {
+
+	static final int HEADER_LENGTH = 8;
+	private static final int ALIGNMENT = 8;
+	private static final long MAX_CHUNK_LENGTH = 1 << 30;
+
+	private final int capacity;
+	private final int maxLength;
+	private final int stride;
+	private final int ringLength;
+	private final int ringsPerChunk;
+	private final int maxRings;
+	private final ByteBuffer[] chunks;
+	private final ByteBuffer[][] views;
+	private final Attachments[] attachments;
+	private final int[] free;
+	private final List<Ring> closing;
+	private final Lock lock;
+	private int count;
+	private int next;
+
+	/**
+	 * Creates a region backed by direct memory.
+	 * 
+	 * @param capacity
+	 *            number of positions of each sub-ring, a power of two
+	 * @param maxLength
+	 *            maximum length of a message
+	 * @param maxRings
+	 *            maximum number of sub-rings, two per channel
+	 */
+	public SlabRegion(@Nonnegative final int capacity, @Nonnegative final int maxLength,
+			@Nonnegative final int maxRings) {
+		this.capacity = capacity;
+		this.maxLength = maxLength;
+		this.maxRings = maxRings;
+		this.stride = stride(capacity, maxLength, maxRings);
+		this.ringLength = capacity * stride;
+		this.ringsPerChunk = (int) Math.max(1, MAX_CHUNK_LENGTH / ringLength);
+		this.chunks = new ByteBuffer[(maxRings + ringsPerChunk - 1) / ringsPerChunk];
+		this.views = new ByteBuffer[maxRings][];
+		this.attachments = new Attachments[maxRings];
+		this.free = new int[maxRings];
+		this.closing = new ArrayList<>();
+		this.lock = new ReentrantLock();
+	}
+
+	/**
+	 * Creates a region backed by a memory-mapped file. The whole region is
+	 * mapped at once.
+	 * 
+	 * @param file
+	 *            a file channel opened for reading and writing
+	 * @see #SlabRegion(int, int, int)
+	 */
+	public SlabRegion(@Nonnegative final int capacity, @Nonnegative final int maxLength,
+			@Nonnegative final int maxRings, @Nonnull final FileChannel file) throws IOException {
+		this(capacity, maxLength, maxRings);
+		if (file == null) {
+			throw new NullPointerException("file == null");
+		}
+		final long chunkStride = (long) ringsPerChunk * ringLength;
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = file.map(MapMode.READ_WRITE, i * chunkStride, chunkLength(i));
+		}
+	}
+
+	private static int stride(final int capacity, final int maxLength, final int maxRings) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of 2");
+		}
+		if (maxLength < 1) {
+			throw new IllegalArgumentException("maxLength < 1");
+		}
+		if (maxRings < 1) {
+			throw new IllegalArgumentException("maxRings < 1");
+		}
+		final long stride = (HEADER_LENGTH + maxLength + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+		if (capacity * stride > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("capacity * maxLength is too large");
+		}
+		return (int) stride;
+	}
+
+	/**
+	 * @return the length of a chunk; the last one only holds the sub-rings
+	 *         left over by the others
+	 */
+	private int chunkLength(final int chunk) {
+		return Math.min(ringsPerChunk, maxRings - chunk * ringsPerChunk) * ringLength;
+	}
+
+	@Nonnegative
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Nonnegative
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * @return the number of sub-rings that can still be reserved
+	 */
+	@Nonnegative
+	public int available() {
+		lock.lock();
+		try {
+			return count + maxRings - next;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Reserves a sub-ring.
+	 * 
+	 * @throws IllegalStateException
+	 *             if all sub-rings are in use
+	 */
+	@Nonnull
+	Ring reserve(@Nonnull final Sequencer sequencer) {
+		if (sequencer == null) {
+			throw new NullPointerException("sequencer == null");
+		}
+		if (sequencer.getBufferSize() != capacity) {
+			throw new IllegalArgumentException("sequencer.getBufferSize() != capacity");
+		}
+		lock.lock();
+		try {
+			reclaim();
+			final int ring;
+			if (count > 0) {
+				ring = free[--count];
+			} else if (next < maxRings) {
+				ring = next++;
+			} else {
+				throw new IllegalStateException("all " + maxRings + " rings are in use");
+			}
+			final int chunk = ring / ringsPerChunk;
+			if (chunks[chunk] == null) {
+				chunks[chunk] = ByteBuffer.allocateDirect(chunkLength(chunk));
+			}
+			if (views[ring] == null) {
+				views[ring] = new ByteBuffer[capacity];
+				attachments[ring] = new Attachments(capacity);
+			} else {
+				// do not hand the previous channel's attachments to the next one
+				attachments[ring].clear();
+			}
+			final int base = (ring % ringsPerChunk) * ringLength;
+			return new Ring(ring, sequencer, chunks[chunk], base, views[ring], attachments[ring]);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the closing sub-rings that became idle. Must hold the lock.
+	 */
+	private void reclaim() {
+		for (int i = closing.size() - 1; i >= 0; i--) {
+			final Ring ring = closing.get(i);
+			if (ring.released.get()) {
+				closing.remove(i);
+			} else if (ring.isIdle() && ring.released.compareAndSet(false, true)) {
+				closing.remove(i);
+				free[count++] = ring.id;
+			}
+		}
+	}
+
+	private void defer(@Nonnull final Ring ring) {
+		lock.lock();
+		try {
+			if (!ring.released.get()) {
+				closing.add(ring);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(@Nonnull final Ring ring) {
+		lock.lock();
+		try {
+			closing.remove(ring);
+			free[count++] = ring.id;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * One sub-ring of the region. Messages are handed out as views over the
+	 * region, one per position, created the first time the position is used
+	 * and kept by the region once the sub-ring is released: the writer's
+	 * position and limit are stored in the header when the position is
+	 * released, and restored for the readers.
+	 * <p>
+	 * Views cannot be shared between positions: a slice cannot be moved, and
+	 * a wider view would let {@link ByteBuffer#clear()} reach the next
+	 * message. Callers may also hold several messages at once, e.g. a batch.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	final class Ring {
+
+		private final int id;
+		private final Sequencer sequencer;
+		private final boolean singleProducer;
+		private final ByteBuffer chunk;
+		private final int base;
+		private final int mask;
+		private final Attachments attachments;
+		private final PublishSignal published;
+		private final CapacitySignal freed;
+		private final ByteBuffer[] views;
+		private final boolean[] pending;
+		private final AtomicBoolean released;
+		private Sequence consumed;
+		private volatile boolean closed;
+		private volatile long claimed;
+		private volatile long held;
+
+		Ring(@Nonnegative final int id, @Nonnull final Sequencer sequencer, @Nonnull final ByteBuffer chunk,
+				@Nonnegative final int base, @Nonnull final ByteBuffer[] views,
+				@Nonnull final Attachments attachments) {
+			this.id = id;
+			this.sequencer = sequencer;
+			this.singleProducer = sequencer instanceof SingleProducerSequencer;
+			this.chunk = chunk;
+			this.base = base;
+			this.mask = capacity - 1;
+			this.attachments = attachments;
+			this.published = new PublishSignal();
+			this.freed = new CapacitySignal();
+			this.views = views;
+			this.pending = new boolean[capacity];
+			this.released = new AtomicBoolean();
+			this.claimed = Sequencer.INITIAL_CURSOR_VALUE;
+			this.held = Sequencer.INITIAL_CURSOR_VALUE;
+		}
+
+		@Nonnull
+		Sequencer getSequencer() {
+			return sequencer;
+		}
+
+		@Nonnull
+		Attachments getAttachments() {
+			return attachments;
+		}
+
+		@Nonnull
+		PublishSignal getPublishSignal() {
+			return published;
+		}
+
+		@Nonnull
+		CapacitySignal getCapacitySignal() {
+			return freed;
+		}
+
+		/**
+		 * Registers the released sequence of the consumer of this sub-ring.
+		 */
+		void setConsumer(@Nonnull final Sequence consumed) {
+			this.consumed = consumed;
+		}
+
+		private int header(final long sequence) {
+			return base + ((int) sequence & mask) * stride;
+		}
+
+		@Nonnull
+		private ByteBuffer view(final int index) {
+			ByteBuffer view = views[index];
+			if (view == null) {
+				final int start = base + index * stride + HEADER_LENGTH;
+				final ByteBuffer dup = chunk.duplicate();
+				dup.limit(start + maxLength).position(start);
+				view = dup.slice();
+				views[index] = view;
+			}
+			return view;
+		}
+
+		/**
+		 * @return the message at the given position, for writing
+		 */
+		@Nonnull
+		ByteBuffer write(final long sequence) {
+			final int index = (int) sequence & mask;
+			final ByteBuffer message = view(index);
+			if (!pending[index]) {
+				message.clear();
+				pending[index] = true;
+			}
+			return message;
+		}
+
+		/**
+		 * Stores the state of the message written at the given position.
+		 */
+		void commit(final long sequence) {
+			final int index = (int) sequence & mask;
+			final int header = header(sequence);
+			if (!pending[index]) {
+				chunk.putInt(header, 0);
+				chunk.putInt(header + 4, 0);
+				return;
+			}
+			final ByteBuffer message = views[index];
+			chunk.putInt(header, message.position());
+			chunk.putInt(header + 4, message.limit());
+			pending[index] = false;
+		}
+
+		/**
+		 * @return the message at the given position, for reading
+		 */
+		@Nonnull
+		ByteBuffer read(final long sequence) {
+			final int header = header(sequence);
+			final ByteBuffer message = view((int) sequence & mask);
+			message.limit(chunk.getInt(header + 4)).position(chunk.getInt(header));
+			return message;
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * Called by producers right after claiming positions, before using
+		 * them.
+		 * 
+		 * @return <code>false</code> if this sub-ring was closed meanwhile,
+		 *         in which case the positions must be published unused
+		 */
+		boolean claim(final long last) {
+			if (singleProducer) {
+				// multi-producer claims are already visible through the cursor
+				claimed = last;
+			}
+			return !closed;
+		}
+
+		/**
+		 * Called by the consumer right after acquiring positions, before using
+		 * them.
+		 * 
+		 * @return <code>false</code> if this sub-ring was closed meanwhile
+		 */
+		boolean hold(final long last) {
+			held = last;
+			return !closed;
+		}
+
+		/**
+		 * Called by the consumer once it saw the close, and will no longer
+		 * use any position.
+		 */
+		void detach() {
+			held = Long.MIN_VALUE;
+			tryRelease();
+		}
+
+		boolean isIdle() {
+			final long cursor = sequencer.getCursor();
+			if (singleProducer) {
+				if (claimed > cursor) {
+					return false;
+				}
+			} else if (sequencer.getHighestPublishedSequence(Math.max(0, cursor - mask), cursor) < cursor) {
+				return false;
+			}
+			final Sequence c = consumed;
+			return c == null || held <= c.get();
+		}
+
+		/**
+		 * Closes this sub-ring, and returns it to the region as soon as it is
+		 * idle.
+		 */
+		void close() {
+			closed = true;
+			if (!tryRelease()) {
+				defer(this);
+			}
+		}
+
+		/**
+		 * Returns this sub-ring to the region if it is closed and idle.
+		 */
+		boolean tryRelease() {
+			if (!closed || !isIdle() || !released.compareAndSet(false, true)) {
+				return false;
+			}
+			SlabRegion.this.release(this);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,383 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.buffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.WatermarkListener;
+import net.dsys.snio.api.pool.KeyProcessor;
+
+/**
+ * Adds watermarks to the output buffer of another provider. The application
+ * side checks the high watermark every time it releases messages, and the
+ * channel side checks the low watermark every time it releases sent messages.
+ *
+ * @author Ricardo Padilha
+ */
+public final class WatermarkProvider<T> implements MessageBufferProvider<T> {
+
+	private final MessageBufferProvider<T> provider;
+	private final int capacity;
+	private final int low;
+	private final int high;
+	private final WatermarkListener listener;
+	private final AtomicBoolean above;
+	private Producer appOut;
+	private Consumer chnIn;
+
+	WatermarkProvider(@Nonnull final MessageBufferProvider<T> provider, @Nonnegative final int capacity,
+			@Nonnegative final int low, @Nonnegative final int high, @Nonnull final WatermarkListener listener) {
+		if (provider == null) {
+			throw new NullPointerException("provider == null");
+		}
+		checkWatermarks(capacity, low, high);
+		if (listener == null) {
+			throw new NullPointerException("listener == null");
+		}
+		this.provider = provider;
+		this.capacity = capacity;
+		this.low = low;
+		this.high = high;
+		this.listener = listener;
+		this.above = new AtomicBoolean();
+	}
+
+	static void checkWatermarks(final int capacity, final int low, final int high) {
+		if (low < 0) {
+			throw new IllegalArgumentException("low < 0");
+		}
+		if (low >= high) {
+			throw new IllegalArgumentException("low >= high");
+		}
+		if (high > capacity) {
+			throw new IllegalArgumentException("high > capacity");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<T> getAppOutput(final KeyProcessor<T> processor) {
+		if (appOut == null) {
+			appOut = new Producer(provider.getAppOutput(processor));
+		}
+		return appOut;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferConsumer<T> getChannelInput() {
+		if (chnIn == null) {
+			chnIn = new Consumer(provider.getChannelInput());
+		}
+		return chnIn;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<T> getChannelOutput() {
+		return provider.getChannelOutput();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferConsumer<T> getAppInput() {
+		return provider.getAppInput();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		provider.close();
+	}
+
+	/**
+	 * Called after the application released messages.
+	 */
+	void released(@Nonnull final Producer out) {
+		if (capacity - out.remaining() >= high && above.compareAndSet(false, true)) {
+			listener.highWatermark(out);
+			// the channel may have drained the buffer before above was set
+			sent(out.remaining());
+		}
+	}
+
+	/**
+	 * Called after the channel released sent messages.
+	 */
+	void sent(@Nonnegative final int free) {
+		if (capacity - free <= low && above.compareAndSet(true, false)) {
+			listener.lowWatermark(appOut);
+		}
+	}
+
+	@Nonnull
+	public static <T> MessageBufferProvider<T> createProvider(@Nonnull final MessageBufferProvider<T> provider,
+			@Nonnegative final int capacity, @Nonnegative final int low, @Nonnegative final int high,
+			@Nonnull final WatermarkListener listener) {
+		return new WatermarkProvider<>(provider, capacity, low, high, listener);
+	}
+
+	@Nonnull
+	public static <T> Factory<MessageBufferProvider<T>> createProviderFactory(
+			@Nonnull final Factory<MessageBufferProvider<T>> factory, @Nonnegative final int capacity,
+			@Nonnegative final int low, @Nonnegative final int high, @Nonnull final WatermarkListener listener) {
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		checkWatermarks(capacity, low, high);
+		if (listener == null) {
+			throw new NullPointerException("listener == null");
+		}
+		return new Factory<MessageBufferProvider<T>>() {
+			@Override
+			public MessageBufferProvider<T> newInstance() {
+				return new WatermarkProvider<>(factory.newInstance(), capacity, low, high, listener);
+			}
+		};
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private final class Producer implements MessageBufferProducer<T> {
+
+		private final MessageBufferProducer<T> out;
+
+		Producer(@Nonnull final MessageBufferProducer<T> out) {
+			this.out = out;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire() throws InterruptedException {
+			return out.acquire();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire(final int n) throws InterruptedException {
+			return out.acquire(n);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long tryAcquire() throws InterruptedException {
+			return out.tryAcquire();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+			return out.acquire(timeout, unit);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int remaining() {
+			return out.remaining();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(final long sequence) {
+			return out.get(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(final long sequence, final int length) {
+			return out.get(sequence, length);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void attach(final long sequence, final Object attachment) {
+			out.attach(sequence, attachment);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void attachId(final long sequence, final long id) {
+			out.attachId(sequence, id);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int intern(final Object attachment) {
+			return out.intern(attachment);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void unintern(final int handle) {
+			out.unintern(handle);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void attachHandle(final long sequence, final int handle) {
+			out.attachHandle(sequence, handle);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release(final long sequence) throws InterruptedException {
+			out.release(sequence);
+			released(this);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release(final long first, final long last) throws InterruptedException {
+			out.release(first, last);
+			released(this);
+		}
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private final class Consumer implements MessageBufferConsumer<T> {
+
+		private final MessageBufferConsumer<T> in;
+
+		Consumer(@Nonnull final MessageBufferConsumer<T> in) {
+			this.in = in;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageBufferProducer<T> createProducer() {
+			return in.createProducer();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire() throws InterruptedException {
+			return in.acquire();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long acquire(final int n) throws InterruptedException {
+			return in.acquire(n);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int remaining() {
+			return in.remaining();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(final long sequence) {
+			return in.get(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object attachment(final long sequence) {
+			return in.attachment(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long attachmentId(final long sequence) {
+			return in.attachmentId(sequence);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean setPublishListener(final Runnable listener) {
+			return in.setPublishListener(listener);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release(final long sequence) throws InterruptedException {
+			in.release(sequence);
+			if (appOut != null) {
+				sent(appOut.remaining());
+			}
+		}
+	}
+}
@@ -18,11 +18,15 @@ package net.dsys.snio.impl.channel;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import net.dsys.commons.api.exception.Bug;
@@ -32,15 +36,18 @@ import net.dsys.commons.impl.future.SettableCallbackFuture;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.channel.ChannelMetrics;
+import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.pool.KeyProcessor;
 import net.dsys.snio.api.pool.SelectionType;
 import net.dsys.snio.api.pool.SelectorExecutor;
 import net.dsys.snio.api.pool.SelectorThread;
+import net.dsys.snio.impl.buffer.LatencyProvider;
 
 /**
  * @author Ricardo Padilha
  */
-abstract class AbstractProcessor<T> implements KeyProcessor<T> {
+abstract class AbstractProcessor<T> extends ProcessorRhsPadding implements KeyProcessor<T> {
 
 	private final SettableCallbackFuture<Void> connectReadFuture;
 	private final SettableCallbackFuture<Void> connectWriteFuture;
@@ -55,8 +62,12 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 	private final MessageBufferConsumer<T> chnIn;
 	private final MessageBufferProducer<T> chnOut;
 	private final MessageBufferConsumer<T> appIn;
+	private final int appOutHandle;
+	private final AtomicBoolean uninterned;
+	private final ProcessorMetrics metrics;
 
 	private SelectorThread thread;
+	private SelectorThread readThread;
 	private SelectionKey readKey;
 	private SelectionKey writeKey;
 
@@ -80,6 +91,14 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 		this.chnIn = provider.getChannelInput();
 		this.chnOut = provider.getChannelOutput();
 		this.appIn = provider.getAppInput();
+		this.appOutHandle = chnOut.intern(appOut);
+		this.uninterned = new AtomicBoolean();
+		if (provider instanceof LatencyProvider) {
+			final LatencyProvider<?> latency = (LatencyProvider<?>) provider;
+			this.metrics = new ProcessorMetrics(latency.getSendLatency(), latency.getReceiveLatency());
+		} else {
+			this.metrics = new ProcessorMetrics(null, null);
+		}
 	}
 
 	/**
@@ -102,6 +121,7 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 	public final void registered(final SelectorThread thread, final SelectionKey key, final SelectionType type) {
 		switch (type) {
 			case OP_READ: {
+				this.readThread = thread;
 				this.readKey = key;
 				readRegistered(key);
 				if (connectReadFuture.isDone()) {
@@ -150,6 +170,130 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 		writeKey.interestOps(writeKey.interestOps() & ~SelectionKey.OP_WRITE);
 	}
 
+	/**
+	 * Only called from within the reader thread, when the application input
+	 * is full. The channel is no longer selected for reads, but the reader
+	 * thread keeps calling {@link #read(SelectionKey)} until
+	 * {@link #resumeReader()}.
+	 */
+	protected final void suspendReader() {
+		if (!readSuspended) {
+			readSuspended = true;
+			readKey.interestOps(readKey.interestOps() & ~SelectionKey.OP_READ);
+			readThread.suspendKey(readKey);
+		}
+	}
+
+	/**
+	 * Only called from within the reader thread.
+	 */
+	protected final void resumeReader() {
+		if (readSuspended) {
+			readSuspended = false;
+			readKey.interestOps(readKey.interestOps() | SelectionKey.OP_READ);
+		}
+	}
+
+	protected final boolean isReaderSuspended() {
+		return readSuspended;
+	}
+
+	/**
+	 * Only called from within the reader thread, once the limiter is charged.
+	 */
+	protected final void received(@Nonnegative final long bytes, @Nonnegative final long messages) {
+		metrics.received(bytes, messages);
+	}
+
+	/**
+	 * Only called from within the writer thread, once the limiter is charged.
+	 */
+	protected final void sent(@Nonnegative final long bytes, @Nonnegative final long messages) {
+		metrics.sent(bytes, messages);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final ChannelMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Only called from within the reader thread.
+	 * 
+	 * @see SelectorThread#getReadBuffer(int)
+	 */
+	@Nonnull
+	protected final ByteBuffer getReadBuffer(@Nonnegative final int length) {
+		return readThread.getReadBuffer(length);
+	}
+
+	/**
+	 * Only called from within the reader thread, when the rate limit was
+	 * exceeded. The channel is not selected for reads until the delay expires.
+	 */
+	protected final void throttleReader(@Nonnegative final long nanos) {
+		readKey.interestOps(readKey.interestOps() & ~SelectionKey.OP_READ);
+		readThread.suspendKey(readKey, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Only called from within the writer thread, when the rate limit was
+	 * exceeded. The channel is not selected for writes until the delay
+	 * expires, even if the application wakes up the writer.
+	 */
+	protected final void throttleWriter(@Nonnegative final long nanos) {
+		writeKey.interestOps(writeKey.interestOps() & ~SelectionKey.OP_WRITE);
+		thread.suspendKey(writeKey, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Only called from within the reader thread. {@link #readIdle()} is
+	 * called once the delay expires.
+	 */
+	protected final void idleReader(@Nonnegative final long nanos) {
+		readThread.idleKey(readKey, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Only called from within the writer thread. {@link #writeIdle()} is
+	 * called once the delay expires.
+	 */
+	protected final void idleWriter(@Nonnegative final long nanos) {
+		thread.idleKey(writeKey, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void idle(final SelectionKey key) {
+		if (key == readKey) {
+			readIdle();
+		}
+		if (key == writeKey) {
+			writeIdle();
+		}
+	}
+
+	/**
+	 * Called from within the reader thread, after {@link #idleReader(long)}.
+	 * Subclasses can override as needed.
+	 */
+	protected void readIdle() {
+		return;
+	}
+
+	/**
+	 * Called from within the writer thread, after {@link #idleWriter(long)}.
+	 * Subclasses can override as needed.
+	 */
+	protected void writeIdle() {
+		return;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -176,6 +320,30 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 		return chnOut;
 	}
 
+	/**
+	 * Length to allocate for the next message decoded from <code>in</code>.
+	 * Codecs that wrap others may count their own footer in
+	 * {@link MessageCodec#getDecodedLength(ByteBuffer)}, but never decode more
+	 * than {@link MessageCodec#getBodyLength()}, which is what the message
+	 * pools are checked against.
+	 */
+	@Nonnegative
+	protected static int getDecodedLength(@Nonnull final MessageCodec codec, @Nonnull final ByteBuffer in) {
+		return Math.min(codec.getDecodedLength(in), codec.getBodyLength());
+	}
+
+	/**
+	 * Attaches {@link #getOutputBuffer()} to a message received from the
+	 * network, using its interned handle when the input buffer supports it.
+	 */
+	protected final void attachOutputBuffer(final long sequence) {
+		if (appOutHandle == MessageBufferProducer.NO_HANDLE) {
+			chnOut.attach(sequence, appOut);
+		} else {
+			chnOut.attachHandle(sequence, appOutHandle);
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -194,6 +362,10 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 	}
 
 	final void shutdown(@Nonnull final SelectorExecutor executor) {
+		// the input buffer may be shared, and outlive this processor
+		if (appOutHandle != MessageBufferProducer.NO_HANDLE && uninterned.compareAndSet(false, true)) {
+			chnOut.unintern(appOutHandle);
+		}
 		provider.close();
 		executor.cancelConnect(readKey, closeReadFuture, writeKey, closeWriteFuture);
 	}
@@ -257,3 +429,29 @@ abstract class AbstractProcessor<T> implements KeyProcessor<T> {
 		}
 	}
 }
+
+/**
+ * Padding in front of the reader flag. The JVM groups fields by type inside
+ * a class, so reader and writer state are separated through the class
+ * hierarchy instead.
+ */
+abstract class ProcessorLhsPadding {
+	@SuppressWarnings("unused")
+	private long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The reader thread flips readSuspended while the writer thread reads the
+ * fields of {@link AbstractProcessor}: keep it on its own cache line.
+ */
+abstract class ProcessorReaderState extends ProcessorLhsPadding {
+	boolean readSuspended;
+}
+
+/**
+ * Padding between the reader flag and the fields of {@link AbstractProcessor}.
+ */
+abstract class ProcessorRhsPadding extends ProcessorReaderState {
+	@SuppressWarnings("unused")
+	private long p9, p10, p11, p12, p13, p14, p15;
+}
@@ -19,6 +19,7 @@ package net.dsys.snio.impl.channel;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.net.ssl.SSLContext;
@@ -28,14 +29,21 @@ import net.dsys.commons.api.lang.BinaryUnit;
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.MessagePool;
+import net.dsys.snio.api.buffer.WatermarkListener;
 import net.dsys.snio.api.channel.AcceptListener;
+import net.dsys.snio.api.channel.ChannelMetrics;
 import net.dsys.snio.api.channel.CloseListener;
 import net.dsys.snio.api.channel.MessageChannel;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
 import net.dsys.snio.api.pool.KeyProcessor;
+import net.dsys.snio.api.pool.Processor;
 import net.dsys.snio.api.pool.SelectorExecutor;
 import net.dsys.snio.api.pool.SelectorPool;
+import net.dsys.snio.impl.buffer.ByteBufferPool;
+import net.dsys.snio.impl.buffer.LatencyRecorder;
+import net.dsys.snio.impl.buffer.SlabRegion;
 import net.dsys.snio.impl.channel.builder.ClientConfig;
 import net.dsys.snio.impl.channel.builder.ChannelConfig;
 import net.dsys.snio.impl.channel.builder.SSLConfig;
@@ -71,6 +79,21 @@ public final class MessageChannels {
 		};
 	}
 
+	/**
+	 * @return the traffic counters of a channel opened by this class, or by
+	 *         {@link MessageServerChannels}
+	 */
+	@Nonnull
+	public static ChannelMetrics getMetrics(@Nonnull final MessageChannel<?> channel) {
+		if (channel == null) {
+			throw new NullPointerException("channel == null");
+		}
+		if (!(channel instanceof Processor)) {
+			throw new IllegalArgumentException("channel was not opened by this class");
+		}
+		return ((Processor) channel).getProcessor().getMetrics();
+	}
+
 	@Nonnull
 	public static MessageChannel<ByteBuffer> openTCPChannel(
 			@Nonnull final ChannelConfig<ByteBuffer> common,
@@ -87,10 +110,11 @@ public final class MessageChannels {
 		final Factory<ByteBuffer> factory = common.getFactory(codec.getBodyLength());
 		final MessageBufferProvider<ByteBuffer> provider = common.getProvider(factory);
 		final KeyProcessor<ByteBuffer> processor = new TCPProcessor(codec, limiter, provider,
-				common.getSendBufferSize(), common.getReceiveBufferSize());
+				common.getSendBufferSize(), common.getReceiveBufferSize(), common.getSendBatchDelay(),
+				common.getIOBufferPool(), common.isSharedReadBuffer());
 		final SelectorExecutor executor = common.getPool().next();
 		final TCPChannel<ByteBuffer> channel = new TCPChannel<>(executor, processor);
-		channel.open();
+		channel.open(common.getSocketOptions());
 		return channel;
 	}
 
@@ -120,7 +144,7 @@ public final class MessageChannels {
 				common.getSendBufferSize(), common.getReceiveBufferSize(), engine);
 		final SelectorExecutor executor = common.getPool().next();
 		final TCPChannel<ByteBuffer> channel = new TCPChannel<>(executor, processor);
-		channel.open();
+		channel.open(common.getSocketOptions());
 		return channel;
 	}
 
@@ -142,7 +166,7 @@ public final class MessageChannels {
 		final KeyProcessor<ByteBuffer> processor = new UDPProcessor(codec, limiter, provider);
 		final SelectorPool pool = common.getPool();
 		final UDPChannel<ByteBuffer> channel = new UDPChannel<>(pool, processor);
-		channel.open();
+		channel.open(common.getSocketOptions());
 		return channel;
 	}
 
@@ -203,6 +227,14 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#setSocketOptions(SocketOptions)
+		 */
+		public TCPChannelBuilder setSocketOptions(final SocketOptions options) {
+			common.setSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useDirectBuffer()
 		 */
@@ -235,6 +267,78 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#usePooledBuffers(MessagePool)
+		 */
+		public TCPChannelBuilder usePooledBuffers(final MessagePool<ByteBuffer> pool) {
+			common.usePooledBuffers(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSlabBuffers(SlabRegion)
+		 */
+		public TCPChannelBuilder useSlabBuffers(final SlabRegion region) {
+			common.useSlabBuffers(region);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#usePreallocatedBuffers()
+		 */
+		public TCPChannelBuilder usePreallocatedBuffers() {
+			common.usePreallocatedBuffers();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setWatermarks(int, int, WatermarkListener)
+		 */
+		public TCPChannelBuilder setWatermarks(final int low, final int high, final WatermarkListener listener) {
+			common.setWatermarks(low, high, listener);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency()
+		 */
+		public TCPChannelBuilder trackLatency() {
+			common.trackLatency();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency(LatencyRecorder, LatencyRecorder)
+		 */
+		public TCPChannelBuilder trackLatency(final LatencyRecorder send, final LatencyRecorder receive) {
+			common.trackLatency(send, receive);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setSendBatching(long, TimeUnit)
+		 */
+		public TCPChannelBuilder setSendBatching(final long maxDelay, final TimeUnit unit) {
+			common.setSendBatching(maxDelay, unit);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useIOBufferPool(ByteBufferPool)
+		 */
+		public TCPChannelBuilder useIOBufferPool(final ByteBufferPool pool) {
+			common.useIOBufferPool(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSharedReadBuffer()
+		 */
+		public TCPChannelBuilder useSharedReadBuffer() {
+			common.useSharedReadBuffer();
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useSingleInputBuffer()
 		 */
@@ -291,6 +395,14 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ClientConfig#setRateLimit(long, BinaryUnit, long, long)
+		 */
+		public TCPChannelBuilder setRateLimit(final long value, final BinaryUnit unit, final long messages, final long burst) {
+			client.setRateLimit(value, unit, messages, burst);
+			return this;
+		}
+
 		public MessageChannel<ByteBuffer> open() throws IOException {
 			return openTCPChannel(common, client);
 		}
@@ -343,6 +455,14 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#setSocketOptions(SocketOptions)
+		 */
+		public SSLChannelBuilder setSocketOptions(final SocketOptions options) {
+			common.setSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useDirectBuffer()
 		 */
@@ -375,6 +495,54 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#usePooledBuffers(MessagePool)
+		 */
+		public SSLChannelBuilder usePooledBuffers(final MessagePool<ByteBuffer> pool) {
+			common.usePooledBuffers(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSlabBuffers(SlabRegion)
+		 */
+		public SSLChannelBuilder useSlabBuffers(final SlabRegion region) {
+			common.useSlabBuffers(region);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#usePreallocatedBuffers()
+		 */
+		public SSLChannelBuilder usePreallocatedBuffers() {
+			common.usePreallocatedBuffers();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setWatermarks(int, int, WatermarkListener)
+		 */
+		public SSLChannelBuilder setWatermarks(final int low, final int high, final WatermarkListener listener) {
+			common.setWatermarks(low, high, listener);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency()
+		 */
+		public SSLChannelBuilder trackLatency() {
+			common.trackLatency();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency(LatencyRecorder, LatencyRecorder)
+		 */
+		public SSLChannelBuilder trackLatency(final LatencyRecorder send, final LatencyRecorder receive) {
+			common.trackLatency(send, receive);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useSingleInputBuffer()
 		 */
@@ -431,6 +599,14 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ClientConfig#setRateLimit(long, BinaryUnit, long, long)
+		 */
+		public SSLChannelBuilder setRateLimit(final long value, final BinaryUnit unit, final long messages, final long burst) {
+			client.setRateLimit(value, unit, messages, burst);
+			return this;
+		}
+
 		/**
 		 * @see SSLConfig#setContext(SSLContext)
 		 */
@@ -489,6 +665,14 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#setSocketOptions(SocketOptions)
+		 */
+		public UDPChannelBuilder setSocketOptions(final SocketOptions options) {
+			common.setSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useDirectBuffer()
 		 */
@@ -521,6 +705,54 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#usePooledBuffers(MessagePool)
+		 */
+		public UDPChannelBuilder usePooledBuffers(final MessagePool<ByteBuffer> pool) {
+			common.usePooledBuffers(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSlabBuffers(SlabRegion)
+		 */
+		public UDPChannelBuilder useSlabBuffers(final SlabRegion region) {
+			common.useSlabBuffers(region);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#usePreallocatedBuffers()
+		 */
+		public UDPChannelBuilder usePreallocatedBuffers() {
+			common.usePreallocatedBuffers();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setWatermarks(int, int, WatermarkListener)
+		 */
+		public UDPChannelBuilder setWatermarks(final int low, final int high, final WatermarkListener listener) {
+			common.setWatermarks(low, high, listener);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency()
+		 */
+		public UDPChannelBuilder trackLatency() {
+			common.trackLatency();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency(LatencyRecorder, LatencyRecorder)
+		 */
+		public UDPChannelBuilder trackLatency(final LatencyRecorder send, final LatencyRecorder receive) {
+			common.trackLatency(send, receive);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useSingleInputBuffer()
 		 */
@@ -577,6 +809,14 @@ public final class MessageChannels {
 			return this;
 		}
 
+		/**
+		 * @see ClientConfig#setRateLimit(long, BinaryUnit, long, long)
+		 */
+		public UDPChannelBuilder setRateLimit(final long value, final BinaryUnit unit, final long messages, final long burst) {
+			client.setRateLimit(value, unit, messages, burst);
+			return this;
+		}
+
 		public MessageChannel<ByteBuffer> open() throws IOException {
 			return openUDPChannel(common, client);
 		}
@@ -18,6 +18,7 @@ package net.dsys.snio.impl.channel;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.net.ssl.SSLContext;
@@ -26,11 +27,16 @@ import net.dsys.commons.api.lang.BinaryUnit;
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.MessagePool;
+import net.dsys.snio.api.buffer.WatermarkListener;
 import net.dsys.snio.api.channel.MessageServerChannel;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
 import net.dsys.snio.api.pool.KeyAcceptor;
 import net.dsys.snio.api.pool.SelectorPool;
+import net.dsys.snio.impl.buffer.ByteBufferPool;
+import net.dsys.snio.impl.buffer.LatencyRecorder;
+import net.dsys.snio.impl.buffer.SlabRegion;
 import net.dsys.snio.impl.channel.builder.ChannelConfig;
 import net.dsys.snio.impl.channel.builder.SSLConfig;
 import net.dsys.snio.impl.channel.builder.ServerConfig;
@@ -63,9 +69,10 @@ public final class MessageServerChannels {
 		final Factory<MessageBufferProvider<ByteBuffer>> provider = common.getProviderFactory(factory);
 		final SelectorPool pool = common.getPool();
 		final KeyAcceptor<ByteBuffer> acceptor = new TCPAcceptor(pool, codecs, limiters, provider,
-				common.getSendBufferSize(), common.getReceiveBufferSize());
+				common.getSendBufferSize(), common.getReceiveBufferSize(), common.getSendBatchDelay(),
+				common.getIOBufferPool(), common.isSharedReadBuffer(), common.getSocketOptions());
 		final TCPServerChannel<ByteBuffer> channel = new TCPServerChannel<>(pool, acceptor);
-		channel.open();
+		channel.open(server.getServerSocketOptions());
 		return channel;
 	}
 
@@ -90,9 +97,10 @@ public final class MessageServerChannels {
 		final Factory<MessageBufferProvider<ByteBuffer>> provider = common.getProviderFactory(factory);
 		final SelectorPool pool = common.getPool();
 		final KeyAcceptor<ByteBuffer> acceptor = new SSLAcceptor(pool, codecs, limiters, provider,
-				common.getSendBufferSize(), common.getReceiveBufferSize(), ssl.getContext());
+				common.getSendBufferSize(), common.getReceiveBufferSize(), ssl.getContext(),
+				common.getSocketOptions());
 		final TCPServerChannel<ByteBuffer> channel = new TCPServerChannel<>(pool, acceptor);
-		channel.open();
+		channel.open(server.getServerSocketOptions());
 		return channel;
 	}
 
@@ -149,6 +157,14 @@ public final class MessageServerChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#setSocketOptions(SocketOptions)
+		 */
+		public TCPServerChannelBuilder setSocketOptions(final SocketOptions options) {
+			common.setSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useDirectBuffer()
 		 */
@@ -181,6 +197,78 @@ public final class MessageServerChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#usePooledBuffers(MessagePool)
+		 */
+		public TCPServerChannelBuilder usePooledBuffers(final MessagePool<ByteBuffer> pool) {
+			common.usePooledBuffers(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSlabBuffers(SlabRegion)
+		 */
+		public TCPServerChannelBuilder useSlabBuffers(final SlabRegion region) {
+			common.useSlabBuffers(region);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#usePreallocatedBuffers()
+		 */
+		public TCPServerChannelBuilder usePreallocatedBuffers() {
+			common.usePreallocatedBuffers();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setWatermarks(int, int, WatermarkListener)
+		 */
+		public TCPServerChannelBuilder setWatermarks(final int low, final int high, final WatermarkListener listener) {
+			common.setWatermarks(low, high, listener);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency()
+		 */
+		public TCPServerChannelBuilder trackLatency() {
+			common.trackLatency();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency(LatencyRecorder, LatencyRecorder)
+		 */
+		public TCPServerChannelBuilder trackLatency(final LatencyRecorder send, final LatencyRecorder receive) {
+			common.trackLatency(send, receive);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setSendBatching(long, TimeUnit)
+		 */
+		public TCPServerChannelBuilder setSendBatching(final long maxDelay, final TimeUnit unit) {
+			common.setSendBatching(maxDelay, unit);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useIOBufferPool(ByteBufferPool)
+		 */
+		public TCPServerChannelBuilder useIOBufferPool(final ByteBufferPool pool) {
+			common.useIOBufferPool(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSharedReadBuffer()
+		 */
+		public TCPServerChannelBuilder useSharedReadBuffer() {
+			common.useSharedReadBuffer();
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useSingleInputBuffer()
 		 */
@@ -237,6 +325,38 @@ public final class MessageServerChannels {
 			return this;
 		}
 
+		/**
+		 * @see ServerConfig#setRateLimit(long, BinaryUnit, long, long)
+		 */
+		public TCPServerChannelBuilder setRateLimit(final long value, final BinaryUnit unit, final long messages, final long burst) {
+			server.setRateLimit(value, unit, messages, burst);
+			return this;
+		}
+
+		/**
+		 * @see ServerConfig#setSharedRateLimiter(RateLimiter)
+		 */
+		public TCPServerChannelBuilder setSharedRateLimiter(final RateLimiter shared) {
+			server.setSharedRateLimiter(shared);
+			return this;
+		}
+
+		/**
+		 * @see ServerConfig#setSharedRateLimit(long, BinaryUnit)
+		 */
+		public TCPServerChannelBuilder setSharedRateLimit(final long value, final BinaryUnit unit) {
+			server.setSharedRateLimit(value, unit);
+			return this;
+		}
+
+		/**
+		 * @see ServerConfig#setServerSocketOptions(SocketOptions)
+		 */
+		public TCPServerChannelBuilder setServerSocketOptions(final SocketOptions options) {
+			server.setServerSocketOptions(options);
+			return this;
+		}
+
 		public MessageServerChannel<ByteBuffer> open() throws IOException {
 			return openTCPServerChannel(common, server);
 		}
@@ -289,6 +409,14 @@ public final class MessageServerChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#setSocketOptions(SocketOptions)
+		 */
+		public SSLServerChannelBuilder setSocketOptions(final SocketOptions options) {
+			common.setSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useDirectBuffer()
 		 */
@@ -321,6 +449,54 @@ public final class MessageServerChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#usePooledBuffers(MessagePool)
+		 */
+		public SSLServerChannelBuilder usePooledBuffers(final MessagePool<ByteBuffer> pool) {
+			common.usePooledBuffers(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSlabBuffers(SlabRegion)
+		 */
+		public SSLServerChannelBuilder useSlabBuffers(final SlabRegion region) {
+			common.useSlabBuffers(region);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#usePreallocatedBuffers()
+		 */
+		public SSLServerChannelBuilder usePreallocatedBuffers() {
+			common.usePreallocatedBuffers();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setWatermarks(int, int, WatermarkListener)
+		 */
+		public SSLServerChannelBuilder setWatermarks(final int low, final int high, final WatermarkListener listener) {
+			common.setWatermarks(low, high, listener);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency()
+		 */
+		public SSLServerChannelBuilder trackLatency() {
+			common.trackLatency();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency(LatencyRecorder, LatencyRecorder)
+		 */
+		public SSLServerChannelBuilder trackLatency(final LatencyRecorder send, final LatencyRecorder receive) {
+			common.trackLatency(send, receive);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useSingleInputBuffer()
 		 */
@@ -377,6 +553,38 @@ public final class MessageServerChannels {
 			return this;
 		}
 
+		/**
+		 * @see ServerConfig#setRateLimit(long, BinaryUnit, long, long)
+		 */
+		public SSLServerChannelBuilder setRateLimit(final long value, final BinaryUnit unit, final long messages, final long burst) {
+			server.setRateLimit(value, unit, messages, burst);
+			return this;
+		}
+
+		/**
+		 * @see ServerConfig#setSharedRateLimiter(RateLimiter)
+		 */
+		public SSLServerChannelBuilder setSharedRateLimiter(final RateLimiter shared) {
+			server.setSharedRateLimiter(shared);
+			return this;
+		}
+
+		/**
+		 * @see ServerConfig#setSharedRateLimit(long, BinaryUnit)
+		 */
+		public SSLServerChannelBuilder setSharedRateLimit(final long value, final BinaryUnit unit) {
+			server.setSharedRateLimit(value, unit);
+			return this;
+		}
+
+		/**
+		 * @see ServerConfig#setServerSocketOptions(SocketOptions)
+		 */
+		public SSLServerChannelBuilder setServerSocketOptions(final SocketOptions options) {
+			server.setServerSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see SSLConfig#setContext(SSLContext)
 		 */
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.channel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.snio.api.channel.ChannelMetrics;
+import net.dsys.snio.api.channel.LatencyHistogram;
+
+/**
+ * Counters of a processor. The read side is only updated by the reader
+ * thread and the write side only by the writer thread, so both are published
+ * with {@link AtomicLongArray#lazySet(int, long)}, and kept apart to avoid
+ * false sharing.
+ *
+ * @author Ricardo Padilha
+ */
+final class ProcessorMetrics implements ChannelMetrics {
+
+	private static final int PADDING = 8;
+	private static final int BYTES_READ = 0;
+	private static final int DECODED = 1;
+	private static final int BYTES_WRITTEN = PADDING;
+	private static final int ENCODED = PADDING + 1;
+
+	private final AtomicLongArray counters;
+	private final LatencyHistogram sendLatency;
+	private final LatencyHistogram receiveLatency;
+
+	ProcessorMetrics(@Nonnull(when = When.MAYBE) final LatencyHistogram sendLatency,
+			@Nonnull(when = When.MAYBE) final LatencyHistogram receiveLatency) {
+		this.counters = new AtomicLongArray(2 * PADDING);
+		this.sendLatency = sendLatency;
+		this.receiveLatency = receiveLatency;
+	}
+
+	private void add(final int counter, final long value) {
+		if (value > 0) {
+			counters.lazySet(counter, counters.get(counter) + value);
+		}
+	}
+
+	/**
+	 * Only called from within the reader thread.
+	 */
+	void received(@Nonnegative final long bytes, @Nonnegative final long messages) {
+		add(BYTES_READ, bytes);
+		add(DECODED, messages);
+	}
+
+	/**
+	 * Only called from within the writer thread.
+	 */
+	void sent(@Nonnegative final long bytes, @Nonnegative final long messages) {
+		add(BYTES_WRITTEN, bytes);
+		add(ENCODED, messages);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBytesRead() {
+		return counters.get(BYTES_READ);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBytesWritten() {
+		return counters.get(BYTES_WRITTEN);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getMessagesDecoded() {
+		return counters.get(DECODED);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getMessagesEncoded() {
+		return counters.get(ENCODED);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LatencyHistogram getSendLatency() {
+		return sendLatency;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LatencyHistogram getReceiveLatency() {
+		return receiveLatency;
+	}
+}
@@ -63,6 +63,8 @@ final class SSLAcceptor implements KeyAcceptor<ByteBuffer> {
 	@Nonnull
 	private final SSLContext context;
 	@Nonnull
+	private final SocketOptions options;
+	@Nonnull
 	private final SettableCallbackFuture<Void> bindFuture;
 	@Nonnull
 	private final SettableCallbackFuture<Void> closeFuture;
@@ -78,7 +80,8 @@ final class SSLAcceptor implements KeyAcceptor<ByteBuffer> {
 			@Nonnull final Factory<MessageBufferProvider<ByteBuffer>> providers,
 			@Nonnegative final int sendSize,
 			@Nonnegative final int receiveSize,
-			@Nonnull final SSLContext context) {
+			@Nonnull final SSLContext context,
+			@Nonnull final SocketOptions options) {
 		if (pool == null) {
 			throw new NullPointerException("pool == null");
 		}
@@ -100,6 +103,9 @@ final class SSLAcceptor implements KeyAcceptor<ByteBuffer> {
 		if (context == null) {
 			throw new NullPointerException("context == null");
 		}
+		if (options == null) {
+			throw new NullPointerException("options == null");
+		}
 		this.pool = pool;
 		this.codecs = codecs;
 		this.limiters = limiters;
@@ -107,6 +113,7 @@ final class SSLAcceptor implements KeyAcceptor<ByteBuffer> {
 		this.sendSize = sendSize;
 		this.receiveSize = receiveSize;
 		this.context = context;
+		this.options = options;
 		this.bindFuture = new SettableCallbackFuture<>();
 		this.closeFuture = new SettableCallbackFuture<>();
 		this.accept = MessageChannels.dummyAcceptListener();
@@ -165,16 +172,31 @@ final class SSLAcceptor implements KeyAcceptor<ByteBuffer> {
 	public void accept(final SelectionKey key) throws IOException {
 		final ServerSocketChannel server = (ServerSocketChannel) key.channel();
 		final SocketChannel client = server.accept();
-		client.configureBlocking(false);
-
-		final MessageCodec codec = codecs.newInstance();
-		final RateLimiter limiter = limiters.newInstance();
-		final MessageBufferProvider<ByteBuffer> provider = providers.newInstance();
-		final SSLEngine engine = context.createSSLEngine();
-		engine.setUseClientMode(false);
-		final SSLProcessor processor = new SSLProcessor(codec, limiter, provider, sendSize, receiveSize, engine);
-		final TCPChannel<ByteBuffer> channel = new TCPChannel<>(pool.next(), processor, client, close);
-		channel.open();
+		if (client == null) {
+			// the connection went away, or the key was selected spuriously
+			return;
+		}
+		MessageBufferProvider<ByteBuffer> provider = null;
+		final TCPChannel<ByteBuffer> channel;
+		try {
+			client.configureBlocking(false);
+
+			final MessageCodec codec = codecs.newInstance();
+			final RateLimiter limiter = limiters.newInstance();
+			provider = providers.newInstance();
+			final SSLEngine engine = context.createSSLEngine();
+			engine.setUseClientMode(false);
+			final SSLProcessor processor = new SSLProcessor(codec, limiter, provider, sendSize, receiveSize, engine);
+			channel = new TCPChannel<>(pool.next(), processor, client, close);
+			channel.open(options);
+		} catch (final IOException | RuntimeException e) {
+			// the channel was never registered, so nothing else releases these
+			if (provider != null) {
+				provider.close();
+			}
+			client.close();
+			throw e;
+		}
 		channel.register();
 		final Future<Void> future = channel.getConnectFuture();
 		try {
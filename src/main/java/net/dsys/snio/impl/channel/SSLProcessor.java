@@ -41,6 +41,7 @@ import net.dsys.commons.impl.future.SettableCallbackFuture;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.SkippedPosition;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
 
@@ -66,7 +67,16 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 	private ByteBuffer sendBuffer;
 	private ByteBuffer preSendBuffer;
 	private ByteBuffer postReceiveBuffer;
+	// messages decoded since the limiter was last charged
+	private int decoded;
+
+	// the writer thread updates writeSequence for every message, while the
+	// reader thread reads the fields above: keep it on its own cache line
+	@SuppressWarnings("unused")
+	private long p1, p2, p3, p4, p5, p6, p7;
 	private long writeSequence;
+	@SuppressWarnings("unused")
+	private long p9, p10, p11, p12, p13, p14, p15;
 
 	private volatile SettableCallbackFuture<Void> closeFuture;
 	private volatile Callable<Void> closeTask;
@@ -162,9 +172,14 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 		if (closed) {
 			return 0;
 		}
+		if (isReaderSuspended()) {
+			// messages left over from the last read come first
+			if (!decode()) {
+				return 0;
+			}
+			resumeReader();
+		}
 		final SocketChannel channel = (SocketChannel) key.channel();
-		final MessageBufferProducer<ByteBuffer> chnOut = getChannelOutput();
-		final MessageBufferProducer<ByteBuffer> appOut = getOutputBuffer();
 		final long n = channel.read(receiveBuffer);
 		if (n <= 0) {
 			// (n < 0) means channel closed from the other side
@@ -172,8 +187,6 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 			return n;
 		}
 
-		limiter.receive(n);
-
 		receiveBuffer.flip();
 
 		// SSL handling
@@ -240,20 +253,48 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 				}
 			}
 		}
-		postReceiveBuffer.flip();
+		final boolean more = decode();
+		received(n, decoded);
+		final long delay = Math.max(limiter.tryReceive(n), limiter.tryReceiveMessages(decoded));
+		decoded = 0;
+		// decode() suspends reads on its own if the application is full
+		if (more && delay > 0) {
+			throttleReader(delay);
+		}
+		if (closed) {
+			return -1;
+		}
+		return n;
+	}
 
+	/**
+	 * Decodes as many messages as the application input can take. Instead of
+	 * blocking the reader thread when it is full, reads are suspended and
+	 * the remaining messages are kept in {@link #postReceiveBuffer}.
+	 * 
+	 * @return <code>false</code> if reads were suspended
+	 */
+	private boolean decode() throws IOException {
+		final MessageBufferProducer<ByteBuffer> chnOut = getChannelOutput();
+		boolean full = false;
+		postReceiveBuffer.flip();
 		while (codec.hasNext(postReceiveBuffer)) {
 			try {
-				final long sequence = chnOut.acquire();
+				final long sequence = chnOut.tryAcquire();
+				if (sequence == MessageBufferProducer.NO_SEQUENCE) {
+					full = true;
+					break;
+				}
 				try {
-					final ByteBuffer msg = chnOut.get(sequence);
+					final ByteBuffer msg = chnOut.get(sequence, getDecodedLength(codec, postReceiveBuffer));
 					msg.clear();
 					codec.get(postReceiveBuffer, msg);
 					msg.flip();
-					chnOut.attach(sequence, appOut);
+					attachOutputBuffer(sequence);
 				} finally {
 					chnOut.release(sequence);
 				}
+				decoded++;
 			} catch (final InterruptedException e) {
 				throw new IOException(e);
 			}
@@ -263,10 +304,11 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 		} else {
 			postReceiveBuffer.clear();
 		}
-		if (closed) {
-			return -1;
+		if (full) {
+			suspendReader();
+			return false;
 		}
-		return n;
+		return true;
 	}
 
 	/**
@@ -280,12 +322,18 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 		final SocketChannel channel = (SocketChannel) key.channel();
 
 		final MessageBufferConsumer<ByteBuffer> chnIn = getChannelInput();
+		int encoded = 0;
 		try {
 			long k = chnIn.remaining();
 			while (--k >= 0) {
 				if (writeSequence == NO_SEQUENCE) {
 					writeSequence = chnIn.acquire();
 				}
+				if (SkippedPosition.isSkipped(chnIn, writeSequence)) {
+					chnIn.release(writeSequence);
+					writeSequence = NO_SEQUENCE;
+					continue;
+				}
 				final ByteBuffer msg = chnIn.get(writeSequence);
 				final int msglen = codec.getEncodedLength(msg);
 				if (msglen > preSendBuffer.capacity()) {
@@ -299,6 +347,7 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 				msg.clear();
 				chnIn.release(writeSequence);
 				writeSequence = NO_SEQUENCE;
+				encoded++;
 			}
 		} catch (final InterruptedException e) {
 			throw new IOException(e);
@@ -368,15 +417,18 @@ final class SSLProcessor extends AbstractProcessor<ByteBuffer> {
 		}
 		sendBuffer.flip();
 
-		limiter.send(sendBuffer.remaining());
-
 		final int n = channel.write(sendBuffer);
+		sent(n, encoded);
+		final long delay = Math.max(limiter.trySend(n), limiter.trySendMessages(encoded));
+		if (delay > 0) {
+			throttleWriter(delay);
+		}
 		if (sendBuffer.remaining() > 0) {
 			sendBuffer.compact();
 			return n;
 		}
 		sendBuffer.clear();
-		if (chnIn.remaining() == 0) {
+		if (delay == 0 && chnIn.remaining() == 0) {
 			disableWriter();
 		}
 		if (closed) {
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.channel;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+/**
+ * Set of socket options applied to every socket of a channel before it is
+ * registered, i.e., right after it is opened on connect, and right after it
+ * is accepted on the server side. Options that a socket does not support are
+ * skipped, so the same set can be used for server sockets and for the
+ * sockets they accept.
+ * <p>
+ * Linux-specific options are looked up in {@code jdk.net.ExtendedSocketOptions}.
+ * Their setters throw {@link UnsupportedOperationException} if the running JDK
+ * does not provide them, which {@link #isSupported(String)} checks
+ * beforehand. Options that no JDK provides, e.g., TCP_USER_TIMEOUT or
+ * SO_BUSY_POLL, have no setter: use {@link #set(SocketOption, Object)} with
+ * an option from another provider instead.
+ *
+ * @author Ricardo Padilha
+ */
+public final class SocketOptions {
+
+	private static final String EXTENDED_OPTIONS = "jdk.net.ExtendedSocketOptions";
+
+	private final Map<SocketOption<?>, Object> options;
+
+	public SocketOptions() {
+		this.options = new LinkedHashMap<>();
+	}
+
+	@Nonnull
+	public <E> SocketOptions set(@Nonnull final SocketOption<E> name, @Nonnull final E value) {
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		if (value == null) {
+			throw new NullPointerException("value == null");
+		}
+		options.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Disables Nagle's algorithm, which otherwise delays small writes while
+	 * the peer delays its acknowledgements.
+	 */
+	@Nonnull
+	public SocketOptions setTcpNoDelay(final boolean on) {
+		return set(StandardSocketOptions.TCP_NODELAY, Boolean.valueOf(on));
+	}
+
+	@Nonnull
+	public SocketOptions setKeepAlive(final boolean on) {
+		return set(StandardSocketOptions.SO_KEEPALIVE, Boolean.valueOf(on));
+	}
+
+	@Nonnull
+	public SocketOptions setReuseAddress(final boolean on) {
+		return set(StandardSocketOptions.SO_REUSEADDR, Boolean.valueOf(on));
+	}
+
+	/**
+	 * Size of the kernel send buffer, not to be confused with the send buffer
+	 * of the channel itself.
+	 */
+	@Nonnull
+	public SocketOptions setSendBufferSize(@Nonnegative final int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size < 1");
+		}
+		return set(StandardSocketOptions.SO_SNDBUF, Integer.valueOf(size));
+	}
+
+	/**
+	 * Size of the kernel receive buffer. To have any effect on the TCP window
+	 * of accepted sockets, it must also be set on the server socket.
+	 */
+	@Nonnull
+	public SocketOptions setReceiveBufferSize(@Nonnegative final int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size < 1");
+		}
+		return set(StandardSocketOptions.SO_RCVBUF, Integer.valueOf(size));
+	}
+
+	/**
+	 * @param seconds
+	 *            a negative value disables the option
+	 */
+	@Nonnull
+	public SocketOptions setLinger(final int seconds) {
+		return set(StandardSocketOptions.SO_LINGER, Integer.valueOf(seconds));
+	}
+
+	@Nonnull
+	public SocketOptions setTrafficClass(final int tos) {
+		return set(StandardSocketOptions.IP_TOS, Integer.valueOf(tos));
+	}
+
+	/**
+	 * Linux only. Note that the kernel may leave quick ack mode on its own.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if this JDK does not provide TCP_QUICKACK
+	 */
+	@Nonnull
+	public SocketOptions setQuickAck(final boolean on) {
+		return setExtended("TCP_QUICKACK", Boolean.valueOf(on));
+	}
+
+	@Nonnull
+	private SocketOptions setExtended(@Nonnull final String name, @Nonnull final Object value) {
+		final SocketOption<?> option = getExtendedOption(name);
+		if (option == null) {
+			throw new UnsupportedOperationException(name + " is not provided by this JDK");
+		}
+		options.put(option, value);
+		return this;
+	}
+
+	/**
+	 * @param name
+	 *            of a Linux-specific option, e.g., "TCP_QUICKACK"
+	 * @return <code>true</code> if the running JDK provides the option, so
+	 *         that its setter can be used
+	 */
+	public static boolean isSupported(@Nonnull final String name) {
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		return getExtendedOption(name) != null;
+	}
+
+	/**
+	 * Sets all options supported by the given channel.
+	 */
+	public void apply(@Nonnull final NetworkChannel channel) throws IOException {
+		if (channel == null) {
+			throw new NullPointerException("channel == null");
+		}
+		if (options.isEmpty()) {
+			return;
+		}
+		final Set<SocketOption<?>> supported = channel.supportedOptions();
+		for (final Entry<SocketOption<?>, Object> option : options.entrySet()) {
+			if (supported.contains(option.getKey())) {
+				setOption(channel, option.getKey(), option.getValue());
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E> void setOption(@Nonnull final NetworkChannel channel, @Nonnull final SocketOption<E> name,
+			@Nonnull final Object value) throws IOException {
+		channel.setOption(name, (E) value);
+	}
+
+	/**
+	 * @return the option with the given name, or <code>null</code> if this JDK
+	 *         does not provide it
+	 */
+	@Nonnull(when = When.MAYBE)
+	private static SocketOption<?> getExtendedOption(@Nonnull final String name) {
+		try {
+			final Object option = Class.forName(EXTENDED_OPTIONS).getField(name).get(null);
+			if (option instanceof SocketOption) {
+				return (SocketOption<?>) option;
+			}
+			return null;
+		} catch (final ReflectiveOperationException | SecurityException e) {
+			return null;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import java.util.concurrent.Future;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 import net.dsys.commons.api.future.CallbackFuture;
 import net.dsys.commons.api.lang.Factory;
@@ -40,6 +41,7 @@ import net.dsys.snio.api.pool.KeyAcceptor;
 import net.dsys.snio.api.pool.SelectorExecutor;
 import net.dsys.snio.api.pool.SelectorPool;
 import net.dsys.snio.api.pool.SelectorThread;
+import net.dsys.snio.impl.buffer.ByteBufferPool;
 
 /**
  * @author Ricardo Padilha
@@ -58,6 +60,13 @@ final class TCPAcceptor implements KeyAcceptor<ByteBuffer> {
 	private final int sendSize;
 	@Nonnull
 	private final int receiveSize;
+	@Nonnegative
+	private final long batchDelay;
+	@Nonnull(when = When.MAYBE)
+	private final ByteBufferPool ioPool;
+	private final boolean sharedRead;
+	@Nonnull
+	private final SocketOptions options;
 	@Nonnull
 	private final SettableCallbackFuture<Void> bindFuture;
 	@Nonnull
@@ -74,10 +83,17 @@ final class TCPAcceptor implements KeyAcceptor<ByteBuffer> {
 			@Nonnull final Factory<RateLimiter> limiters,
 			@Nonnull final Factory<MessageBufferProvider<ByteBuffer>> providers,
 			@Nonnegative final int sendSize,
-			@Nonnegative final int receiveSize) {
+			@Nonnegative final int receiveSize,
+			@Nonnegative final long batchDelay,
+			@Nonnull(when = When.MAYBE) final ByteBufferPool ioPool,
+			final boolean sharedRead,
+			@Nonnull final SocketOptions options) {
 		if (pool == null) {
 			throw new NullPointerException("pool == null");
 		}
+		if (options == null) {
+			throw new NullPointerException("options == null");
+		}
 		if (codecs == null) {
 			throw new IllegalArgumentException("codecs == null");
 		}
@@ -93,12 +109,19 @@ final class TCPAcceptor implements KeyAcceptor<ByteBuffer> {
 		if (receiveSize < 1) {
 			throw new IllegalArgumentException("receiveSize < 1");
 		}
+		if (batchDelay < 0) {
+			throw new IllegalArgumentException("batchDelay < 0");
+		}
 		this.pool = pool;
 		this.codecs = codecs;
 		this.limiters = limiters;
 		this.providers = providers;
 		this.sendSize = sendSize;
 		this.receiveSize = receiveSize;
+		this.batchDelay = batchDelay;
+		this.ioPool = ioPool;
+		this.sharedRead = sharedRead;
+		this.options = options;
 		this.bindFuture = new SettableCallbackFuture<>();
 		this.closeFuture = new SettableCallbackFuture<>();
 		this.accept = MessageChannels.dummyAcceptListener();
@@ -157,14 +180,30 @@ final class TCPAcceptor implements KeyAcceptor<ByteBuffer> {
 	public void accept(final SelectionKey key) throws IOException {
 		final ServerSocketChannel server = (ServerSocketChannel) key.channel();
 		final SocketChannel client = server.accept();
-		client.configureBlocking(false);
-
-		final MessageCodec codec = codecs.newInstance();
-		final RateLimiter limiter = limiters.newInstance();
-		final MessageBufferProvider<ByteBuffer> provider = providers.newInstance();
-		final TCPProcessor processor = new TCPProcessor(codec, limiter, provider, sendSize, receiveSize);
-		final TCPChannel<ByteBuffer> channel = new TCPChannel<>(pool.next(), processor, client, close);
-		channel.open();
+		if (client == null) {
+			// the connection went away, or the key was selected spuriously
+			return;
+		}
+		MessageBufferProvider<ByteBuffer> provider = null;
+		final TCPChannel<ByteBuffer> channel;
+		try {
+			client.configureBlocking(false);
+
+			final MessageCodec codec = codecs.newInstance();
+			final RateLimiter limiter = limiters.newInstance();
+			provider = providers.newInstance();
+			final TCPProcessor processor = new TCPProcessor(codec, limiter, provider, sendSize, receiveSize,
+					batchDelay, ioPool, sharedRead);
+			channel = new TCPChannel<>(pool.next(), processor, client, close);
+			channel.open(options);
+		} catch (final IOException | RuntimeException e) {
+			// the channel was never registered, so nothing else releases these
+			if (provider != null) {
+				provider.close();
+			}
+			client.close();
+			throw e;
+		}
 		channel.register();
 		final Future<Void> future = channel.getConnectFuture();
 		try {
@@ -111,11 +111,16 @@ final class TCPChannel<T> implements MessageChannel<T>, Processor {
 		return this;
 	}
 
-	void open() throws IOException {
+	/**
+	 * Options are applied before the channel is registered, both for client
+	 * and for accepted channels.
+	 */
+	void open(@Nonnull final SocketOptions options) throws IOException {
 		if (channel == null) {
 			channel = SocketChannel.open();
 			channel.configureBlocking(false);
 		}
+		options.apply(channel);
 	}
 
 	/**
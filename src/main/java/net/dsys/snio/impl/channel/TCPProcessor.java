@@ -22,25 +22,33 @@ import java.nio.channels.NoConnectionPendingException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 import net.dsys.commons.api.exception.Bug;
 import net.dsys.commons.impl.future.SettableCallbackFuture;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.SkippedPosition;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
+import net.dsys.snio.impl.buffer.ByteBufferPool;
 
 /**
  * @author Ricardo Padilha
  */
-final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
+final class TCPProcessor extends TCPRhsPadding {
 
 	private static final int NO_SEQUENCE = -1;
+	private static final long NO_TIME = -1;
 	private static final ByteBuffer DUMMY_BUFFER = ByteBuffer.allocate(0);
+	private static final int MIN_POOLED_SIZE = 4096;
+	// pooled buffers go back once a connection stays this long without traffic
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
 
 	@Nonnull
 	private final MessageCodec codec;
@@ -50,18 +58,26 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 	private final int sendSize;
 	@Nonnegative
 	private final int receiveSize;
-
-	@Nonnull
-	private ByteBuffer receiveBuffer;
-	@Nonnull
-	private ByteBuffer sendBuffer;
-	private long writeSequence;
+	@Nonnegative
+	private final long batchDelay;
+	@Nonnull(when = When.MAYBE)
+	private final ByteBufferPool ioPool;
+	@Nonnegative
+	private final int minSize;
+	// writes below this size are small, whatever the current buffer size
+	@Nonnegative
+	private final int smallWrite;
+	private final boolean sharedRead;
+	private final boolean pooledReceive;
 
 	TCPProcessor(@Nonnull final MessageCodec codec,
 			@Nonnull final RateLimiter limiter,
 			@Nonnull final MessageBufferProvider<ByteBuffer> provider,
 			@Nonnegative final int sendBufferSize,
-			@Nonnegative final int receiveBufferSize) {
+			@Nonnegative final int receiveBufferSize,
+			@Nonnegative final long batchDelay,
+			@Nonnull(when = When.MAYBE) final ByteBufferPool ioPool,
+			final boolean sharedRead) {
 		super(provider);
 		if (codec == null) {
 			throw new NullPointerException("codec == null");
@@ -69,9 +85,22 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 		if (limiter == null) {
 			throw new NullPointerException("limiter == null");
 		}
+		if (batchDelay < 0) {
+			throw new IllegalArgumentException("batchDelay < 0");
+		}
 
-		final int sendSize = nearestPowerOfTwo(Math.max(sendBufferSize, codec.getFrameLength()));
-		final int receiveSize = nearestPowerOfTwo(Math.max(receiveBufferSize, codec.getFrameLength()));
+		final int frameSize = nearestPowerOfTwo(codec.getFrameLength());
+		final int maxSize;
+		if (ioPool == null) {
+			maxSize = Integer.MAX_VALUE;
+		} else if (ioPool.getMaxLength() < codec.getFrameLength()) {
+			throw new IllegalArgumentException("ioPool.getMaxLength() < frameLength");
+		} else {
+			maxSize = ioPool.getMaxLength();
+		}
+		final int sendSize = Math.min(nearestPowerOfTwo(Math.max(sendBufferSize, codec.getFrameLength())), maxSize);
+		final int receiveSize = Math.min(nearestPowerOfTwo(Math.max(receiveBufferSize, codec.getFrameLength())),
+				maxSize);
 		if (sendSize < 1) {
 			throw new IllegalArgumentException("sendSize < 1");
 		}
@@ -83,9 +112,26 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 		this.limiter = limiter;
 		this.sendSize = sendSize;
 		this.receiveSize = receiveSize;
+		this.batchDelay = batchDelay;
+		this.ioPool = ioPool;
+		this.sharedRead = sharedRead;
+		this.pooledReceive = ioPool != null && !sharedRead;
+		// pooled buffers always hold at least one frame
+		this.minSize = Math.min(Math.max(frameSize, MIN_POOLED_SIZE), Math.min(sendSize, receiveSize));
+		// half of the smallest buffer this processor ever sends from
+		if (ioPool == null) {
+			this.smallWrite = sendSize / 2;
+		} else {
+			this.smallWrite = minSize / 2;
+		}
+		this.receiveLength = minSize;
+		this.sendLength = minSize;
 		this.receiveBuffer = DUMMY_BUFFER; // will be replaced once processor is registered
+		this.remainder = DUMMY_BUFFER;
 		this.sendBuffer = DUMMY_BUFFER; // will be replaced once processor is registered
 		this.writeSequence = NO_SEQUENCE;
+		this.lastWrite = NO_TIME;
+		this.holdSince = NO_TIME;
 	}
 
 	/**
@@ -115,7 +161,9 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 		if (key == null) {
 			throw new NullPointerException("key == null");
 		}
-		this.receiveBuffer = ByteBuffer.allocateDirect(receiveSize);
+		if (ioPool == null && !sharedRead) {
+			this.receiveBuffer = ByteBuffer.allocateDirect(receiveSize);
+		}
 	}
 
 	/**
@@ -126,7 +174,9 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 		if (key == null) {
 			throw new NullPointerException("key == null");
 		}
-		this.sendBuffer = ByteBuffer.allocateDirect(sendSize);
+		if (ioPool == null) {
+			this.sendBuffer = ByteBuffer.allocateDirect(sendSize);
+		}
 	}
 
 	/**
@@ -134,30 +184,101 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 	 */
 	@Override
 	public long read(final SelectionKey key) throws IOException {
+		if (!sharedRead) {
+			return receive(key);
+		}
+		receiveBuffer = getReadBuffer(receiveSize);
+		remainder.flip();
+		receiveBuffer.put(remainder);
+		remainder.clear();
+		try {
+			return receive(key);
+		} finally {
+			keepRemainder();
+			receiveBuffer = DUMMY_BUFFER;
+		}
+	}
+
+	private long receive(final SelectionKey key) throws IOException {
+		if (isReaderSuspended()) {
+			// messages left over from the last read come first
+			if (!decode()) {
+				return 0;
+			}
+			resumeReader();
+		}
 		final SocketChannel channel = (SocketChannel) key.channel();
-		final MessageBufferProducer<ByteBuffer> chnOut = getChannelOutput();
-		final MessageBufferProducer<ByteBuffer> appOut = getOutputBuffer();
+		if (pooledReceive && receiveBuffer == DUMMY_BUFFER) {
+			receiveBuffer = ioPool.allocate(receiveLength);
+		}
+		final int space = receiveBuffer.remaining();
 		final long n = channel.read(receiveBuffer);
 		if (n <= 0) {
+			if (pooledReceive) {
+				releaseReceiveBuffer();
+			}
 			// (n < 0) means channel closed from the other side
 			return n;
 		}
 
-		limiter.receive(n);
+		final boolean more = decode();
+		if (pooledReceive) {
+			if (n == space) {
+				// there was probably more to read
+				receiveLength = Math.min(receiveLength << 1, receiveSize);
+			} else if (n < receiveLength >> 2) {
+				receiveLength = Math.max(receiveLength >> 1, minSize);
+			}
+			if (receiveBuffer.capacity() < receiveLength) {
+				// the next read takes a larger buffer
+				releaseReceiveBuffer();
+			} else {
+				// busy connections keep their buffer until they go idle
+				receiveUsed = true;
+				if (!receiveIdle) {
+					receiveIdle = true;
+					idleReader(IDLE_NANOS);
+				}
+			}
+		}
+		received(n, decoded);
+		final long delay = Math.max(limiter.tryReceive(n), limiter.tryReceiveMessages(decoded));
+		decoded = 0;
+		// decode() suspends reads on its own if the application is full
+		if (more && delay > 0) {
+			throttleReader(delay);
+		}
+		return n;
+	}
 
+	/**
+	 * Decodes as many messages as the application input can take. Instead of
+	 * blocking the reader thread when it is full, reads are suspended and
+	 * the remaining messages are kept in {@link #receiveBuffer}.
+	 * 
+	 * @return <code>false</code> if reads were suspended
+	 */
+	private boolean decode() throws IOException {
+		final MessageBufferProducer<ByteBuffer> chnOut = getChannelOutput();
+		boolean full = false;
 		receiveBuffer.flip();
 		while (codec.hasNext(receiveBuffer)) {
 			try {
-				final long sequence = chnOut.acquire();
+				final long sequence = chnOut.tryAcquire();
+				if (sequence == MessageBufferProducer.NO_SEQUENCE) {
+					full = true;
+					break;
+				}
 				try {
-					final ByteBuffer msg = chnOut.get(sequence);
+					final ByteBuffer msg = chnOut.get(sequence, getDecodedLength(codec, receiveBuffer));
 					msg.clear();
 					codec.get(receiveBuffer, msg);
 					msg.flip();
-					chnOut.attach(sequence, appOut);
+					attachOutputBuffer(sequence);
 				} finally {
 					chnOut.release(sequence);
 				}
+				decoded++;
 			} catch (final InterruptedException e) {
 				throw new IOException(e);
 			}
@@ -167,7 +288,11 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 		} else {
 			receiveBuffer.clear();
 		}
-		return n;
+		if (full) {
+			suspendReader();
+			return false;
+		}
+		return true;
 	}
 
 	/**
@@ -177,12 +302,26 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 	public long write(final SelectionKey key) throws IOException {
 		final SocketChannel channel = (SocketChannel) key.channel();
 		final MessageBufferConsumer<ByteBuffer> chnIn = getChannelInput();
+		if (ioPool != null && sendBuffer == DUMMY_BUFFER) {
+			if (chnIn.remaining() == 0) {
+				disableWriter();
+				return 0;
+			}
+			sendBuffer = ioPool.allocate(sendLength);
+		}
+		int encoded = 0;
+		boolean full = false;
 		try {
 			int k = chnIn.remaining();
 			while (--k >= 0) {
 				if (writeSequence == NO_SEQUENCE) {
 					writeSequence = chnIn.acquire();
 				}
+				if (SkippedPosition.isSkipped(chnIn, writeSequence)) {
+					chnIn.release(writeSequence);
+					writeSequence = NO_SEQUENCE;
+					continue;
+				}
 				final ByteBuffer msg = chnIn.get(writeSequence);
 				final int msglen = codec.getEncodedLength(msg);
 				if (msglen > sendBuffer.capacity()) {
@@ -190,32 +329,160 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 					throw new IOException("codec.length(msg) > sendBuffer.capacity()");
 				}
 				if (msglen > sendBuffer.remaining()) {
+					full = true;
 					break;
 				}
 				codec.put(msg, sendBuffer);
 				msg.clear();
 				chnIn.release(writeSequence);
 				writeSequence = NO_SEQUENCE;
+				encoded++;
 			}
 		} catch (final InterruptedException e) {
 			throw new IOException(e);
 		}
+		if (batchDelay > 0) {
+			final long wait = hold();
+			if (wait > 0) {
+				// a writable socket would select the key right away: drop the
+				// write interest until the hold expires
+				throttleWriter(wait);
+				return 0;
+			}
+		}
 		sendBuffer.flip();
 
-		limiter.send(sendBuffer.remaining());
-
 		final int n = channel.write(sendBuffer);
+		if (batchDelay > 0) {
+			lastWrite = System.nanoTime();
+			lastWriteSmall = n < smallWrite;
+			holdSince = NO_TIME;
+		}
+		sent(n, encoded);
+		final long delay = Math.max(limiter.trySend(n), limiter.trySendMessages(encoded));
+		if (delay > 0) {
+			throttleWriter(delay);
+		}
 		if (sendBuffer.remaining() > 0) {
 			sendBuffer.compact();
 			return n;
 		}
 		sendBuffer.clear();
-		if (chnIn.remaining() == 0) {
+		if (ioPool != null) {
+			if (full) {
+				sendLength = Math.min(sendLength << 1, sendSize);
+			} else if (n < sendLength >> 2) {
+				sendLength = Math.max(sendLength >> 1, minSize);
+			}
+			if (sendBuffer.capacity() < sendLength) {
+				// the next write takes a larger buffer
+				ioPool.free(sendBuffer);
+				sendBuffer = DUMMY_BUFFER;
+			} else {
+				// busy connections keep their buffer until they go idle
+				sendUsed = true;
+				if (!sendIdle) {
+					sendIdle = true;
+					idleWriter(IDLE_NANOS);
+				}
+			}
+		}
+		if (delay == 0 && chnIn.remaining() == 0) {
 			disableWriter();
 		}
 		return n;
 	}
 
+	/**
+	 * Copies whatever was not decoded out of the shared read buffer: usually
+	 * a partial frame, or all messages the application could not take yet if
+	 * reads were suspended.
+	 */
+	private void keepRemainder() {
+		final int length = receiveBuffer.position();
+		if (length == 0) {
+			if (remainder.capacity() > minSize) {
+				// do not hold on to the space needed while reads were suspended
+				remainder = DUMMY_BUFFER;
+			}
+			return;
+		}
+		if (remainder.capacity() < length) {
+			remainder = ByteBuffer.allocate(Math.max(nearestPowerOfTwo(length), minSize));
+		}
+		receiveBuffer.flip();
+		remainder.put(receiveBuffer);
+	}
+
+	/**
+	 * Returns the receive buffer to the pool once it holds no partial frame
+	 * nor messages left over.
+	 */
+	private void releaseReceiveBuffer() {
+		if (receiveBuffer != DUMMY_BUFFER && receiveBuffer.position() == 0) {
+			ioPool.free(receiveBuffer);
+			receiveBuffer = DUMMY_BUFFER;
+		}
+	}
+
+	/**
+	 * Gives the receive buffer back once no read used it for a whole
+	 * {@link #IDLE_NANOS}, otherwise waits for another period.
+	 */
+	@Override
+	protected void readIdle() {
+		if (receiveUsed) {
+			receiveUsed = false;
+			idleReader(IDLE_NANOS);
+			return;
+		}
+		receiveIdle = false;
+		releaseReceiveBuffer();
+	}
+
+	/**
+	 * Gives the send buffer back once no write used it for a whole
+	 * {@link #IDLE_NANOS}, otherwise waits for another period. Buffers still
+	 * holding data are kept until the next write drains them.
+	 */
+	@Override
+	protected void writeIdle() {
+		if (sendUsed) {
+			sendUsed = false;
+			idleWriter(IDLE_NANOS);
+			return;
+		}
+		sendIdle = false;
+		if (sendBuffer != DUMMY_BUFFER && sendBuffer.position() == 0) {
+			ioPool.free(sendBuffer);
+			sendBuffer = DUMMY_BUFFER;
+		}
+	}
+
+	/**
+	 * Decides whether to wait for more messages before writing. Only small
+	 * writes that closely follow another small write are held, and never
+	 * longer than {@link #batchDelay}, plus up to one tick of the selector
+	 * timers: the channel builders reject delays below that resolution.
+	 * 
+	 * @return how long to hold the write, in nanoseconds, or zero to write
+	 *         right away
+	 */
+	private long hold() {
+		final int pending = sendBuffer.position();
+		if (pending == 0 || pending >= smallWrite) {
+			return 0;
+		}
+		final long now = System.nanoTime();
+		if (holdSince == NO_TIME) {
+			if (!lastWriteSmall || lastWrite == NO_TIME || now - lastWrite > batchDelay) {
+				return 0;
+			}
+			holdSince = now;
+		}
+		return Math.max(0, batchDelay - (now - holdSince));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -247,3 +514,89 @@ final class TCPProcessor extends AbstractProcessor<ByteBuffer> {
 	    return n;
 	}
 }
+
+/**
+ * Padding between the fields of {@link AbstractProcessor}, read by both
+ * threads, and the reader state. The JVM groups fields by type inside a
+ * class, so the two sides are separated through the class hierarchy.
+ */
+abstract class TCPLhsPadding extends AbstractProcessor<ByteBuffer> {
+	@SuppressWarnings("unused")
+	private long p1, p2, p3, p4, p5, p6, p7;
+
+	TCPLhsPadding(@Nonnull final MessageBufferProvider<ByteBuffer> provider) {
+		super(provider);
+	}
+}
+
+/**
+ * State only touched by the reader thread.
+ */
+abstract class TCPReaderState extends TCPLhsPadding {
+	@Nonnull
+	ByteBuffer receiveBuffer;
+	// partial frames left over from the shared read buffer
+	@Nonnull
+	ByteBuffer remainder;
+	// messages decoded since the limiter was last charged
+	int decoded;
+	// length of the next pooled receive buffer
+	int receiveLength;
+	// a pooled receive buffer was used since the last idle check
+	boolean receiveUsed;
+	// an idle check of the receive buffer is scheduled
+	boolean receiveIdle;
+
+	TCPReaderState(@Nonnull final MessageBufferProvider<ByteBuffer> provider) {
+		super(provider);
+	}
+}
+
+/**
+ * The writer thread updates its state for every message, while the reader
+ * thread updates the fields above: keep them on separate cache lines.
+ */
+abstract class TCPMidPadding extends TCPReaderState {
+	@SuppressWarnings("unused")
+	private long p1, p2, p3, p4, p5, p6, p7;
+
+	TCPMidPadding(@Nonnull final MessageBufferProvider<ByteBuffer> provider) {
+		super(provider);
+	}
+}
+
+/**
+ * State only touched by the writer thread.
+ */
+abstract class TCPWriterState extends TCPMidPadding {
+	@Nonnull
+	ByteBuffer sendBuffer;
+	long writeSequence;
+	// send batching state
+	long lastWrite;
+	boolean lastWriteSmall;
+	long holdSince;
+	// length of the next pooled send buffer
+	int sendLength;
+	// a pooled send buffer was used since the last idle check
+	boolean sendUsed;
+	// an idle check of the send buffer is scheduled
+	boolean sendIdle;
+
+	TCPWriterState(@Nonnull final MessageBufferProvider<ByteBuffer> provider) {
+		super(provider);
+	}
+}
+
+/**
+ * Padding between the writer state and the configuration of
+ * {@link TCPProcessor}, read by both threads.
+ */
+abstract class TCPRhsPadding extends TCPWriterState {
+	@SuppressWarnings("unused")
+	private long p1, p2, p3, p4, p5, p6, p7;
+
+	TCPRhsPadding(@Nonnull final MessageBufferProvider<ByteBuffer> provider) {
+		super(provider);
+	}
+}
@@ -65,12 +65,13 @@ final class TCPServerChannel<T> implements MessageServerChannel<T>, Acceptor {
 		return acceptor;
 	}
 
-	void open() throws IOException {
+	void open(@Nonnull final SocketOptions options) throws IOException {
 		if (channel != null) {
 			return;
 		}
 		channel = ServerSocketChannel.open();
 		channel.configureBlocking(false);
+		options.apply(channel);
 	}
 
 	/**
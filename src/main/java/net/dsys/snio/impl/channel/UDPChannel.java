@@ -83,10 +83,11 @@ final class UDPChannel<T> implements MessageChannel<T>, Processor {
 		return this;
 	}
 
-	void open() throws IOException {
+	void open(@Nonnull final SocketOptions options) throws IOException {
 		if (channel == null) {
 			channel = DatagramChannel.open();
 			channel.configureBlocking(false);
+			options.apply(channel);
 			selector.register(channel, this);
 		}
 	}
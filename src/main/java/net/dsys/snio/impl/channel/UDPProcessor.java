@@ -24,11 +24,13 @@ import java.nio.channels.SelectionKey;
 import java.util.concurrent.Callable;
 
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 import net.dsys.commons.impl.future.SettableCallbackFuture;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.SkippedPosition;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
 
@@ -51,6 +53,10 @@ final class UDPProcessor extends AbstractProcessor<ByteBuffer> {
 	private ByteBuffer receiveBuffer;
 	@Nonnull
 	private ByteBuffer sendBuffer;
+	@Nonnull(when = When.MAYBE)
+	private SocketAddress source;
+	// messages decoded since the limiter was last charged
+	private int decoded;
 
 	UDPProcessor(@Nonnull final MessageCodec codec,
 			@Nonnull final RateLimiter limiter,
@@ -111,23 +117,54 @@ final class UDPProcessor extends AbstractProcessor<ByteBuffer> {
 	 */
 	@Override
 	public long read(final SelectionKey key) throws IOException {
+		if (isReaderSuspended()) {
+			// messages left over from the last datagram come first
+			if (!decode()) {
+				return 0;
+			}
+			resumeReader();
+		}
 		final DatagramChannel channel = (DatagramChannel) key.channel();
-		final MessageBufferProducer<ByteBuffer> chnOut = getChannelOutput();
 		final int start = receiveBuffer.position();
 		final SocketAddress source = channel.receive(receiveBuffer);
 		if (source == null) {
 			return 0;
 		}
 		final int n = receiveBuffer.position() - start;
+		this.source = source;
+
+		final boolean more = decode();
+		received(n, decoded);
+		final long delay = Math.max(limiter.tryReceive(n), limiter.tryReceiveMessages(decoded));
+		decoded = 0;
+		// decode() suspends reads on its own if the application is full
+		if (more && delay > 0) {
+			throttleReader(delay);
+		}
+		return n;
+	}
 
-		limiter.receive(n);
-
+	/**
+	 * Decodes as many messages from the last datagram as the application
+	 * input can take. Instead of blocking the reader thread when it is full,
+	 * reads are suspended and the remaining messages are kept in
+	 * {@link #receiveBuffer}.
+	 * 
+	 * @return <code>false</code> if reads were suspended
+	 */
+	private boolean decode() throws IOException {
+		final MessageBufferProducer<ByteBuffer> chnOut = getChannelOutput();
+		boolean full = false;
 		receiveBuffer.flip();
 		while (codec.hasNext(receiveBuffer)) {
 			try {
-				final long sequence = chnOut.acquire();
+				final long sequence = chnOut.tryAcquire();
+				if (sequence == MessageBufferProducer.NO_SEQUENCE) {
+					full = true;
+					break;
+				}
 				try {
-					final ByteBuffer buffer = chnOut.get(sequence);
+					final ByteBuffer buffer = chnOut.get(sequence, getDecodedLength(codec, receiveBuffer));
 					buffer.clear();
 					codec.get(receiveBuffer, buffer);
 					buffer.flip();
@@ -135,6 +172,7 @@ final class UDPProcessor extends AbstractProcessor<ByteBuffer> {
 				} finally {
 					chnOut.release(sequence);
 				}
+				decoded++;
 			} catch (final InterruptedException e) {
 				throw new IOException(e);
 			}
@@ -144,7 +182,11 @@ final class UDPProcessor extends AbstractProcessor<ByteBuffer> {
 		} else {
 			receiveBuffer.clear();
 		}
-		return n;
+		if (full) {
+			suspendReader();
+			return false;
+		}
+		return true;
 	}
 
 	/**
@@ -155,11 +197,16 @@ final class UDPProcessor extends AbstractProcessor<ByteBuffer> {
 		final DatagramChannel channel = (DatagramChannel) key.channel();
 		final MessageBufferConsumer<ByteBuffer> chnIn = getChannelInput();
 		long n = 0;
+		long delay = 0;
 		long k = chnIn.remaining();
-		for (; k >= 0; k--) {
+		for (; k >= 0 && delay == 0; k--) {
 			final SocketAddress address;
 			try {
 				final long sequence = chnIn.acquire();
+				if (SkippedPosition.isSkipped(chnIn, sequence)) {
+					chnIn.release(sequence);
+					continue;
+				}
 				try {
 					final ByteBuffer msg = chnIn.get(sequence);
 					sendBuffer.clear();
@@ -174,13 +221,16 @@ final class UDPProcessor extends AbstractProcessor<ByteBuffer> {
 				throw new IOException(e);
 			}
 
-			limiter.send(sendBuffer.remaining());
-
+			final int length = sendBuffer.remaining();
 			do {
 				n += channel.send(sendBuffer, address);
 			} while (sendBuffer.remaining() > 0);
+			sent(length, 1);
+			delay = Math.max(limiter.trySend(length), limiter.trySendMessages(1));
 		}
-		if (chnIn.remaining() == 0) {
+		if (delay > 0) {
+			throttleWriter(delay);
+		} else if (chnIn.remaining() == 0) {
 			disableWriter();
 		}
 		return n;
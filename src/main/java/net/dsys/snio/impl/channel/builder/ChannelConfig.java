@@ -17,9 +17,11 @@
 package net.dsys.snio.impl.channel.builder;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
 
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.commons.impl.builder.Mandatory;
@@ -29,9 +31,19 @@ import net.dsys.commons.impl.lang.ByteBufferFactory;
 import net.dsys.commons.impl.lang.DirectByteBufferFactory;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.MessagePool;
+import net.dsys.snio.api.buffer.WatermarkListener;
 import net.dsys.snio.api.pool.SelectorPool;
 import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.buffer.ByteBufferPool;
+import net.dsys.snio.impl.buffer.LatencyProvider;
+import net.dsys.snio.impl.buffer.LatencyRecorder;
 import net.dsys.snio.impl.buffer.RingBufferProvider;
+import net.dsys.snio.impl.buffer.SlabBufferProvider;
+import net.dsys.snio.impl.buffer.SlabRegion;
+import net.dsys.snio.impl.buffer.WatermarkProvider;
+import net.dsys.snio.impl.channel.SocketOptions;
+import net.dsys.snio.impl.pool.SelectorPools;
 
 /**
  * @author Ricardo Padilha
@@ -53,6 +65,18 @@ public final class ChannelConfig<T> {
 	private boolean useRingBuffer;
 	private boolean singleInputBuffer;
 	private MessageBufferConsumer<T> consumer;
+	private MessagePool<T> bufferPool;
+	private SlabRegion slabRegion;
+	private int lowWatermark;
+	private int highWatermark;
+	private WatermarkListener watermarkListener;
+	private long sendBatchDelay;
+	private ByteBufferPool ioBufferPool;
+	private boolean sharedReadBuffer;
+	private SocketOptions socketOptions;
+	private boolean trackLatency;
+	private LatencyRecorder sendLatency;
+	private LatencyRecorder receiveLatency;
 
 	public ChannelConfig() {
 		this.pool = null;
@@ -63,6 +87,47 @@ public final class ChannelConfig<T> {
 		this.useRingBuffer = false;
 		this.singleInputBuffer = false;
 		this.consumer = null;
+		this.bufferPool = null;
+		this.slabRegion = null;
+		this.lowWatermark = 0;
+		this.highWatermark = 0;
+		this.watermarkListener = null;
+		this.sendBatchDelay = 0;
+		this.ioBufferPool = null;
+		this.sharedReadBuffer = false;
+		this.socketOptions = new SocketOptions();
+		this.trackLatency = false;
+		this.sendLatency = null;
+		this.receiveLatency = null;
+	}
+
+	/**
+	 * Creates a copy of the given configuration.
+	 */
+	public ChannelConfig(@Nonnull final ChannelConfig<T> config) {
+		if (config == null) {
+			throw new NullPointerException("config == null");
+		}
+		this.pool = config.pool;
+		this.capacity = config.capacity;
+		this.sendBufferSize = config.sendBufferSize;
+		this.receiveBufferSize = config.receiveBufferSize;
+		this.useDirectBuffer = config.useDirectBuffer;
+		this.useRingBuffer = config.useRingBuffer;
+		this.singleInputBuffer = config.singleInputBuffer;
+		this.consumer = config.consumer;
+		this.bufferPool = config.bufferPool;
+		this.slabRegion = config.slabRegion;
+		this.lowWatermark = config.lowWatermark;
+		this.highWatermark = config.highWatermark;
+		this.watermarkListener = config.watermarkListener;
+		this.sendBatchDelay = config.sendBatchDelay;
+		this.ioBufferPool = config.ioBufferPool;
+		this.sharedReadBuffer = config.sharedReadBuffer;
+		this.socketOptions = config.socketOptions;
+		this.trackLatency = config.trackLatency;
+		this.sendLatency = config.sendLatency;
+		this.receiveLatency = config.receiveLatency;
 	}
 
 	@Nonnull
@@ -167,6 +232,187 @@ public final class ChannelConfig<T> {
 		return this;
 	}
 
+	/**
+	 * Buffer positions take their messages from the given pool only while in
+	 * use, instead of holding a preallocated message each. Share the same pool
+	 * between channels to share their memory.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "usePreallocatedBuffers()", restrictions = "pool != null, requires useRingBuffer()")
+	@OptionGroup(name = "bufferAllocation", seeAlso = "usePreallocatedBuffers(), useSlabBuffers(region)")
+	public ChannelConfig<T> usePooledBuffers(@Nonnull final MessagePool<T> pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		this.bufferPool = pool;
+		this.slabRegion = null;
+		return this;
+	}
+
+	/**
+	 * Buffer positions are stored off-heap, in sub-rings of the given region.
+	 * Share the same region between the channels of an executor (or of the
+	 * whole pool) to keep their positions out of the heap. Only applies to
+	 * {@link ByteBuffer} messages.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "usePreallocatedBuffers()",
+			restrictions = "region != null, region.getCapacity() == capacity, requires useRingBuffer()")
+	@OptionGroup(name = "bufferAllocation", seeAlso = "usePreallocatedBuffers(), usePooledBuffers(pool)")
+	public ChannelConfig<T> useSlabBuffers(@Nonnull final SlabRegion region) {
+		if (region == null) {
+			throw new NullPointerException("region == null");
+		}
+		this.slabRegion = region;
+		this.bufferPool = null;
+		return this;
+	}
+
+	@Nonnull
+	@Optional(defaultValue = "usePreallocatedBuffers()")
+	@OptionGroup(name = "bufferAllocation", seeAlso = "usePooledBuffers(pool), useSlabBuffers(region)")
+	public ChannelConfig<T> usePreallocatedBuffers() {
+		this.bufferPool = null;
+		this.slabRegion = null;
+		return this;
+	}
+
+	/**
+	 * Notifies the listener when the number of messages waiting in an output
+	 * buffer reaches <code>high</code>, and again when it goes back down to
+	 * <code>low</code>.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no watermarks", restrictions = "0 <= low < high <= capacity, listener != null")
+	public ChannelConfig<T> setWatermarks(@Nonnegative final int low, @Nonnegative final int high,
+			@Nonnull final WatermarkListener listener) {
+		if (low < 0) {
+			throw new IllegalArgumentException("low < 0");
+		}
+		if (low >= high) {
+			throw new IllegalArgumentException("low >= high");
+		}
+		if (listener == null) {
+			throw new NullPointerException("listener == null");
+		}
+		this.lowWatermark = low;
+		this.highWatermark = high;
+		this.watermarkListener = listener;
+		return this;
+	}
+
+	/**
+	 * Records, for every channel, how long messages wait between the
+	 * application releasing them and the channel encoding them, and between
+	 * the channel decoding them and the application releasing them. Receive
+	 * times are not recorded with a single input buffer.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no latency tracking")
+	public ChannelConfig<T> trackLatency() {
+		this.trackLatency = true;
+		this.sendLatency = null;
+		this.receiveLatency = null;
+		return this;
+	}
+
+	/**
+	 * Same as {@link #trackLatency()}, and also adds every value to the given
+	 * histograms, e.g., to aggregate all channels of an executor.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no latency tracking", restrictions = "send != null, receive != null")
+	public ChannelConfig<T> trackLatency(@Nonnull final LatencyRecorder send,
+			@Nonnull final LatencyRecorder receive) {
+		if (send == null) {
+			throw new NullPointerException("send == null");
+		}
+		if (receive == null) {
+			throw new NullPointerException("receive == null");
+		}
+		this.trackLatency = true;
+		this.sendLatency = send;
+		this.receiveLatency = receive;
+		return this;
+	}
+
+	/**
+	 * Only used by TCP channels. When messages trickle in, the writer holds
+	 * small writes for up to <code>maxDelay</code>, waiting for more messages
+	 * to send with a single system call. Isolated messages and full buffers
+	 * are still sent right away.
+	 * <p>
+	 * Held writes resume on the selector timers, so holds are rounded up to
+	 * their resolution, see {@link SelectorPools#getTimerResolution()}.
+	 * Shorter non-zero delays would silently last a whole tick or two, and
+	 * are rejected.
+	 * 
+	 * @param maxDelay
+	 *            zero to disable batching, otherwise at least the timer
+	 *            resolution
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no batching", restrictions = "maxDelay == 0 || maxDelay >= timer resolution, unit != null")
+	public ChannelConfig<T> setSendBatching(@Nonnegative final long maxDelay, @Nonnull final TimeUnit unit) {
+		if (maxDelay < 0) {
+			throw new IllegalArgumentException("maxDelay < 0");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit == null");
+		}
+		final long nanos = unit.toNanos(maxDelay);
+		if (nanos > 0 && nanos < SelectorPools.getTimerResolution()) {
+			throw new IllegalArgumentException("maxDelay < " + SelectorPools.getTimerResolution() + " ns");
+		}
+		this.sendBatchDelay = nanos;
+		return this;
+	}
+
+	/**
+	 * Only used by TCP channels. Send and receive buffers are taken from the
+	 * given pool only while there is data to send or to decode, so idle
+	 * channels hold none. Their length adapts to the traffic, between one
+	 * frame and the send and receive buffer sizes. A single pool is meant to
+	 * be shared by many channels.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "fixed buffers per channel", restrictions = "pool != null")
+	public ChannelConfig<T> useIOBufferPool(@Nonnull final ByteBufferPool pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		this.ioBufferPool = pool;
+		return this;
+	}
+
+	/**
+	 * Only used by TCP channels. All channels read into a single direct buffer
+	 * owned by their reader thread, and only keep the bytes they could not
+	 * decode yet (usually a partial frame) in a small buffer of their own.
+	 * This saves one receive buffer per channel, at the cost of copying those
+	 * bytes back and forth.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "one receive buffer per channel")
+	public ChannelConfig<T> useSharedReadBuffer() {
+		this.sharedReadBuffer = true;
+		return this;
+	}
+
+	/**
+	 * Applied to client sockets before they connect, and to server sockets
+	 * as soon as they are accepted, i.e., before any data is exchanged.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "system defaults", restrictions = "options != null")
+	public ChannelConfig<T> setSocketOptions(@Nonnull final SocketOptions options) {
+		if (options == null) {
+			throw new NullPointerException("options == null");
+		}
+		this.socketOptions = options;
+		return this;
+	}
+
 	@Nonnull
 	public SelectorPool getPool() {
 		if (pool == null) {
@@ -190,12 +436,65 @@ public final class ChannelConfig<T> {
 		return receiveBufferSize;
 	}
 
+	/**
+	 * @return the longest time a write can be held, in nanoseconds, or zero
+	 *         for no batching
+	 */
+	@Nonnegative
+	public long getSendBatchDelay() {
+		return sendBatchDelay;
+	}
+
+	@Nonnull(when = When.MAYBE)
+	public ByteBufferPool getIOBufferPool() {
+		return ioBufferPool;
+	}
+
+	public boolean isSharedReadBuffer() {
+		return sharedReadBuffer;
+	}
+
+	@Nonnull
+	public SocketOptions getSocketOptions() {
+		return socketOptions;
+	}
+
 	public boolean isDirectBuffer() {
 		return useDirectBuffer;
 	}
 
+	public boolean isPooledBuffer() {
+		return bufferPool != null;
+	}
+
+	@Nonnull
+	public MessagePool<T> getBufferPool() {
+		if (bufferPool == null) {
+			throw new IllegalStateException("bufferPool is undefined");
+		}
+		return bufferPool;
+	}
+
+	public boolean isSlabBuffer() {
+		return slabRegion != null;
+	}
+
+	@Nonnull
+	public SlabRegion getSlabRegion() {
+		if (slabRegion == null) {
+			throw new IllegalStateException("slabRegion is undefined");
+		}
+		return slabRegion;
+	}
+
 	@Nonnull
 	public Factory<ByteBuffer> getFactory(@Nonnegative final int length) {
+		if (bufferPool != null && bufferPool.getMaxLength() < length) {
+			throw new IllegalArgumentException("bufferPool.getMaxLength() < length");
+		}
+		if (slabRegion != null && slabRegion.getMaxLength() < length) {
+			throw new IllegalArgumentException("slabRegion.getMaxLength() < length");
+		}
 		if (useDirectBuffer) {
 			return new DirectByteBufferFactory(length);
 		}
@@ -209,7 +508,39 @@ public final class ChannelConfig<T> {
 	@Nonnull
 	public MessageBufferProvider<T> getProvider(@Nonnull final Factory<T> factory) {
 		final MessageBufferProvider<T> provider;
-		if (useRingBuffer) {
+		if (slabRegion != null) {
+			checkSlabRegion();
+			// slab regions only hold ByteBuffers
+			@SuppressWarnings("unchecked")
+			final MessageBufferConsumer<ByteBuffer> cons = (MessageBufferConsumer<ByteBuffer>) consumer;
+			final MessageBufferProvider<?> slab;
+			if (singleInputBuffer) {
+				if (cons == null) {
+					slab = SlabBufferProvider.createProvider(slabRegion,
+							SlabBufferProvider.createConsumer(slabRegion));
+				} else {
+					slab = SlabBufferProvider.createProvider(slabRegion, cons);
+				}
+			} else {
+				slab = SlabBufferProvider.createProvider(slabRegion);
+			}
+			@SuppressWarnings("unchecked")
+			final MessageBufferProvider<T> p = (MessageBufferProvider<T>) slab;
+			provider = p;
+		} else if (bufferPool != null) {
+			if (!useRingBuffer) {
+				throw new IllegalStateException("pooled buffers require useRingBuffer()");
+			}
+			if (singleInputBuffer) {
+				MessageBufferConsumer<T> cons = consumer;
+				if (cons == null) {
+					cons = RingBufferProvider.createConsumer(capacity, bufferPool);
+				}
+				provider = RingBufferProvider.createPooledProvider(capacity, bufferPool, cons);
+			} else {
+				provider = RingBufferProvider.createPooledProvider(capacity, bufferPool);
+			}
+		} else if (useRingBuffer) {
 			if (singleInputBuffer) {
 				MessageBufferConsumer<T> cons = consumer;
 				if (cons == null) {
@@ -230,13 +561,56 @@ public final class ChannelConfig<T> {
 				provider = RingBufferProvider.createProvider(capacity, factory);
 			}
 		}
-		return provider;
+		final MessageBufferProvider<T> marked;
+		if (watermarkListener != null) {
+			marked = WatermarkProvider.createProvider(provider, capacity, lowWatermark, highWatermark,
+					watermarkListener);
+		} else {
+			marked = provider;
+		}
+		if (trackLatency) {
+			return LatencyProvider.createProvider(marked, capacity, !singleInputBuffer, sendLatency,
+					receiveLatency);
+		}
+		return marked;
 	}
 
 	@Nonnull
 	public Factory<MessageBufferProvider<T>> getProviderFactory(@Nonnull final Factory<T> factory) {
 		final Factory<MessageBufferProvider<T>> provider;
-		if (useRingBuffer) {
+		if (slabRegion != null) {
+			checkSlabRegion();
+			// slab regions only hold ByteBuffers
+			@SuppressWarnings("unchecked")
+			final MessageBufferConsumer<ByteBuffer> cons = (MessageBufferConsumer<ByteBuffer>) consumer;
+			final Factory<?> slab;
+			if (singleInputBuffer) {
+				if (cons == null) {
+					slab = SlabBufferProvider.createProviderFactory(slabRegion,
+							SlabBufferProvider.createConsumer(slabRegion));
+				} else {
+					slab = SlabBufferProvider.createProviderFactory(slabRegion, cons);
+				}
+			} else {
+				slab = SlabBufferProvider.createProviderFactory(slabRegion);
+			}
+			@SuppressWarnings("unchecked")
+			final Factory<MessageBufferProvider<T>> f = (Factory<MessageBufferProvider<T>>) slab;
+			provider = f;
+		} else if (bufferPool != null) {
+			if (!useRingBuffer) {
+				throw new IllegalStateException("pooled buffers require useRingBuffer()");
+			}
+			if (singleInputBuffer) {
+				MessageBufferConsumer<T> cons = consumer;
+				if (cons == null) {
+					cons = RingBufferProvider.createConsumer(capacity, bufferPool);
+				}
+				provider = RingBufferProvider.createPooledProviderFactory(capacity, bufferPool, cons);
+			} else {
+				provider = RingBufferProvider.createPooledProviderFactory(capacity, bufferPool);
+			}
+		} else if (useRingBuffer) {
 			if (singleInputBuffer) {
 				MessageBufferConsumer<T> cons = consumer;
 				if (cons == null) {
@@ -257,6 +631,26 @@ public final class ChannelConfig<T> {
 				provider = BlockingQueueProvider.createProviderFactory(capacity, factory);
 			}
 		}
-		return provider;
+		final Factory<MessageBufferProvider<T>> marked;
+		if (watermarkListener != null) {
+			marked = WatermarkProvider.createProviderFactory(provider, capacity, lowWatermark, highWatermark,
+					watermarkListener);
+		} else {
+			marked = provider;
+		}
+		if (trackLatency) {
+			return LatencyProvider.createProviderFactory(marked, capacity, !singleInputBuffer, sendLatency,
+					receiveLatency);
+		}
+		return marked;
+	}
+
+	private void checkSlabRegion() {
+		if (!useRingBuffer) {
+			throw new IllegalStateException("slab buffers require useRingBuffer()");
+		}
+		if (slabRegion.getCapacity() != capacity) {
+			throw new IllegalStateException("slabRegion.getCapacity() != capacity");
+		}
 	}
 }
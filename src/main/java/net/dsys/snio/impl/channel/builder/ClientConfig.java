@@ -81,6 +81,20 @@ public final class ClientConfig {
 		return this;
 	}
 
+	/**
+	 * Also limits the number of messages per second.
+	 * 
+	 * @see net.dsys.snio.api.limit.RateLimiter#setMessageRate(long, long)
+	 */
+	@Nonnull
+	@Mandatory(restrictions = "value >= 1 && unit != null && messages >= 1 && burst >= 1")
+	@OptionGroup(name = "limiter", seeAlso = "setRateLimiter(limiter)")
+	public ClientConfig setRateLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnegative final long messages, @Nonnegative final long burst) {
+		this.limiter = RateLimiters.limit(value, unit, messages, burst);
+		return this;
+	}
+
 	@Nonnull
 	public MessageCodec getMessageCodec() {
 		if (codec == null) {
@@ -23,8 +23,10 @@ import net.dsys.commons.api.lang.BinaryUnit;
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.commons.impl.builder.Mandatory;
 import net.dsys.commons.impl.builder.OptionGroup;
+import net.dsys.commons.impl.builder.Optional;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
+import net.dsys.snio.impl.channel.SocketOptions;
 import net.dsys.snio.impl.codec.Codecs;
 import net.dsys.snio.impl.limit.RateLimiters;
 
@@ -35,10 +37,13 @@ public final class ServerConfig {
 
 	private Factory<MessageCodec> codecs;
 	private Factory<RateLimiter> limiters;
+	private RateLimiter shared;
+	private SocketOptions serverOptions;
 
 	public ServerConfig() {
 		codecs = null;
 		limiters = RateLimiters.noLimitFactory();
+		serverOptions = new SocketOptions();
 	}
 
 	@Nonnull
@@ -82,6 +87,60 @@ public final class ServerConfig {
 		return this;
 	}
 
+	/**
+	 * Also limits the number of messages per second.
+	 * 
+	 * @see net.dsys.snio.api.limit.RateLimiter#setMessageRate(long, long)
+	 */
+	@Nonnull
+	@Mandatory(restrictions = "value >= 1 && unit != null && messages >= 1 && burst >= 1")
+	@OptionGroup(name = "limiter", seeAlso = "setRateLimiter(limiters)")
+	public ServerConfig setRateLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnegative final long messages, @Nonnegative final long burst) {
+		this.limiters = RateLimiters.limitFactory(value, unit, messages, burst);
+		return this;
+	}
+
+	/**
+	 * All channels also draw from the given limiter, e.g., one shared by all
+	 * channels of a tenant.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no shared limit", restrictions = "shared != null")
+	@OptionGroup(name = "shared limiter", seeAlso = "setSharedRateLimit(value, unit)")
+	public ServerConfig setSharedRateLimiter(@Nonnull final RateLimiter shared) {
+		if (shared == null) {
+			throw new NullPointerException("shared == null");
+		}
+		this.shared = shared;
+		return this;
+	}
+
+	/**
+	 * Limits the aggregate rate of all channels.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no shared limit", restrictions = "value >= 1 && unit != null")
+	@OptionGroup(name = "shared limiter", seeAlso = "setSharedRateLimiter(shared)")
+	public ServerConfig setSharedRateLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
+		this.shared = RateLimiters.sharedLimit(value, unit);
+		return this;
+	}
+
+	/**
+	 * Applied to the listening socket before it is bound. Accepted sockets
+	 * use {@link ChannelConfig#setSocketOptions(SocketOptions)} instead.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "system defaults", restrictions = "options != null")
+	public ServerConfig setServerSocketOptions(@Nonnull final SocketOptions options) {
+		if (options == null) {
+			throw new NullPointerException("options == null");
+		}
+		this.serverOptions = options;
+		return this;
+	}
+
 	@Nonnull
 	public Factory<MessageCodec> getMessageCodecs() {
 		if (codecs == null) {
@@ -95,7 +154,15 @@ public final class ServerConfig {
 		if (limiters == null) {
 			throw new IllegalStateException("rate limiter factory undefined");
 		}
+		if (shared != null) {
+			return RateLimiters.limitFactory(limiters, shared);
+		}
 		return limiters;
 	}
 
+	@Nonnull
+	public SocketOptions getServerSocketOptions() {
+		return serverOptions;
+	}
+
 }
@@ -199,7 +199,7 @@ final class DeflateCodec implements MessageCodec {
 		if (rem < headerLength) {
 			return false;
 		}
-		final int length = getDecodedLength(in);
+		final int length = in.getInt(in.position()) & UNSIGNED_INT_MASK;
 		if (length < 1 || length > compressedLength) {
 			throw new InvalidLengthException(length);
 		}
@@ -207,11 +207,14 @@ final class DeflateCodec implements MessageCodec {
 	}
 
 	/**
+	 * The header only carries the compressed length, so the inflated length is
+	 * not known before decoding: this returns the maximum body length.
+	 * 
 	 * {@inheritDoc}
 	 */
 	@Override
 	public int getDecodedLength(final ByteBuffer in) {
-		return in.getInt(in.position()) & UNSIGNED_INT_MASK;
+		return bodyLength;
 	}
 
 	/**
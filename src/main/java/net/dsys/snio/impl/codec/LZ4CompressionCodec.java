@@ -210,7 +210,7 @@ final class LZ4CompressionCodec implements MessageCodec {
 	 */
 	@Override
 	public int getDecodedLength(final ByteBuffer in) {
-		return in.getInt(in.position()) & UNSIGNED_INT_MASK;
+		return in.getInt(in.position() + INT_LENGTH) & UNSIGNED_INT_MASK;
 	}
 
 	/**
@@ -28,17 +28,19 @@ import javax.annotation.Nonnull;
 
 import net.dsys.commons.api.future.CallbackFuture;
 import net.dsys.commons.api.lang.Copier;
+import net.dsys.commons.api.lang.Factory;
 import net.dsys.commons.impl.future.MergingCallbackFuture;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.channel.CloseListener;
 import net.dsys.snio.api.channel.MessageChannel;
 import net.dsys.snio.api.group.GroupSocketAddress;
+import net.dsys.snio.api.group.GroupStatus;
 
 /**
  * @author Ricardo Padilha
  */
-final class GroupChannel<T> implements MessageChannel<T> {
+public final class GroupChannel<T> implements MessageChannel<T> {
 
 	@Nonnull
 	private final MessageBufferConsumer<T> in;
@@ -46,9 +48,14 @@ final class GroupChannel<T> implements MessageChannel<T> {
 	private final ChannelFactory<T> factory;
 	@Nonnull
 	private final Copier<T> copier;
+	private final Factory<T> backlog;
+	private final int quorum;
+	private final int capacity;
+	private final boolean dropLagging;
 
 	private MessageChannel<T>[] channels;
 	private MessageBufferProducer<T> out;
+	private GroupStatus status;
 	private SocketAddress local;
 	private CallbackFuture<Void> bindFuture;
 	private CallbackFuture<Void> connectFuture;
@@ -68,6 +75,40 @@ final class GroupChannel<T> implements MessageChannel<T> {
 		this.in = in;
 		this.factory = factory;
 		this.copier = copier;
+		this.backlog = null;
+		this.quorum = 0;
+		this.capacity = 0;
+		this.dropLagging = false;
+	}
+
+	GroupChannel(@Nonnull final MessageBufferConsumer<T> in, @Nonnull final ChannelFactory<T> factory,
+			@Nonnull final Copier<T> copier, @Nonnull final Factory<T> backlog, @Nonnegative final int quorum,
+			@Nonnegative final int capacity, final boolean dropLagging) {
+		if (in == null) {
+			throw new NullPointerException("in == null");
+		}
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		if (copier == null) {
+			throw new NullPointerException("copier == null");
+		}
+		if (backlog == null) {
+			throw new NullPointerException("backlog == null");
+		}
+		if (quorum < 1) {
+			throw new IllegalArgumentException("quorum < 1");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		this.in = in;
+		this.factory = factory;
+		this.copier = copier;
+		this.backlog = backlog;
+		this.quorum = quorum;
+		this.capacity = capacity;
+		this.dropLagging = dropLagging;
 	}
 
 	void open(@Nonnegative final int size) throws IOException {
@@ -226,27 +267,70 @@ final class GroupChannel<T> implements MessageChannel<T> {
 	@Override
 	public MessageBufferProducer<T> getOutputBuffer() {
 		if (out == null) {
-			final GroupMessageBufferProducer.Builder<T> builder = GroupMessageBufferProducer.build();
-			builder.setCopier(copier);
-			for (final MessageChannel<T> channel : channels) {
-				builder.add(channel.getOutputBuffer());
+			if (backlog == null) {
+				final GroupMessageBufferProducer.Builder<T> builder = GroupMessageBufferProducer.build();
+				builder.setCopier(copier);
+				for (final MessageChannel<T> channel : channels) {
+					builder.add(channel.getOutputBuffer());
+				}
+				final GroupMessageBufferProducer<T> producer = builder.build();
+				status = producer;
+				out = producer;
+			} else {
+				final QuorumMessageBufferProducer.Builder<T> builder = QuorumMessageBufferProducer.build();
+				builder.setCopier(copier);
+				builder.setFactory(backlog);
+				builder.setQuorum(quorum);
+				builder.setBacklog(capacity, dropLagging);
+				for (final MessageChannel<T> channel : channels) {
+					builder.add(channel.getOutputBuffer());
+				}
+				final QuorumMessageBufferProducer<T> producer = builder.build();
+				status = producer;
+				out = producer;
 			}
-			out = builder.build();
 		}
 		return out;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * @return the delivery status of each member of this group, such as how
+	 *         many messages they lag behind the quorum.
+	 */
+	@Nonnull
+	public GroupStatus getStatus() {
+		if (status == null) {
+			getOutputBuffer();
+		}
+		return status;
+	}
+
+	/**
+	 * Closes all members. Groups with a quorum first flush their backlog.
+	 * 
+	 * @throws IOException
+	 *             if some member that was not dropped did not receive all
+	 *             messages, once every member was closed
 	 */
 	@Override
 	public void close() throws IOException {
 		if (channels == null) {
 			return;
 		}
+		long lost = 0;
+		if (out instanceof QuorumMessageBufferProducer) {
+			// flush the backlog while the members are still open
+			lost = ((QuorumMessageBufferProducer<?>) out).close();
+		}
 		for (final MessageChannel<T> channel : channels) {
 			channel.close();
 		}
+		if (in instanceof MergingMessageBufferConsumer) {
+			((MergingMessageBufferConsumer<?>) in).close();
+		}
+		if (lost > 0) {
+			throw new IOException(lost + " messages did not reach every member before the close");
+		}
 	}
 
 	/**
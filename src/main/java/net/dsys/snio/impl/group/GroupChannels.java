@@ -18,6 +18,7 @@ package net.dsys.snio.impl.group;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
@@ -25,15 +26,21 @@ import net.dsys.commons.api.lang.BinaryUnit;
 import net.dsys.commons.api.lang.Copier;
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.commons.impl.lang.ByteBufferCopier;
-import net.dsys.commons.impl.lang.ByteBufferFactory;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessagePool;
+import net.dsys.snio.api.buffer.WatermarkListener;
 import net.dsys.snio.api.channel.MessageChannel;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
 import net.dsys.snio.api.pool.SelectorPool;
 import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.buffer.ByteBufferPool;
+import net.dsys.snio.impl.buffer.LatencyRecorder;
 import net.dsys.snio.impl.buffer.RingBufferProvider;
+import net.dsys.snio.impl.buffer.SlabBufferProvider;
+import net.dsys.snio.impl.buffer.SlabRegion;
 import net.dsys.snio.impl.channel.MessageChannels;
+import net.dsys.snio.impl.channel.SocketOptions;
 import net.dsys.snio.impl.channel.builder.ChannelConfig;
 import net.dsys.snio.impl.channel.builder.ClientConfig;
 import net.dsys.snio.impl.group.builder.GroupConfig;
@@ -53,12 +60,33 @@ public final class GroupChannels {
 			final GroupConfig group) throws IOException {
 		final Factory<MessageCodec> codecs = group.getMessageCodecs();
 		final Factory<RateLimiter> limiters = group.getRateLimiters();
-		final Factory<ByteBuffer> factory = new ByteBufferFactory(codecs.newInstance().getBodyLength());
+		final Factory<ByteBuffer> factory = common.getFactory(codecs.newInstance().getBodyLength());
+		final ChannelConfig<ByteBuffer> member = new ChannelConfig<>(common);
+		final Factory<MessageBufferConsumer<ByteBuffer>> consumers = new Factory<MessageBufferConsumer<ByteBuffer>>() {
+			@Override
+			public MessageBufferConsumer<ByteBuffer> newInstance() {
+				if (common.isSlabBuffer()) {
+					return SlabBufferProvider.createConsumer(common.getSlabRegion());
+				} else if (common.isPooledBuffer()) {
+					return RingBufferProvider.createConsumer(common.getCapacity(), common.getBufferPool());
+				} else if (common.isRingBuffer()) {
+					return RingBufferProvider.createConsumer(common.getCapacity(), factory);
+				} else {
+					return BlockingQueueProvider.createConsumer(common.getCapacity(), factory);
+				}
+			}
+		};
+		final MergingMessageBufferConsumer<ByteBuffer> merger;
 		final MessageBufferConsumer<ByteBuffer> consumer;
-		if (common.isRingBuffer()) {
-			consumer = RingBufferProvider.createConsumer(common.getCapacity(), factory);
+		if (group.isMergedInput()) {
+			// each member gets its own single-producer input buffer
+			member.useMultipleInputBuffers();
+			merger = new MergingMessageBufferConsumer<>(group.getInputWeights(), consumers);
+			consumer = merger;
 		} else {
-			consumer = BlockingQueueProvider.createConsumer(common.getCapacity(), factory);
+			consumer = consumers.newInstance();
+			member.useSingleInputBuffer(consumer);
+			merger = null;
 		}
 		final Copier<ByteBuffer> copier = new ByteBufferCopier();
 		final ChannelFactory<ByteBuffer> builder = new ChannelFactory<ByteBuffer>() {
@@ -67,10 +95,20 @@ public final class GroupChannels {
 				final ClientConfig client = new ClientConfig()
 					.setMessageCodec(codecs.newInstance())
 					.setRateLimiter(limiters.newInstance());
-				return MessageChannels.openTCPChannel(common, client);
+				final MessageChannel<ByteBuffer> channel = MessageChannels.openTCPChannel(member, client);
+				if (merger != null) {
+					merger.add(channel.getInputBuffer());
+				}
+				return channel;
 			}
 		};
-		final GroupChannel<ByteBuffer> channel = new GroupChannel<>(consumer, builder, copier);
+		final GroupChannel<ByteBuffer> channel;
+		if (group.isQuorum()) {
+			channel = new GroupChannel<>(consumer, builder, copier, factory,
+					group.getQuorum(), group.getBacklog(), group.isDropLagging());
+		} else {
+			channel = new GroupChannel<>(consumer, builder, copier);
+		}
 		channel.open(group.getSize());
 		return channel;
 	}
@@ -124,6 +162,14 @@ public final class GroupChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#setSocketOptions(SocketOptions)
+		 */
+		public TCPGroupBuilder setSocketOptions(final SocketOptions options) {
+			common.setSocketOptions(options);
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useDirectBuffer()
 		 */
@@ -156,6 +202,78 @@ public final class GroupChannels {
 			return this;
 		}
 
+		/**
+		 * @see ChannelConfig#usePooledBuffers(MessagePool)
+		 */
+		public TCPGroupBuilder usePooledBuffers(final MessagePool<ByteBuffer> pool) {
+			common.usePooledBuffers(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSlabBuffers(SlabRegion)
+		 */
+		public TCPGroupBuilder useSlabBuffers(final SlabRegion region) {
+			common.useSlabBuffers(region);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#usePreallocatedBuffers()
+		 */
+		public TCPGroupBuilder usePreallocatedBuffers() {
+			common.usePreallocatedBuffers();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setWatermarks(int, int, WatermarkListener)
+		 */
+		public TCPGroupBuilder setWatermarks(final int low, final int high, final WatermarkListener listener) {
+			common.setWatermarks(low, high, listener);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency()
+		 */
+		public TCPGroupBuilder trackLatency() {
+			common.trackLatency();
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#trackLatency(LatencyRecorder, LatencyRecorder)
+		 */
+		public TCPGroupBuilder trackLatency(final LatencyRecorder send, final LatencyRecorder receive) {
+			common.trackLatency(send, receive);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#setSendBatching(long, TimeUnit)
+		 */
+		public TCPGroupBuilder setSendBatching(final long maxDelay, final TimeUnit unit) {
+			common.setSendBatching(maxDelay, unit);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useIOBufferPool(ByteBufferPool)
+		 */
+		public TCPGroupBuilder useIOBufferPool(final ByteBufferPool pool) {
+			common.useIOBufferPool(pool);
+			return this;
+		}
+
+		/**
+		 * @see ChannelConfig#useSharedReadBuffer()
+		 */
+		public TCPGroupBuilder useSharedReadBuffer() {
+			common.useSharedReadBuffer();
+			return this;
+		}
+
 		/**
 		 * @see ChannelConfig#useSingleInputBuffer()
 		 */
@@ -212,6 +330,30 @@ public final class GroupChannels {
 			return this;
 		}
 
+		/**
+		 * @see GroupConfig#setRateLimit(long, BinaryUnit, long, long)
+		 */
+		public TCPGroupBuilder setRateLimit(final long value, final BinaryUnit unit, final long messages, final long burst) {
+			group.setRateLimit(value, unit, messages, burst);
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#setSharedRateLimiter(RateLimiter)
+		 */
+		public TCPGroupBuilder setSharedRateLimiter(final RateLimiter shared) {
+			group.setSharedRateLimiter(shared);
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#setSharedRateLimit(long, BinaryUnit)
+		 */
+		public TCPGroupBuilder setSharedRateLimit(final long value, final BinaryUnit unit) {
+			group.setSharedRateLimit(value, unit);
+			return this;
+		}
+
 		/**
 		 * @see GroupConfig#setGroupSize(int)
 		 */
@@ -220,6 +362,62 @@ public final class GroupChannels {
 			return this;
 		}
 
+		/**
+		 * @see GroupConfig#useSharedInputBuffer()
+		 */
+		public TCPGroupBuilder useSharedInputBuffer() {
+			group.useSharedInputBuffer();
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#useMergedInputBuffer()
+		 */
+		public TCPGroupBuilder useMergedInputBuffer() {
+			group.useMergedInputBuffer();
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#useMergedInputBuffer(int...)
+		 */
+		public TCPGroupBuilder useMergedInputBuffer(final int... weights) {
+			group.useMergedInputBuffer(weights);
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#setQuorum(int)
+		 */
+		public TCPGroupBuilder setQuorum(final int quorum) {
+			group.setQuorum(quorum);
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#setBacklog(int)
+		 */
+		public TCPGroupBuilder setBacklog(final int backlog) {
+			group.setBacklog(backlog);
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#bufferLaggingMembers()
+		 */
+		public TCPGroupBuilder bufferLaggingMembers() {
+			group.bufferLaggingMembers();
+			return this;
+		}
+
+		/**
+		 * @see GroupConfig#dropLaggingMembers()
+		 */
+		public TCPGroupBuilder dropLaggingMembers() {
+			group.dropLaggingMembers();
+			return this;
+		}
+
 		public GroupChannel<ByteBuffer> open() throws IOException {
 			return openTCPGroup(common, group);
 		}
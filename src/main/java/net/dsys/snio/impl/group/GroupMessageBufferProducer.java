@@ -16,20 +16,25 @@
 
 package net.dsys.snio.impl.group;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Queue;
 
 import javax.annotation.Nonnull;
 
 import net.dsys.commons.api.lang.Copier;
+import net.dsys.snio.api.buffer.AbstractMessageBufferProducer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.SkippedPosition;
 import net.dsys.snio.api.group.GroupData;
+import net.dsys.snio.api.group.GroupStatus;
 
 /**
  * @author Ricardo Padilha
  */
-final class GroupMessageBufferProducer<T> implements MessageBufferProducer<T> {
+public final class GroupMessageBufferProducer<T> extends AbstractMessageBufferProducer<T> implements GroupStatus {
 
 	private static final int INITIAL_SEQUENCE_VALUE = -1;
 
@@ -37,7 +42,17 @@ final class GroupMessageBufferProducer<T> implements MessageBufferProducer<T> {
 	private final Copier<T> copier;
 	@Nonnull
 	private final List<MessageBufferProducer<T>> buffers;
+	private long cursor;
 	private long last;
+	// position claimed by tryAcquire() on members 0 to owed - 1 only, the
+	// next member being full; it is skipped once all members claimed it
+	private long skipped;
+	private int owed;
+	// members that already published the skipped position
+	private int flushed;
+	// skipped positions claimed by all members, published in order
+	@Nonnull
+	private final Queue<Long> skips;
 
 	GroupMessageBufferProducer(@Nonnull final Copier<T> copier,
 			@Nonnull final Collection<MessageBufferProducer<T>> buffers) {
@@ -52,7 +67,12 @@ final class GroupMessageBufferProducer<T> implements MessageBufferProducer<T> {
 		}
 		this.copier = copier;
 		this.buffers = new ArrayList<>(buffers);
+		this.cursor = INITIAL_SEQUENCE_VALUE;
 		this.last = INITIAL_SEQUENCE_VALUE;
+		this.skipped = NO_SEQUENCE;
+		this.owed = 0;
+		this.flushed = 0;
+		this.skips = new ArrayDeque<>();
 	}
 
 	/**
@@ -60,37 +80,166 @@ final class GroupMessageBufferProducer<T> implements MessageBufferProducer<T> {
 	 */
 	@Override
 	public long acquire() throws InterruptedException {
-		long sequence = INITIAL_SEQUENCE_VALUE;
-		for (final MessageBufferProducer<T> buffer : buffers) {
-			final long seq = buffer.acquire();
-			if (sequence == INITIAL_SEQUENCE_VALUE) {
-				sequence = seq;
-			} else if (sequence != seq) {
+		return acquire(1);
+	}
+
+	/**
+	 * Claims the same range of sequence numbers on all members. The first
+	 * member decides how many positions are actually acquired, and all other
+	 * members are asked for exactly that amount, so that sequences stay
+	 * aligned across the group.
+	 * <p>
+	 * Sequences only diverge if a member is also written to by some other
+	 * producer. Claims cannot be undone, so in that case every position
+	 * claimed so far is published as a {@link SkippedPosition}, instead of
+	 * leaving the members waiting forever for it, and the acquisition fails.
+	 * <p>
+	 * A position left claimed on only some members by {@link #tryAcquire()}
+	 * is claimed on the remaining members first.
+	 */
+	@Override
+	public long acquire(final int n) throws InterruptedException {
+		if (n <= 0) {
+			throw new IllegalArgumentException("n <= 0");
+		}
+		if (skipped != NO_SEQUENCE) {
+			settle(false);
+		}
+		final long sequence = buffers.get(0).acquire(n);
+		final int claimed = (int) (sequence - cursor);
+		final int k = buffers.size();
+		for (int i = 1; i < k; i++) {
+			final long seq = buffers.get(i).acquire(claimed);
+			if (seq != sequence) {
+				abandon(i, seq, sequence, claimed);
 				throw new IllegalStateException(
 						String.format("sequence numbers for MessageBuffers are not matching: %d != %d",
 								Long.valueOf(seq), Long.valueOf(sequence)));
 			}
 		}
+		cursor = sequence;
 		return sequence;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Publishes the positions claimed on members 0 to <code>member</code> as
+	 * skipped, the latter having returned <code>seq</code> instead of
+	 * <code>sequence</code>.
+	 */
+	private void abandon(final int member, final long seq, final long sequence, final int claimed)
+			throws InterruptedException {
+		final MessageBufferProducer<T> buffer = buffers.get(member);
+		SkippedPosition.skip(buffer, seq - claimed + 1, seq);
+		buffer.release(seq - claimed + 1, seq);
+		for (int i = 0; i < member; i++) {
+			final MessageBufferProducer<T> other = buffers.get(i);
+			SkippedPosition.skip(other, sequence - claimed + 1, sequence);
+			other.release(sequence - claimed + 1, sequence);
+		}
+		// the first member decides the sequences of this group
+		cursor = sequence;
+		last = sequence;
+	}
+
+	/**
+	 * Claims the next position on each member without blocking. Claims
+	 * cannot be undone, so when a member is full, the position already
+	 * claimed on the members before it is marked as skipped, and published
+	 * as soon as all positions before it were released. It is claimed and
+	 * skipped on the remaining members by the next acquisition, which keeps
+	 * the sequences aligned.
 	 */
 	@Override
-	public long acquire(final int n) throws InterruptedException {
-		long sequence = INITIAL_SEQUENCE_VALUE;
-		for (final MessageBufferProducer<T> buffer : buffers) {
-			final long seq = buffer.acquire();
-			if (sequence == INITIAL_SEQUENCE_VALUE) {
-				sequence = seq;
-			} else {
-				sequence = Math.min(sequence, seq);
+	public long tryAcquire() throws InterruptedException {
+		if (skipped != NO_SEQUENCE && !settle(true)) {
+			return NO_SEQUENCE;
+		}
+		final long sequence = buffers.get(0).tryAcquire();
+		if (sequence == NO_SEQUENCE) {
+			return NO_SEQUENCE;
+		}
+		final int k = buffers.size();
+		for (int i = 1; i < k; i++) {
+			final long seq = buffers.get(i).tryAcquire();
+			if (seq == NO_SEQUENCE) {
+				for (int j = 0; j < i; j++) {
+					SkippedPosition.skip(buffers.get(j), sequence, sequence);
+				}
+				cursor = sequence;
+				skipped = sequence;
+				owed = i;
+				flushed = 0;
+				flush();
+				return NO_SEQUENCE;
+			}
+			if (seq != sequence) {
+				abandon(i, seq, sequence, 1);
+				throw new IllegalStateException(
+						String.format("sequence numbers for MessageBuffers are not matching: %d != %d",
+								Long.valueOf(seq), Long.valueOf(sequence)));
 			}
 		}
+		cursor = sequence;
 		return sequence;
 	}
 
+	/**
+	 * Claims the skipped position on the members that do not hold it yet.
+	 * 
+	 * @return <code>false</code> if a member was still full
+	 */
+	private boolean settle(final boolean nonBlocking) throws InterruptedException {
+		final int k = buffers.size();
+		while (owed < k) {
+			final MessageBufferProducer<T> buffer = buffers.get(owed);
+			final long seq = nonBlocking ? buffer.tryAcquire() : buffer.acquire(1);
+			if (seq == NO_SEQUENCE) {
+				return false;
+			}
+			SkippedPosition.skip(buffer, seq, seq);
+			if (seq != skipped) {
+				final long sequence = skipped;
+				buffer.release(seq);
+				for (int i = flushed; i < owed; i++) {
+					buffers.get(i).release(sequence);
+				}
+				skipped = NO_SEQUENCE;
+				owed = 0;
+				flushed = 0;
+				last = sequence;
+				throw new IllegalStateException(
+						String.format("sequence numbers for MessageBuffers are not matching: %d != %d",
+								Long.valueOf(seq), Long.valueOf(sequence)));
+			}
+			owed++;
+		}
+		if (flushed == 0 && last != skipped - 1) {
+			// published along with the positions around it
+			skips.add(Long.valueOf(skipped));
+		} else {
+			flush();
+			last = skipped;
+		}
+		skipped = NO_SEQUENCE;
+		owed = 0;
+		flushed = 0;
+		return true;
+	}
+
+	/**
+	 * Publishes the skipped position on the members that claimed it, once
+	 * all positions before it were published.
+	 */
+	private void flush() throws InterruptedException {
+		if (skipped == NO_SEQUENCE || last != skipped - 1) {
+			return;
+		}
+		for (int i = flushed; i < owed; i++) {
+			buffers.get(i).release(skipped);
+		}
+		flushed = owed;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -111,6 +260,14 @@ final class GroupMessageBufferProducer<T> implements MessageBufferProducer<T> {
 		return buffers.get(0).get(sequence);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(final long sequence, final int length) {
+		return get(sequence);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -132,34 +289,138 @@ final class GroupMessageBufferProducer<T> implements MessageBufferProducer<T> {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachId(final long sequence, final long id) {
+		for (final MessageBufferProducer<T> buffer : buffers) {
+			buffer.attachId(sequence, id);
+		}
+	}
+
+	/**
+	 * Each member has its own table of interned objects, so a single handle
+	 * cannot be used for the whole group.
+	 */
+	@Override
+	public int intern(final Object attachment) {
+		if (attachment == null) {
+			throw new NullPointerException("attachment == null");
+		}
+		return NO_HANDLE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unintern(final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachHandle(final long sequence, final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void release(final long sequence) throws InterruptedException {
+		// the first member holds the data written by the application, so it
+		// must only be released once its contents were copied to all others
+		if (sequence <= last) {
+			return;
+		}
+		final MessageBufferProducer<T> first = buffers.get(0);
+		final long start = last + 1;
 		final int k = buffers.size();
-		for (long s = last + 1; s <= sequence; s++) {
-			final T in = buffers.get(0).get(s);
-			for (int i = 1; i < k; i++) {
-				final T out = buffers.get(i).get(s);
-				copier.copy(in, out);
+		for (int i = 1; i < k; i++) {
+			final MessageBufferProducer<T> buffer = buffers.get(i);
+			for (long s = start; s <= sequence; s++) {
+				copier.copy(first.get(s), buffer.get(s));
 			}
+			buffer.release(start, sequence);
 		}
-		for (final MessageBufferProducer<T> buffer : buffers) {
-			buffer.release(sequence);
-		}
+		first.release(start, sequence);
 		last = sequence;
+		// skipped positions right after the released ones need no copy
+		while (!skips.isEmpty() && skips.peek().longValue() <= last + 1) {
+			final long skip = skips.poll().longValue();
+			if (skip == last + 1) {
+				for (int i = 0; i < k; i++) {
+					buffers.get(i).release(skip);
+				}
+				last = skip;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * The group keeps track of released sequences itself, so this is the
+	 * same as {@link #release(long)}.
+	 */
+	@Override
+	public void release(final long first, final long last) throws InterruptedException {
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		release(last);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return buffers.size();
+	}
+
+	/**
+	 * All members must accept a message before it is released.
+	 */
+	@Override
+	public int getQuorum() {
+		return buffers.size();
+	}
+
+	/**
+	 * Messages are handed to all members on release, so there is never any lag.
+	 */
+	@Override
+	public long getLag(final int member) {
+		if (member < 0 || member >= buffers.size()) {
+			throw new IndexOutOfBoundsException("member: " + member);
+		}
+		return 0;
+	}
+
+	/**
+	 * Members are never dropped.
+	 */
+	@Override
+	public boolean isDropped(final int member) {
+		if (member < 0 || member >= buffers.size()) {
+			throw new IndexOutOfBoundsException("member: " + member);
+		}
+		return false;
 	}
 
 	@Nonnull
-	static <T> Builder<T> build() {
+	public static <T> Builder<T> build() {
 		return new Builder<>();
 	}
 
 	/**
 	 * @author Ricardo Padilha
 	 */
-	static final class Builder<T> {
+	public static final class Builder<T> {
 
 		private final List<MessageBufferProducer<T>> list;
 		private Copier<T> copier;
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.group;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+
+/**
+ * Consumer that merges the input buffers of all members of a group. Each
+ * member keeps its own single-producer input buffer, so that reader threads
+ * never contend with each other, and this class polls them in turn. A member
+ * is served up to its weight in released messages before moving on to the
+ * next one.
+ * <p>
+ * {@link #createProducer()} adds one more input buffer, with a weight of 1,
+ * for producers outside of the group, so that this class can stand in for
+ * any other consumer.
+ * <p>
+ * Like the other consumers, a sequence must be released before acquiring the
+ * next one.
+ *
+ * @author Ricardo Padilha
+ */
+public final class MergingMessageBufferConsumer<T> implements MessageBufferConsumer<T> {
+
+	private static final int INITIAL_SEQUENCE_VALUE = -1;
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = 50000;
+	private static final int EXTRA_WEIGHT = 1;
+
+	@Nonnull
+	private final int[] weights;
+	@Nonnull
+	private final Factory<MessageBufferConsumer<T>> extra;
+	@Nonnull
+	private volatile Input<T>[] inputs;
+	private int members;
+	private int owner;
+	private int served;
+	private long cursor;
+	private long available;
+	private long offset;
+	private volatile boolean closed;
+
+	/**
+	 * @param weights
+	 *            of each member, in the order they are added
+	 * @param extra
+	 *            creates the input buffers handed out by
+	 *            {@link #createProducer()}
+	 */
+	public MergingMessageBufferConsumer(@Nonnull final int[] weights,
+			@Nonnull final Factory<MessageBufferConsumer<T>> extra) {
+		if (weights == null) {
+			throw new NullPointerException("weights == null");
+		}
+		if (weights.length < 1) {
+			throw new IllegalArgumentException("weights.length < 1");
+		}
+		for (final int weight : weights) {
+			if (weight < 1) {
+				throw new IllegalArgumentException("weight < 1");
+			}
+		}
+		if (extra == null) {
+			throw new NullPointerException("extra == null");
+		}
+		this.weights = weights.clone();
+		this.extra = extra;
+		@SuppressWarnings("unchecked")
+		final Input<T>[] empty = new Input[0];
+		this.inputs = empty;
+		this.cursor = INITIAL_SEQUENCE_VALUE;
+		this.available = INITIAL_SEQUENCE_VALUE;
+	}
+
+	/**
+	 * Adds the input buffer of the next member of the group.
+	 */
+	public void add(@Nonnull final MessageBufferConsumer<T> input) {
+		if (input == null) {
+			throw new NullPointerException("input == null");
+		}
+		synchronized (this) {
+			if (members == weights.length) {
+				throw new IllegalStateException("size == weights.length");
+			}
+			append(new Input<>(input, weights[members]));
+			members++;
+		}
+	}
+
+	/**
+	 * Inputs are only ever appended, and the consuming thread picks up the
+	 * new array on its next pass.
+	 */
+	private void append(@Nonnull final Input<T> input) {
+		final Input<T>[] copy = Arrays.copyOf(inputs, inputs.length + 1);
+		copy[copy.length - 1] = input;
+		inputs = copy;
+	}
+
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageBufferProducer<T> createProducer() {
+		final MessageBufferConsumer<T> input = extra.newInstance();
+		synchronized (this) {
+			append(new Input<>(input, EXTRA_WEIGHT));
+		}
+		return input.createProducer();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire() throws InterruptedException {
+		return acquire(1);
+	}
+
+	/**
+	 * Acquires up to <code>n</code> messages from a single member, limited by
+	 * what is left of its weight.
+	 */
+	@Override
+	public long acquire(@Nonnegative final int n) throws InterruptedException {
+		if (n < 1) {
+			throw new IllegalArgumentException("n < 1");
+		}
+		int tries = 0;
+		Input<T>[] inputs;
+		while (!select(inputs = this.inputs)) {
+			if (closed) {
+				throw new InterruptedByClose();
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (tries < SPIN_TRIES) {
+				tries++;
+			} else if (tries < SPIN_TRIES + YIELD_TRIES) {
+				tries++;
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+		final Input<T> input = inputs[owner];
+		final int k = Math.max(1, Math.min(n, input.weight - served));
+		final long last = input.buffer.acquire(k);
+		final int count = (int) (last - input.released);
+		offset = input.released - cursor;
+		available = cursor + count;
+		return available;
+	}
+
+	/**
+	 * Finds the next member with messages available, honoring its weight.
+	 *
+	 * @return <code>true</code> if {@link #owner} has messages
+	 */
+	private boolean select(@Nonnull final Input<T>[] inputs) {
+		final int k = inputs.length;
+		if (k == 0) {
+			return false;
+		}
+		if (served < inputs[owner].weight && inputs[owner].buffer.remaining() > 0) {
+			return true;
+		}
+		for (int i = 1; i <= k; i++) {
+			final int next = (owner + i) % k;
+			if (inputs[next].buffer.remaining() > 0) {
+				owner = next;
+				served = 0;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int remaining() {
+		int rem = 0;
+		for (final Input<T> input : inputs) {
+			rem += input.buffer.remaining();
+		}
+		return rem;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(final long sequence) {
+		return inputs[owner].buffer.get(sequence + offset);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object attachment(final long sequence) {
+		return inputs[owner].buffer.attachment(sequence + offset);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long attachmentId(final long sequence) {
+		return inputs[owner].buffer.attachmentId(sequence + offset);
+	}
+
+	/**
+	 * Inputs are added over time, so they are polled instead.
+	 */
+	@Override
+	public boolean setPublishListener(final Runnable listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener == null");
+		}
+		return false;
+	}
+
+	/**
+	 * Only released messages count towards the weight of a member.
+	 */
+	@Override
+	public void release(final long sequence) throws InterruptedException {
+		if (closed) {
+			throw new InterruptedByClose();
+		}
+		if (sequence > available) {
+			throw new IllegalArgumentException("sequence > available");
+		}
+		final Input<T> input = inputs[owner];
+		final long seq = sequence + offset;
+		input.buffer.release(seq);
+		served += (int) (seq - input.released);
+		input.released = seq;
+		cursor = sequence;
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private static final class Input<T> {
+
+		final MessageBufferConsumer<T> buffer;
+		final int weight;
+		long released;
+
+		Input(@Nonnull final MessageBufferConsumer<T> buffer, @Nonnegative final int weight) {
+			this.buffer = buffer;
+			this.weight = weight;
+			this.released = INITIAL_SEQUENCE_VALUE;
+		}
+	}
+}
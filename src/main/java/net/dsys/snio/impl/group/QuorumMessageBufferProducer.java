@@ -0,0 +1,626 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.group;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.lang.Copier;
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.commons.impl.lang.DaemonThreadFactory;
+import net.dsys.snio.api.buffer.AbstractMessageBufferProducer;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.group.GroupData;
+import net.dsys.snio.api.group.GroupStatus;
+
+/**
+ * Group producer that considers a message sent as soon as a quorum of members
+ * has accepted it. Messages are first written into a local backlog, and then
+ * forwarded to each member as space becomes available in their buffers. This
+ * way a slow member does not hold back the whole group until it lags behind
+ * more than the backlog allows. At that point the member either throttles the
+ * application (like a regular group), or it is dropped from the group.
+ * <p>
+ * The application thread forwards whatever it can on every acquire and
+ * release. Messages still in the backlog after a release are handed to a
+ * forwarding task of this group, which waits on the lagging members until
+ * they catch up, and then ends. That way lagging members catch up even if
+ * the application stops sending, and {@link #close()} flushes whatever is
+ * left.
+ * <p>
+ * Like {@link GroupMessageBufferProducer}, this class must be used by a single
+ * thread.
+ *
+ * @author Ricardo Padilha
+ */
+public final class QuorumMessageBufferProducer<T> extends AbstractMessageBufferProducer<T> implements GroupStatus {
+
+	private static final int INITIAL_SEQUENCE_VALUE = -1;
+	private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+	// threads only live while some group has messages to forward
+	private static final Executor FORWARDERS =
+			Executors.newCachedThreadPool(new DaemonThreadFactory("quorum-forwarder"));
+
+	@Nonnull
+	private final Copier<T> copier;
+	@Nonnull
+	private final List<MessageBufferProducer<T>> buffers;
+	private final int quorum;
+	private final boolean dropLagging;
+	private final T[] backlog;
+	private final Object[] attachments;
+	private final long[] ids;
+	private final AtomicLongArray forwarded;
+	private final AtomicIntegerArray dropped;
+	// held while copying out of the backlog, so that dropped members are
+	// never written to again once the application reuses their messages
+	private final Lock lock;
+	private final Condition progress;
+	private final AtomicBoolean running;
+	private final Runnable forwarder;
+	private long cursor;
+	private boolean withIds;
+	private int next;
+	private volatile long published;
+	private volatile boolean broken;
+	private volatile boolean closed;
+
+	QuorumMessageBufferProducer(@Nonnull final Copier<T> copier, @Nonnull final Factory<T> factory,
+			@Nonnull final Collection<MessageBufferProducer<T>> buffers, @Nonnegative final int quorum,
+			@Nonnegative final int capacity, final boolean dropLagging) {
+		if (copier == null) {
+			throw new NullPointerException("copier == null");
+		}
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		if (buffers == null) {
+			throw new NullPointerException("buffers == null");
+		}
+		if (buffers.isEmpty()) {
+			throw new IllegalArgumentException("buffers.isEmpty()");
+		}
+		if (quorum < 1) {
+			throw new IllegalArgumentException("quorum < 1");
+		}
+		if (quorum > buffers.size()) {
+			throw new IllegalArgumentException("quorum > buffers.size()");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		this.copier = copier;
+		this.buffers = new ArrayList<>(buffers);
+		this.quorum = quorum;
+		this.dropLagging = dropLagging;
+		@SuppressWarnings("unchecked")
+		final T[] backlog = (T[]) new Object[capacity];
+		for (int i = 0; i < capacity; i++) {
+			backlog[i] = factory.newInstance();
+		}
+		this.backlog = backlog;
+		this.attachments = new Object[capacity];
+		this.ids = new long[capacity];
+		final int k = this.buffers.size();
+		this.forwarded = new AtomicLongArray(k);
+		for (int i = 0; i < k; i++) {
+			forwarded.set(i, INITIAL_SEQUENCE_VALUE);
+		}
+		this.dropped = new AtomicIntegerArray(k);
+		this.lock = new ReentrantLock();
+		this.progress = lock.newCondition();
+		this.running = new AtomicBoolean();
+		this.forwarder = new Runnable() {
+			@Override
+			public void run() {
+				do {
+					try {
+						while (forwardOrWait()) {
+							continue;
+						}
+					} catch (final InterruptedException e) {
+						// a member was closed, the group is going down
+						broken = true;
+						running.set(false);
+						return;
+					}
+					running.set(false);
+					// a release may have come in after the last check
+				} while (!closed && pending() && running.compareAndSet(false, true));
+			}
+		};
+		this.cursor = INITIAL_SEQUENCE_VALUE;
+		this.published = INITIAL_SEQUENCE_VALUE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire() throws InterruptedException {
+		return acquire(1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long acquire(final int n) throws InterruptedException {
+		if (n <= 0) {
+			throw new IllegalArgumentException("n <= 0");
+		}
+		final long sequence = cursor + Math.min(n, backlog.length);
+		final long wrap = sequence - backlog.length;
+		if (minForwarded() < wrap) {
+			forward();
+			lock.lockInterruptibly();
+			try {
+				while (minForwarded() < wrap) {
+					if (dropLagging && accepted(wrap) >= quorum) {
+						dropBehind(wrap);
+						break;
+					}
+					await();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		for (long s = cursor + 1; s <= sequence; s++) {
+			attachments[index(s)] = null;
+		}
+		cursor = sequence;
+		return sequence;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryAcquire() throws InterruptedException {
+		forward();
+		final long wrap = cursor + 1 - backlog.length;
+		if (minForwarded() < wrap && !(dropLagging && accepted(wrap) >= quorum)) {
+			start();
+			return NO_SEQUENCE;
+		}
+		return acquire(1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int remaining() {
+		// with every member dropped, nothing holds back the backlog
+		final long min = Math.min(minForwarded(), cursor);
+		return (int) (backlog.length - (cursor - min));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(final long sequence) {
+		return backlog[index(sequence)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(final long sequence, final int length) {
+		return get(sequence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attach(final long sequence, final Object attachment) {
+		if (attachment instanceof GroupData && buffers.size() != ((GroupData<?>) attachment).size()) {
+			throw new IllegalArgumentException("buffers.size() != data.size()");
+		}
+		attachments[index(sequence)] = attachment;
+	}
+
+	/**
+	 * Ids are only forwarded to the members once the application attached
+	 * one, so groups that do not use them skip the extra call per member.
+	 */
+	@Override
+	public void attachId(final long sequence, final long id) {
+		ids[index(sequence)] = id;
+		withIds = true;
+	}
+
+	/**
+	 * Each member has its own table of interned objects, so a single handle
+	 * cannot be used for the whole group.
+	 */
+	@Override
+	public int intern(final Object attachment) {
+		if (attachment == null) {
+			throw new NullPointerException("attachment == null");
+		}
+		return NO_HANDLE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unintern(final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void attachHandle(final long sequence, final int handle) {
+		throw new IllegalArgumentException("handle was not interned by this buffer");
+	}
+
+	/**
+	 * Returns once at least a quorum of members have accepted all messages up
+	 * to the given sequence number.
+	 */
+	@Override
+	public void release(final long sequence) throws InterruptedException {
+		if (sequence > cursor) {
+			throw new IllegalArgumentException("sequence > cursor");
+		}
+		published = sequence;
+		forward();
+		if (accepted(sequence) < quorum) {
+			lock.lockInterruptibly();
+			try {
+				while (accepted(sequence) < quorum) {
+					await();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		start();
+	}
+
+	/**
+	 * Same as {@link #release(long)}, since this producer must not be shared.
+	 */
+	@Override
+	public void release(final long first, final long last) throws InterruptedException {
+		if (first > last) {
+			throw new IllegalArgumentException("first > last");
+		}
+		release(last);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return buffers.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getQuorum() {
+		return quorum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getLag(final int member) {
+		return Math.max(0, published - forwarded.get(member));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isDropped(final int member) {
+		return dropped.get(member) != 0;
+	}
+
+	/**
+	 * Forwards what is left in the backlog, waiting up to one second for
+	 * lagging members to make room, and stops forwarding.
+	 * 
+	 * @return how many released messages some member that was not dropped
+	 *         did not receive, zero if all of them were delivered
+	 */
+	@Nonnegative
+	public long close() {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+		lock.lock();
+		try {
+			forwardAll();
+			while (pending() && !broken && deadline - System.nanoTime() > 0) {
+				start();
+				progress.awaitNanos(WAIT_NANOS);
+				forwardAll();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closed = true;
+			lock.unlock();
+		}
+		return Math.max(0, published - minForwarded());
+	}
+
+	/**
+	 * Moves as many messages as possible from the backlog to each member,
+	 * without blocking on any of them. If the forwarding task is busy, it
+	 * does the job instead.
+	 */
+	private void forward() throws InterruptedException {
+		if (!lock.tryLock()) {
+			return;
+		}
+		try {
+			forwardAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void forwardAll() throws InterruptedException {
+		final long last = published;
+		boolean moved = false;
+		final int k = buffers.size();
+		for (int i = 0; i < k; i++) {
+			if (dropped.get(i) != 0) {
+				continue;
+			}
+			final long first = forwarded.get(i) + 1;
+			if (first > last) {
+				continue;
+			}
+			final MessageBufferProducer<T> buffer = buffers.get(i);
+			final int n = (int) Math.min(last - first + 1, buffer.remaining());
+			if (n <= 0) {
+				continue;
+			}
+			final long end = buffer.acquire(n);
+			final long start = end - n + 1;
+			for (int j = 0; j < n; j++) {
+				copy(i, buffer, first + j, start + j);
+			}
+			buffer.release(start, end);
+			forwarded.set(i, first + n - 1);
+			moved = true;
+		}
+		if (moved) {
+			progress.signalAll();
+		}
+	}
+
+	/**
+	 * Copies message <code>sequence</code> of the backlog into position
+	 * <code>position</code> of member <code>member</code>.
+	 */
+	private void copy(final int member, final MessageBufferProducer<T> buffer, final long sequence,
+			final long position) {
+		final int index = index(sequence);
+		copier.copy(backlog[index], buffer.get(position));
+		final Object attachment = attachments[index];
+		if (attachment instanceof GroupData) {
+			buffer.attach(position, ((GroupData<?>) attachment).get(member));
+		} else if (attachment != null) {
+			buffer.attach(position, attachment);
+		}
+		if (withIds) {
+			buffer.attachId(position, ids[index]);
+		}
+	}
+
+	/**
+	 * Run by the forwarding task: forwards what it can, or else waits for a
+	 * lagging member to make room, and forwards one message to it.
+	 * 
+	 * @return <code>false</code> once there is nothing left to forward
+	 */
+	private boolean forwardOrWait() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			if (closed) {
+				return false;
+			}
+			forwardAll();
+			if (!pending()) {
+				return false;
+			}
+			final int k = buffers.size();
+			for (int j = 0; j < k; j++) {
+				final int i = (next + j) % k;
+				final long sequence = forwarded.get(i) + 1;
+				if (dropped.get(i) != 0 || sequence > published) {
+					continue;
+				}
+				// take turns, so that a member that never drains does not
+				// hold back the others
+				next = i + 1;
+				final MessageBufferProducer<T> buffer = buffers.get(i);
+				final long position = buffer.acquire(WAIT_NANOS, TimeUnit.NANOSECONDS);
+				if (position != NO_SEQUENCE) {
+					copy(i, buffer, sequence, position);
+					buffer.release(position);
+					forwarded.set(i, sequence);
+					progress.signalAll();
+				}
+				break;
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Hands the backlog over to the forwarding task until members catch up.
+	 */
+	private void start() {
+		if (!closed && pending() && running.compareAndSet(false, true)) {
+			FORWARDERS.execute(forwarder);
+		}
+	}
+
+	/**
+	 * Waits, with the lock held, until the forwarding task moves messages to
+	 * some member.
+	 */
+	private void await() throws InterruptedException {
+		if (broken) {
+			throw new InterruptedByClose();
+		}
+		start();
+		progress.awaitNanos(WAIT_NANOS);
+	}
+
+	/**
+	 * @return how many members have accepted all messages up to the given
+	 *         sequence number
+	 */
+	private int accepted(final long sequence) {
+		int count = 0;
+		final int k = buffers.size();
+		for (int i = 0; i < k; i++) {
+			if (dropped.get(i) == 0 && forwarded.get(i) >= sequence) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Must be called with the lock held, so that no copy to these members is
+	 * in progress.
+	 */
+	private void dropBehind(final long sequence) {
+		final int k = buffers.size();
+		for (int i = 0; i < k; i++) {
+			if (dropped.get(i) == 0 && forwarded.get(i) < sequence) {
+				dropped.set(i, 1);
+			}
+		}
+	}
+
+	private long minForwarded() {
+		long min = Long.MAX_VALUE;
+		final int k = buffers.size();
+		for (int i = 0; i < k; i++) {
+			if (dropped.get(i) == 0) {
+				min = Math.min(min, forwarded.get(i));
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * @return true if some member has not received all published messages
+	 */
+	private boolean pending() {
+		return minForwarded() < published;
+	}
+
+	private int index(final long sequence) {
+		return (int) (sequence % backlog.length);
+	}
+
+	@Nonnull
+	public static <T> Builder<T> build() {
+		return new Builder<>();
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	public static final class Builder<T> {
+
+		private final List<MessageBufferProducer<T>> list;
+		private Copier<T> copier;
+		private Factory<T> factory;
+		private int quorum;
+		private int capacity;
+		private boolean dropLagging;
+
+		Builder() {
+			this.list = new ArrayList<>();
+			this.copier = null;
+			this.factory = null;
+		}
+
+		public void setCopier(@Nonnull final Copier<T> copier) {
+			if (copier == null) {
+				throw new NullPointerException("copier == null");
+			}
+			this.copier = copier;
+		}
+
+		public void setFactory(@Nonnull final Factory<T> factory) {
+			if (factory == null) {
+				throw new NullPointerException("factory == null");
+			}
+			this.factory = factory;
+		}
+
+		public void setQuorum(@Nonnegative final int quorum) {
+			this.quorum = quorum;
+		}
+
+		public void setBacklog(@Nonnegative final int capacity, final boolean dropLagging) {
+			this.capacity = capacity;
+			this.dropLagging = dropLagging;
+		}
+
+		public Builder<T> add(@Nonnull final MessageBufferProducer<T> producer) {
+			if (producer == null) {
+				throw new NullPointerException("producer == null");
+			}
+			list.add(producer);
+			return this;
+		}
+
+		@Nonnull
+		public QuorumMessageBufferProducer<T> build() {
+			return new QuorumMessageBufferProducer<>(copier, factory, list, quorum, capacity, dropLagging);
+		}
+	}
+}
@@ -16,6 +16,8 @@
 
 package net.dsys.snio.impl.group.builder;
 
+import java.util.Arrays;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
@@ -23,6 +25,7 @@ import net.dsys.commons.api.lang.BinaryUnit;
 import net.dsys.commons.api.lang.Factory;
 import net.dsys.commons.impl.builder.Mandatory;
 import net.dsys.commons.impl.builder.OptionGroup;
+import net.dsys.commons.impl.builder.Optional;
 import net.dsys.snio.api.codec.MessageCodec;
 import net.dsys.snio.api.limit.RateLimiter;
 import net.dsys.snio.impl.codec.Codecs;
@@ -33,12 +36,25 @@ import net.dsys.snio.impl.limit.RateLimiters;
  */
 public final class GroupConfig {
 
+	private static final int DEFAULT_BACKLOG = 1024;
+
 	private Factory<MessageCodec> codecs;
 	private Factory<RateLimiter> limiters;
+	private RateLimiter shared;
 	private int size;
+	private int quorum;
+	private int backlog;
+	private boolean dropLagging;
+	private boolean mergedInput;
+	private int[] weights;
 
 	public GroupConfig() {
 		this.size = 0;
+		this.quorum = 0;
+		this.backlog = DEFAULT_BACKLOG;
+		this.dropLagging = false;
+		this.mergedInput = false;
+		this.weights = null;
 	}
 
 	@Nonnull
@@ -82,6 +98,46 @@ public final class GroupConfig {
 		return this;
 	}
 
+	/**
+	 * Also limits the number of messages per second.
+	 * 
+	 * @see net.dsys.snio.api.limit.RateLimiter#setMessageRate(long, long)
+	 */
+	@Nonnull
+	@Mandatory(restrictions = "value >= 1 && unit != null && messages >= 1 && burst >= 1")
+	@OptionGroup(name = "limiter", seeAlso = "setRateLimiter(limiters)")
+	public GroupConfig setRateLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnegative final long messages, @Nonnegative final long burst) {
+		this.limiters = RateLimiters.limitFactory(value, unit, messages, burst);
+		return this;
+	}
+
+	/**
+	 * All channels also draw from the given limiter, e.g., one shared by all
+	 * channels of a tenant.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no shared limit", restrictions = "shared != null")
+	@OptionGroup(name = "shared limiter", seeAlso = "setSharedRateLimit(value, unit)")
+	public GroupConfig setSharedRateLimiter(@Nonnull final RateLimiter shared) {
+		if (shared == null) {
+			throw new NullPointerException("shared == null");
+		}
+		this.shared = shared;
+		return this;
+	}
+
+	/**
+	 * Limits the aggregate rate of all channels.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "no shared limit", restrictions = "value >= 1 && unit != null")
+	@OptionGroup(name = "shared limiter", seeAlso = "setSharedRateLimiter(shared)")
+	public GroupConfig setSharedRateLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
+		this.shared = RateLimiters.sharedLimit(value, unit);
+		return this;
+	}
+
 	@Nonnull
 	@Mandatory(restrictions = "size > 0")
 	public GroupConfig setGroupSize(final int size) {
@@ -92,6 +148,108 @@ public final class GroupConfig {
 		return this;
 	}
 
+	/**
+	 * Considers a message sent once <code>quorum</code> members have accepted
+	 * it, instead of waiting for all of them. Members that fall behind are
+	 * sent the remaining messages from a backlog.
+	 * 
+	 * @see #setBacklog(int)
+	 */
+	@Nonnull
+	@Optional(defaultValue = "group size", restrictions = "quorum > 0 && quorum <= size")
+	public GroupConfig setQuorum(@Nonnegative final int quorum) {
+		if (quorum < 1) {
+			throw new IllegalArgumentException("quorum < 1");
+		}
+		this.quorum = quorum;
+		return this;
+	}
+
+	/**
+	 * Maximum number of messages that a member can lag behind the quorum.
+	 * Only used if a quorum is smaller than the group size.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "1024", restrictions = "backlog > 0")
+	public GroupConfig setBacklog(@Nonnegative final int backlog) {
+		if (backlog < 1) {
+			throw new IllegalArgumentException("backlog < 1");
+		}
+		this.backlog = backlog;
+		return this;
+	}
+
+	/**
+	 * When a member lags behind more than the backlog, the application
+	 * blocks until the member catches up.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "bufferLaggingMembers()")
+	@OptionGroup(name = "lagging", seeAlso = "dropLaggingMembers()")
+	public GroupConfig bufferLaggingMembers() {
+		this.dropLagging = false;
+		return this;
+	}
+
+	/**
+	 * When a member lags behind more than the backlog, it is dropped from the
+	 * group and does not receive any further messages.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "bufferLaggingMembers()")
+	@OptionGroup(name = "lagging", seeAlso = "bufferLaggingMembers()")
+	public GroupConfig dropLaggingMembers() {
+		this.dropLagging = true;
+		return this;
+	}
+
+	/**
+	 * All members publish their messages into a single input buffer.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "useSharedInputBuffer()")
+	@OptionGroup(name = "inputBuffer", seeAlso = "useMergedInputBuffer(), useMergedInputBuffer(weights)")
+	public GroupConfig useSharedInputBuffer() {
+		this.mergedInput = false;
+		this.weights = null;
+		return this;
+	}
+
+	/**
+	 * Each member has its own input buffer, and the group input polls them in
+	 * round-robin order.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "useSharedInputBuffer()")
+	@OptionGroup(name = "inputBuffer", seeAlso = "useSharedInputBuffer(), useMergedInputBuffer(weights)")
+	public GroupConfig useMergedInputBuffer() {
+		this.mergedInput = true;
+		this.weights = null;
+		return this;
+	}
+
+	/**
+	 * Each member has its own input buffer, and the group input polls them in
+	 * turn, taking up to <code>weights[i]</code> messages from member
+	 * <code>i</code> at a time.
+	 */
+	@Nonnull
+	@Optional(defaultValue = "useSharedInputBuffer()", restrictions = "weights.length == size && weights[i] > 0")
+	@OptionGroup(name = "inputBuffer", seeAlso = "useSharedInputBuffer(), useMergedInputBuffer()")
+	public GroupConfig useMergedInputBuffer(@Nonnull final int... weights) {
+		if (weights == null) {
+			throw new NullPointerException("weights == null");
+		}
+		for (final int weight : weights) {
+			if (weight < 1) {
+				throw new IllegalArgumentException("weight < 1");
+			}
+		}
+		this.mergedInput = true;
+		this.weights = weights.clone();
+		return this;
+	}
+
 	@Nonnull
 	public Factory<MessageCodec> getMessageCodecs() {
 		if (codecs == null) {
@@ -105,6 +263,9 @@ public final class GroupConfig {
 		if (limiters == null) {
 			throw new IllegalStateException("rate limiter factory undefined");
 		}
+		if (shared != null) {
+			return RateLimiters.limitFactory(limiters, shared);
+		}
 		return limiters;
 	}
 
@@ -116,4 +277,47 @@ public final class GroupConfig {
 		return size;
 	}
 
+	@Nonnegative
+	public int getQuorum() {
+		final int size = getSize();
+		if (quorum == 0) {
+			return size;
+		}
+		if (quorum > size) {
+			throw new IllegalStateException("quorum > size");
+		}
+		return quorum;
+	}
+
+	public boolean isQuorum() {
+		return getQuorum() < getSize();
+	}
+
+	@Nonnegative
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public boolean isDropLagging() {
+		return dropLagging;
+	}
+
+	public boolean isMergedInput() {
+		return mergedInput;
+	}
+
+	@Nonnull
+	public int[] getInputWeights() {
+		final int size = getSize();
+		if (weights == null) {
+			final int[] ones = new int[size];
+			Arrays.fill(ones, 1);
+			return ones;
+		}
+		if (weights.length != size) {
+			throw new IllegalStateException("weights.length != size");
+		}
+		return weights.clone();
+	}
+
 }
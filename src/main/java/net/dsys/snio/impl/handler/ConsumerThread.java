@@ -16,11 +16,13 @@
 
 package net.dsys.snio.impl.handler;
 
+import static net.dsys.snio.impl.handler.ExecutionType.BATCHED;
 import static net.dsys.snio.impl.handler.ExecutionType.DECOUPLED;
 import static net.dsys.snio.impl.handler.ExecutionType.ZERO_COPY;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import net.dsys.commons.api.exception.Bug;
@@ -30,6 +32,7 @@ import net.dsys.commons.api.lang.Factory;
 import net.dsys.commons.api.lang.Interruptible;
 import net.dsys.snio.api.buffer.InterruptedByClose;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.handler.MessageBatchConsumer;
 import net.dsys.snio.api.handler.MessageConsumer;
 
 /**
@@ -48,6 +51,7 @@ final class ConsumerThread<T> implements Interruptible {
 	private final T holder;
 	private final Copier<T> copier;
 	private final Cleaner<T> cleaner;
+	private final int batchSize;
 	private final AtomicBoolean interrupted;
 
 	ConsumerThread(@Nonnull final MessageBufferConsumer<T> in,
@@ -74,6 +78,7 @@ final class ConsumerThread<T> implements Interruptible {
 		this.holder = holder;
 		this.copier = copier;
 		this.cleaner = cleaner;
+		this.batchSize = 1;
 		this.interrupted = new AtomicBoolean();
 	}
 
@@ -90,6 +95,33 @@ final class ConsumerThread<T> implements Interruptible {
 		this.holder = null;
 		this.copier = null;
 		this.cleaner = null;
+		this.batchSize = 1;
+		this.interrupted = new AtomicBoolean();
+	}
+
+	/**
+	 * Drains up to <code>batchSize</code> messages per cycle. If the consumer
+	 * is a {@link MessageBatchConsumer}, it is notified at the end of each
+	 * batch.
+	 */
+	ConsumerThread(@Nonnull final MessageBufferConsumer<T> in, @Nonnull final MessageConsumer<T> consumer,
+			@Nonnegative final int batchSize) {
+		if (in == null) {
+			throw new NullPointerException("in == null");
+		}
+		if (consumer == null) {
+			throw new NullPointerException("consumer == null");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize < 1");
+		}
+		this.type = BATCHED;
+		this.in = in;
+		this.consumer = consumer;
+		this.holder = null;
+		this.copier = null;
+		this.cleaner = null;
+		this.batchSize = batchSize;
 		this.interrupted = new AtomicBoolean();
 	}
 
@@ -112,6 +144,15 @@ final class ConsumerThread<T> implements Interruptible {
 		};
 	}
 
+	static <T> ConsumerThreadFactory<T> createBatchFactory(@Nonnegative final int batchSize) {
+		return new ConsumerThreadFactory<T>() {
+			@Override
+			public Runnable newInstance(final MessageBufferConsumer<T> in, final MessageConsumer<T> consumer) {
+				return new ConsumerThread<>(in, consumer, batchSize);
+			}
+		};
+	}
+
 
 	/**
 	 * {@inheritDoc}
@@ -135,6 +176,10 @@ final class ConsumerThread<T> implements Interruptible {
 				syncRun();
 				break;
 			}
+			case BATCHED: {
+				batchRun();
+				break;
+			}
 			default: {
 				throw new Bug("Unsuppported ThreadType: " + type);
 			}
@@ -190,4 +235,58 @@ final class ConsumerThread<T> implements Interruptible {
 			}
 		}
 	}
+
+	private void batchRun() {
+		final MessageBatchConsumer<T> batch;
+		if (consumer instanceof MessageBatchConsumer) {
+			batch = (MessageBatchConsumer<T>) consumer;
+		} else {
+			batch = null;
+		}
+		// all buffers start at the same initial sequence, and the first
+		// message of a batch is always right after the last one released
+		long released = -1;
+		while (!Thread.interrupted() && !interrupted.get()) {
+			try {
+				final int n = Math.min(Math.max(in.remaining(), 1), batchSize);
+				final long last = in.acquire(n);
+				try {
+					for (long sequence = released + 1; sequence <= last; sequence++) {
+						final T value = in.get(sequence);
+						final Object attachment = in.attachment(sequence);
+						// one failing message must not drop the rest of the batch
+						try {
+							consumer.consume(value, attachment);
+						} catch (final Throwable t) {
+							System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+							t.printStackTrace();
+						}
+					}
+				} finally {
+					if (batch != null) {
+						endOfBatch(batch);
+					}
+					in.release(last);
+					released = last;
+				}
+			} catch (final InterruptedByClose e) {
+				return;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			}
+		}
+	}
+
+	private static void endOfBatch(final MessageBatchConsumer<?> batch) {
+		try {
+			batch.endOfBatch();
+		} catch (final Throwable t) {
+			System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+			t.printStackTrace();
+		}
+	}
 }
@@ -22,6 +22,8 @@ package net.dsys.snio.impl.handler;
 enum ExecutionType {
 
 	ZERO_COPY,
-	DECOUPLED;
+	DECOUPLED,
+	BATCHED,
+	LENDING;
 
 }
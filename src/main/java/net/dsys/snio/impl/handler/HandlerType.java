@@ -22,6 +22,7 @@ package net.dsys.snio.impl.handler;
 enum HandlerType {
 
 	SINGLE_THREADED,
-	MULTI_THREADED;
+	MULTI_THREADED,
+	WORK_STEALING;
 
 }
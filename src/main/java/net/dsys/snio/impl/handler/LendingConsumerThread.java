@@ -0,0 +1,240 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.handler;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.lang.Interruptible;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.handler.MessageConsumer;
+import net.dsys.snio.api.handler.MessageLoan;
+import net.dsys.snio.api.handler.MessageLoanConsumer;
+
+/**
+ * Alternative to the decoupled mode of {@link ConsumerThread} that does not
+ * copy messages. Instead, the buffer position itself is lent to the consumer,
+ * which returns it when done. Positions are released back to the buffer in
+ * order, as soon as all loans up to them have been returned.
+ *
+ * @author Ricardo Padilha
+ */
+final class LendingConsumerThread<T> implements Interruptible {
+
+	private static final long INITIAL_SEQUENCE_VALUE = -1;
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = 50000;
+
+	private final MessageBufferConsumer<T> in;
+	private final MessageLoanConsumer<T> consumer;
+	private final Loan[] loans;
+	private final AtomicBoolean interrupted;
+	private volatile Thread waiter;
+	private long acquired;
+	private long released;
+
+	LendingConsumerThread(@Nonnull final MessageBufferConsumer<T> in,
+			@Nonnull final MessageLoanConsumer<T> consumer, @Nonnegative final int maxLoans) {
+		if (in == null) {
+			throw new NullPointerException("in == null");
+		}
+		if (consumer == null) {
+			throw new NullPointerException("consumer == null");
+		}
+		if (maxLoans < 1) {
+			throw new IllegalArgumentException("maxLoans < 1");
+		}
+		this.in = in;
+		this.consumer = consumer;
+		this.loans = new Loan[maxLoans];
+		for (int i = 0; i < maxLoans; i++) {
+			loans[i] = new Loan(this);
+		}
+		this.interrupted = new AtomicBoolean();
+		this.acquired = INITIAL_SEQUENCE_VALUE;
+		this.released = INITIAL_SEQUENCE_VALUE;
+	}
+
+	static <T> ConsumerThreadFactory<T> createFactory(@Nonnegative final int maxLoans) {
+		return new ConsumerThreadFactory<T>() {
+			@Override
+			public Runnable newInstance(final MessageBufferConsumer<T> in, final MessageConsumer<T> consumer) {
+				if (!(consumer instanceof MessageLoanConsumer)) {
+					throw new IllegalArgumentException("!(consumer instanceof MessageLoanConsumer)");
+				}
+				return new LendingConsumerThread<>(in, (MessageLoanConsumer<T>) consumer, maxLoans);
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void interrupt() {
+		interrupted.lazySet(true);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		int tries = 0;
+		while (!Thread.interrupted() && !interrupted.get()) {
+			try {
+				reclaim();
+				final int outstanding = (int) (acquired - released);
+				if (outstanding == loans.length) {
+					// nothing to do until the oldest loan comes back
+					awaitReturn();
+					continue;
+				}
+				if (outstanding > 0 && in.remaining() <= outstanding) {
+					// never block on the buffer while holding loans: returned
+					// loans must still be reclaimed to free up the buffer
+					if (tries < SPIN_TRIES) {
+						tries++;
+					} else if (tries < SPIN_TRIES + YIELD_TRIES) {
+						tries++;
+						Thread.yield();
+					} else {
+						waiter = Thread.currentThread();
+						LockSupport.parkNanos(PARK_NANOS);
+						waiter = null;
+					}
+					continue;
+				}
+				tries = 0;
+				// acquisitions are relative to the last released position
+				final long sequence = in.acquire(outstanding + 1);
+				if (sequence <= acquired) {
+					continue;
+				}
+				acquired = sequence;
+				final Loan loan = loans[(int) (sequence % loans.length)];
+				loan.lend(sequence);
+				try {
+					consumer.consume(in.get(sequence), in.attachment(sequence), loan);
+				} catch (final Throwable t) {
+					System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+					t.printStackTrace();
+				}
+			} catch (final InterruptedByClose e) {
+				return;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Blocks until the oldest loan is returned. Loans unpark this thread when
+	 * returned, the timeout only bounds the reaction to {@link #interrupt()}.
+	 */
+	private void awaitReturn() {
+		final long sequence = released + 1;
+		final Loan oldest = loans[(int) (sequence % loans.length)];
+		waiter = Thread.currentThread();
+		if (!oldest.isReturned(sequence)) {
+			LockSupport.parkNanos(this, PARK_NANOS * SPIN_TRIES);
+		}
+		waiter = null;
+	}
+
+	void wakeup() {
+		final Thread thread = waiter;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Releases all positions whose loans, and the loans of all positions
+	 * before them, were returned.
+	 */
+	private void reclaim() throws InterruptedException {
+		long sequence = released;
+		while (sequence < acquired && loans[(int) ((sequence + 1) % loans.length)].isReturned(sequence + 1)) {
+			sequence++;
+		}
+		if (sequence > released) {
+			in.release(sequence);
+			released = sequence;
+		}
+	}
+
+	/**
+	 * Loan of the positions that map to the same index. It records the
+	 * position it was last lent for, and the last one returned: a position
+	 * only counts as returned if the loan was returned for that very
+	 * position, and a loan is only lent again once its previous position
+	 * came back.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	private static final class Loan implements MessageLoan {
+
+		private final LendingConsumerThread<?> owner;
+		private final AtomicLong returned;
+		private volatile long sequence;
+
+		Loan(final LendingConsumerThread<?> owner) {
+			this.owner = owner;
+			this.returned = new AtomicLong(INITIAL_SEQUENCE_VALUE);
+			this.sequence = INITIAL_SEQUENCE_VALUE;
+		}
+
+		void lend(final long sequence) {
+			final long previous = this.sequence;
+			if (returned.get() != previous) {
+				throw new IllegalStateException("position " + previous + " is still lent");
+			}
+			if (sequence <= previous) {
+				throw new IllegalArgumentException("sequence <= previous");
+			}
+			this.sequence = sequence;
+		}
+
+		boolean isReturned(final long sequence) {
+			return returned.get() == sequence;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void release() {
+			final long lent = sequence;
+			final long last = returned.get();
+			if (last == lent || !returned.compareAndSet(last, lent)) {
+				throw new IllegalStateException("loan already released");
+			}
+			owner.wakeup();
+		}
+	}
+}
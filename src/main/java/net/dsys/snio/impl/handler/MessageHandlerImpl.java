@@ -18,6 +18,7 @@ package net.dsys.snio.impl.handler;
 
 import static net.dsys.snio.impl.handler.HandlerType.MULTI_THREADED;
 import static net.dsys.snio.impl.handler.HandlerType.SINGLE_THREADED;
+import static net.dsys.snio.impl.handler.HandlerType.WORK_STEALING;
 
 import java.io.IOException;
 import java.net.SocketAddress;
@@ -42,6 +43,7 @@ final class MessageHandlerImpl<T> implements MessageHandler<T> {
 	private final HandlerType type;
 	private final ExecutorService executor;
 	private final ConsumerThreadFactory<T> threads;
+	private final WorkStealingPool<T> pool;
 	private final MessageConsumerFactory<T> factory;
 	private final MessageConsumer<T> consumer;
 	private final AcceptListener<T> delegate;
@@ -64,6 +66,7 @@ final class MessageHandlerImpl<T> implements MessageHandler<T> {
 		this.type = MULTI_THREADED;
 		this.executor = executor;
 		this.threads = threads;
+		this.pool = null;
 		this.factory = factory;
 		this.consumer = null;
 		this.delegate = delegate;
@@ -87,6 +90,7 @@ final class MessageHandlerImpl<T> implements MessageHandler<T> {
 		this.type = SINGLE_THREADED;
 		this.executor = executor;
 		this.threads = factory;
+		this.pool = null;
 		this.consumer = consumer;
 		this.factory = null;
 		this.delegate = delegate;
@@ -94,6 +98,30 @@ final class MessageHandlerImpl<T> implements MessageHandler<T> {
 		this.started = new AtomicBoolean();
 	}
 
+	MessageHandlerImpl(@Nonnull final ExecutorService executor,
+			@Nonnull final WorkStealingPool<T> pool,
+			@Nonnull final MessageConsumerFactory<T> factory,
+			@Nonnull final AcceptListener<T> delegate) {
+		if (executor == null) {
+			throw new NullPointerException("executor == null");
+		}
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		if (factory == null) {
+			throw new NullPointerException("factory == null");
+		}
+		this.type = WORK_STEALING;
+		this.executor = executor;
+		this.threads = null;
+		this.pool = pool;
+		this.factory = factory;
+		this.consumer = null;
+		this.delegate = delegate;
+		this.listener = new DefaultListener();
+		this.started = null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -121,6 +149,12 @@ final class MessageHandlerImpl<T> implements MessageHandler<T> {
 					executor.execute(runnable);
 				}
 				break;
+			case WORK_STEALING: {
+				final MessageConsumer<T> handler = factory.newInstance(remote, channel);
+				pool.add(channel, handler);
+				pool.start(executor);
+				break;
+			}
 			default: {
 				throw new Bug("Unsupported HandlerType + " + type);
 			}
@@ -132,6 +166,9 @@ final class MessageHandlerImpl<T> implements MessageHandler<T> {
 	 */
 	@Override
 	public void close() throws IOException {
+		if (pool != null) {
+			pool.stop();
+		}
 		executor.shutdownNow();
 	}
 
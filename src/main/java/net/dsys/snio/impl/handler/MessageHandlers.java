@@ -16,12 +16,17 @@
 
 package net.dsys.snio.impl.handler;
 
+import static net.dsys.snio.impl.handler.ExecutionType.BATCHED;
 import static net.dsys.snio.impl.handler.ExecutionType.DECOUPLED;
+import static net.dsys.snio.impl.handler.ExecutionType.LENDING;
 import static net.dsys.snio.impl.handler.ExecutionType.ZERO_COPY;
 import static net.dsys.snio.impl.handler.HandlerType.MULTI_THREADED;
 import static net.dsys.snio.impl.handler.HandlerType.SINGLE_THREADED;
+import static net.dsys.snio.impl.handler.HandlerType.WORK_STEALING;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,9 +50,12 @@ import net.dsys.commons.impl.lang.DirectByteBufferFactory;
 import net.dsys.snio.api.buffer.MessageBufferConsumer;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
 import net.dsys.snio.api.channel.AcceptListener;
+import net.dsys.snio.api.handler.MessageBatchConsumer;
+import net.dsys.snio.api.handler.MessageBatchProducer;
 import net.dsys.snio.api.handler.MessageConsumer;
 import net.dsys.snio.api.handler.MessageConsumerFactory;
 import net.dsys.snio.api.handler.MessageHandler;
+import net.dsys.snio.api.handler.MessageLoanConsumer;
 import net.dsys.snio.api.handler.MessageProducer;
 
 /**
@@ -55,6 +63,11 @@ import net.dsys.snio.api.handler.MessageProducer;
  */
 public final class MessageHandlers {
 
+	/**
+	 * Same as the default capacity of message buffers.
+	 */
+	private static final int DEFAULT_BATCH_SIZE = 256;
+
 	private MessageHandlers() {
 		// no instantiation
 		return;
@@ -73,6 +86,36 @@ public final class MessageHandlers {
 		return new ConsumerThread<>(in, consumer, holder, copier, cleaner);
 	}
 
+	/**
+	 * Consumes all messages available in the buffer in a single cycle, and
+	 * notifies the consumer at the end of each batch.
+	 */
+	@Nonnull
+	public static <T> Interruptible batchConsumer(@Nonnull final MessageBufferConsumer<T> in,
+			@Nonnull final MessageBatchConsumer<T> consumer) {
+		return new ConsumerThread<>(in, consumer, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Consumes up to <code>batchSize</code> messages in a single cycle, and
+	 * notifies the consumer at the end of each batch.
+	 */
+	@Nonnull
+	public static <T> Interruptible batchConsumer(@Nonnull final MessageBufferConsumer<T> in,
+			@Nonnull final MessageBatchConsumer<T> consumer, @Nonnegative final int batchSize) {
+		return new ConsumerThread<>(in, consumer, batchSize);
+	}
+
+	/**
+	 * Lends buffer positions to the consumer instead of copying messages,
+	 * with at most <code>maxLoans</code> outstanding loans.
+	 */
+	@Nonnull
+	public static <T> Interruptible lendingConsumer(@Nonnull final MessageBufferConsumer<T> in,
+			@Nonnull final MessageLoanConsumer<T> consumer, @Nonnegative final int maxLoans) {
+		return new LendingConsumerThread<>(in, consumer, maxLoans);
+	}
+
 	@Nonnull
 	public static <T> Interruptible syncProducer(@Nonnull final MessageBufferProducer<T> out,
 			@Nonnull final MessageProducer<T> producer) {
@@ -86,11 +129,59 @@ public final class MessageHandlers {
 		return new ProducerThread<>(out, producer, holder, copier, cleaner);
 	}
 
+	/**
+	 * Fills and publishes up to 256 messages at once.
+	 */
+	@Nonnull
+	public static <T> Interruptible batchProducer(@Nonnull final MessageBufferProducer<T> out,
+			@Nonnull final MessageBatchProducer<T> producer) {
+		return new ProducerThread<>(out, producer, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Fills and publishes up to <code>batchSize</code> messages at once.
+	 */
+	@Nonnull
+	public static <T> Interruptible batchProducer(@Nonnull final MessageBufferProducer<T> out,
+			@Nonnull final MessageBatchProducer<T> producer, @Nonnegative final int batchSize) {
+		return new ProducerThread<>(out, producer, batchSize);
+	}
+
+	/**
+	 * Creates an executor that runs each task in its own virtual thread. Use
+	 * it to run the consumers and producers created by this class, so that
+	 * each of them no longer takes a platform thread.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the runtime does not support virtual threads
+	 * @see #isVirtualThreadSupported()
+	 */
+	@Nonnull
+	public static ExecutorService newVirtualThreadExecutor(@Nonnull final String name) {
+		return VirtualThreads.newExecutor(name);
+	}
+
+	/**
+	 * @return <code>true</code> if the runtime supports virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VirtualThreads.isSupported();
+	}
+
 	@Nonnull
 	public static HandlerBuilder buildHandler() {
 		return new HandlerBuilder();
 	}
 
+	/**
+	 * Chains several consumers over the same input buffer, each one on its
+	 * own thread, without copying messages between them.
+	 */
+	@Nonnull
+	public static <T> PipelineBuilder<T> buildPipeline(@Nonnull final MessageBufferConsumer<T> in) {
+		return new PipelineBuilder<>(in);
+	}
+
 	/**
 	 * @author Ricardo Padilha
 	 */
@@ -107,7 +198,10 @@ public final class MessageHandlers {
 		private MessageConsumerFactory<ByteBuffer> consumerFactory;
 		private AcceptListener<ByteBuffer> delegate;
 		private int length;
+		private int workers;
+		private int maxLoans;
 		private boolean useDirectBuffer;
+		private boolean useVirtualThreads;
 
 		HandlerBuilder() {
 			this.name = "MessageHandler-" + counter.getAndIncrement();
@@ -117,11 +211,14 @@ public final class MessageHandlers {
 			this.consumerFactory = null;
 			this.delegate = null;
 			this.length = 0;
+			this.workers = 0;
+			this.maxLoans = 0;
 			this.useDirectBuffer = false;
+			this.useVirtualThreads = false;
 		}
 
 		@Optional(defaultValue = "MessageHandler-#", restrictions = "name != null")
-		@OptionGroup(name = "executor", seeAlso = "setExecutor(executor)")
+		@OptionGroup(name = "executor", seeAlso = "setExecutor(executor), useVirtualThreads()")
 		public HandlerBuilder setName(final String name) {
 			if (name == null) {
 				throw new NullPointerException("name == null");
@@ -132,17 +229,37 @@ public final class MessageHandlers {
 
 		@Optional(defaultValue = "Executors.newCachedThreadPool(new DaemonThreadFactory(name))",
 				restrictions = "executor != null")
-		@OptionGroup(name = "executor", seeAlso = "setName(name)")
+		@OptionGroup(name = "executor", seeAlso = "setName(name), useVirtualThreads()")
 		public HandlerBuilder setExecutor(final ExecutorService executor) {
 			if (executor == null) {
 				throw new NullPointerException("executor == null");
 			}
 			this.executor = executor;
+			this.useVirtualThreads = false;
+			return this;
+		}
+
+		/**
+		 * Runs each consumer in its own virtual thread, named after
+		 * {@link #setName(String)}. Requires Java 21 or later at runtime.
+		 *
+		 * @throws UnsupportedOperationException
+		 *             if the runtime does not support virtual threads
+		 */
+		@Optional(defaultValue = "Executors.newCachedThreadPool(new DaemonThreadFactory(name))",
+				restrictions = "requires Java 21")
+		@OptionGroup(name = "executor", seeAlso = "setName(name), setExecutor(executor)")
+		public HandlerBuilder useVirtualThreads() {
+			if (!VirtualThreads.isSupported()) {
+				throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+			}
+			this.executor = null;
+			this.useVirtualThreads = true;
 			return this;
 		}
 
 		@Mandatory(restrictions = "consumer != null")
-		@OptionGroup(name = "consumer", seeAlso = "useManyConsumers(factory)")
+		@OptionGroup(name = "consumer", seeAlso = "useManyConsumers(factory), useManyConsumers(factory, workers)")
 		public HandlerBuilder useSingleConsumer(final MessageConsumer<ByteBuffer> consumer) {
 			if (consumer == null) {
 				throw new NullPointerException("consumer == null");
@@ -154,7 +271,7 @@ public final class MessageHandlers {
 		}
 
 		@Mandatory(restrictions = "factory != null")
-		@OptionGroup(name = "consumer", seeAlso = "useSingleConsumer(consumer)")
+		@OptionGroup(name = "consumer", seeAlso = "useSingleConsumer(consumer), useManyConsumers(factory, workers)")
 		public HandlerBuilder useManyConsumers(final MessageConsumerFactory<ByteBuffer> factory) {
 			if (factory == null) {
 				throw new NullPointerException("consumerFactory == null");
@@ -162,11 +279,36 @@ public final class MessageHandlers {
 			this.handlerType = MULTI_THREADED;
 			this.consumerFactory = factory;
 			this.consumer = null;
+			this.workers = 0;
+			return this;
+		}
+
+		/**
+		 * One consumer per channel, but all channels are served by a fixed
+		 * number of worker threads instead of one thread per channel. Idle
+		 * workers steal channels from busy ones, and messages of a given
+		 * channel are still consumed in order.
+		 */
+		@Mandatory(restrictions = "factory != null && workers > 0")
+		@OptionGroup(name = "consumer", seeAlso = "useSingleConsumer(consumer), useManyConsumers(factory)")
+		public HandlerBuilder useManyConsumers(final MessageConsumerFactory<ByteBuffer> factory,
+				@Nonnegative final int workers) {
+			if (factory == null) {
+				throw new NullPointerException("consumerFactory == null");
+			}
+			if (workers < 1) {
+				throw new IllegalArgumentException("workers < 1");
+			}
+			this.handlerType = WORK_STEALING;
+			this.consumerFactory = factory;
+			this.consumer = null;
+			this.workers = workers;
 			return this;
 		}
 
 		@Optional(defaultValue = "useZeroCopyProcessing()", restrictions = "none")
-		@OptionGroup(name = "execution", seeAlso = "useDecoupledProcessing(length)")
+		@OptionGroup(name = "execution",
+				seeAlso = "useDecoupledProcessing(length), useBatchProcessing(), useLendingProcessing(maxLoans)")
 		public HandlerBuilder useZeroCopyProcessing() {
 			this.threadType = ZERO_COPY;
 			this.length = 0;
@@ -174,13 +316,46 @@ public final class MessageHandlers {
 		}
 
 		@Optional(defaultValue = "useZeroCopyProcessing()", restrictions = "messageLength > 0")
-		@OptionGroup(name = "execution", seeAlso = "useZeroCopyProcessing()")
+		@OptionGroup(name = "execution",
+				seeAlso = "useZeroCopyProcessing(), useBatchProcessing(), useLendingProcessing(maxLoans)")
 		public HandlerBuilder useDecoupledProcessing(@Nonnegative final int messageLength) {
 			this.threadType = DECOUPLED;
 			this.length = messageLength;
 			return this;
 		}
 
+		/**
+		 * Zero-copy processing that drains all available messages at once.
+		 * Consumers implementing {@link MessageBatchConsumer} are notified at
+		 * the end of each batch.
+		 */
+		@Optional(defaultValue = "useZeroCopyProcessing()", restrictions = "none")
+		@OptionGroup(name = "execution",
+				seeAlso = "useZeroCopyProcessing(), useDecoupledProcessing(length), useLendingProcessing(maxLoans)")
+		public HandlerBuilder useBatchProcessing() {
+			this.threadType = BATCHED;
+			this.length = 0;
+			return this;
+		}
+
+		/**
+		 * Decouples consumers from the input buffer without copying messages:
+		 * consumers must implement {@link MessageLoanConsumer} and release
+		 * each message when done with it. Not available with a worker pool.
+		 */
+		@Optional(defaultValue = "useZeroCopyProcessing()", restrictions = "maxLoans > 0")
+		@OptionGroup(name = "execution",
+				seeAlso = "useZeroCopyProcessing(), useDecoupledProcessing(length), useBatchProcessing()")
+		public HandlerBuilder useLendingProcessing(@Nonnegative final int maxLoans) {
+			if (maxLoans < 1) {
+				throw new IllegalArgumentException("maxLoans < 1");
+			}
+			this.threadType = LENDING;
+			this.length = 0;
+			this.maxLoans = maxLoans;
+			return this;
+		}
+
 		@Optional(defaultValue = "useHeapBuffer()")
 		@OptionGroup(name = "bufferType", seeAlso = "useHeapBuffer()")
 		public HandlerBuilder useDirectBuffer() {
@@ -204,9 +379,14 @@ public final class MessageHandlers {
 		public MessageHandler<ByteBuffer> build() {
 			ExecutorService exec = executor;
 			if (exec == null) {
-				exec = Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+				if (useVirtualThreads) {
+					exec = VirtualThreads.newExecutor(name);
+				} else {
+					exec = Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+				}
 			}
 			final ConsumerThreadFactory<ByteBuffer> threads;
+			final WorkStealingPool<ByteBuffer> pool;
 			switch (threadType) {
 			case DECOUPLED: {
 				final Factory<ByteBuffer> factory;
@@ -217,10 +397,37 @@ public final class MessageHandlers {
 				}
 				final ByteBufferCopier copier = new ByteBufferCopier();
 				threads = ConsumerThread.createAsyncFactory(factory, copier, copier);
+				if (handlerType == WORK_STEALING) {
+					pool = new WorkStealingPool<>(workers, factory, copier, copier);
+				} else {
+					pool = null;
+				}
 				break;
 			}
 			case ZERO_COPY: {
 				threads = ConsumerThread.createSyncFactory();
+				if (handlerType == WORK_STEALING) {
+					pool = new WorkStealingPool<>(workers, ZERO_COPY);
+				} else {
+					pool = null;
+				}
+				break;
+			}
+			case LENDING: {
+				if (handlerType == WORK_STEALING) {
+					throw new IllegalStateException("lending processing does not support worker pools");
+				}
+				threads = LendingConsumerThread.createFactory(maxLoans);
+				pool = null;
+				break;
+			}
+			case BATCHED: {
+				threads = ConsumerThread.createBatchFactory(Integer.MAX_VALUE);
+				if (handlerType == WORK_STEALING) {
+					pool = new WorkStealingPool<>(workers, BATCHED);
+				} else {
+					pool = null;
+				}
 				break;
 			}
 			default: {
@@ -237,6 +444,10 @@ public final class MessageHandlers {
 				handler = new MessageHandlerImpl<>(exec, threads, consumer, delegate);
 				break;
 			}
+			case WORK_STEALING: {
+				handler = new MessageHandlerImpl<>(exec, pool, consumerFactory, delegate);
+				break;
+			}
 			default: {
 				throw new Bug("Unsupported HandlerType: " + handlerType);
 			}
@@ -244,4 +455,66 @@ public final class MessageHandlers {
 			return handler;
 		}
 	}
+
+	/**
+	 * Builds the stages of a pipeline, in order. Stages get messages and
+	 * attachments exactly as taken from the input buffer; a stage only gets a
+	 * message after the previous stage consumed it, and consumers
+	 * implementing {@link MessageBatchConsumer} are notified after each batch.
+	 * Each task returned by {@link #build()} must run on its own thread.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	@ParametersAreNonnullByDefault
+	public static final class PipelineBuilder<T> {
+
+		private final MessageBufferConsumer<T> in;
+		private final List<MessageConsumer<T>> stages;
+		private int capacity;
+
+		PipelineBuilder(final MessageBufferConsumer<T> in) {
+			if (in == null) {
+				throw new NullPointerException("in == null");
+			}
+			this.in = in;
+			this.stages = new ArrayList<>();
+			this.capacity = DEFAULT_BATCH_SIZE;
+		}
+
+		/**
+		 * Appends a stage to the pipeline.
+		 */
+		@Mandatory(restrictions = "consumer != null")
+		public PipelineBuilder<T> addStage(final MessageConsumer<T> consumer) {
+			if (consumer == null) {
+				throw new NullPointerException("consumer == null");
+			}
+			stages.add(consumer);
+			return this;
+		}
+
+		/**
+		 * Maximum number of messages in flight between the first and the last
+		 * stage.
+		 */
+		@Optional(defaultValue = "256", restrictions = "capacity > 0")
+		public PipelineBuilder<T> setCapacity(@Nonnegative final int capacity) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException("capacity < 1");
+			}
+			this.capacity = capacity;
+			return this;
+		}
+
+		/**
+		 * @return one task per stage, in order
+		 */
+		@Nonnull
+		public List<Interruptible> build() {
+			if (stages.isEmpty()) {
+				throw new IllegalStateException("no stages");
+			}
+			return new Pipeline<>(in, stages, capacity).getStages();
+		}
+	}
 }
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.commons.api.lang.Interruptible;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.handler.MessageBatchConsumer;
+import net.dsys.snio.api.handler.MessageConsumer;
+
+import com.lmax.disruptor.Sequence;
+
+/**
+ * Chain of consumers over the same input buffer, each one running on its own
+ * thread. A stage only sees a message once the previous stage is done with
+ * it, and positions are released back to the buffer once the last stage is
+ * done with them. Messages are never copied: all stages get the same
+ * instance, in order.
+ * <p>
+ * The first stage is the only one that touches the input buffer. It keeps a
+ * reference to each acquired message and attachment in a local window, so the
+ * other stages never call the buffer from their own threads.
+ *
+ * @author Ricardo Padilha
+ */
+final class Pipeline<T> {
+
+	private static final long INITIAL_SEQUENCE_VALUE = -1;
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = 50000;
+
+	private final MessageBufferConsumer<T> in;
+	private final T[] messages;
+	private final Object[] attachments;
+	private final List<Stage> stages;
+	private final AtomicBoolean interrupted;
+
+	Pipeline(@Nonnull final MessageBufferConsumer<T> in, @Nonnull final List<MessageConsumer<T>> consumers,
+			@Nonnegative final int capacity) {
+		if (in == null) {
+			throw new NullPointerException("in == null");
+		}
+		if (consumers == null) {
+			throw new NullPointerException("consumers == null");
+		}
+		if (consumers.isEmpty()) {
+			throw new IllegalArgumentException("consumers.isEmpty()");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		this.in = in;
+		@SuppressWarnings("unchecked")
+		final T[] messages = (T[]) new Object[capacity];
+		this.messages = messages;
+		this.attachments = new Object[capacity];
+		this.interrupted = new AtomicBoolean();
+		final int k = consumers.size();
+		final List<Stage> stages = new ArrayList<>(k);
+		Stage leader = null;
+		for (int i = 0; i < k; i++) {
+			final MessageConsumer<T> consumer = consumers.get(i);
+			if (consumer == null) {
+				throw new NullPointerException("consumers[" + i + "] == null");
+			}
+			leader = new Stage(consumer, leader);
+			stages.add(leader);
+		}
+		this.stages = stages;
+	}
+
+	/**
+	 * @return one task per stage, in order. Each one must run on its own
+	 *         thread. Interrupting any of them stops the whole pipeline.
+	 */
+	@Nonnull
+	List<Interruptible> getStages() {
+		return Collections.<Interruptible> unmodifiableList(stages);
+	}
+
+	private int index(final long sequence) {
+		return (int) (sequence % messages.length);
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private final class Stage implements Interruptible {
+
+		private final MessageConsumer<T> consumer;
+		private final Stage leader;
+		private final Sequence progress;
+		private long released;
+
+		Stage(@Nonnull final MessageConsumer<T> consumer, @Nonnull(when = When.MAYBE) final Stage leader) {
+			this.consumer = consumer;
+			this.leader = leader;
+			this.progress = new Sequence(INITIAL_SEQUENCE_VALUE);
+			this.released = INITIAL_SEQUENCE_VALUE;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void interrupt() {
+			interrupted.lazySet(true);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			int tries = 0;
+			while (!Thread.interrupted() && !interrupted.get()) {
+				try {
+					final long first = progress.get() + 1;
+					final long last;
+					if (leader == null) {
+						last = acquire();
+					} else {
+						last = leader.progress.get();
+					}
+					if (last < first) {
+						if (tries < SPIN_TRIES) {
+							tries++;
+						} else if (tries < SPIN_TRIES + YIELD_TRIES) {
+							tries++;
+							Thread.yield();
+						} else {
+							LockSupport.parkNanos(PARK_NANOS);
+						}
+						continue;
+					}
+					tries = 0;
+					for (long sequence = first; sequence <= last; sequence++) {
+						final int index = index(sequence);
+						consume(messages[index], attachments[index]);
+					}
+					if (consumer instanceof MessageBatchConsumer) {
+						endOfBatch((MessageBatchConsumer<T>) consumer);
+					}
+					progress.set(last);
+				} catch (final InterruptedByClose e) {
+					interrupted.lazySet(true);
+					return;
+				} catch (final InterruptedException e) {
+					interrupted.lazySet(true);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Only called by the first stage. Releases whatever the last stage is
+		 * done with, and then takes as many new messages as the window allows.
+		 * Never blocks on the buffer while positions are still held by the
+		 * other stages, otherwise they could not be released.
+		 *
+		 * @return the last acquired sequence
+		 */
+		private long acquire() throws InterruptedException {
+			final long done = stages.get(stages.size() - 1).progress.get();
+			if (done > released) {
+				in.release(done);
+				released = done;
+			}
+			final long acquired = progress.get();
+			final int outstanding = (int) (acquired - released);
+			final int free = messages.length - outstanding;
+			if (free == 0) {
+				return acquired;
+			}
+			if (outstanding > 0 && in.remaining() <= outstanding) {
+				return acquired;
+			}
+			// acquisitions are relative to the last released position
+			final long last = in.acquire(outstanding + free);
+			for (long sequence = acquired + 1; sequence <= last; sequence++) {
+				final int index = index(sequence);
+				messages[index] = in.get(sequence);
+				attachments[index] = in.attachment(sequence);
+			}
+			return last;
+		}
+
+		private void consume(final T message, final Object attachment) {
+			try {
+				consumer.consume(message, attachment);
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			}
+		}
+
+		private void endOfBatch(final MessageBatchConsumer<T> consumer) {
+			try {
+				consumer.endOfBatch();
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			}
+		}
+	}
+}
@@ -16,10 +16,17 @@
 
 package net.dsys.snio.impl.handler;
 
+import static net.dsys.snio.impl.handler.ExecutionType.BATCHED;
 import static net.dsys.snio.impl.handler.ExecutionType.DECOUPLED;
 import static net.dsys.snio.impl.handler.ExecutionType.ZERO_COPY;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
 
 import net.dsys.commons.api.exception.Bug;
 import net.dsys.commons.api.lang.Cleaner;
@@ -27,6 +34,8 @@ import net.dsys.commons.api.lang.Copier;
 import net.dsys.commons.api.lang.Interruptible;
 import net.dsys.snio.api.buffer.InterruptedByClose;
 import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.SkippedPosition;
+import net.dsys.snio.api.handler.MessageBatchProducer;
 import net.dsys.snio.api.handler.MessageProducer;
 
 /**
@@ -38,12 +47,17 @@ import net.dsys.snio.api.handler.MessageProducer;
  */
 final class ProducerThread<T> implements Interruptible {
 
+	private static final long MIN_PARK_NANOS = 1000;
+	private static final long MAX_PARK_NANOS = 1000000;
+
 	private final ExecutionType type;
 	private final MessageBufferProducer<T> out;
 	private final MessageProducer<T> producer;
+	private final MessageBatchProducer<T> batchProducer;
 	private final T holder;
 	private final Copier<T> copier;
 	private final Cleaner<T> cleaner;
+	private final int batchSize;
 	private final AtomicBoolean interrupted;
 
 	ProducerThread(final MessageBufferProducer<T> out, final MessageProducer<T> producer, final T holder,
@@ -66,9 +80,11 @@ final class ProducerThread<T> implements Interruptible {
 		this.type = DECOUPLED;
 		this.out = out;
 		this.producer = producer;
+		this.batchProducer = null;
 		this.holder = holder;
 		this.copier = copier;
 		this.cleaner = cleaner;
+		this.batchSize = 1;
 		this.interrupted = new AtomicBoolean();
 	}
 
@@ -82,9 +98,37 @@ final class ProducerThread<T> implements Interruptible {
 		this.type = ZERO_COPY;
 		this.out = out;
 		this.producer = producer;
+		this.batchProducer = null;
+		this.holder = null;
+		this.copier = null;
+		this.cleaner = null;
+		this.batchSize = 1;
+		this.interrupted = new AtomicBoolean();
+	}
+
+	/**
+	 * Claims up to <code>batchSize</code> positions at once, lets the producer
+	 * fill as many as it can, and publishes them as a single range.
+	 */
+	ProducerThread(final MessageBufferProducer<T> out, final MessageBatchProducer<T> producer,
+			@Nonnegative final int batchSize) {
+		if (out == null) {
+			throw new NullPointerException("in == null");
+		}
+		if (producer == null) {
+			throw new NullPointerException("producer == null");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize < 1");
+		}
+		this.type = BATCHED;
+		this.out = out;
+		this.producer = null;
+		this.batchProducer = producer;
 		this.holder = null;
 		this.copier = null;
 		this.cleaner = null;
+		this.batchSize = batchSize;
 		this.interrupted = new AtomicBoolean();
 	}
 
@@ -110,6 +154,10 @@ final class ProducerThread<T> implements Interruptible {
 			runZeroCopy();
 			break;
 		}
+		case BATCHED: {
+			runBatched();
+			break;
+		}
 		default: {
 			throw new Bug("Unsuppported ThreadType: " + type);
 		}
@@ -165,4 +213,83 @@ final class ProducerThread<T> implements Interruptible {
 			}
 		}
 	}
+
+	private void runBatched() {
+		final List<T> messages = new ArrayList<>(batchSize);
+		final Object[] attachments = new Object[batchSize];
+		// claimed positions that were not filled yet
+		long next = 0;
+		long last = -1;
+		long park = MIN_PARK_NANOS;
+		try {
+			while (!Thread.interrupted() && !interrupted.get()) {
+				try {
+					if (next > last) {
+						// no more than the free positions, so that the claim is exact
+						final int n = Math.min(batchSize, Math.max(out.remaining(), 1));
+						last = out.acquire(n);
+						next = last - n + 1;
+					}
+					messages.clear();
+					for (long sequence = next; sequence <= last; sequence++) {
+						messages.add(out.get(sequence));
+					}
+					int k;
+					try {
+						k = Math.min(batchProducer.produce(messages, attachments), messages.size());
+					} catch (final Throwable t) {
+						System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+						t.printStackTrace();
+						// nothing is known to be filled: the same positions are
+						// handed again on the next call
+						Arrays.fill(attachments, null);
+						k = 0;
+					}
+					if (k == 0) {
+						// the producer has nothing to send, do not spin on it
+						LockSupport.parkNanos(park);
+						park = Math.min(park << 1, MAX_PARK_NANOS);
+						continue;
+					}
+					park = MIN_PARK_NANOS;
+					final long end = next + k - 1;
+					for (int i = 0; i < k; i++) {
+						// null clears whatever the position carried before
+						out.attach(next + i, attachments[i]);
+						attachments[i] = null;
+					}
+					out.release(next, end);
+					next = end + 1;
+				} catch (final InterruptedByClose e) {
+					return;
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (final Throwable t) {
+					System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+					t.printStackTrace();
+				}
+			}
+		} finally {
+			if (next <= last) {
+				skip(next, last);
+			}
+		}
+	}
+
+	/**
+	 * Claims cannot be undone, so positions left unfilled on exit are
+	 * published as skipped, instead of leaving the consumers waiting for them.
+	 */
+	private void skip(final long first, final long last) {
+		SkippedPosition.skip(out, first, last);
+		try {
+			out.release(first, last);
+		} catch (final InterruptedByClose e) {
+			// the consumers are gone as well
+			return;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.handler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Creates executors backed by virtual threads. The library is still compiled
+ * for Java 7, so the Java 21 API is looked up by reflection, and
+ * {@link #isSupported()} returns <code>false</code> on older runtimes.
+ * <p>
+ * The message buffers only block on {@link java.util.concurrent.locks.Lock}s,
+ * conditions and {@link java.util.concurrent.locks.LockSupport#parkNanos(long)},
+ * never on monitors, so handler loops do not pin their carrier threads.
+ *
+ * @author Ricardo Padilha
+ */
+final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+	private static final Method NEW_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor",
+			ThreadFactory.class);
+
+	private VirtualThreads() {
+		// no instantiation
+		return;
+	}
+
+	static boolean isSupported() {
+		return OF_VIRTUAL != null && NEW_EXECUTOR != null;
+	}
+
+	/**
+	 * @return an executor that starts a new virtual thread for each task
+	 * @throws UnsupportedOperationException
+	 *             if the runtime does not support virtual threads
+	 */
+	@Nonnull
+	static ExecutorService newExecutor(@Nonnull final String name) {
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			final Class<?> type = OF_VIRTUAL.getReturnType();
+			builder = type.getMethod("name", String.class, long.class).invoke(builder, name + "-", Long.valueOf(0));
+			final ThreadFactory factory = (ThreadFactory) type.getMethod("factory").invoke(builder);
+			return (ExecutorService) NEW_EXECUTOR.invoke(null, factory);
+		} catch (final NoSuchMethodException | IllegalAccessException e) {
+			throw new UnsupportedOperationException(e);
+		} catch (final InvocationTargetException e) {
+			throw new UnsupportedOperationException(e.getCause());
+		}
+	}
+
+	private static Method findMethod(final Class<?> type, final String name, final Class<?>... parameters) {
+		try {
+			return type.getMethod(name, parameters);
+		} catch (final NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,461 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.handler;
+
+import static net.dsys.snio.impl.handler.ExecutionType.BATCHED;
+import static net.dsys.snio.impl.handler.ExecutionType.DECOUPLED;
+import static net.dsys.snio.impl.handler.ExecutionType.ZERO_COPY;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.exception.Bug;
+import net.dsys.commons.api.lang.Cleaner;
+import net.dsys.commons.api.lang.Copier;
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.commons.api.lang.Interruptible;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.channel.MessageChannel;
+import net.dsys.snio.api.handler.MessageBatchConsumer;
+import net.dsys.snio.api.handler.MessageConsumer;
+
+/**
+ * Fixed set of workers that serve the input buffers of many channels. Each
+ * channel is assigned to a worker, but idle workers steal channels with
+ * pending messages from the others. A channel is only processed by one worker
+ * at a time, so messages of the same channel are always consumed in order.
+ * With batch processing, each batch taken from a channel is acquired and
+ * released at once, and consumers implementing {@link MessageBatchConsumer}
+ * are notified at the end of it.
+ * <p>
+ * Workers that run out of messages sleep until one of the input buffers
+ * publishes or closes, see
+ * {@link MessageBufferConsumer#setPublishListener(Runnable)}, and only one
+ * sleeping worker is woken up each time. Buffers that cannot notify are
+ * polled instead.
+ *
+ * @author Ricardo Padilha
+ */
+final class WorkStealingPool<T> {
+
+	private static final int BATCH_SIZE = 64;
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = 50000;
+
+	private final ExecutionType type;
+	private final List<Worker> workers;
+	private final Factory<T> holders;
+	private final Copier<T> copier;
+	private final Cleaner<T> cleaner;
+	private final AtomicInteger next;
+	private final AtomicBoolean started;
+	private final AtomicInteger sleepers;
+	private final AtomicInteger polled;
+	private final Runnable wakeup;
+
+	WorkStealingPool(@Nonnegative final int workers, @Nonnull final ExecutionType type) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers < 1");
+		}
+		if (type != ZERO_COPY && type != BATCHED) {
+			throw new IllegalArgumentException("type != ZERO_COPY && type != BATCHED");
+		}
+		this.type = type;
+		this.holders = null;
+		this.copier = null;
+		this.cleaner = null;
+		this.next = new AtomicInteger();
+		this.started = new AtomicBoolean();
+		this.sleepers = new AtomicInteger();
+		this.polled = new AtomicInteger();
+		this.wakeup = new Wakeup();
+		this.workers = createWorkers(workers);
+	}
+
+	WorkStealingPool(@Nonnegative final int workers, @Nonnull final Factory<T> holders,
+			@Nonnull final Copier<T> copier, @Nonnull final Cleaner<T> cleaner) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers < 1");
+		}
+		if (holders == null) {
+			throw new NullPointerException("holders == null");
+		}
+		if (copier == null) {
+			throw new NullPointerException("copier == null");
+		}
+		if (cleaner == null) {
+			throw new NullPointerException("cleaner == null");
+		}
+		this.type = DECOUPLED;
+		this.holders = holders;
+		this.copier = copier;
+		this.cleaner = cleaner;
+		this.next = new AtomicInteger();
+		this.started = new AtomicBoolean();
+		this.sleepers = new AtomicInteger();
+		this.polled = new AtomicInteger();
+		this.wakeup = new Wakeup();
+		this.workers = createWorkers(workers);
+	}
+
+	private List<Worker> createWorkers(final int n) {
+		final List<Worker> workers = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			workers.add(new Worker(i));
+		}
+		return workers;
+	}
+
+	/**
+	 * Starts all workers on the given executor, if not started yet.
+	 */
+	void start(@Nonnull final ExecutorService executor) {
+		if (started.compareAndSet(false, true)) {
+			for (final Worker worker : workers) {
+				executor.execute(worker);
+			}
+		}
+	}
+
+	/**
+	 * Stops all workers. They finish the batch at hand and exit, without
+	 * relying on the executor to interrupt them.
+	 */
+	void stop() {
+		for (final Worker worker : workers) {
+			worker.interrupt();
+			worker.unpark();
+		}
+	}
+
+	/**
+	 * Assigns a new channel to one of the workers.
+	 */
+	void add(@Nonnull final MessageChannel<T> channel, @Nonnull final MessageConsumer<T> consumer) {
+		final Task<T> task = new Task<>(channel, consumer);
+		task.polled = !task.in.setPublishListener(wakeup);
+		if (task.polled) {
+			polled.incrementAndGet();
+		}
+		final int index = (next.getAndIncrement() & Integer.MAX_VALUE) % workers.size();
+		workers.get(index).tasks.add(task);
+		// messages may have arrived before the listener was set
+		wakeup.run();
+	}
+
+	/**
+	 * Wakes up one sleeping worker, if any. Workers announce themselves in
+	 * {@link #sleepers} before their last scan, so a publication is either
+	 * seen by that scan, or wakes one of them up.
+	 */
+	private final class Wakeup implements Runnable {
+
+		Wakeup() {
+			super();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			if (sleepers.get() == 0) {
+				return;
+			}
+			for (final Worker worker : workers) {
+				if (worker.unpark()) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private static final class Task<T> {
+
+		final MessageChannel<T> channel;
+		final MessageBufferConsumer<T> in;
+		final MessageConsumer<T> consumer;
+		final AtomicBoolean busy;
+		/** set before the task is visible to the workers */
+		boolean polled;
+		/** only used while holding {@link #busy} */
+		long released;
+
+		Task(@Nonnull final MessageChannel<T> channel, @Nonnull final MessageConsumer<T> consumer) {
+			if (channel == null) {
+				throw new NullPointerException("channel == null");
+			}
+			if (consumer == null) {
+				throw new NullPointerException("consumer == null");
+			}
+			this.channel = channel;
+			this.in = channel.getInputBuffer();
+			this.consumer = consumer;
+			this.busy = new AtomicBoolean();
+			this.released = -1;
+		}
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private final class Worker implements Interruptible {
+
+		final List<Task<T>> tasks;
+		private final int id;
+		private final T holder;
+		private final AtomicBoolean interrupted;
+		private final AtomicBoolean parked;
+		private volatile Thread thread;
+
+		Worker(@Nonnegative final int id) {
+			this.tasks = new CopyOnWriteArrayList<>();
+			this.id = id;
+			if (holders != null) {
+				this.holder = holders.newInstance();
+			} else {
+				this.holder = null;
+			}
+			this.interrupted = new AtomicBoolean();
+			this.parked = new AtomicBoolean();
+		}
+
+		/**
+		 * @return <code>true</code> if this worker was sleeping
+		 */
+		boolean unpark() {
+			if (!parked.compareAndSet(true, false)) {
+				return false;
+			}
+			LockSupport.unpark(thread);
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void interrupt() {
+			interrupted.lazySet(true);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			thread = Thread.currentThread();
+			int tries = 0;
+			while (!Thread.interrupted() && !interrupted.get()) {
+				if (scan()) {
+					tries = 0;
+				} else if (tries < SPIN_TRIES) {
+					tries++;
+				} else if (tries < SPIN_TRIES + YIELD_TRIES) {
+					tries++;
+					Thread.yield();
+				} else if (sleep()) {
+					tries = 0;
+				}
+			}
+		}
+
+		/**
+		 * Own channels first, then steal from the other workers.
+		 * 
+		 * @return <code>true</code> if at least one message was processed
+		 */
+		private boolean scan() {
+			boolean worked = false;
+			final int k = workers.size();
+			for (int i = 0; i < k; i++) {
+				final Worker worker = workers.get((id + i) % k);
+				for (final Task<T> task : worker.tasks) {
+					worked |= process(worker, task);
+				}
+				if (worked) {
+					break;
+				}
+			}
+			return worked;
+		}
+
+		/**
+		 * Sleeps until some input buffer publishes, unless there are buffers
+		 * that cannot notify, which are polled.
+		 * 
+		 * @return <code>true</code> if messages were found before sleeping
+		 */
+		private boolean sleep() {
+			parked.set(true);
+			sleepers.incrementAndGet();
+			try {
+				if (scan()) {
+					return true;
+				}
+				if (!interrupted.get()) {
+					if (polled.get() > 0) {
+						LockSupport.parkNanos(PARK_NANOS);
+					} else {
+						LockSupport.park();
+					}
+				}
+				return false;
+			} finally {
+				parked.set(false);
+				sleepers.decrementAndGet();
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if at least one message was processed
+		 */
+		private boolean process(final Worker owner, final Task<T> task) {
+			final MessageBufferConsumer<T> in = task.in;
+			// remaining() updates the state of the buffer, and reclaims its
+			// messages once closed: only the worker holding the task calls it
+			if (!task.busy.compareAndSet(false, true)) {
+				return false;
+			}
+			try {
+				int n = Math.min(in.remaining(), BATCH_SIZE);
+				if (n <= 0) {
+					if (owner == this && !task.channel.isOpen()) {
+						remove(owner, task);
+					}
+					return false;
+				}
+				if (type == BATCHED) {
+					batched(in, task, n);
+					return true;
+				}
+				while (--n >= 0) {
+					switch (type) {
+						case DECOUPLED: {
+							decoupled(in, task.consumer);
+							break;
+						}
+						case ZERO_COPY: {
+							zeroCopy(in, task.consumer);
+							break;
+						}
+						default: {
+							throw new Bug("Unsuppported ThreadType: " + type);
+						}
+					}
+				}
+				return true;
+			} catch (final InterruptedByClose e) {
+				remove(owner, task);
+				return false;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				task.busy.set(false);
+			}
+		}
+
+		private void remove(final Worker owner, final Task<T> task) {
+			if (owner.tasks.remove(task) && task.polled) {
+				polled.decrementAndGet();
+			}
+		}
+
+		private void endOfBatch(final MessageBatchConsumer<T> consumer) {
+			try {
+				consumer.endOfBatch();
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			}
+		}
+
+		private void batched(final MessageBufferConsumer<T> in, final Task<T> task, final int n)
+				throws InterruptedException {
+			// the first message of a batch is always right after the last
+			// one released, whichever worker took the previous batch
+			final long last = in.acquire(n);
+			try {
+				for (long sequence = task.released + 1; sequence <= last; sequence++) {
+					final T value = in.get(sequence);
+					final Object attachment = in.attachment(sequence);
+					try {
+						task.consumer.consume(value, attachment);
+					} catch (final Throwable t) {
+						System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+						t.printStackTrace();
+					}
+				}
+				if (task.consumer instanceof MessageBatchConsumer) {
+					endOfBatch((MessageBatchConsumer<T>) task.consumer);
+				}
+			} finally {
+				in.release(last);
+				task.released = last;
+			}
+		}
+
+		private void decoupled(final MessageBufferConsumer<T> in, final MessageConsumer<T> consumer)
+				throws InterruptedException {
+			final Object attachment;
+			final long sequence = in.acquire();
+			try {
+				final T value = in.get(sequence);
+				copier.copy(value, holder);
+				attachment = in.attachment(sequence);
+			} finally {
+				in.release(sequence);
+			}
+			try {
+				consumer.consume(holder, attachment);
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			}
+			cleaner.clear(holder);
+		}
+
+		private void zeroCopy(final MessageBufferConsumer<T> in, final MessageConsumer<T> consumer)
+				throws InterruptedException {
+			final long sequence = in.acquire();
+			try {
+				final T value = in.get(sequence);
+				final Object attachment = in.attachment(sequence);
+				consumer.consume(value, attachment);
+			} catch (final Throwable t) {
+				System.err.println("Uncaught MessageHandler exception: " + t.getLocalizedMessage());
+				t.printStackTrace();
+			} finally {
+				in.release(sequence);
+			}
+		}
+	}
+}
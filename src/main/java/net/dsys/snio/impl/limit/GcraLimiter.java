@@ -0,0 +1,212 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.commons.api.lang.BinaryUnit;
+import net.dsys.snio.api.limit.RateLimiter;
+
+/**
+ * Token bucket implemented as a generic cell rate algorithm: each direction
+ * is a single timestamp, the theoretical time at which all bytes transferred
+ * so far are covered by the rate. Transferring bytes moves it forward, and the
+ * caller waits if it ends up in the future. Idle time is credited up to one
+ * second worth of bytes, which is the capacity of the bucket. Messages are
+ * limited the same way, with a capacity given by their burst size.
+ * <p>
+ * Every call is a single CAS, without locks nor allocation. Changing a rate
+ * is a single volatile write, and applies to both directions at once.
+ * <p>
+ * Timestamps are kept in fixed point, in 1/65536th of a nanosecond, and
+ * charges are rounded up, so that small transfers at high rates are not
+ * charged less than their cost.
+ *
+ * @author Ricardo Padilha
+ */
+final class GcraLimiter implements RateLimiter {
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	// fractional bits of the timestamps
+	private static final int SHIFT = 16;
+	private static final long ONE_NANO = 1L << SHIFT;
+	private static final long UNITS_PER_SECOND = NANOS_PER_SECOND << SHIFT;
+	// bucket capacity, one second worth of bytes
+	private static final long TOLERANCE = UNITS_PER_SECOND;
+	// keeps timestamp differences far from overflowing
+	private static final long MAX_CHARGE = Long.MAX_VALUE >> 2;
+	// one timestamp per cache line, as both directions are used by different threads
+	private static final int PADDING = 8;
+	private static final int SEND = PADDING;
+	private static final int RECV = 2 * PADDING;
+	private static final int SEND_MESSAGES = 3 * PADDING;
+	private static final int RECV_MESSAGES = 4 * PADDING;
+
+	private final AtomicLongArray tats;
+	private volatile double unitsPerByte;
+	@Nonnull(when = When.MAYBE)
+	private volatile MessageRate messageRate;
+
+	/**
+	 * Creates a limiter without any limit, until a rate is set.
+	 */
+	GcraLimiter() {
+		final long now = System.nanoTime() << SHIFT;
+		this.tats = new AtomicLongArray(6 * PADDING);
+		// the buckets start full
+		tats.set(SEND, now - TOLERANCE);
+		tats.set(RECV, now - TOLERANCE);
+		tats.set(SEND_MESSAGES, now - TOLERANCE);
+		tats.set(RECV_MESSAGES, now - TOLERANCE);
+		this.unitsPerByte = 0;
+		this.messageRate = null;
+	}
+
+	GcraLimiter(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
+		this();
+		setRate(value, unit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setRate(final long value, final BinaryUnit unit) {
+		if (value < 1) {
+			throw new IllegalArgumentException("value < 1");
+		}
+		final long bytes = Math.max(1, unit.toBits(value) / Byte.SIZE);
+		this.unitsPerByte = (double) UNITS_PER_SECOND / bytes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMessageRate(final long messages, final long burst) {
+		RateLimiters.checkMessageRate(messages, burst);
+		this.messageRate = new MessageRate(messages, burst);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void send(final long bytes) {
+		SharedLimiter.sleep(trySend(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receive(final long bytes) {
+		SharedLimiter.sleep(tryReceive(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySend(final long bytes) {
+		return consume(SEND, charge(bytes, unitsPerByte), TOLERANCE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceive(final long bytes) {
+		return consume(RECV, charge(bytes, unitsPerByte), TOLERANCE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySendMessages(final long messages) {
+		final MessageRate rate = messageRate;
+		if (rate == null) {
+			return 0;
+		}
+		return consume(SEND_MESSAGES, charge(messages, rate.unitsPerMessage), rate.tolerance);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceiveMessages(final long messages) {
+		final MessageRate rate = messageRate;
+		if (rate == null) {
+			return 0;
+		}
+		return consume(RECV_MESSAGES, charge(messages, rate.unitsPerMessage), rate.tolerance);
+	}
+
+	/**
+	 * @return the cost of <code>count</code> units, rounded up
+	 */
+	private static long charge(@Nonnegative final long count, @Nonnegative final double unitsPerCount) {
+		return (long) Math.min(MAX_CHARGE, Math.ceil(count * unitsPerCount));
+	}
+
+	private long consume(@Nonnegative final int index, @Nonnegative final long increment,
+			@Nonnegative final long tolerance) {
+		while (true) {
+			final long now = System.nanoTime() << SHIFT;
+			final long current = tats.get(index);
+			final long floor = now - tolerance;
+			// credit for idle time stops at the tolerance
+			final long base;
+			if (current - floor < 0) {
+				base = floor;
+			} else {
+				base = current;
+			}
+			final long next = base + increment;
+			if (increment == 0 || tats.compareAndSet(index, current, next)) {
+				final long delay = next - now;
+				if (delay > 0) {
+					return (delay + ONE_NANO - 1) >> SHIFT;
+				}
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Both values must change at once, hence the immutable holder.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class MessageRate {
+
+		final double unitsPerMessage;
+		final long tolerance;
+
+		MessageRate(@Nonnegative final long messages, @Nonnegative final long burst) {
+			this.unitsPerMessage = (double) UNITS_PER_SECOND / messages;
+			this.tolerance = charge(burst, unitsPerMessage);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.limit;
+
+import javax.annotation.Nonnull;
+
+import net.dsys.commons.api.lang.BinaryUnit;
+import net.dsys.snio.api.limit.RateLimiter;
+
+/**
+ * Per-connection limiter that also draws from a limiter shared with other
+ * connections. Bytes are charged to both, and the longest delay applies.
+ *
+ * @author Ricardo Padilha
+ */
+final class HierarchicalLimiter implements RateLimiter {
+
+	@Nonnull
+	private final RateLimiter own;
+	@Nonnull
+	private final RateLimiter parent;
+
+	HierarchicalLimiter(@Nonnull final RateLimiter own, @Nonnull final RateLimiter parent) {
+		if (own == null) {
+			throw new NullPointerException("own == null");
+		}
+		if (parent == null) {
+			throw new NullPointerException("parent == null");
+		}
+		this.own = own;
+		this.parent = parent;
+	}
+
+	/**
+	 * Only changes the rate of this connection, the shared limit stays the
+	 * same.
+	 */
+	@Override
+	public void setRate(final long value, final BinaryUnit unit) {
+		own.setRate(value, unit);
+	}
+
+	/**
+	 * Only changes the message rate of this connection, the shared limit
+	 * stays the same.
+	 */
+	@Override
+	public void setMessageRate(final long messages, final long burst) {
+		own.setMessageRate(messages, burst);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void send(final long bytes) {
+		SharedLimiter.sleep(trySend(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receive(final long bytes) {
+		SharedLimiter.sleep(tryReceive(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySend(final long bytes) {
+		return Math.max(own.trySend(bytes), parent.trySend(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceive(final long bytes) {
+		return Math.max(own.tryReceive(bytes), parent.tryReceive(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySendMessages(final long messages) {
+		return Math.max(own.trySendMessages(messages), parent.trySendMessages(messages));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceiveMessages(final long messages) {
+		return Math.max(own.tryReceiveMessages(messages), parent.tryReceiveMessages(messages));
+	}
+}
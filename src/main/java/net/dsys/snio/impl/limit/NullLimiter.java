@@ -36,6 +36,14 @@ final class NullLimiter implements RateLimiter {
 		return;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMessageRate(final long messages, final long burst) {
+		return;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -51,4 +59,36 @@ final class NullLimiter implements RateLimiter {
 	public void receive(final long bytes) {
 		return;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySend(final long bytes) {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceive(final long bytes) {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySendMessages(final long messages) {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceiveMessages(final long messages) {
+		return 0;
+	}
 }
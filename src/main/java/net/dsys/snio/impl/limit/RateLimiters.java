@@ -58,7 +58,7 @@ public final class RateLimiters {
 
 	@Nonnull
 	public static RateLimiter limit(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
-		return new TokenBucketLimiter(value, unit);
+		return new GcraLimiter(value, unit);
 	}
 
 	@Nonnull
@@ -66,7 +66,136 @@ public final class RateLimiters {
 		return new Factory<RateLimiter>() {
 			@Override
 			public RateLimiter newInstance() {
-				return new TokenBucketLimiter(value, unit);
+				return new GcraLimiter(value, unit);
+			}
+		};
+	}
+
+	/**
+	 * @return a limiter for a single channel, that limits both bytes and
+	 *         messages
+	 * @see RateLimiter#setMessageRate(long, long)
+	 */
+	@Nonnull
+	public static RateLimiter limit(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnegative final long messages, @Nonnegative final long burst) {
+		final RateLimiter limiter = new GcraLimiter(value, unit);
+		limiter.setMessageRate(messages, burst);
+		return limiter;
+	}
+
+	@Nonnull
+	public static Factory<RateLimiter> limitFactory(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnegative final long messages, @Nonnegative final long burst) {
+		checkMessageRate(messages, burst);
+		return new Factory<RateLimiter>() {
+			@Override
+			public RateLimiter newInstance() {
+				return limit(value, unit, messages, burst);
+			}
+		};
+	}
+
+	/**
+	 * @return a limiter for a single channel, that only limits messages
+	 * @see RateLimiter#setMessageRate(long, long)
+	 */
+	@Nonnull
+	public static RateLimiter messageLimit(@Nonnegative final long messages, @Nonnegative final long burst) {
+		final RateLimiter limiter = new GcraLimiter();
+		limiter.setMessageRate(messages, burst);
+		return limiter;
+	}
+
+	@Nonnull
+	public static Factory<RateLimiter> messageLimitFactory(@Nonnegative final long messages,
+			@Nonnegative final long burst) {
+		checkMessageRate(messages, burst);
+		return new Factory<RateLimiter>() {
+			@Override
+			public RateLimiter newInstance() {
+				return messageLimit(messages, burst);
+			}
+		};
+	}
+
+	static void checkMessageRate(final long messages, final long burst) {
+		if (messages < 1) {
+			throw new IllegalArgumentException("messages < 1");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst < 1");
+		}
+	}
+
+	/**
+	 * @return a limiter based on an external token bucket library, kept for
+	 *         comparison with {@link #limit(long, BinaryUnit)}
+	 */
+	@Nonnull
+	public static RateLimiter tokenBucketLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
+		return new TokenBucketLimiter(value, unit);
+	}
+
+	/**
+	 * @return a thread-safe limiter to be shared by many channels, e.g., all
+	 *         connections of a server, of a tenant or of a group
+	 */
+	@Nonnull
+	public static RateLimiter sharedLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
+		return new SharedLimiter(value, unit, null);
+	}
+
+	/**
+	 * @return a thread-safe limiter to be shared by many channels, that also
+	 *         draws from the given shared limiter
+	 */
+	@Nonnull
+	public static RateLimiter sharedLimit(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnull final RateLimiter parent) {
+		if (parent == null) {
+			throw new NullPointerException("parent == null");
+		}
+		return new SharedLimiter(value, unit, parent);
+	}
+
+	/**
+	 * @return a limiter for a single channel, that also draws from the given
+	 *         shared limiter
+	 */
+	@Nonnull
+	public static RateLimiter limit(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnull final RateLimiter parent) {
+		return new HierarchicalLimiter(new GcraLimiter(value, unit), parent);
+	}
+
+	@Nonnull
+	public static Factory<RateLimiter> limitFactory(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnull final RateLimiter parent) {
+		return limitFactory(limitFactory(value, unit), parent);
+	}
+
+	/**
+	 * @return a factory of limiters that draw both from the limiters created
+	 *         by the given factory, and from the given shared limiter
+	 */
+	@Nonnull
+	public static Factory<RateLimiter> limitFactory(@Nonnull final Factory<RateLimiter> limiters,
+			@Nonnull final RateLimiter parent) {
+		if (limiters == null) {
+			throw new NullPointerException("limiters == null");
+		}
+		if (parent == null) {
+			throw new NullPointerException("parent == null");
+		}
+		return new Factory<RateLimiter>() {
+			@Override
+			public RateLimiter newInstance() {
+				final RateLimiter own = limiters.newInstance();
+				if (own == NO_LIMIT) {
+					return parent;
+				}
+				return new HierarchicalLimiter(own, parent);
 			}
 		};
 	}
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
+import net.dsys.commons.api.lang.BinaryUnit;
+import net.dsys.snio.api.limit.RateLimiter;
+
+/**
+ * Rate limiter shared by many channels, and therefore by many reader and
+ * writer threads. Each thread adds the bytes it transferred to its own
+ * stripe of a counter, so that threads do not contend on a single cache line.
+ * A stripe is only moved into the shared total once it grows past a small
+ * fraction of the bucket capacity, and the delay is the time it takes for the
+ * rate to cover that total plus the caller's own stripe. Bytes still held in
+ * the stripes of other threads are at most a sixteenth of the capacity, so
+ * the limiter may briefly let that much more through. Idle time is credited up to one second worth of bytes, like the
+ * capacity of a token bucket. Messages are counted the same way, with a
+ * capacity given by their burst size.
+ * <p>
+ * A shared limiter can draw from another shared limiter, e.g., a tenant from
+ * the whole server, in which case the longest delay of both applies.
+ * <p>
+ * No limiter is created per {@link net.dsys.snio.api.pool.SelectorExecutor}:
+ * to cap all channels of an executor, give each of them the same shared
+ * limiter, or a limiter drawing from it.
+ *
+ * @author Ricardo Padilha
+ */
+final class SharedLimiter implements RateLimiter {
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Nonnull(when = When.MAYBE)
+	private final RateLimiter parent;
+	private final Bucket send;
+	private final Bucket recv;
+	private final Bucket sendMessages;
+	private final Bucket recvMessages;
+	private volatile long bytesPerSecond;
+	// null means no message limit
+	private volatile MessageRate messageRate;
+
+	SharedLimiter(@Nonnegative final long value, @Nonnull final BinaryUnit unit,
+			@Nonnull(when = When.MAYBE) final RateLimiter parent) {
+		this.parent = parent;
+		this.send = new Bucket();
+		this.recv = new Bucket();
+		this.sendMessages = new Bucket();
+		this.recvMessages = new Bucket();
+		this.messageRate = null;
+		setRate(value, unit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setRate(final long value, final BinaryUnit unit) {
+		if (value < 1) {
+			throw new IllegalArgumentException("value < 1");
+		}
+		final long rate = Math.max(1, unit.toBits(value) / Byte.SIZE);
+		this.bytesPerSecond = rate;
+		send.reset(rate, NANOS_PER_SECOND, rate);
+		recv.reset(rate, NANOS_PER_SECOND, rate);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMessageRate(final long messages, final long burst) {
+		RateLimiters.checkMessageRate(messages, burst);
+		final MessageRate rate = new MessageRate(messages, burst);
+		sendMessages.reset(messages, rate.tolerance, burst);
+		recvMessages.reset(messages, rate.tolerance, burst);
+		this.messageRate = rate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void send(final long bytes) {
+		sleep(trySend(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receive(final long bytes) {
+		sleep(tryReceive(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySend(final long bytes) {
+		final long delay = send.consume(bytes, bytesPerSecond, NANOS_PER_SECOND);
+		if (parent == null) {
+			return delay;
+		}
+		return Math.max(delay, parent.trySend(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceive(final long bytes) {
+		final long delay = recv.consume(bytes, bytesPerSecond, NANOS_PER_SECOND);
+		if (parent == null) {
+			return delay;
+		}
+		return Math.max(delay, parent.tryReceive(bytes));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySendMessages(final long messages) {
+		final MessageRate rate = messageRate;
+		long delay = 0;
+		if (rate != null) {
+			delay = sendMessages.consume(messages, rate.messagesPerSecond, rate.tolerance);
+		}
+		if (parent == null) {
+			return delay;
+		}
+		return Math.max(delay, parent.trySendMessages(messages));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceiveMessages(final long messages) {
+		final MessageRate rate = messageRate;
+		long delay = 0;
+		if (rate != null) {
+			delay = recvMessages.consume(messages, rate.messagesPerSecond, rate.tolerance);
+		}
+		if (parent == null) {
+			return delay;
+		}
+		return Math.max(delay, parent.tryReceiveMessages(messages));
+	}
+
+	static void sleep(@Nonnegative final long nanos) {
+		final long deadline = System.nanoTime() + nanos;
+		long left = nanos;
+		while (left > 0) {
+			LockSupport.parkNanos(left);
+			left = deadline - System.nanoTime();
+		}
+	}
+
+	/**
+	 * Both values must change at once, hence the immutable holder.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class MessageRate {
+
+		final long messagesPerSecond;
+		// idle time credited, worth the burst size
+		final long tolerance;
+
+		MessageRate(@Nonnegative final long messages, @Nonnegative final long burst) {
+			this.messagesPerSecond = messages;
+			this.tolerance = (long) ((double) burst * NANOS_PER_SECOND / messages);
+		}
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private static final class Bucket {
+
+		private static final int STRIPES = nearestPowerOfTwo(Runtime.getRuntime().availableProcessors());
+		// one stripe per cache line
+		private static final int PADDING = 8;
+		// the total gets a cache line of its own after the stripes
+		private static final int TOTAL = STRIPES * PADDING;
+		// unflushed tokens of all stripes stay below 1/16th of the capacity
+		private static final int FLUSH_SHIFT = 4;
+
+		// stripes hold the tokens not yet added to the total
+		private final AtomicLongArray consumed;
+		// time at which the rate started covering the consumed bytes
+		private final AtomicLong origin;
+		private volatile long threshold;
+
+		Bucket() {
+			this.consumed = new AtomicLongArray((STRIPES + 1) * PADDING);
+			this.origin = new AtomicLong(System.nanoTime());
+			this.threshold = 1;
+		}
+
+		/**
+		 * Restarts the bucket full under a new rate, forgetting any debt.
+		 * 
+		 * @param capacity
+		 *            how many tokens the tolerance is worth
+		 */
+		void reset(@Nonnegative final long rate, @Nonnegative final long tolerance,
+				@Nonnegative final long capacity) {
+			threshold = Math.max(1, (capacity >> FLUSH_SHIFT) / STRIPES);
+			origin.set(System.nanoTime() - nanos(sum(), rate) - tolerance);
+		}
+
+		/**
+		 * @param tolerance
+		 *            how much idle time is credited, in nanoseconds
+		 * @return how long it takes for the rate to cover all tokens consumed
+		 *         so far, in nanoseconds
+		 */
+		long consume(@Nonnegative final long tokens, @Nonnegative final long rate,
+				@Nonnegative final long tolerance) {
+			final int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+			long total;
+			if (tokens > 0) {
+				final long local = consumed.addAndGet(stripe, tokens);
+				if (local >= threshold) {
+					total = consumed.addAndGet(TOTAL, consumed.getAndSet(stripe, 0));
+				} else {
+					total = consumed.get(TOTAL) + local;
+				}
+			} else {
+				total = consumed.get(TOTAL) + consumed.get(stripe);
+			}
+			final long now = System.nanoTime();
+			final long start = origin.get();
+			final long covered = now - start;
+			final long needed = nanos(total, rate);
+			if (needed > covered) {
+				return needed - covered;
+			}
+			// idle time only counts up to the tolerance
+			if (covered - needed > tolerance) {
+				origin.compareAndSet(start, now - needed - tolerance);
+			}
+			return 0;
+		}
+
+		private long sum() {
+			long total = consumed.get(TOTAL);
+			for (int i = 0; i < STRIPES; i++) {
+				total += consumed.get(i * PADDING);
+			}
+			return total;
+		}
+
+		private static long nanos(@Nonnegative final long tokens, @Nonnegative final long rate) {
+			return (long) ((double) tokens * NANOS_PER_SECOND / rate);
+		}
+
+		/**
+		 * @return nearest larger or equal power of two
+		 */
+		private static int nearestPowerOfTwo(final int num) {
+			int n = 0;
+			if (num > 0) {
+				n = num - 1;
+			}
+			n |= n >> 1;
+			n |= n >> 2;
+			n |= n >> 4;
+			n |= n >> 8;
+			n |= n >> 16;
+			n++;
+			return n;
+		}
+	}
+}
@@ -44,27 +44,43 @@ final class TokenBucketLimiter implements RateLimiter {
 
 	private TokenBucket send;
 	private TokenBucket recv;
+	private long bytesPerSecond;
+	// bytes already sent or received that the buckets could not cover yet,
+	// each one only touched by the writer or the reader thread
+	private long sendDebt;
+	private long recvDebt;
+	// message buckets are only created once a message rate is set
+	private TokenBucket sendMessages;
+	private TokenBucket recvMessages;
+	private long messagesPerSecond;
+	private long burst;
+	private long sendMessageDebt;
+	private long recvMessageDebt;
 
 	TokenBucketLimiter(@Nonnegative final long value, @Nonnull final BinaryUnit unit) {
 		setRate(value, unit);
 	}
 
 	private static TokenBucket createBucket(@Nonnegative final long bits) {
+		final long bytes = bits / Byte.SIZE;
+		return createBucket(bytes, bytes);
+	}
+
+	private static TokenBucket createBucket(@Nonnegative final long capacity, @Nonnegative final long rate) {
 		// Instead of refilling once per second, we refill 10 times per second.
 		// It makes for a smoother bandwidth curve under very low rates,
 		// e.g., less than 100 kbps.
-		final long bytes = bits / Byte.SIZE;
-		final long refillRate = bytes / REFILL_FACTOR;
+		final long refillRate = rate / REFILL_FACTOR;
 		// if the division caused an underflow, revert to base units.
 		if (refillRate < 1) {
 			return TokenBuckets.builder()
-				.withCapacity(bytes)
+				.withCapacity(capacity)
 				.withYieldingSleepStrategy()
-				.withFixedIntervalRefillStrategy(bytes, BASE_INTERVAL, BASE_UNIT)
+				.withFixedIntervalRefillStrategy(rate, BASE_INTERVAL, BASE_UNIT)
 				.build();
 		}
 		return TokenBuckets.builder()
-			.withCapacity(bytes)
+			.withCapacity(capacity)
 			.withYieldingSleepStrategy()
 			.withFixedIntervalRefillStrategy(refillRate, REFILL_INTERVAL, REFILL_UNIT)
 			.build();
@@ -81,6 +97,19 @@ final class TokenBucketLimiter implements RateLimiter {
 		final long bits = unit.toBits(value);
 		this.send = createBucket(bits);
 		this.recv = createBucket(bits);
+		this.bytesPerSecond = Math.max(1, bits / Byte.SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMessageRate(final long messages, final long burst) {
+		RateLimiters.checkMessageRate(messages, burst);
+		this.sendMessages = createBucket(burst, messages);
+		this.recvMessages = createBucket(burst, messages);
+		this.messagesPerSecond = messages;
+		this.burst = burst;
 	}
 
 	/**
@@ -102,4 +131,76 @@ final class TokenBucketLimiter implements RateLimiter {
 			recv.consume(bytes);
 		}
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySend(final long bytes) {
+		sendDebt = pay(send, sendDebt + bytes, bytesPerSecond);
+		return delay(sendDebt, bytesPerSecond);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceive(final long bytes) {
+		recvDebt = pay(recv, recvDebt + bytes, bytesPerSecond);
+		return delay(recvDebt, bytesPerSecond);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long trySendMessages(final long messages) {
+		if (sendMessages == null) {
+			return 0;
+		}
+		sendMessageDebt = pay(sendMessages, sendMessageDebt + messages, burst);
+		return delay(sendMessageDebt, messagesPerSecond);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryReceiveMessages(final long messages) {
+		if (recvMessages == null) {
+			return 0;
+		}
+		recvMessageDebt = pay(recvMessages, recvMessageDebt + messages, burst);
+		return delay(recvMessageDebt, messagesPerSecond);
+	}
+
+	/**
+	 * Takes as many tokens as the bucket can give right now.
+	 * 
+	 * @return the tokens left unpaid
+	 */
+	private static long pay(@Nonnull final TokenBucket bucket, @Nonnegative final long debt,
+			@Nonnegative final long capacity) {
+		long left = debt;
+		while (left > 0) {
+			// the bucket never holds more than its capacity
+			final long n = Math.min(left, capacity);
+			if (!bucket.tryConsume(n)) {
+				break;
+			}
+			left -= n;
+		}
+		return left;
+	}
+
+	/**
+	 * @return how long it takes for the bucket to cover the given tokens, in
+	 *         nanoseconds
+	 */
+	private static long delay(@Nonnegative final long debt, @Nonnegative final long rate) {
+		if (debt == 0) {
+			return 0;
+		}
+		return Math.max(1, debt * BASE_UNIT.toNanos(BASE_INTERVAL) / rate);
+	}
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.pool;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import net.dsys.snio.api.pool.SelectorMetrics;
+
+/**
+ * Counters of a selector thread. Except for wakeups, all of them are only
+ * updated by the selector thread itself, so they are published with
+ * {@link AtomicLongArray#lazySet(int, long)} instead of atomic increments.
+ * Wakeups are incremented by application threads, so they are kept a full
+ * cache line away from the other counters on both sides.
+ *
+ * @author Ricardo Padilha
+ */
+final class LoopMetrics implements SelectorMetrics {
+
+	// one cache line worth of counters
+	private static final int PADDING = 8;
+	private static final int ITERATIONS = 0;
+	private static final int SELECTED_KEYS = 1;
+	private static final int SELECT_TIME = 2;
+	private static final int PROCESS_TIME = 3;
+	private static final int BYTES = 4;
+	private static final int ERRORS = 5;
+	private static final int WAKEUPS = 2 * PADDING;
+	private static final int COUNTERS = 3 * PADDING;
+
+	private final Queue<?> ops;
+	private final AtomicLongArray counters;
+
+	LoopMetrics(@Nonnull final Queue<?> ops) {
+		if (ops == null) {
+			throw new NullPointerException("ops == null");
+		}
+		this.ops = ops;
+		this.counters = new AtomicLongArray(COUNTERS);
+	}
+
+	private void add(final int counter, final long value) {
+		counters.lazySet(counter, counters.get(counter) + value);
+	}
+
+	/**
+	 * Only called from within the selector thread, once per iteration.
+	 */
+	void selected(@Nonnegative final int keys, @Nonnegative final long nanos) {
+		add(ITERATIONS, 1);
+		add(SELECTED_KEYS, keys);
+		add(SELECT_TIME, nanos);
+	}
+
+	/**
+	 * Only called from within the selector thread, once per iteration.
+	 */
+	void processed(@Nonnegative final long nanos) {
+		add(PROCESS_TIME, nanos);
+	}
+
+	/**
+	 * Only called from within the selector thread.
+	 */
+	void transferred(final long bytes) {
+		if (bytes > 0) {
+			add(BYTES, bytes);
+		}
+	}
+
+	/**
+	 * Only called from within the selector thread.
+	 */
+	void error() {
+		add(ERRORS, 1);
+	}
+
+	/**
+	 * Called by any thread that wakes up the selector.
+	 */
+	void wakeup() {
+		counters.incrementAndGet(WAKEUPS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getIterations() {
+		return counters.get(ITERATIONS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getSelectedKeys() {
+		return counters.get(SELECTED_KEYS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getSelectTime() {
+		return counters.get(SELECT_TIME);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getProcessTime() {
+		return counters.get(PROCESS_TIME);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getQueuedOperations() {
+		return ops.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getWakeups() {
+		return counters.get(WAKEUPS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBytes() {
+		return counters.get(BYTES);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getErrors() {
+		return counters.get(ERRORS);
+	}
+}
@@ -23,6 +23,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import net.dsys.commons.impl.future.MergingCallbackFuture;
@@ -32,6 +33,7 @@ import net.dsys.snio.api.pool.Acceptor;
 import net.dsys.snio.api.pool.Processor;
 import net.dsys.snio.api.pool.SelectionType;
 import net.dsys.snio.api.pool.SelectorExecutor;
+import net.dsys.snio.api.pool.SelectorMetrics;
 
 /**
  * @author Ricardo Padilha
@@ -47,10 +49,14 @@ final class SelectorExecutorImpl implements SelectorExecutor {
 	private volatile boolean accepting;
 	private MergingCallbackFuture<Void> closeFuture;
 
-	SelectorExecutorImpl(@Nonnull final String name) {
+	/**
+	 * @param spin
+	 *            how long the reader thread busy polls, in nanoseconds
+	 */
+	SelectorExecutorImpl(@Nonnull final String name, @Nonnegative final long spin) {
 		this.executor = Executors.newFixedThreadPool(THREAD_COUNT, new DaemonThreadFactory(name));
 		this.accepter = new SelectorThreadImpl(SelectionType.OP_ACCEPT);
-		this.reader = new SelectorThreadImpl(SelectionType.OP_READ);
+		this.reader = new SelectorThreadImpl(SelectionType.OP_READ, spin);
 		this.writer = new SelectorThreadImpl(SelectionType.OP_WRITE);
 		this.accepting = false;
 	}
@@ -73,6 +79,26 @@ final class SelectorExecutorImpl implements SelectorExecutor {
 		return accepter.isOpen() && reader.isOpen() && writer.isOpen();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SelectorMetrics getMetrics(final SelectionType type) {
+		if (type == null) {
+			throw new NullPointerException("type == null");
+		}
+		switch (type) {
+		case OP_ACCEPT:
+			return accepter.getMetrics();
+		case OP_READ:
+			return reader.getMetrics();
+		case OP_WRITE:
+			return writer.getMetrics();
+		default:
+			throw new IllegalArgumentException("invalid type");
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
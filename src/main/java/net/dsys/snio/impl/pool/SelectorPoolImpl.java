@@ -38,6 +38,11 @@ final class SelectorPoolImpl implements SelectorPool {
 
 	SelectorPoolImpl(@Nonnull final String name, @Nonnegative final int size,
 			@Nonnull final SelectorPolicy policy) {
+		this(name, size, policy, 0);
+	}
+
+	SelectorPoolImpl(@Nonnull final String name, @Nonnegative final int size,
+			@Nonnull final SelectorPolicy policy, @Nonnegative final long spin) {
 		if (size < 1) {
 			throw new IllegalArgumentException("size < 1: " + size);
 		}
@@ -47,7 +52,7 @@ final class SelectorPoolImpl implements SelectorPool {
 		this.policy = policy;
 		this.selectors = new SelectorExecutorImpl[size];
 		for (int i = 0; i < size; i++) {
-			selectors[i] = new SelectorExecutorImpl(name + "-" + i);
+			selectors[i] = new SelectorExecutorImpl(name + "-" + i, spin);
 		}
 	}
 
@@ -17,10 +17,18 @@
 package net.dsys.snio.impl.pool;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
+import net.dsys.commons.api.exception.Bug;
+import net.dsys.snio.api.pool.SelectionType;
 import net.dsys.snio.api.pool.SelectorPolicy;
 import net.dsys.snio.api.pool.SelectorPool;
 
@@ -29,6 +37,10 @@ import net.dsys.snio.api.pool.SelectorPool;
  */
 public final class SelectorPools {
 
+	private static final SelectionType[] METRIC_TYPES = {
+		SelectionType.OP_ACCEPT, SelectionType.OP_READ, SelectionType.OP_WRITE,
+	};
+
 	private SelectorPools() {
 		// no instantiation
 		return;
@@ -53,4 +65,106 @@ public final class SelectorPools {
 		return pool;
 	}
 
+	/**
+	 * Opens a pool whose reader threads keep polling their selectors without
+	 * blocking for the given time after the last read, instead of going to
+	 * sleep in {@link java.nio.channels.Selector#select()}. This removes the
+	 * wakeup latency from the receive path, at the cost of one busy core per
+	 * reader thread while it spins. Kernel busy polling of the device queue
+	 * is a separate setting: the net.core.busy_poll sysctl.
+	 * 
+	 * @param spin
+	 *            use {@link Long#MAX_VALUE} to never block
+	 */
+	@Nonnull
+	public static SelectorPool openBusyPolling(@Nonnull final String name, @Nonnegative final int size,
+			@Nonnegative final long spin, @Nonnull final TimeUnit unit) throws IOException {
+		if (spin < 0) {
+			throw new IllegalArgumentException("spin < 0");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit == null");
+		}
+		final SelectorPoolImpl pool = new SelectorPoolImpl(name, size, new RoundRobinPolicy(), unit.toNanos(spin));
+		pool.open();
+		return pool;
+	}
+
+	/**
+	 * Selector threads keep suspended and idle keys on timer wheels that only
+	 * expire deadlines on their ticks, so the delays given to
+	 * {@link net.dsys.snio.api.pool.SelectorThread#suspendKey} and
+	 * {@link net.dsys.snio.api.pool.SelectorThread#idleKey} are rounded up to
+	 * the next tick.
+	 * 
+	 * @return the resolution of the selector timers, in nanoseconds
+	 */
+	@Nonnegative
+	public static long getTimerResolution() {
+		return TimerWheel.TICK_NANOS;
+	}
+
+	/**
+	 * Registers the metrics of every selector thread of the given pool with
+	 * the platform MBean server, under
+	 * {@code net.dsys.snio:type=Selector,pool=<name>,index=<i>,thread=<type>}.
+	 */
+	public static void registerMetrics(@Nonnull final SelectorPool pool, @Nonnull final String name)
+			throws JMException {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final int k = pool.size();
+		for (int i = 0; i < k; i++) {
+			for (final SelectionType type : METRIC_TYPES) {
+				server.registerMBean(pool.get(i).getMetrics(type), getObjectName(name, i, type));
+			}
+		}
+	}
+
+	public static void unregisterMetrics(@Nonnull final SelectorPool pool, @Nonnull final String name)
+			throws JMException {
+		if (pool == null) {
+			throw new NullPointerException("pool == null");
+		}
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final int k = pool.size();
+		for (int i = 0; i < k; i++) {
+			for (final SelectionType type : METRIC_TYPES) {
+				final ObjectName objectName = getObjectName(name, i, type);
+				if (server.isRegistered(objectName)) {
+					server.unregisterMBean(objectName);
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	private static ObjectName getObjectName(@Nonnull final String name, @Nonnegative final int index,
+			@Nonnull final SelectionType type) throws MalformedObjectNameException {
+		final String thread;
+		switch (type) {
+		case OP_ACCEPT:
+			thread = "accept";
+			break;
+		case OP_READ:
+			thread = "read";
+			break;
+		case OP_WRITE:
+			thread = "write";
+			break;
+		default:
+			throw new Bug("Unsupported selection type: " + type);
+		}
+		return new ObjectName("net.dsys.snio:type=Selector,pool=" + ObjectName.quote(name)
+				+ ",index=" + index + ",thread=" + thread);
+	}
+
 }
@@ -18,6 +18,7 @@ package net.dsys.snio.impl.pool;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
@@ -25,16 +26,21 @@ import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.meta.When;
 
@@ -46,6 +52,7 @@ import net.dsys.snio.api.pool.KeyAcceptor;
 import net.dsys.snio.api.pool.KeyProcessor;
 import net.dsys.snio.api.pool.Processor;
 import net.dsys.snio.api.pool.SelectionType;
+import net.dsys.snio.api.pool.SelectorMetrics;
 import net.dsys.snio.api.pool.SelectorThread;
 
 /**
@@ -54,26 +61,49 @@ import net.dsys.snio.api.pool.SelectorThread;
 final class SelectorThreadImpl implements SelectorThread {
 
 	private final SelectionType type;
+	private final long spin;
 	private final AtomicBoolean newOps;
 	private final Queue<IOOperation> ops;
 	private final AtomicBoolean newKeys;
 	private final NavigableSet<SelectionKey> keys;
+	private final Set<SelectionKey> suspended;
+	private final TimerWheel timers;
+	private final TimerWheel idle;
+	private final LoopMetrics metrics;
 	private final SettableCallbackFuture<Void> closeFuture;
 	private Selector selector;
 	private Loop loop;
+	private ByteBuffer readBuffer;
 
 	SelectorThreadImpl(@Nonnull final SelectionType type) {
+		this(type, 0);
+	}
+
+	/**
+	 * @param spin
+	 *            how long to keep polling the selector without blocking after
+	 *            the last selected key, in nanoseconds
+	 */
+	SelectorThreadImpl(@Nonnull final SelectionType type, @Nonnegative final long spin) {
 		if (type == null) {
 			throw new NullPointerException("type == null");
 		}
 		if (type != SelectionType.OP_READ && type != SelectionType.OP_WRITE && type != SelectionType.OP_ACCEPT) {
 			throw new IllegalArgumentException("invalid type");
 		}
+		if (spin < 0) {
+			throw new IllegalArgumentException("spin < 0");
+		}
 		this.type = type;
+		this.spin = spin;
 		this.newOps = new AtomicBoolean();
 		this.ops = new ConcurrentLinkedQueue<>();
 		this.newKeys = new AtomicBoolean();
 		this.keys = new ConcurrentSkipListSet<>(new KeyComparator());
+		this.suspended = new HashSet<>();
+		this.timers = new TimerWheel();
+		this.idle = new TimerWheel();
+		this.metrics = new LoopMetrics(ops);
 		this.closeFuture = new SettableCallbackFuture<>();
 	}
 
@@ -88,6 +118,11 @@ final class SelectorThreadImpl implements SelectorThread {
 		return selector != null && selector.isOpen();
 	}
 
+	@Nonnull
+	SelectorMetrics getMetrics() {
+		return metrics;
+	}
+
 	CallbackFuture<Void> close() {
 		final IOOperation close = new IOOperation() {
 			@Override
@@ -103,6 +138,7 @@ final class SelectorThreadImpl implements SelectorThread {
 		assert selector != null;
 		if (ops.offer(op)) {
 			if (newOps.compareAndSet(false, true)) {
+				metrics.wakeup();
 				selector.wakeup();
 			}
 		} else {
@@ -169,13 +205,14 @@ final class SelectorThreadImpl implements SelectorThread {
 		}
 		switch (type) {
 		case OP_ACCEPT:
-			loop = new AcceptLoop(selector, newOps, ops);
+			loop = new AcceptLoop(selector, newOps, ops, timers, idle, metrics, spin);
 			break;
 		case OP_READ:
-			loop = new ReadLoop(selector, newOps, ops);
+			loop = new ReadLoop(selector, newOps, ops, timers, idle, metrics, spin, suspended);
 			break;
 		case OP_WRITE:
-			loop = new WriteLoop(selector, newOps, ops, newKeys, keys, SelectionKey.OP_WRITE);
+			loop = new WriteLoop(selector, newOps, ops, timers, idle, metrics, spin, newKeys, keys,
+					SelectionKey.OP_WRITE);
 			break;
 		default:
 			throw new Bug("Unsupported selection type: " + type);
@@ -290,10 +327,61 @@ final class SelectorThreadImpl implements SelectorThread {
 	@Override
 	public void enableKey(@Nonnull final SelectionKey key) {
 		if (keys.add(key) && newKeys.compareAndSet(false, true)) {
+			metrics.wakeup();
 			selector.wakeup();
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void suspendKey(@Nonnull final SelectionKey key) {
+		if (type != SelectionType.OP_READ) {
+			throw new IllegalStateException("type != OP_READ");
+		}
+		suspended.add(key);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void suspendKey(@Nonnull final SelectionKey key, @Nonnegative final long delay,
+			@Nonnull final TimeUnit unit) {
+		if (type == SelectionType.OP_ACCEPT) {
+			throw new IllegalStateException("type == OP_ACCEPT");
+		}
+		timers.schedule(key, unit.toNanos(delay));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void idleKey(@Nonnull final SelectionKey key, @Nonnegative final long delay,
+			@Nonnull final TimeUnit unit) {
+		if (type == SelectionType.OP_ACCEPT) {
+			throw new IllegalStateException("type == OP_ACCEPT");
+		}
+		idle.schedule(key, unit.toNanos(delay));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ByteBuffer getReadBuffer(@Nonnegative final int length) {
+		if (type != SelectionType.OP_READ) {
+			throw new IllegalStateException("type != OP_READ");
+		}
+		if (readBuffer == null || readBuffer.capacity() < length) {
+			readBuffer = ByteBuffer.allocateDirect(length);
+		}
+		readBuffer.clear();
+		return readBuffer;
+	}
+
 	/**
 	 * Base class for all threads.
 	 * 
@@ -304,9 +392,16 @@ final class SelectorThreadImpl implements SelectorThread {
 		private final Selector selector;
 		private final AtomicBoolean newOps;
 		private final Queue<IOOperation> ops;
+		private final TimerWheel timers;
+		private final TimerWheel idle;
+		private final List<SelectionKey> expired;
+		private final LoopMetrics metrics;
+		private final long spin;
+		private long lastSelected;
 
 		Loop(@Nonnull final Selector selector, @Nonnull final AtomicBoolean newOps,
-				@Nonnull final Queue<IOOperation> ops) {
+				@Nonnull final Queue<IOOperation> ops, @Nonnull final TimerWheel timers,
+				@Nonnull final TimerWheel idle, @Nonnull final LoopMetrics metrics, @Nonnegative final long spin) {
 			if (selector == null) {
 				throw new NullPointerException("selector == null");
 			}
@@ -316,41 +411,91 @@ final class SelectorThreadImpl implements SelectorThread {
 			if (ops == null) {
 				throw new NullPointerException("ops == null");
 			}
+			if (timers == null) {
+				throw new NullPointerException("timers == null");
+			}
+			if (idle == null) {
+				throw new NullPointerException("idle == null");
+			}
+			if (metrics == null) {
+				throw new NullPointerException("metrics == null");
+			}
 			this.selector = selector;
 			this.newOps = newOps;
 			this.ops = ops;
+			this.timers = timers;
+			this.idle = idle;
+			this.expired = new ArrayList<>();
+			this.metrics = metrics;
+			this.spin = spin;
 		}
 
 		@Override
 		public void run() {
+			lastSelected = System.nanoTime();
 			while (selector.isOpen()) {
 				try {
-					final int n = selector.select();
+					final long start = System.nanoTime();
+					final int n = select();
+					final long selected = System.nanoTime();
+					metrics.selected(n, selected - start);
 					runOps();
+					runTimers();
+					runIdle();
 					updateKeys();
-					if (n == 0) {
-						continue;
-					}
-					final Set<SelectionKey> ks = selector.selectedKeys();
-					if (ks.isEmpty()) {
-						continue;
-					}
-					for (final Iterator<SelectionKey> it = ks.iterator(); it.hasNext();) {
-						final SelectionKey k = it.next();
-						it.remove();
-						runKey(k);
+					if (n > 0) {
+						runKeys();
 					}
+					metrics.processed(System.nanoTime() - selected);
 				} catch (final ClosedSelectorException e) {
 					// this is an expected exception when the channel is closed.
 					break;
 				} catch (final IOException e) {
 					// wtf? log and continue
+					metrics.error();
 					e.printStackTrace();
 					continue;
 				}
 			}
 		}
 
+		private void runKeys() {
+			final Set<SelectionKey> ks = selector.selectedKeys();
+			for (final Iterator<SelectionKey> it = ks.iterator(); it.hasNext();) {
+				final SelectionKey k = it.next();
+				it.remove();
+				runKey(k);
+			}
+		}
+
+		/**
+		 * Only called from within this thread.
+		 */
+		@Nonnull
+		protected final LoopMetrics getMetrics() {
+			return metrics;
+		}
+
+		/**
+		 * Busy polls the selector until no key was selected for the spin
+		 * time, and only then blocks. Operations, timers and suspended keys
+		 * are still handled between polls.
+		 */
+		private int select() throws IOException {
+			if (spin > 0) {
+				final int n = selector.selectNow();
+				final long now = System.nanoTime();
+				if (n > 0) {
+					lastSelected = now;
+					return n;
+				}
+				if (now - lastSelected < spin) {
+					return 0;
+				}
+			}
+			return selector.select(getTimeout());
+		}
+
 		/**
 		 * Subclasses can override as needed.
 		 */
@@ -358,6 +503,79 @@ final class SelectorThreadImpl implements SelectorThread {
 			return;
 		}
 
+		/**
+		 * Subclasses can override as needed.
+		 * 
+		 * @return how long to wait for selected keys, in milliseconds, or
+		 *         zero to wait until the selector is woken up
+		 */
+		protected long getTimeout() {
+			return Math.max(timers.getTimeout(), idle.getTimeout());
+		}
+
+		/**
+		 * Called once the delay of a key suspended with
+		 * {@link SelectorThread#suspendKey(SelectionKey, long, TimeUnit)}
+		 * expires. Subclasses can override as needed.
+		 */
+		protected void resumeKey(@Nonnull final SelectionKey k) {
+			return;
+		}
+
+		/**
+		 * @return <code>true</code> if the key is waiting for its delay to
+		 *         expire
+		 */
+		protected final boolean isSuspended(@Nonnull final SelectionKey k) {
+			return timers.contains(k);
+		}
+
+		private void runTimers() {
+			if (timers.isEmpty()) {
+				return;
+			}
+			timers.expire(expired);
+			final int k = expired.size();
+			for (int i = 0; i < k; i++) {
+				final SelectionKey key = expired.get(i);
+				try {
+					if (key.isValid()) {
+						resumeKey(key);
+					}
+				} catch (final CancelledKeyException e) {
+					// another thread cancelled the key
+					continue;
+				}
+			}
+			expired.clear();
+		}
+
+		/**
+		 * Tells the processors of keys scheduled with
+		 * {@link SelectorThread#idleKey(SelectionKey, long, TimeUnit)} that
+		 * their delay expired.
+		 */
+		private void runIdle() {
+			if (idle.isEmpty()) {
+				return;
+			}
+			idle.expire(expired);
+			final int k = expired.size();
+			for (int i = 0; i < k; i++) {
+				final SelectionKey key = expired.get(i);
+				try {
+					if (key.isValid()) {
+						final Processor proc = (Processor) key.attachment();
+						proc.getProcessor().idle(key);
+					}
+				} catch (final CancelledKeyException e) {
+					// another thread cancelled the key
+					continue;
+				}
+			}
+			expired.clear();
+		}
+
 		/**
 		 * Process a single SelectionKey.
 		 */
@@ -380,8 +598,9 @@ final class SelectorThreadImpl implements SelectorThread {
 	private static final class AcceptLoop extends Loop {
 
 		AcceptLoop(@Nonnull final Selector selector, @Nonnull final AtomicBoolean newOps,
-				@Nonnull final Queue<IOOperation> ops) {
-			super(selector, newOps, ops);
+				@Nonnull final Queue<IOOperation> ops, @Nonnull final TimerWheel timers,
+				@Nonnull final TimerWheel idle, @Nonnull final LoopMetrics metrics, @Nonnegative final long spin) {
+			super(selector, newOps, ops, timers, idle, metrics, spin);
 		}
 
 		/**
@@ -400,6 +619,7 @@ final class SelectorThreadImpl implements SelectorThread {
 				return;
 			} catch (final IOException e) {
 				// wtf?
+				getMetrics().error();
 				e.printStackTrace();
 				return;
 			}
@@ -411,9 +631,90 @@ final class SelectorThreadImpl implements SelectorThread {
 	 */
 	private static final class ReadLoop extends Loop {
 
+		/**
+		 * Interval between reads of suspended keys.
+		 */
+		private static final long SUSPENDED_TIMEOUT = 1;
+
+		private final Set<SelectionKey> suspended;
+
 		ReadLoop(@Nonnull final Selector selector, @Nonnull final AtomicBoolean newOps,
-				@Nonnull final Queue<IOOperation> ops) {
-			super(selector, newOps, ops);
+				@Nonnull final Queue<IOOperation> ops, @Nonnull final TimerWheel timers,
+				@Nonnull final TimerWheel idle, @Nonnull final LoopMetrics metrics, @Nonnegative final long spin,
+				@Nonnull final Set<SelectionKey> suspended) {
+			super(selector, newOps, ops, timers, idle, metrics, spin);
+			if (suspended == null) {
+				throw new NullPointerException("suspended == null");
+			}
+			this.suspended = suspended;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected long getTimeout() {
+			if (suspended.isEmpty()) {
+				return super.getTimeout();
+			}
+			return SUSPENDED_TIMEOUT;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void resumeKey(final SelectionKey k) {
+			k.interestOps(k.interestOps() | SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Reads from all suspended keys, and forgets the ones that got their
+		 * read interest back.
+		 */
+		@Override
+		protected void updateKeys() {
+			for (final Iterator<SelectionKey> it = suspended.iterator(); it.hasNext();) {
+				final SelectionKey k = it.next();
+				try {
+					if (!k.isValid()) {
+						it.remove();
+						continue;
+					}
+					read(k);
+					if (!k.isValid() || (k.interestOps() & SelectionKey.OP_READ) != 0) {
+						it.remove();
+					}
+				} catch (final CancelledKeyException e) {
+					// another thread cancelled the key
+					it.remove();
+				} catch (final IOException e) {
+					// wtf?
+					getMetrics().error();
+					e.printStackTrace();
+					it.remove();
+				}
+			}
+		}
+
+		private void read(@Nonnull final SelectionKey k) throws IOException {
+			final Processor proc = (Processor) k.attachment();
+			final KeyProcessor<?> keyproc = proc.getProcessor();
+			try {
+				final long n = keyproc.read(k);
+				if (n < 0) {
+					proc.close();
+				} else {
+					getMetrics().transferred(n);
+				}
+			} catch (final IOException e) {
+				proc.close();
+			} catch (final NotYetConnectedException e) {
+				// wtf?
+				getMetrics().error();
+				e.printStackTrace();
+				proc.close();
+			}
 		}
 
 		/**
@@ -423,19 +724,7 @@ final class SelectorThreadImpl implements SelectorThread {
 		protected void runKey(final SelectionKey k) {
 			try {
 				if (k.isReadable()) {
-					final Processor proc = (Processor) k.attachment();
-					final KeyProcessor<?> keyproc = proc.getProcessor();
-					try {
-						if (keyproc.read(k) < 0) {
-							proc.close();
-						}
-					} catch (final IOException e) {
-						proc.close();
-					} catch (final NotYetConnectedException e) {
-						// wtf?
-						e.printStackTrace();
-						proc.close();
-					}
+					read(k);
 				} else if (k.isConnectable()) {
 					final Processor proc = (Processor) k.attachment();
 					final KeyProcessor<?> processor = proc.getProcessor();
@@ -446,6 +735,7 @@ final class SelectorThreadImpl implements SelectorThread {
 				return;
 			} catch (final IOException e) {
 				// wtf?
+				getMetrics().error();
 				e.printStackTrace();
 				return;
 			}
@@ -463,9 +753,10 @@ final class SelectorThreadImpl implements SelectorThread {
 		private final int op;
 
 		WriteLoop(@Nonnull final Selector selector, @Nonnull final AtomicBoolean newOps,
-				@Nonnull final Queue<IOOperation> ops, @Nonnull final AtomicBoolean newKeys,
-				@Nonnull final NavigableSet<SelectionKey> keys, final int op) {
-			super(selector, newOps, ops);
+				@Nonnull final Queue<IOOperation> ops, @Nonnull final TimerWheel timers,
+				@Nonnull final TimerWheel idle, @Nonnull final LoopMetrics metrics, @Nonnegative final long spin,
+				@Nonnull final AtomicBoolean newKeys, @Nonnull final NavigableSet<SelectionKey> keys, final int op) {
+			super(selector, newOps, ops, timers, idle, metrics, spin);
 			if (newKeys == null) {
 				throw new NullPointerException("newKeys == null");
 			}
@@ -490,12 +781,16 @@ final class SelectorThreadImpl implements SelectorThread {
 					final Processor proc = (Processor) k.attachment();
 					final KeyProcessor<?> keyproc = proc.getProcessor();
 					try {
-						if (keyproc.write(k) < 0) {
+						final long n = keyproc.write(k);
+						if (n < 0) {
 							proc.close();
+						} else {
+							getMetrics().transferred(n);
 						}
 					} catch (final IOException e) {
 						proc.close();
 					} catch (final NotYetConnectedException e) {
+						getMetrics().error();
 						e.printStackTrace();
 						proc.close();
 					}
@@ -505,11 +800,20 @@ final class SelectorThreadImpl implements SelectorThread {
 				return;
 			} catch (final IOException e) {
 				// wtf?
+				getMetrics().error();
 				e.printStackTrace();
 				return;
 			}
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void resumeKey(final SelectionKey k) {
+			k.interestOps(k.interestOps() | op);
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -518,6 +822,10 @@ final class SelectorThreadImpl implements SelectorThread {
 			if (newKeys.compareAndSet(true, false)) {
 				SelectionKey key = null;
 				while ((key = keys.pollFirst()) != null) {
+					if (isSuspended(key)) {
+						// the timer restores the interest once the delay expires
+						continue;
+					}
 					try {
 						final int iops = key.interestOps();
 						if ((iops & op) == 0) {
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.impl.pool;
+
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Hashed timer wheel for suspended keys, with a resolution of one
+ * millisecond. Deadlines further away than one turn of the wheel simply stay
+ * in their slot until a later turn. Like the selector it belongs to, this
+ * class must only be used by a single thread.
+ *
+ * @author Ricardo Padilha
+ */
+final class TimerWheel {
+
+	private static final int WHEEL_SIZE = 512;
+	private static final int MASK = WHEEL_SIZE - 1;
+	private static final long TICK_MILLIS = 1;
+	static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+
+	private final List<Timeout>[] wheel;
+	private final Map<SelectionKey, Timeout> timeouts;
+	private final long origin;
+	private long tick;
+
+	TimerWheel() {
+		@SuppressWarnings("unchecked")
+		final List<Timeout>[] wheel = new List[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new ArrayList<>();
+		}
+		this.wheel = wheel;
+		this.timeouts = new HashMap<>();
+		// nanoTime() can be negative, deadlines are relative to this origin
+		this.origin = System.nanoTime();
+		this.tick = 0;
+	}
+
+	boolean isEmpty() {
+		return timeouts.isEmpty();
+	}
+
+	boolean contains(@Nonnull final SelectionKey key) {
+		return timeouts.containsKey(key);
+	}
+
+	/**
+	 * @return how long the selector can wait before the next tick, in
+	 *         milliseconds, or zero if no key is suspended
+	 */
+	long getTimeout() {
+		if (timeouts.isEmpty()) {
+			return 0;
+		}
+		return TICK_MILLIS;
+	}
+
+	/**
+	 * If the key is already suspended, the later of both deadlines is kept.
+	 */
+	void schedule(@Nonnull final SelectionKey key, @Nonnegative final long delay) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+		if (delay < 0) {
+			throw new IllegalArgumentException("delay < 0");
+		}
+		final long deadline = System.nanoTime() - origin + delay;
+		Timeout timeout = timeouts.get(key);
+		if (timeout != null) {
+			// the timeout moves to its new slot once its current one expires
+			timeout.deadline = Math.max(timeout.deadline, deadline);
+			return;
+		}
+		timeout = new Timeout(key, deadline);
+		timeouts.put(key, timeout);
+		wheel[slot(deadline, tick)].add(timeout);
+	}
+
+	/**
+	 * Moves the wheel up to the current time, and collects the keys whose
+	 * deadline has passed.
+	 */
+	void expire(@Nonnull final Collection<SelectionKey> expired) {
+		final long now = System.nanoTime() - origin;
+		final long last = now / TICK_NANOS;
+		// after a long pause, a single turn is enough to visit all slots
+		final long end = Math.min(last, tick + WHEEL_SIZE);
+		for (long t = tick + 1; t <= end; t++) {
+			final int index = (int) (t & MASK);
+			final List<Timeout> slot = wheel[index];
+			for (int i = slot.size() - 1; i >= 0; i--) {
+				final Timeout timeout = slot.get(i);
+				if (timeout.deadline <= now) {
+					remove(slot, i);
+					timeouts.remove(timeout.key);
+					expired.add(timeout.key);
+					continue;
+				}
+				final int next = slot(timeout.deadline, t);
+				if (next != index) {
+					remove(slot, i);
+					wheel[next].add(timeout);
+				}
+			}
+		}
+		tick = last;
+	}
+
+	private static int slot(final long deadline, final long current) {
+		final long t = Math.max((deadline + TICK_NANOS - 1) / TICK_NANOS, current + 1);
+		return (int) (t & MASK);
+	}
+
+	/**
+	 * Order within a slot does not matter, so the last timeout takes the
+	 * place of the removed one.
+	 */
+	private static void remove(@Nonnull final List<Timeout> slot, final int i) {
+		final int last = slot.size() - 1;
+		if (i < last) {
+			slot.set(i, slot.get(last));
+		}
+		slot.remove(last);
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private static final class Timeout {
+
+		final SelectionKey key;
+		long deadline;
+
+		Timeout(@Nonnull final SelectionKey key, final long deadline) {
+			this.key = key;
+			this.deadline = deadline;
+		}
+	}
+}
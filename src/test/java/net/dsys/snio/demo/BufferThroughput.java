@@ -0,0 +1,141 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.demo;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.buffer.RingBufferProvider;
+
+/**
+ * Measures how many messages per second go from the channel output to the
+ * application input of a buffer provider, with the producer and the consumer
+ * running on different threads, like a reader thread and an application
+ * thread. Use <code>--type ring</code> or <code>--type queue</code> to
+ * compare the providers.
+ *
+ * @author Ricardo Padilha
+ */
+public final class BufferThroughput {
+
+	private BufferThroughput() {
+		return;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final String type = getArg("type", "ring", args);
+		final int capacity = Integer.parseInt(getArg("capacity", "256", args));
+		final int length = Integer.parseInt(getArg("length", "1024", args));
+		final long messages = Long.parseLong(getArg("messages", "10000000", args));
+		final int rounds = Integer.parseInt(getArg("rounds", "5", args));
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < rounds; i++) {
+				final MessageBufferProvider<ByteBuffer> provider = createProvider(type, capacity, length);
+				final long start = System.nanoTime();
+				final Future<?> consumer = executor.submit(createConsumer(provider.getAppInput(), messages));
+				final Future<?> producer = executor.submit(createProducer(provider.getChannelOutput(), messages));
+				producer.get();
+				consumer.get();
+				final long time = System.nanoTime() - start;
+				provider.close();
+				System.out.printf("%s: %,d msg/s%n", type, messages * TimeUnit.SECONDS.toNanos(1) / time);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static MessageBufferProvider<ByteBuffer> createProvider(final String type, final int capacity,
+			final int length) {
+		switch (type) {
+			case "ring": {
+				return RingBufferProvider.createProvider(capacity, new ByteBufferFactory(length));
+			}
+			case "queue": {
+				return BlockingQueueProvider.createProvider(capacity, new ByteBufferFactory(length));
+			}
+			default: {
+				throw new IllegalArgumentException("unknown type: " + type);
+			}
+		}
+	}
+
+	private static Runnable createProducer(final MessageBufferProducer<ByteBuffer> out, final long messages) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (long i = 0; i < messages; i++) {
+						final long seq = out.acquire();
+						final ByteBuffer msg = out.get(seq);
+						msg.clear();
+						msg.putLong(i);
+						msg.flip();
+						out.release(seq);
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	private static Runnable createConsumer(final MessageBufferConsumer<ByteBuffer> in, final long messages) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (long i = 0; i < messages; i++) {
+						final long seq = in.acquire();
+						final ByteBuffer msg = in.get(seq);
+						if (msg.getLong(0) != i) {
+							throw new AssertionError("expected " + i + ", got " + msg.getLong(0));
+						}
+						in.release(seq);
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	private static String getArg(final String name, final String defaultValue, final String[] args) {
+		if (args == null || name == null) {
+			return defaultValue;
+		}
+		final String key = "--" + name;
+		final int k = args.length - 1;
+		for (int i = 0; i < k; i++) {
+			if (key.equals(args[i])) {
+				return args[i + 1];
+			}
+		}
+		return defaultValue;
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import net.dsys.commons.api.lang.BinaryUnit;
+import net.dsys.snio.api.limit.RateLimiter;
+import net.dsys.snio.impl.limit.RateLimiters;
+
+/**
+ * Measures the cost of a rate limiter that never throttles, like a reader
+ * thread doing small reads well below the limit. One thread charges sends
+ * and another one charges receives, on the same limiter. Use
+ * <code>--type gcra</code> or <code>--type bucket</code> to compare the
+ * implementations.
+ *
+ * @author Ricardo Padilha
+ */
+public final class LimiterThroughput {
+
+	private LimiterThroughput() {
+		return;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final String type = getArg("type", "gcra", args);
+		final long rate = Long.parseLong(getArg("rate", "10", args));
+		final int length = Integer.parseInt(getArg("length", "64", args));
+		final long calls = Long.parseLong(getArg("calls", "10000000", args));
+		final int rounds = Integer.parseInt(getArg("rounds", "5", args));
+
+		for (int i = 0; i < rounds; i++) {
+			final RateLimiter limiter = createLimiter(type, rate);
+			final long[] throttled = new long[2];
+			final Thread sender = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (long j = 0; j < calls; j++) {
+						if (limiter.trySend(length) > 0) {
+							throttled[0]++;
+						}
+					}
+				}
+			});
+			final Thread receiver = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (long j = 0; j < calls; j++) {
+						if (limiter.tryReceive(length) > 0) {
+							throttled[1]++;
+						}
+					}
+				}
+			});
+			final long start = System.nanoTime();
+			sender.start();
+			receiver.start();
+			sender.join();
+			receiver.join();
+			final long time = System.nanoTime() - start;
+			System.out.printf("%s: %.1f ns/call, %,d calls/s, %d throttled%n", type,
+					(double) time / calls, calls * TimeUnit.SECONDS.toNanos(1) / time,
+					Long.valueOf(throttled[0] + throttled[1]));
+		}
+	}
+
+	private static RateLimiter createLimiter(final String type, final long gigabits) {
+		switch (type) {
+			case "gcra": {
+				return RateLimiters.limit(gigabits, BinaryUnit.GIGABITS);
+			}
+			case "bucket": {
+				return RateLimiters.tokenBucketLimit(gigabits, BinaryUnit.GIGABITS);
+			}
+			default: {
+				throw new IllegalArgumentException("unknown type: " + type);
+			}
+		}
+	}
+
+	private static String getArg(final String name, final String defaultValue, final String[] args) {
+		if (args == null || name == null) {
+			return defaultValue;
+		}
+		final String key = "--" + name;
+		final int k = args.length - 1;
+		for (int i = 0; i < k; i++) {
+			if (key.equals(args[i])) {
+				return args[i + 1];
+			}
+		}
+		return defaultValue;
+	}
+
+}
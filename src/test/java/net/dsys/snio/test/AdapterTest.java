@@ -0,0 +1,149 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.AbstractMessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class AdapterTest {
+
+	private static final int CAPACITY = 2;
+
+	private MessageBufferProvider<ByteBuffer> provider;
+	private MessageBufferProducer<ByteBuffer> out;
+	private MessageBufferConsumer<ByteBuffer> in;
+
+	public AdapterTest() {
+		super();
+	}
+
+	/**
+	 * Producer that only implements the methods of the original interface.
+	 */
+	private static final class LegacyProducer extends AbstractMessageBufferProducer<ByteBuffer> {
+
+		private final MessageBufferProducer<ByteBuffer> delegate;
+
+		LegacyProducer(final MessageBufferProducer<ByteBuffer> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public long acquire() throws InterruptedException {
+			return delegate.acquire();
+		}
+
+		@Override
+		public long acquire(final int n) throws InterruptedException {
+			return delegate.acquire(n);
+		}
+
+		@Override
+		public int remaining() {
+			return delegate.remaining();
+		}
+
+		@Override
+		public ByteBuffer get(final long sequence) {
+			return delegate.get(sequence);
+		}
+
+		@Override
+		public void attach(final long sequence, final Object attachment) {
+			delegate.attach(sequence, attachment);
+		}
+
+		@Override
+		public void release(final long sequence) throws InterruptedException {
+			delegate.release(sequence);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		final Factory<ByteBuffer> factory = new ByteBufferFactory(Integer.SIZE / Byte.SIZE);
+		provider = BlockingQueueProvider.createProviderFactory(CAPACITY, factory).newInstance();
+		out = new LegacyProducer(provider.getAppOutput(null));
+		in = provider.getChannelInput();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		provider.close();
+	}
+
+	@Test
+	public void testTryAcquire() throws InterruptedException {
+		for (int i = 0; i < CAPACITY; i++) {
+			final long seq = out.tryAcquire();
+			assertTrue(seq != MessageBufferProducer.NO_SEQUENCE);
+			out.release(seq);
+		}
+		assertEquals(MessageBufferProducer.NO_SEQUENCE, out.tryAcquire());
+		assertEquals(MessageBufferProducer.NO_SEQUENCE, out.acquire(1, TimeUnit.MILLISECONDS));
+		in.release(in.acquire());
+		assertTrue(out.acquire(1, TimeUnit.MILLISECONDS) != MessageBufferProducer.NO_SEQUENCE);
+	}
+
+	@Test
+	public void testDefaults() throws InterruptedException {
+		assertEquals(MessageBufferProducer.NO_HANDLE, out.intern("peer"));
+		final long seq = out.acquire();
+		assertSame(out.get(seq), out.get(seq, 1));
+		out.get(seq).putInt(0, 42);
+		out.attach(seq, null);
+		out.release(seq, seq);
+		final long read = in.acquire();
+		assertEquals(42, in.get(read).getInt(0));
+		assertNull(in.attachment(read));
+		in.release(read);
+	}
+
+	@Test
+	public void testAttachHandle() throws InterruptedException {
+		final long seq = out.acquire();
+		try {
+			out.attachHandle(seq, 0);
+		} catch (final IllegalArgumentException e) {
+			out.release(seq);
+			return;
+		}
+		fail("should have got an IllegalArgumentException");
+	}
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.commons.impl.lang.ByteBufferCopier;
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.buffer.SkippedPosition;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.group.GroupMessageBufferProducer;
+import net.dsys.snio.impl.group.MergingMessageBufferConsumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class GroupTest {
+
+	private static final int MEMBERS = 3;
+	private static final int CAPACITY = 4;
+
+	private Factory<ByteBuffer> factory;
+	private List<MessageBufferProvider<ByteBuffer>> providers;
+
+	public GroupTest() {
+		super();
+	}
+
+	private Factory<MessageBufferConsumer<ByteBuffer>> consumers() {
+		return new Factory<MessageBufferConsumer<ByteBuffer>>() {
+			@Override
+			public MessageBufferConsumer<ByteBuffer> newInstance() {
+				return BlockingQueueProvider.createConsumer(CAPACITY, factory);
+			}
+		};
+	}
+
+	private static void send(final MessageBufferProducer<ByteBuffer> out, final int value)
+			throws InterruptedException {
+		final long seq = out.acquire();
+		write(out, seq, value);
+		out.release(seq);
+	}
+
+	private static int take(final MessageBufferConsumer<ByteBuffer> in) throws InterruptedException {
+		final long seq = in.acquire();
+		final int value = in.get(seq).getInt(0);
+		in.release(seq);
+		return value;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		factory = new ByteBufferFactory(Integer.SIZE / Byte.SIZE);
+		providers = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++) {
+			providers.add(BlockingQueueProvider.createProviderFactory(CAPACITY, factory).newInstance());
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			provider.close();
+		}
+		providers = null;
+		factory = null;
+	}
+
+	private GroupMessageBufferProducer<ByteBuffer> openGroup() {
+		final GroupMessageBufferProducer.Builder<ByteBuffer> builder = GroupMessageBufferProducer.build();
+		builder.setCopier(new ByteBufferCopier());
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			builder.add(provider.getAppOutput(null));
+		}
+		return builder.build();
+	}
+
+	private static void write(final MessageBufferProducer<ByteBuffer> out, final long seq, final int value) {
+		final ByteBuffer bb = out.get(seq);
+		bb.clear();
+		bb.putInt(value);
+		bb.flip();
+	}
+
+	private void receive(final int member, final int value) throws InterruptedException {
+		final MessageBufferConsumer<ByteBuffer> in = providers.get(member).getChannelInput();
+		final long seq = in.acquire();
+		assertEquals(value, in.get(seq).getInt(0));
+		in.release(seq);
+	}
+
+	@Test
+	public void testBatch() throws InterruptedException {
+		final GroupMessageBufferProducer<ByteBuffer> out = openGroup();
+		final long last = out.acquire(CAPACITY);
+		final long first = last - CAPACITY + 1;
+		for (long s = first; s <= last; s++) {
+			write(out, s, (int) s);
+		}
+		out.release(first, last);
+		for (int i = 0; i < MEMBERS; i++) {
+			for (int j = 0; j < CAPACITY; j++) {
+				receive(i, j);
+			}
+		}
+	}
+
+	@Test
+	public void testMismatchedMember() throws InterruptedException {
+		final GroupMessageBufferProducer<ByteBuffer> out = openGroup();
+		// another producer writes to the last member behind the group's back
+		final MessageBufferProducer<ByteBuffer> other = providers.get(MEMBERS - 1).getAppOutput(null);
+		final long seq = other.acquire();
+		write(other, seq, -1);
+		other.release(seq);
+		try {
+			out.acquire();
+			assertTrue("mismatch not detected", false);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+		// the claimed positions were published empty, so no member is left waiting
+		for (int i = 0; i < MEMBERS; i++) {
+			final MessageBufferConsumer<ByteBuffer> in = providers.get(i).getChannelInput();
+			assertEquals(i == MEMBERS - 1 ? 2 : 1, in.remaining());
+			if (i == MEMBERS - 1) {
+				in.release(in.acquire());
+			}
+			final long skipped = in.acquire();
+			assertTrue(SkippedPosition.isSkipped(in, skipped));
+			in.release(skipped);
+		}
+	}
+
+	@Test
+	public void testTryAcquireFullMember() throws InterruptedException {
+		final GroupMessageBufferProducer<ByteBuffer> out = openGroup();
+		for (int i = 0; i < CAPACITY; i++) {
+			final long seq = out.tryAcquire();
+			assertEquals(i, seq);
+			write(out, seq, i);
+			out.release(seq);
+		}
+		// all members but the last one drain their buffers
+		for (int i = 0; i < MEMBERS - 1; i++) {
+			for (int j = 0; j < CAPACITY; j++) {
+				receive(i, j);
+			}
+		}
+		assertEquals(MessageBufferProducer.NO_SEQUENCE, out.tryAcquire());
+		// the partial claim is published empty on the members that accepted it
+		for (int i = 0; i < MEMBERS - 1; i++) {
+			final MessageBufferConsumer<ByteBuffer> in = providers.get(i).getChannelInput();
+			assertEquals(1, in.remaining());
+			final long seq = in.acquire();
+			assertTrue(SkippedPosition.isSkipped(in, seq));
+			in.release(seq);
+		}
+		for (int j = 0; j < CAPACITY; j++) {
+			receive(MEMBERS - 1, j);
+		}
+		// the last member skips that position as well, keeping sequences aligned
+		final long seq = out.tryAcquire();
+		assertEquals(CAPACITY + 1, seq);
+		write(out, seq, CAPACITY + 1);
+		out.release(seq);
+		final MessageBufferConsumer<ByteBuffer> last = providers.get(MEMBERS - 1).getChannelInput();
+		final long skipped = last.acquire();
+		assertTrue(SkippedPosition.isSkipped(last, skipped));
+		last.release(skipped);
+		for (int i = 0; i < MEMBERS; i++) {
+			receive(i, CAPACITY + 1);
+		}
+	}
+
+	@Test
+	public void testSkippedBeforeRelease() throws InterruptedException {
+		final GroupMessageBufferProducer<ByteBuffer> out = openGroup();
+		for (int i = 0; i < CAPACITY - 1; i++) {
+			send(out, i);
+		}
+		final long seq = out.tryAcquire();
+		write(out, seq, CAPACITY - 1);
+		// all members but the last one drain their buffers
+		for (int i = 0; i < MEMBERS - 1; i++) {
+			for (int j = 0; j < CAPACITY - 1; j++) {
+				receive(i, j);
+			}
+		}
+		assertEquals(MessageBufferProducer.NO_SEQUENCE, out.tryAcquire());
+		// nothing is published before the message still being written
+		for (int i = 0; i < MEMBERS - 1; i++) {
+			assertEquals(0, providers.get(i).getChannelInput().remaining());
+		}
+		out.release(seq);
+		for (int i = 0; i < MEMBERS - 1; i++) {
+			receive(i, CAPACITY - 1);
+			final MessageBufferConsumer<ByteBuffer> in = providers.get(i).getChannelInput();
+			final long skipped = in.acquire();
+			assertTrue(SkippedPosition.isSkipped(in, skipped));
+			in.release(skipped);
+		}
+		for (int j = 0; j < CAPACITY; j++) {
+			receive(MEMBERS - 1, j);
+		}
+		send(out, CAPACITY + 1);
+		final MessageBufferConsumer<ByteBuffer> last = providers.get(MEMBERS - 1).getChannelInput();
+		final long skipped = last.acquire();
+		assertTrue(SkippedPosition.isSkipped(last, skipped));
+		last.release(skipped);
+		for (int i = 0; i < MEMBERS; i++) {
+			receive(i, CAPACITY + 1);
+		}
+	}
+
+	@Test
+	public void testMergedWeights() throws InterruptedException {
+		final MergingMessageBufferConsumer<ByteBuffer> in =
+				new MergingMessageBufferConsumer<>(new int[] { 2, 1 }, consumers());
+		final Factory<MessageBufferConsumer<ByteBuffer>> members = consumers();
+		final MessageBufferConsumer<ByteBuffer> m0 = members.newInstance();
+		final MessageBufferConsumer<ByteBuffer> m1 = members.newInstance();
+		in.add(m0);
+		in.add(m1);
+		final MessageBufferProducer<ByteBuffer> p0 = m0.createProducer();
+		final MessageBufferProducer<ByteBuffer> p1 = m1.createProducer();
+		for (int i = 0; i < CAPACITY; i++) {
+			send(p0, i);
+			send(p1, 100 + i);
+		}
+		// two messages from the first member for each one of the second
+		final int[] expected = { 0, 1, 100, 2, 3, 101, 102, 103 };
+		for (final int value : expected) {
+			assertEquals(value, take(in));
+		}
+		in.close();
+	}
+
+	@Test
+	public void testMergedProducer() throws InterruptedException {
+		final MergingMessageBufferConsumer<ByteBuffer> in =
+				new MergingMessageBufferConsumer<>(new int[] { 1 }, consumers());
+		final MessageBufferConsumer<ByteBuffer> member = consumers().newInstance();
+		in.add(member);
+		final MessageBufferProducer<ByteBuffer> outsider = in.createProducer();
+		send(member.createProducer(), 1);
+		send(outsider, 2);
+		send(outsider, 3);
+		assertEquals(1, take(in));
+		assertEquals(2, take(in));
+		assertEquals(3, take(in));
+		assertEquals(0, in.remaining());
+		in.close();
+	}
+
+}
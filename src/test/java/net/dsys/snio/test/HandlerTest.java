@@ -0,0 +1,449 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.commons.api.lang.Interruptible;
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.channel.MessageChannel;
+import net.dsys.snio.api.handler.MessageBatchConsumer;
+import net.dsys.snio.api.handler.MessageBatchProducer;
+import net.dsys.snio.api.handler.MessageConsumer;
+import net.dsys.snio.api.handler.MessageConsumerFactory;
+import net.dsys.snio.api.handler.MessageHandler;
+import net.dsys.snio.api.handler.MessageLoan;
+import net.dsys.snio.api.handler.MessageLoanConsumer;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.handler.MessageHandlers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class HandlerTest {
+
+	private static final int CHANNELS = 8;
+	private static final int WORKERS = 2;
+	private static final int CAPACITY = 16;
+	private static final int MESSAGES = 1000;
+	private static final long TIMEOUT = 5_000_000_000L;
+
+	private Factory<ByteBuffer> factory;
+	private List<MessageBufferProvider<ByteBuffer>> providers;
+	private ExecutorService executor;
+
+	public HandlerTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		factory = new ByteBufferFactory(Integer.SIZE / Byte.SIZE);
+		providers = new ArrayList<>();
+		for (int i = 0; i < CHANNELS; i++) {
+			providers.add(BlockingQueueProvider.createProviderFactory(CAPACITY, factory).newInstance());
+		}
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			provider.close();
+		}
+		providers = null;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		executor = null;
+		factory = null;
+	}
+
+	/**
+	 * @return a channel that only has an input buffer, which is all that
+	 *         handlers need
+	 */
+	@SuppressWarnings("unchecked")
+	private static MessageChannel<ByteBuffer> channel(final MessageBufferProvider<ByteBuffer> provider) {
+		return (MessageChannel<ByteBuffer>) Proxy.newProxyInstance(HandlerTest.class.getClassLoader(),
+				new Class<?>[] { MessageChannel.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						switch (method.getName()) {
+							case "getInputBuffer":
+								return provider.getAppInput();
+							case "isOpen":
+								return Boolean.TRUE;
+							default:
+								throw new UnsupportedOperationException(method.getName());
+						}
+					}
+				});
+	}
+
+	private static void send(final MessageBufferProducer<ByteBuffer> out, final int value)
+			throws InterruptedException {
+		final long seq = out.acquire();
+		final ByteBuffer bb = out.get(seq);
+		bb.clear();
+		bb.putInt(value);
+		bb.flip();
+		out.release(seq);
+	}
+
+	/**
+	 * Checks that each channel gets its messages in order.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class OrderedConsumer implements MessageConsumer<ByteBuffer> {
+
+		private final AtomicInteger total;
+		private int expected;
+
+		OrderedConsumer(final AtomicInteger total) {
+			this.total = total;
+		}
+
+		@Override
+		public void consume(final ByteBuffer message, final Object attachment) {
+			assertEquals(expected++, message.getInt(0));
+			total.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Also counts the batches it was notified of.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class OrderedBatchConsumer implements MessageBatchConsumer<ByteBuffer> {
+
+		private final OrderedConsumer consumer;
+		private final AtomicInteger batches;
+
+		OrderedBatchConsumer(final AtomicInteger total, final AtomicInteger batches) {
+			this.consumer = new OrderedConsumer(total);
+			this.batches = batches;
+		}
+
+		@Override
+		public void consume(final ByteBuffer message, final Object attachment) {
+			consumer.consume(message, attachment);
+		}
+
+		@Override
+		public void endOfBatch() {
+			batches.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Keeps every loan until another thread returns it.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class OrderedLoanConsumer implements MessageLoanConsumer<ByteBuffer> {
+
+		private final OrderedConsumer consumer;
+		private final BlockingQueue<MessageLoan> loans;
+
+		OrderedLoanConsumer(final AtomicInteger total, final BlockingQueue<MessageLoan> loans) {
+			this.consumer = new OrderedConsumer(total);
+			this.loans = loans;
+		}
+
+		@Override
+		public void consume(final ByteBuffer message, final Object attachment) {
+			throw new UnsupportedOperationException("consume");
+		}
+
+		@Override
+		public void consume(final ByteBuffer message, final Object attachment, final MessageLoan loan) {
+			consumer.consume(message, attachment);
+			loans.add(loan);
+		}
+	}
+
+	private void testPool(final MessageHandler<ByteBuffer> handler, final AtomicInteger total)
+			throws Exception {
+		final SocketAddress remote = new InetSocketAddress(0);
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			handler.getAcceptListener().connectionAccepted(remote, channel(provider));
+		}
+		for (int i = 0; i < MESSAGES; i++) {
+			for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+				send(provider.getChannelOutput(), i);
+			}
+		}
+		final long deadline = System.nanoTime() + TIMEOUT;
+		while (total.get() < CHANNELS * MESSAGES) {
+			assertTrue("consumed " + total.get(), System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+		assertEquals(CHANNELS * MESSAGES, total.get());
+		handler.close();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testWorkStealing() throws Exception {
+		final AtomicInteger total = new AtomicInteger();
+		final MessageHandler<ByteBuffer> handler = MessageHandlers.buildHandler()
+				.setExecutor(executor)
+				.useManyConsumers(new MessageConsumerFactory<ByteBuffer>() {
+					@Override
+					public MessageConsumer<ByteBuffer> newInstance(final SocketAddress remote,
+							final MessageChannel<ByteBuffer> channel) {
+						return new OrderedConsumer(total);
+					}
+				}, WORKERS)
+				.build();
+		testPool(handler, total);
+	}
+
+	@Test
+	public void testWorkStealingBatches() throws Exception {
+		final AtomicInteger total = new AtomicInteger();
+		final AtomicInteger batches = new AtomicInteger();
+		final MessageHandler<ByteBuffer> handler = MessageHandlers.buildHandler()
+				.setExecutor(executor)
+				.useManyConsumers(new MessageConsumerFactory<ByteBuffer>() {
+					@Override
+					public MessageConsumer<ByteBuffer> newInstance(final SocketAddress remote,
+							final MessageChannel<ByteBuffer> channel) {
+						return new OrderedBatchConsumer(total, batches);
+					}
+				}, WORKERS)
+				.useBatchProcessing()
+				.build();
+		testPool(handler, total);
+		assertTrue("batches " + batches.get(), batches.get() > 0 && batches.get() <= CHANNELS * MESSAGES);
+	}
+
+	/**
+	 * Idle workers sleep until a buffer publishes, so every message must
+	 * wake one of them up.
+	 */
+	@Test
+	public void testWorkStealingWakeup() throws Exception {
+		final int rounds = 3;
+		final AtomicInteger total = new AtomicInteger();
+		final MessageHandler<ByteBuffer> handler = MessageHandlers.buildHandler()
+				.setExecutor(executor)
+				.useManyConsumers(new MessageConsumerFactory<ByteBuffer>() {
+					@Override
+					public MessageConsumer<ByteBuffer> newInstance(final SocketAddress remote,
+							final MessageChannel<ByteBuffer> channel) {
+						return new OrderedConsumer(total);
+					}
+				}, WORKERS)
+				.build();
+		final SocketAddress remote = new InetSocketAddress(0);
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			handler.getAcceptListener().connectionAccepted(remote, channel(provider));
+		}
+		final MessageBufferProducer<ByteBuffer> out = providers.get(0).getChannelOutput();
+		for (int i = 0; i < rounds; i++) {
+			// long enough for all workers to go to sleep
+			Thread.sleep(500);
+			send(out, i);
+			final long deadline = System.nanoTime() + TIMEOUT;
+			while (total.get() <= i) {
+				assertTrue("consumed " + total.get(), System.nanoTime() < deadline);
+				Thread.sleep(1);
+			}
+		}
+		assertEquals(rounds, total.get());
+		handler.close();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testLendingIdle() throws Exception {
+		final int maxLoans = 4;
+		final AtomicInteger total = new AtomicInteger();
+		final BlockingQueue<MessageLoan> loans = new LinkedBlockingQueue<>();
+		final MessageBufferProvider<ByteBuffer> provider = providers.get(0);
+		final Interruptible thread = MessageHandlers.lendingConsumer(provider.getAppInput(),
+				new OrderedLoanConsumer(total, loans), maxLoans);
+		executor.execute(thread);
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		for (int i = 0; i < MESSAGES; i++) {
+			send(out, i);
+			// return loans late, after the consumer ran out of them or went idle
+			if (i % maxLoans == maxLoans - 1) {
+				Thread.sleep(1);
+				final List<MessageLoan> returned = new ArrayList<>();
+				while (returned.size() < maxLoans) {
+					final MessageLoan loan = loans.poll(TIMEOUT, TimeUnit.NANOSECONDS);
+					assertTrue("consumed " + total.get(), loan != null);
+					returned.add(loan);
+				}
+				for (final MessageLoan loan : returned) {
+					loan.release();
+				}
+			}
+		}
+		assertEquals(MESSAGES, total.get());
+		thread.interrupt();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testLoanReleasedTwice() throws Exception {
+		final int maxLoans = 2;
+		final AtomicInteger total = new AtomicInteger();
+		final BlockingQueue<MessageLoan> loans = new LinkedBlockingQueue<>();
+		final MessageBufferProvider<ByteBuffer> provider = providers.get(0);
+		final Interruptible thread = MessageHandlers.lendingConsumer(provider.getAppInput(),
+				new OrderedLoanConsumer(total, loans), maxLoans);
+		executor.execute(thread);
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		send(out, 0);
+		final MessageLoan first = loans.poll(TIMEOUT, TimeUnit.NANOSECONDS);
+		assertTrue(first != null);
+		first.release();
+		try {
+			first.release();
+			fail("released twice");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+		// the loan is lent again for a later position, and still works
+		for (int i = 1; i < MESSAGES; i++) {
+			send(out, i);
+			final MessageLoan loan = loans.poll(TIMEOUT, TimeUnit.NANOSECONDS);
+			assertTrue("consumed " + total.get(), loan != null);
+			loan.release();
+		}
+		assertEquals(MESSAGES, total.get());
+		thread.interrupt();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testBatchProducerFailure() throws Exception {
+		final int batchSize = 4;
+		final AtomicInteger calls = new AtomicInteger();
+		final MessageBufferProvider<ByteBuffer> provider = providers.get(0);
+		final Interruptible thread = MessageHandlers.batchProducer(provider.getChannelOutput(),
+				new MessageBatchProducer<ByteBuffer>() {
+					private int next;
+
+					@Override
+					public int produce(final List<ByteBuffer> messages, final Object[] attachments) {
+						if (next == MESSAGES) {
+							return 0;
+						}
+						final int k = Math.min(messages.size(), MESSAGES - next);
+						for (int i = 0; i < k; i++) {
+							final ByteBuffer bb = messages.get(i);
+							bb.clear();
+							bb.putInt(next + i);
+							bb.flip();
+						}
+						if (calls.incrementAndGet() == 2) {
+							// filled, but the positions must not be published
+							throw new IllegalStateException("produce");
+						}
+						next += k;
+						return k;
+					}
+				}, batchSize);
+		executor.execute(thread);
+		final MessageBufferConsumer<ByteBuffer> in = provider.getAppInput();
+		for (int i = 0; i < MESSAGES; i++) {
+			final long seq = in.acquire();
+			assertEquals(i, in.get(seq).getInt(0));
+			in.release(seq);
+		}
+		// nothing more to produce: the producer backs off instead of spinning
+		final int idle = calls.get();
+		Thread.sleep(50);
+		assertEquals(0, in.remaining());
+		assertTrue(calls.get() - idle < 1000);
+		thread.interrupt();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testBatchConsumerFailure() throws Exception {
+		final AtomicInteger total = new AtomicInteger();
+		final AtomicInteger batches = new AtomicInteger();
+		final MessageBufferProvider<ByteBuffer> provider = providers.get(0);
+		// a single batch, with one failing message in the middle
+		for (int i = 0; i < CAPACITY; i++) {
+			send(provider.getChannelOutput(), i);
+		}
+		final Interruptible thread = MessageHandlers.batchConsumer(provider.getAppInput(),
+				new MessageBatchConsumer<ByteBuffer>() {
+					@Override
+					public void consume(final ByteBuffer message, final Object attachment) {
+						if (message.getInt(0) == 3) {
+							throw new IllegalStateException("consume");
+						}
+						total.incrementAndGet();
+					}
+
+					@Override
+					public void endOfBatch() {
+						batches.incrementAndGet();
+					}
+				}, CAPACITY);
+		executor.execute(thread);
+		final long deadline = System.nanoTime() + TIMEOUT;
+		while (batches.get() < 1) {
+			assertTrue("consumed " + total.get(), System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+		assertEquals(CAPACITY - 1, total.get());
+		assertEquals(1, batches.get());
+		thread.interrupt();
+		executor.shutdownNow();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+}
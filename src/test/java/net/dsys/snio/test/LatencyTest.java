@@ -0,0 +1,96 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.buffer.LatencyProvider;
+import net.dsys.snio.impl.buffer.LatencyRecorder;
+
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class LatencyTest {
+
+	private static final int CAPACITY = 4;
+
+	public LatencyTest() {
+		super();
+	}
+
+	private static MessageBufferProvider<ByteBuffer> open(final LatencyRecorder send) {
+		final MessageBufferProvider<ByteBuffer> provider = BlockingQueueProvider
+				.createProviderFactory(CAPACITY, new ByteBufferFactory(Integer.SIZE / Byte.SIZE)).newInstance();
+		return LatencyProvider.createProvider(provider, CAPACITY, false, send, null);
+	}
+
+	private static LatencyRecorder getSendLatency(final MessageBufferProvider<ByteBuffer> provider) {
+		return (LatencyRecorder) ((LatencyProvider<?>) provider).getSendLatency();
+	}
+
+	@Test
+	public void testParentAddsChildren() {
+		final LatencyRecorder parent = new LatencyRecorder();
+		final LatencyRecorder child1 = new LatencyRecorder(parent);
+		final LatencyRecorder child2 = new LatencyRecorder(parent);
+		child1.record(10);
+		child2.record(10);
+		child2.record(1000);
+		assertEquals(1, child1.getCount());
+		assertEquals(2, child2.getCount());
+		assertEquals(3, parent.getCount());
+		assertEquals(child2.getMax(), parent.getMax());
+		parent.reset();
+		assertEquals(0, parent.getCount());
+		assertEquals(0, child2.getCount());
+	}
+
+	@Test
+	public void testClosedChannelsStayCounted() {
+		final LatencyRecorder parent = new LatencyRecorder();
+		final MessageBufferProvider<ByteBuffer> provider = open(parent);
+		final LatencyRecorder send = getSendLatency(provider);
+		send.record(10);
+		send.record(20);
+		assertEquals(2, parent.getCount());
+		provider.close();
+		// the values moved into the parent, which no longer reads the channel
+		assertEquals(2, parent.getCount());
+		send.record(30);
+		assertEquals(2, parent.getCount());
+	}
+
+	@Test
+	public void testClosedParentHandsOverChildren() {
+		final LatencyRecorder root = new LatencyRecorder();
+		final MessageBufferProvider<ByteBuffer> middle = open(root);
+		final LatencyRecorder leaf = new LatencyRecorder(getSendLatency(middle));
+		leaf.record(10);
+		middle.close();
+		assertEquals(1, root.getCount());
+		leaf.record(10);
+		assertEquals(2, root.getCount());
+	}
+
+}
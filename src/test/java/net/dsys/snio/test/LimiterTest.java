@@ -0,0 +1,89 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import net.dsys.commons.api.lang.BinaryUnit;
+import net.dsys.snio.api.limit.RateLimiter;
+import net.dsys.snio.impl.limit.RateLimiters;
+
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class LimiterTest {
+
+	private static final long RATE = 1 << 20; // bytes per second
+	private static final long CHUNK = 64;
+	// 5/3 ns per message, truncating the cost would charge 1 ns each
+	private static final long MESSAGE_RATE = 600_000_000;
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	// slack for the time spent in the test itself
+	private static final long SLACK = TimeUnit.MILLISECONDS.toNanos(100);
+
+	public LimiterTest() {
+		super();
+	}
+
+	private static RateLimiter shared() {
+		return RateLimiters.sharedLimit(RATE * Byte.SIZE, BinaryUnit.BITS);
+	}
+
+	@Test
+	public void testSharedDebt() {
+		final RateLimiter limiter = shared();
+		// a full bucket lets one second worth of bytes through
+		assertEquals(0, limiter.trySend(RATE));
+		final long delay = limiter.trySend(RATE);
+		assertTrue("delay: " + delay, delay > SECOND - SLACK && delay <= SECOND);
+		// the receiving side has a bucket of its own
+		assertEquals(0, limiter.tryReceive(RATE));
+	}
+
+	@Test
+	public void testSharedSmallWrites() {
+		final RateLimiter limiter = shared();
+		// writes too small to reach the shared total still count for their own thread
+		long delay = 0;
+		for (long sent = 0; sent < 2 * RATE; sent += CHUNK) {
+			delay = limiter.trySend(CHUNK);
+		}
+		assertTrue("delay: " + delay, delay > SECOND - SLACK && delay <= SECOND);
+	}
+
+	@Test
+	public void testGcraDebt() {
+		final RateLimiter limiter = RateLimiters.limit(RATE * Byte.SIZE, BinaryUnit.BITS);
+		assertEquals(0, limiter.trySend(RATE));
+		final long delay = limiter.trySend(RATE);
+		assertTrue("delay: " + delay, delay > SECOND - SLACK && delay <= SECOND);
+		assertEquals(0, limiter.tryReceive(RATE));
+	}
+
+	@Test
+	public void testGcraFractionalCost() {
+		final RateLimiter limiter = RateLimiters.limit(RATE * Byte.SIZE, BinaryUnit.BITS, MESSAGE_RATE, 1);
+		final long delay = limiter.trySendMessages(MESSAGE_RATE);
+		assertTrue("delay: " + delay, delay > SECOND - SLACK && delay <= SECOND);
+	}
+
+}
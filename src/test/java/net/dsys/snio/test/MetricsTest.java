@@ -0,0 +1,263 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.dsys.commons.impl.future.SettableFuture;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.channel.AcceptListener;
+import net.dsys.snio.api.channel.ChannelMetrics;
+import net.dsys.snio.api.channel.MessageChannel;
+import net.dsys.snio.api.channel.MessageServerChannel;
+import net.dsys.snio.api.pool.SelectionType;
+import net.dsys.snio.api.pool.SelectorMetrics;
+import net.dsys.snio.api.pool.SelectorPool;
+import net.dsys.snio.impl.channel.MessageChannels;
+import net.dsys.snio.impl.channel.MessageServerChannels;
+import net.dsys.snio.impl.channel.builder.ChannelConfig;
+import net.dsys.snio.impl.channel.builder.ClientConfig;
+import net.dsys.snio.impl.channel.builder.ServerConfig;
+import net.dsys.snio.impl.pool.SelectorPools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class MetricsTest {
+
+	private static final String NAME = "metrics";
+	private static final SelectionType[] TYPES = {
+		SelectionType.OP_ACCEPT, SelectionType.OP_READ, SelectionType.OP_WRITE,
+	};
+	private static final int LENGTH = 8;
+	private static final int MESSAGES = 1000;
+	private static final long TIMEOUT = 5_000_000_000L;
+
+	private SelectorPool pool;
+	private MBeanServer server;
+
+	public MetricsTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		pool = SelectorPools.open(NAME, 1);
+		server = ManagementFactory.getPlatformMBeanServer();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (pool != null) {
+			SelectorPools.unregisterMetrics(pool, NAME);
+			pool.close();
+			pool.getCloseFuture().get();
+		}
+		pool = null;
+		server = null;
+	}
+
+	/**
+	 * Counters are published lazily by the selector threads.
+	 */
+	private static void await(final String counter, final long expected, final Counter actual)
+			throws InterruptedException {
+		final long deadline = System.nanoTime() + TIMEOUT;
+		while (actual.get() != expected && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(counter, expected, actual.get());
+	}
+
+	/**
+	 * @author Ricardo Padilha
+	 */
+	private interface Counter {
+		long get();
+	}
+
+	private Set<ObjectName> queryNames() throws Exception {
+		return server.queryNames(new ObjectName("net.dsys.snio:type=Selector,pool="
+				+ ObjectName.quote(NAME) + ",*"), null);
+	}
+
+	@Test
+	public void testCounters() throws Exception {
+		final ChannelConfig<ByteBuffer> common = new ChannelConfig<ByteBuffer>().setPool(pool);
+		final MessageServerChannel<ByteBuffer> serverChannel = MessageServerChannels.openTCPServerChannel(common,
+				new ServerConfig().setMessageLength(LENGTH));
+		final SettableFuture<MessageChannel<ByteBuffer>> accepted = new SettableFuture<>();
+		serverChannel.onAccept(new AcceptListener<ByteBuffer>() {
+			@Override
+			public void connectionAccepted(final SocketAddress remote, final MessageChannel<ByteBuffer> channel) {
+				accepted.success(channel);
+			}
+		});
+		serverChannel.bind(new InetSocketAddress(0));
+		serverChannel.getBindFuture().get();
+		final int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+
+		final MessageChannel<ByteBuffer> client = MessageChannels.openTCPChannel(common,
+				new ClientConfig().setMessageLength(LENGTH));
+		client.connect(new InetSocketAddress(InetAddress.getLocalHost(), port));
+		client.getConnectFuture().get();
+		final MessageChannel<ByteBuffer> channel = accepted.get();
+		try {
+			final MessageBufferProducer<ByteBuffer> out = client.getOutputBuffer();
+			final MessageBufferConsumer<ByteBuffer> in = channel.getInputBuffer();
+			for (int i = 0; i < MESSAGES; i++) {
+				final long seq = out.acquire();
+				final ByteBuffer msg = out.get(seq);
+				msg.clear();
+				msg.putInt(i);
+				msg.flip();
+				out.release(seq);
+				final long rseq = in.acquire();
+				assertEquals(i, in.get(rseq).getInt());
+				in.release(rseq);
+			}
+
+			final ChannelMetrics sent = MessageChannels.getMetrics(client);
+			final ChannelMetrics received = MessageChannels.getMetrics(channel);
+			await("encoded", MESSAGES, new Counter() {
+				@Override
+				public long get() {
+					return sent.getMessagesEncoded();
+				}
+			});
+			await("decoded", MESSAGES, new Counter() {
+				@Override
+				public long get() {
+					return received.getMessagesDecoded();
+				}
+			});
+			final long bytes = sent.getBytesWritten();
+			assertTrue(bytes >= MESSAGES * (Integer.SIZE / Byte.SIZE));
+			assertEquals(bytes, received.getBytesRead());
+			// nothing went the other way
+			assertEquals(0, sent.getBytesRead());
+			assertEquals(0, sent.getMessagesDecoded());
+			assertEquals(0, received.getBytesWritten());
+			assertEquals(0, received.getMessagesEncoded());
+			// latency is not tracked by default
+			assertNull(sent.getSendLatency());
+			assertNull(received.getReceiveLatency());
+
+			// both channels share the only reader and writer of the pool
+			final SelectorMetrics reader = pool.get(0).getMetrics(SelectionType.OP_READ);
+			final SelectorMetrics writer = pool.get(0).getMetrics(SelectionType.OP_WRITE);
+			await("read", bytes, new Counter() {
+				@Override
+				public long get() {
+					return reader.getBytes();
+				}
+			});
+			await("written", bytes, new Counter() {
+				@Override
+				public long get() {
+					return writer.getBytes();
+				}
+			});
+			for (final SelectionType type : TYPES) {
+				final SelectorMetrics metrics = pool.get(0).getMetrics(type);
+				assertTrue(type.toString(), metrics.getIterations() > 0);
+				assertEquals(type.toString(), 0, metrics.getErrors());
+			}
+			assertTrue(reader.getSelectedKeys() > 0);
+			assertTrue(reader.getSelectTime() > 0);
+			assertTrue(reader.getProcessTime() > 0);
+			// registering the channels queued operations for the reader
+			assertTrue(reader.getWakeups() > 0);
+			assertTrue(reader.getQueuedOperations() >= 0);
+		} finally {
+			channel.close();
+			channel.getCloseFuture().get();
+			client.close();
+			client.getCloseFuture().get();
+			serverChannel.close();
+			serverChannel.getCloseFuture().get();
+		}
+	}
+
+	@Test
+	public void testRegisterMetrics() throws Exception {
+		assertTrue(queryNames().isEmpty());
+		SelectorPools.registerMetrics(pool, NAME);
+		final Set<ObjectName> names = queryNames();
+		// one bean per thread: acceptor, reader and writer
+		assertEquals(TYPES.length * pool.size(), names.size());
+		final ObjectName reader = new ObjectName("net.dsys.snio:type=Selector,pool="
+				+ ObjectName.quote(NAME) + ",index=0,thread=read");
+		assertTrue(names.contains(reader));
+		assertEquals(Long.valueOf(0), server.getAttribute(reader, "Errors"));
+		assertTrue(((Long) server.getAttribute(reader, "Iterations")).longValue() >= 0);
+		try {
+			SelectorPools.registerMetrics(pool, NAME);
+			fail("registered the same pool twice");
+		} catch (final InstanceAlreadyExistsException e) {
+			// expected
+		}
+		SelectorPools.unregisterMetrics(pool, NAME);
+		assertTrue(queryNames().isEmpty());
+		// nothing left to unregister
+		SelectorPools.unregisterMetrics(pool, NAME);
+		assertTrue(queryNames().isEmpty());
+	}
+
+	@Test
+	public void testRegisterNull() throws Exception {
+		try {
+			SelectorPools.registerMetrics(null, NAME);
+			fail("accepted a null pool");
+		} catch (final NullPointerException e) {
+			// expected
+		}
+		try {
+			SelectorPools.registerMetrics(pool, null);
+			fail("accepted a null name");
+		} catch (final NullPointerException e) {
+			// expected
+		}
+		try {
+			SelectorPools.unregisterMetrics(null, NAME);
+			fail("accepted a null pool");
+		} catch (final NullPointerException e) {
+			// expected
+		}
+		assertTrue(queryNames().isEmpty());
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import net.dsys.commons.impl.future.SettableFuture;
+import net.dsys.snio.api.channel.AcceptListener;
+import net.dsys.snio.api.channel.MessageChannel;
+import net.dsys.snio.api.channel.MessageServerChannel;
+import net.dsys.snio.api.pool.SelectorPool;
+import net.dsys.snio.impl.channel.MessageServerChannels;
+import net.dsys.snio.impl.channel.SocketOptions;
+import net.dsys.snio.impl.channel.builder.ChannelConfig;
+import net.dsys.snio.impl.channel.builder.ServerConfig;
+import net.dsys.snio.impl.pool.SelectorPools;
+
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class OptionsTest {
+
+	private static final int LENGTH = 8;
+
+	public OptionsTest() {
+		super();
+	}
+
+	@Test
+	public void testExtendedOptions() {
+		final SocketOptions options = new SocketOptions();
+		// setters either take the option or say that this JDK lacks it
+		try {
+			options.setQuickAck(true);
+			assertTrue(SocketOptions.isSupported("TCP_QUICKACK"));
+		} catch (final UnsupportedOperationException e) {
+			assertTrue(!SocketOptions.isSupported("TCP_QUICKACK"));
+		}
+	}
+
+	@Test
+	public void testUnknownOption() {
+		if (SocketOptions.isSupported("NO_SUCH_OPTION")) {
+			fail("unknown option reported as supported");
+		}
+	}
+
+	@Test
+	public void testSendBatchingResolution() {
+		final long resolution = SelectorPools.getTimerResolution();
+		assertTrue(resolution > 0);
+		final ChannelConfig<ByteBuffer> config = new ChannelConfig<>();
+		config.setSendBatching(0, TimeUnit.NANOSECONDS);
+		assertEquals(0, config.getSendBatchDelay());
+		config.setSendBatching(resolution, TimeUnit.NANOSECONDS);
+		assertEquals(resolution, config.getSendBatchDelay());
+		// holds shorter than one tick of the selector timers are rejected
+		try {
+			config.setSendBatching(resolution - 1, TimeUnit.NANOSECONDS);
+			fail("maxDelay below the timer resolution was accepted");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(resolution, config.getSendBatchDelay());
+		}
+		try {
+			config.setSendBatching(50, TimeUnit.MICROSECONDS);
+			fail("maxDelay below the timer resolution was accepted");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(resolution, config.getSendBatchDelay());
+		}
+	}
+
+	@Test
+	public void testAcceptedOptions() throws Exception {
+		final SelectorPool pool = SelectorPools.open("test", 1);
+		try {
+			final SocketOptions options = new SocketOptions()
+					.setTcpNoDelay(true)
+					.setKeepAlive(true);
+			final ChannelConfig<ByteBuffer> common = new ChannelConfig<ByteBuffer>()
+					.setPool(pool)
+					.setSocketOptions(options);
+			final MessageServerChannel<ByteBuffer> server = MessageServerChannels.openTCPServerChannel(common,
+					new ServerConfig().setMessageLength(LENGTH));
+			final SettableFuture<MessageChannel<ByteBuffer>> accepted = new SettableFuture<>();
+			server.onAccept(new AcceptListener<ByteBuffer>() {
+				@Override
+				public void connectionAccepted(final SocketAddress remote, final MessageChannel<ByteBuffer> channel) {
+					accepted.success(channel);
+				}
+			});
+			server.bind(new InetSocketAddress(0));
+			server.getBindFuture().get();
+			final int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+			final SocketChannel client = SocketChannel.open(new InetSocketAddress(InetAddress.getLocalHost(), port));
+			try {
+				// the options of the channel reach the sockets it accepts
+				final MessageChannel<ByteBuffer> channel = accepted.get();
+				assertEquals(Boolean.TRUE, channel.getOption(StandardSocketOptions.TCP_NODELAY));
+				assertEquals(Boolean.TRUE, channel.getOption(StandardSocketOptions.SO_KEEPALIVE));
+				channel.close();
+				channel.getCloseFuture().get();
+			} finally {
+				client.close();
+				server.close();
+				server.getCloseFuture().get();
+			}
+		} finally {
+			pool.close();
+			pool.getCloseFuture().get();
+		}
+	}
+
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.dsys.commons.api.lang.Interruptible;
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.handler.MessageBatchConsumer;
+import net.dsys.snio.api.handler.MessageConsumer;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.handler.MessageHandlers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class PipelineTest {
+
+	private static final int CAPACITY = 16;
+	private static final int MESSAGES = 1000;
+	private static final int STAGES = 3;
+	private static final long TIMEOUT = 5_000_000_000L;
+
+	private MessageBufferProvider<ByteBuffer> provider;
+	private ExecutorService executor;
+
+	public PipelineTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		provider = BlockingQueueProvider.createProviderFactory(CAPACITY,
+				new ByteBufferFactory(STAGES + Integer.SIZE / Byte.SIZE)).newInstance();
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (provider != null) {
+			provider.close();
+		}
+		provider = null;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		executor = null;
+	}
+
+	private static void send(final MessageBufferProducer<ByteBuffer> out, final int value)
+			throws InterruptedException {
+		final long seq = out.acquire();
+		final ByteBuffer bb = out.get(seq);
+		bb.clear();
+		bb.putInt(value);
+		// room for the mark of each stage
+		for (int i = 0; i < STAGES; i++) {
+			bb.put((byte) 0);
+		}
+		bb.flip();
+		out.attach(seq, Integer.valueOf(value));
+		out.release(seq);
+	}
+
+	/**
+	 * Marks each message with its own stage number, after checking that the
+	 * previous stages already marked it.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class MarkingConsumer implements MessageConsumer<ByteBuffer> {
+
+		private final int stage;
+		private final AtomicInteger total;
+		private final AtomicReference<Throwable> failure;
+		private int expected;
+
+		MarkingConsumer(final int stage, final AtomicInteger total, final AtomicReference<Throwable> failure) {
+			this.stage = stage;
+			this.total = total;
+			this.failure = failure;
+		}
+
+		@Override
+		public void consume(final ByteBuffer message, final Object attachment) {
+			try {
+				final int value = message.getInt(0);
+				assertEquals(expected++, value);
+				assertEquals(Integer.valueOf(value), attachment);
+				// same instance, seen after every previous stage
+				for (int i = 0; i < stage; i++) {
+					assertEquals(i + 1, message.get(Integer.SIZE / Byte.SIZE + i));
+				}
+				message.put(Integer.SIZE / Byte.SIZE + stage, (byte) (stage + 1));
+			} catch (final Throwable t) {
+				failure.compareAndSet(null, t);
+			}
+			total.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Counts the batches it was notified of.
+	 *
+	 * @author Ricardo Padilha
+	 */
+	private static final class CountingBatchConsumer implements MessageBatchConsumer<ByteBuffer> {
+
+		private final MessageConsumer<ByteBuffer> consumer;
+		private final AtomicInteger batches;
+
+		CountingBatchConsumer(final MessageConsumer<ByteBuffer> consumer, final AtomicInteger batches) {
+			this.consumer = consumer;
+			this.batches = batches;
+		}
+
+		@Override
+		public void consume(final ByteBuffer message, final Object attachment) {
+			consumer.consume(message, attachment);
+		}
+
+		@Override
+		public void endOfBatch() {
+			batches.incrementAndGet();
+		}
+	}
+
+	private static void await(final AtomicInteger total, final int expected) throws InterruptedException {
+		final long deadline = System.nanoTime() + TIMEOUT;
+		while (total.get() < expected && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(expected, total.get());
+	}
+
+	private void testStages(final int capacity) throws Exception {
+		final AtomicInteger[] totals = new AtomicInteger[STAGES];
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AtomicInteger batches = new AtomicInteger();
+		final MessageHandlers.PipelineBuilder<ByteBuffer> builder = MessageHandlers
+				.buildPipeline(provider.getAppInput())
+				.setCapacity(capacity);
+		for (int i = 0; i < STAGES; i++) {
+			totals[i] = new AtomicInteger();
+			final MessageConsumer<ByteBuffer> consumer = new MarkingConsumer(i, totals[i], failure);
+			if (i == STAGES - 1) {
+				builder.addStage(new CountingBatchConsumer(consumer, batches));
+			} else {
+				builder.addStage(consumer);
+			}
+		}
+		final List<Interruptible> stages = builder.build();
+		assertEquals(STAGES, stages.size());
+		final List<Future<?>> running = new ArrayList<>();
+		for (final Interruptible stage : stages) {
+			running.add(executor.submit(stage));
+		}
+		// more messages than the buffer holds: positions must be released
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		for (int i = 0; i < MESSAGES; i++) {
+			send(out, i);
+		}
+		await(totals[STAGES - 1], MESSAGES);
+		for (int i = 0; i < STAGES; i++) {
+			assertEquals(MESSAGES, totals[i].get());
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertTrue(batches.get() > 0);
+		assertTrue(batches.get() <= MESSAGES);
+		// interrupting one stage stops all of them, but the first one may be
+		// waiting on the input buffer until it is closed
+		stages.get(STAGES - 1).interrupt();
+		for (int i = 1; i < STAGES; i++) {
+			running.get(i).get(TIMEOUT, TimeUnit.NANOSECONDS);
+		}
+		provider.close();
+		running.get(0).get(TIMEOUT, TimeUnit.NANOSECONDS);
+	}
+
+	@Test
+	public void testStages() throws Exception {
+		testStages(CAPACITY);
+	}
+
+	@Test
+	public void testSmallWindow() throws Exception {
+		testStages(1);
+	}
+
+	@Test
+	public void testSingleStage() throws Exception {
+		final AtomicInteger total = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final List<Interruptible> stages = MessageHandlers.buildPipeline(provider.getAppInput())
+				.addStage(new MarkingConsumer(0, total, failure))
+				.build();
+		assertEquals(1, stages.size());
+		executor.execute(stages.get(0));
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		for (int i = 0; i < MESSAGES; i++) {
+			send(out, i);
+		}
+		await(total, MESSAGES);
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		stages.get(0).interrupt();
+		provider.close();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void testBuilder() {
+		final MessageHandlers.PipelineBuilder<ByteBuffer> builder = MessageHandlers
+				.buildPipeline(provider.getAppInput());
+		try {
+			builder.build();
+			fail("built a pipeline without stages");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+		try {
+			builder.setCapacity(0);
+			fail("accepted an empty window");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			builder.addStage(null);
+			fail("accepted a null stage");
+		} catch (final NullPointerException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import net.dsys.snio.impl.buffer.ByteBufferPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class PoolTest {
+
+	private static final int MIN_LENGTH = 64;
+	private static final int MAX_LENGTH = 1000;
+	private static final int SLAB_LENGTH = 4096;
+	private static final int MESSAGES = 10_000;
+
+	private ByteBufferPool pool;
+
+	public PoolTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		pool = new ByteBufferPool(MIN_LENGTH, MAX_LENGTH, SLAB_LENGTH, false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool = null;
+	}
+
+	@Test
+	public void testSizeClasses() {
+		assertEquals(MIN_LENGTH, pool.allocate(0).capacity());
+		assertEquals(MIN_LENGTH, pool.allocate(MIN_LENGTH).capacity());
+		assertEquals(2 * MIN_LENGTH, pool.allocate(MIN_LENGTH + 1).capacity());
+		assertEquals(MAX_LENGTH, pool.allocate(MAX_LENGTH - 1).capacity());
+		assertEquals(MAX_LENGTH, pool.allocate(MAX_LENGTH).capacity());
+	}
+
+	@Test
+	public void testReuse() {
+		final ByteBuffer bb = pool.allocate(MIN_LENGTH);
+		bb.putInt(1);
+		pool.free(bb);
+		final ByteBuffer again = pool.allocate(MIN_LENGTH);
+		assertSame(bb, again);
+		assertEquals(0, again.position());
+		assertEquals(MIN_LENGTH, again.limit());
+	}
+
+	@Test
+	public void testForeign() {
+		try {
+			pool.free(ByteBuffer.allocate(MIN_LENGTH + 1));
+		} catch (final IllegalArgumentException e) {
+			return;
+		}
+		fail("should have got an IllegalArgumentException");
+	}
+
+	/**
+	 * Buffers allocated by one thread and freed by another must come back
+	 * to the first one through the shared free list.
+	 */
+	@Test
+	public void testCrossThread() throws InterruptedException {
+		final List<ByteBuffer> allocated = new ArrayList<>();
+		for (int i = 0; i < MESSAGES; i++) {
+			allocated.add(pool.allocate(MIN_LENGTH));
+		}
+		final Set<ByteBuffer> distinct = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+		distinct.addAll(allocated);
+		assertEquals(MESSAGES, distinct.size());
+		final Thread freer = new Thread() {
+			@Override
+			public void run() {
+				for (final ByteBuffer bb : allocated) {
+					pool.free(bb);
+				}
+			}
+		};
+		freer.start();
+		freer.join();
+		int reused = 0;
+		for (int i = 0; i < MESSAGES; i++) {
+			if (distinct.contains(pool.allocate(MIN_LENGTH))) {
+				reused++;
+			}
+		}
+		// the freeing thread keeps its own cache, and the shared list is
+		// bounded, so only part of the buffers can come back
+		assertTrue("reused " + reused, reused > 0 && reused < MESSAGES);
+	}
+
+	/**
+	 * Buffers left in the cache of a thread that exited must be reused
+	 * before new slabs are carved.
+	 */
+	@Test
+	public void testExitedThread() throws InterruptedException {
+		final int freed = 10;
+		final List<ByteBuffer> allocated = new ArrayList<>();
+		for (int i = 0; i < freed; i++) {
+			allocated.add(pool.allocate(MIN_LENGTH));
+		}
+		final Thread freer = new Thread() {
+			@Override
+			public void run() {
+				// few enough to stay in the cache of this thread
+				for (final ByteBuffer bb : allocated) {
+					pool.free(bb);
+				}
+			}
+		};
+		freer.start();
+		freer.join();
+		final Set<ByteBuffer> distinct = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+		distinct.addAll(allocated);
+		int reused = 0;
+		for (int i = 0; i < SLAB_LENGTH / MIN_LENGTH; i++) {
+			if (distinct.contains(pool.allocate(MIN_LENGTH))) {
+				reused++;
+			}
+		}
+		assertEquals(freed, reused);
+	}
+
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.dsys.commons.api.lang.Factory;
+import net.dsys.commons.impl.lang.ByteBufferCopier;
+import net.dsys.commons.impl.lang.ByteBufferFactory;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.impl.buffer.BlockingQueueProvider;
+import net.dsys.snio.impl.group.QuorumMessageBufferProducer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class QuorumTest {
+
+	private static final int MEMBERS = 3;
+	private static final int QUORUM = 2;
+	private static final int CAPACITY = 4;
+	private static final int BACKLOG = 16;
+	private static final long TIMEOUT = 5_000_000_000L;
+
+	private Factory<ByteBuffer> factory;
+	private List<MessageBufferProvider<ByteBuffer>> providers;
+	private List<MessageBufferConsumer<ByteBuffer>> members;
+
+	public QuorumTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		factory = new ByteBufferFactory(Integer.SIZE / Byte.SIZE);
+		providers = new ArrayList<>();
+		members = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++) {
+			final MessageBufferProvider<ByteBuffer> provider =
+					BlockingQueueProvider.createProviderFactory(CAPACITY, factory).newInstance();
+			providers.add(provider);
+			members.add(provider.getChannelInput());
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			provider.close();
+		}
+		providers = null;
+		members = null;
+		factory = null;
+	}
+
+	private QuorumMessageBufferProducer<ByteBuffer> open(final boolean dropLagging) {
+		final QuorumMessageBufferProducer.Builder<ByteBuffer> builder = QuorumMessageBufferProducer.build();
+		builder.setCopier(new ByteBufferCopier());
+		builder.setFactory(factory);
+		builder.setQuorum(QUORUM);
+		builder.setBacklog(BACKLOG, dropLagging);
+		for (final MessageBufferProvider<ByteBuffer> provider : providers) {
+			builder.add(provider.getAppOutput(null));
+		}
+		return builder.build();
+	}
+
+	private static void send(final QuorumMessageBufferProducer<ByteBuffer> out, final int value)
+			throws InterruptedException {
+		final long seq = out.acquire();
+		final ByteBuffer bb = out.get(seq);
+		bb.clear();
+		bb.putInt(value);
+		bb.flip();
+		out.release(seq);
+	}
+
+	/**
+	 * Receives the next message of a member, which must carry the given value.
+	 */
+	private void receive(final int member, final int value) throws InterruptedException {
+		final MessageBufferConsumer<ByteBuffer> in = members.get(member);
+		final long seq = in.acquire();
+		assertEquals(value, in.get(seq).getInt(0));
+		in.release(seq);
+	}
+
+	private static void awaitLag(final QuorumMessageBufferProducer<ByteBuffer> out, final int member,
+			final long lag) throws InterruptedException {
+		final long deadline = System.nanoTime() + TIMEOUT;
+		while (out.getLag(member) != lag) {
+			assertTrue("lag of member " + member, System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testQuorumCompletion() throws InterruptedException {
+		final QuorumMessageBufferProducer<ByteBuffer> out = open(false);
+		final int n = 2 * CAPACITY;
+		// two members keep up, the third does not read at all
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < n; i++) {
+						receive(0, i);
+						receive(1, i);
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < n; i++) {
+			send(out, i);
+		}
+		reader.join(TIMEOUT / 1_000_000);
+		assertFalse(reader.isAlive());
+		assertEquals(0, out.getLag(0));
+		assertEquals(0, out.getLag(1));
+		assertEquals(n - CAPACITY, out.getLag(2));
+		assertFalse(out.isDropped(2));
+		assertEquals(BACKLOG - (n - CAPACITY), out.remaining());
+		out.close();
+	}
+
+	@Test
+	public void testForwardWhenIdle() throws InterruptedException {
+		final QuorumMessageBufferProducer<ByteBuffer> out = open(false);
+		final int n = 2 * CAPACITY;
+		for (int i = 0; i < n; i++) {
+			if (i == CAPACITY) {
+				// make room in the quorum, the third member stays full
+				for (int j = 0; j < CAPACITY; j++) {
+					receive(0, j);
+					receive(1, j);
+				}
+			}
+			send(out, i);
+		}
+		assertEquals(CAPACITY, out.getLag(2));
+		// the application no longer sends, the backlog must still drain
+		for (int i = 0; i < n; i++) {
+			receive(2, i);
+		}
+		awaitLag(out, 2, 0);
+		out.close();
+	}
+
+	@Test
+	public void testDropLagging() throws InterruptedException {
+		final QuorumMessageBufferProducer<ByteBuffer> out = open(true);
+		final int n = CAPACITY + BACKLOG + 1;
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < n; i++) {
+						receive(0, i);
+						receive(1, i);
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < n; i++) {
+			send(out, i);
+		}
+		reader.join(TIMEOUT / 1_000_000);
+		assertFalse(reader.isAlive());
+		assertTrue(out.isDropped(2));
+		assertFalse(out.isDropped(0));
+		assertFalse(out.isDropped(1));
+		final int remaining = out.remaining();
+		assertTrue("remaining " + remaining, remaining >= 0 && remaining <= BACKLOG);
+		out.close();
+	}
+
+	@Test
+	public void testCloseFlushes() throws InterruptedException {
+		final QuorumMessageBufferProducer<ByteBuffer> out = open(false);
+		final int n = CAPACITY + CAPACITY / 2;
+		for (int i = 0; i < n; i++) {
+			if (i == CAPACITY) {
+				for (int j = 0; j < CAPACITY; j++) {
+					receive(0, j);
+					receive(1, j);
+				}
+			}
+			send(out, i);
+		}
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < n; i++) {
+						receive(2, i);
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		reader.start();
+		assertEquals(0, out.close());
+		reader.join(TIMEOUT / 1_000_000);
+		assertFalse(reader.isAlive());
+		assertEquals(0, out.getLag(2));
+	}
+
+	@Test
+	public void testCloseReportsLost() throws InterruptedException {
+		final QuorumMessageBufferProducer<ByteBuffer> out = open(false);
+		final int lost = 2;
+		for (int i = 0; i < CAPACITY + lost; i++) {
+			if (i == CAPACITY) {
+				for (int j = 0; j < CAPACITY; j++) {
+					receive(0, j);
+					receive(1, j);
+				}
+			}
+			send(out, i);
+		}
+		// the third member never drains, so its last messages cannot be sent
+		assertEquals(lost, out.close());
+		assertEquals(lost, out.getLag(2));
+	}
+
+}
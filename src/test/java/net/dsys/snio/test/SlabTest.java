@@ -0,0 +1,310 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.Callable;
+
+import net.dsys.commons.api.future.CallbackFuture;
+import net.dsys.snio.api.buffer.InterruptedByClose;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.buffer.MessageBufferProvider;
+import net.dsys.snio.api.channel.ChannelMetrics;
+import net.dsys.snio.api.pool.KeyProcessor;
+import net.dsys.snio.api.pool.SelectionType;
+import net.dsys.snio.api.pool.SelectorExecutor;
+import net.dsys.snio.api.pool.SelectorThread;
+import net.dsys.snio.impl.buffer.SlabBufferProvider;
+import net.dsys.snio.impl.buffer.SlabRegion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ricardo Padilha
+ */
+public final class SlabTest {
+
+	private static final int CAPACITY = 4;
+	private static final int LENGTH = 16;
+	private static final int RINGS = 5;
+
+	private SlabRegion region;
+
+	public SlabTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		region = new SlabRegion(CAPACITY, LENGTH, RINGS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		region = null;
+	}
+
+	/**
+	 * Creates a provider whose application output is bound to a processor
+	 * that ignores wake-ups, as if it belonged to a channel.
+	 */
+	private MessageBufferProvider<ByteBuffer> provider() {
+		final MessageBufferProvider<ByteBuffer> provider = SlabBufferProvider.createProvider(region);
+		provider.getAppOutput(new IdleProcessor());
+		return provider;
+	}
+
+	private static long write(final MessageBufferProducer<ByteBuffer> out, final int value,
+			final Object attachment) throws InterruptedException {
+		final long seq = out.acquire();
+		final ByteBuffer msg = out.get(seq);
+		msg.clear();
+		msg.putInt(value);
+		msg.flip();
+		if (attachment != null) {
+			out.attach(seq, attachment);
+		}
+		out.release(seq);
+		return seq;
+	}
+
+	@Test
+	public void testReserve() {
+		assertEquals(RINGS, region.available());
+		provider();
+		assertEquals(RINGS - 2, region.available());
+		provider();
+		assertEquals(RINGS - 4, region.available());
+		try {
+			provider();
+			fail("reserved more rings than available");
+		} catch (final IllegalStateException e) {
+			// the ring of the first direction goes back to the region
+			assertEquals(RINGS - 4, region.available());
+		}
+	}
+
+	@Test
+	public void testMessage() throws InterruptedException {
+		final MessageBufferProvider<ByteBuffer> provider = provider();
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		final MessageBufferConsumer<ByteBuffer> in = provider.getAppInput();
+		for (int i = 0; i < CAPACITY * 2; i++) {
+			final long seq = write(out, i, Integer.valueOf(i));
+			assertEquals(seq, in.acquire());
+			final ByteBuffer msg = in.get(seq);
+			assertEquals(LENGTH, msg.capacity());
+			assertEquals(0, msg.position());
+			assertEquals(Integer.SIZE / Byte.SIZE, msg.limit());
+			assertEquals(i, msg.getInt());
+			assertEquals(Integer.valueOf(i), in.attachment(seq));
+			in.release(seq);
+		}
+		provider.close();
+	}
+
+	@Test
+	public void testClose() {
+		final MessageBufferProvider<ByteBuffer> provider = provider();
+		provider.close();
+		assertEquals(RINGS, region.available());
+	}
+
+	@Test
+	public void testCloseClaimed() throws InterruptedException {
+		final MessageBufferProvider<ByteBuffer> provider = provider();
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		final long seq = out.acquire();
+		provider.close();
+		// the claimed position keeps its ring out of the region
+		assertEquals(RINGS - 1, region.available());
+		try {
+			out.release(seq);
+			fail("released after close");
+		} catch (final InterruptedByClose e) {
+			assertEquals(RINGS, region.available());
+		}
+		try {
+			out.acquire();
+			fail("acquired after close");
+		} catch (final InterruptedByClose e) {
+			assertEquals(RINGS, region.available());
+		}
+	}
+
+	@Test
+	public void testCloseHeld() throws InterruptedException {
+		final MessageBufferProvider<ByteBuffer> provider = provider();
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		final MessageBufferConsumer<ByteBuffer> in = provider.getAppInput();
+		final long seq = write(out, 1, null);
+		assertEquals(seq, in.acquire());
+		provider.close();
+		// the held position keeps its ring out of the region
+		assertEquals(RINGS - 1, region.available());
+		try {
+			in.release(seq);
+			fail("released after close");
+		} catch (final InterruptedByClose e) {
+			assertEquals(RINGS, region.available());
+		}
+	}
+
+	@Test
+	public void testCloseIdle() throws InterruptedException {
+		final MessageBufferProvider<ByteBuffer> provider = provider();
+		final MessageBufferProducer<ByteBuffer> out = provider.getChannelOutput();
+		final MessageBufferConsumer<ByteBuffer> in = provider.getAppInput();
+		final long seq = write(out, 1, null);
+		assertEquals(seq, in.acquire());
+		in.release(seq);
+		provider.close();
+		assertEquals(RINGS, region.available());
+		try {
+			in.acquire();
+			fail("acquired after close");
+		} catch (final InterruptedByClose e) {
+			assertEquals(RINGS, region.available());
+		}
+	}
+
+	@Test
+	public void testReuse() throws InterruptedException {
+		final MessageBufferProvider<ByteBuffer> first = provider();
+		long seq = write(first.getChannelOutput(), 1, "first");
+		assertEquals(seq, first.getAppInput().acquire());
+		first.getAppInput().release(seq);
+		first.close();
+		assertEquals(RINGS, region.available());
+
+		// same rings, but nothing left over from the previous channel
+		final MessageBufferProvider<ByteBuffer> second = provider();
+		final MessageBufferProducer<ByteBuffer> out = second.getChannelOutput();
+		final MessageBufferConsumer<ByteBuffer> in = second.getAppInput();
+		seq = out.acquire();
+		final ByteBuffer msg = out.get(seq);
+		assertEquals(0, msg.position());
+		assertEquals(LENGTH, msg.limit());
+		msg.putShort((short) 2);
+		msg.flip();
+		out.release(seq);
+		assertEquals(seq, in.acquire());
+		assertNull(in.attachment(seq));
+		assertEquals(Short.SIZE / Byte.SIZE, in.get(seq).remaining());
+		assertEquals(2, in.get(seq).getShort());
+		in.release(seq);
+		second.close();
+		assertEquals(RINGS, region.available());
+	}
+
+	@Test
+	public void testReserveWhileClosing() throws InterruptedException {
+		final MessageBufferProvider<ByteBuffer> first = provider();
+		final MessageBufferProducer<ByteBuffer> out = first.getChannelOutput();
+		final long seq = out.acquire();
+		first.close();
+		provider();
+		assertEquals(RINGS - 3, region.available());
+		try {
+			out.release(seq);
+			fail("released after close");
+		} catch (final InterruptedByClose e) {
+			assertEquals(RINGS - 2, region.available());
+		}
+	}
+
+	/**
+	 * Processor of a channel that is never registered.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	private static final class IdleProcessor implements KeyProcessor<ByteBuffer> {
+
+		IdleProcessor() {
+			super();
+		}
+
+		@Override
+		public void connect(final SelectionKey key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CallbackFuture<Void> getConnectionFuture() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void registered(final SelectorThread thread, final SelectionKey key, final SelectionType type) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MessageBufferConsumer<ByteBuffer> getInputBuffer() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MessageBufferProducer<ByteBuffer> getOutputBuffer() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long read(final SelectionKey key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long write(final SelectionKey key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void idle(final SelectionKey key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void wakeupWriter() {
+			return;
+		}
+
+		@Override
+		public void close(final SelectorExecutor executor, final Callable<Void> closeTask) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CallbackFuture<Void> getCloseFuture() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ChannelMetrics getMetrics() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2014 Ricardo Padilha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dsys.snio.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.dsys.commons.api.future.CallbackFuture;
+import net.dsys.snio.api.buffer.MessageBufferConsumer;
+import net.dsys.snio.api.buffer.MessageBufferProducer;
+import net.dsys.snio.api.channel.ChannelMetrics;
+import net.dsys.snio.api.pool.KeyProcessor;
+import net.dsys.snio.api.pool.Processor;
+import net.dsys.snio.api.pool.SelectionType;
+import net.dsys.snio.api.pool.SelectorExecutor;
+import net.dsys.snio.api.pool.SelectorPool;
+import net.dsys.snio.api.pool.SelectorThread;
+import net.dsys.snio.impl.pool.SelectorPools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Timers of the selector threads, as seen by the processors of their keys.
+ * 
+ * @author Ricardo Padilha
+ */
+public final class TimerTest {
+
+	private static final long DELAY = 20;
+	/** longer than one turn of the timer wheel */
+	private static final long LONG_DELAY = 600;
+	private static final long TIMEOUT = 5_000;
+
+	private SelectorPool pool;
+	private DatagramChannel channel;
+
+	public TimerTest() {
+		super();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		pool = SelectorPools.open("timer", 1);
+		channel = DatagramChannel.open();
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		channel.configureBlocking(false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (channel != null) {
+			channel.close();
+		}
+		channel = null;
+		if (pool != null) {
+			pool.close();
+			pool.getCloseFuture().get();
+		}
+		pool = null;
+	}
+
+	private void register(final ProbeProcessor probe) throws InterruptedException {
+		pool.next().register(channel, probe);
+		assertTrue(probe.registered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	private static long elapsed(final ProbeProcessor probe, final BlockingQueue<Long> events)
+			throws InterruptedException {
+		final Long time = events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull(time);
+		return time.longValue() - probe.start;
+	}
+
+	@Test
+	public void testResolution() {
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(1), SelectorPools.getTimerResolution());
+	}
+
+	@Test
+	public void testIdle() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				thread.idleKey(key, DELAY, TimeUnit.MILLISECONDS);
+			}
+		};
+		register(probe);
+		assertTrue(elapsed(probe, probe.idles) >= TimeUnit.MILLISECONDS.toNanos(DELAY));
+		// a single notification per call
+		assertNull(probe.idles.poll(DELAY * 2, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testIdleBelowResolution() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				// rounded up to the next tick, but never lost
+				thread.idleKey(key, SelectorPools.getTimerResolution() / 2, TimeUnit.NANOSECONDS);
+			}
+		};
+		register(probe);
+		assertTrue(elapsed(probe, probe.idles) >= SelectorPools.getTimerResolution() / 2);
+	}
+
+	@Test
+	public void testIdleNoDelay() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				thread.idleKey(key, 0, TimeUnit.NANOSECONDS);
+			}
+		};
+		register(probe);
+		assertTrue(elapsed(probe, probe.idles) >= 0);
+	}
+
+	@Test
+	public void testIdleLongDelay() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				thread.idleKey(key, LONG_DELAY, TimeUnit.MILLISECONDS);
+			}
+		};
+		register(probe);
+		// the slot comes around once before the deadline
+		assertTrue(elapsed(probe, probe.idles) >= TimeUnit.MILLISECONDS.toNanos(LONG_DELAY));
+	}
+
+	@Test
+	public void testLaterDeadline() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				thread.idleKey(key, DELAY * 2, TimeUnit.MILLISECONDS);
+				thread.idleKey(key, 0, TimeUnit.MILLISECONDS);
+			}
+		};
+		register(probe);
+		assertTrue(elapsed(probe, probe.idles) >= TimeUnit.MILLISECONDS.toNanos(DELAY * 2));
+		assertNull(probe.idles.poll(DELAY * 2, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testCancelled() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				thread.idleKey(key, DELAY, TimeUnit.MILLISECONDS);
+			}
+		};
+		register(probe);
+		// closing the channel cancels its keys
+		channel.close();
+		assertNull(probe.idles.poll(DELAY * 4, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSuspend() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				key.interestOps(0);
+				thread.suspendKey(key, DELAY, TimeUnit.MILLISECONDS);
+			}
+		};
+		register(probe);
+		try (final DatagramChannel client = DatagramChannel.open()) {
+			client.send(ByteBuffer.wrap(new byte[] { 1 }), channel.getLocalAddress());
+		}
+		// the datagram waits until the read interest comes back
+		assertTrue(elapsed(probe, probe.reads) >= TimeUnit.MILLISECONDS.toNanos(DELAY));
+	}
+
+	@Test
+	public void testSuspendCancelled() throws Exception {
+		final ProbeProcessor probe = new ProbeProcessor() {
+			@Override
+			protected void schedule(final SelectorThread thread, final SelectionKey key) {
+				key.interestOps(0);
+				thread.suspendKey(key, DELAY, TimeUnit.MILLISECONDS);
+				key.cancel();
+			}
+		};
+		register(probe);
+		// resuming a cancelled key would throw from within the selector thread
+		assertNull(probe.reads.poll(DELAY * 4, TimeUnit.MILLISECONDS));
+		assertTrue(pool.isOpen());
+	}
+
+	/**
+	 * Schedules its read key once registered, and records when the selector
+	 * thread calls it back.
+	 * 
+	 * @author Ricardo Padilha
+	 */
+	private abstract class ProbeProcessor implements Processor, KeyProcessor<ByteBuffer> {
+
+		final CountDownLatch registered;
+		final BlockingQueue<Long> idles;
+		final BlockingQueue<Long> reads;
+		volatile long start;
+
+		ProbeProcessor() {
+			this.registered = new CountDownLatch(1);
+			this.idles = new LinkedBlockingQueue<>();
+			this.reads = new LinkedBlockingQueue<>();
+		}
+
+		/**
+		 * Called from within the reader thread.
+		 */
+		protected abstract void schedule(SelectorThread thread, SelectionKey key);
+
+		@Override
+		public KeyProcessor<?> getProcessor() {
+			return this;
+		}
+
+		@Override
+		public void registered(final SelectorThread thread, final SelectionKey key, final SelectionType type) {
+			if (key == null) {
+				return;
+			}
+			if (type == SelectionType.OP_WRITE) {
+				// nothing to write
+				key.interestOps(0);
+				return;
+			}
+			start = System.nanoTime();
+			schedule(thread, key);
+			registered.countDown();
+		}
+
+		@Override
+		public long read(final SelectionKey key) throws IOException {
+			final ByteBuffer bb = ByteBuffer.allocate(1);
+			if (channel.receive(bb) != null) {
+				reads.add(Long.valueOf(System.nanoTime()));
+			}
+			return bb.position();
+		}
+
+		@Override
+		public long write(final SelectionKey key) {
+			return 0;
+		}
+
+		@Override
+		public void idle(final SelectionKey key) {
+			idles.add(Long.valueOf(System.nanoTime()));
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		@Override
+		public void connect(final SelectionKey key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CallbackFuture<Void> getConnectionFuture() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MessageBufferConsumer<ByteBuffer> getInputBuffer() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MessageBufferProducer<ByteBuffer> getOutputBuffer() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void wakeupWriter() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close(final SelectorExecutor executor, final Callable<Void> closeTask) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CallbackFuture<Void> getCloseFuture() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public ChannelMetrics getMetrics() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}